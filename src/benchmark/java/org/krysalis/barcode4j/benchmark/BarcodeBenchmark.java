@@ -0,0 +1,343 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.benchmark;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+import org.krysalis.barcode4j.BarcodeDimension;
+import org.krysalis.barcode4j.BarcodeGenerator;
+import org.krysalis.barcode4j.BarcodeUtil;
+import org.krysalis.barcode4j.DefaultBarcodeClassResolver;
+import org.krysalis.barcode4j.TextAlignment;
+import org.krysalis.barcode4j.impl.code128.Code128LogicImpl;
+import org.krysalis.barcode4j.output.AbstractCanvasProvider;
+import org.krysalis.barcode4j.output.CanvasProvider;
+import org.krysalis.barcode4j.output.bitmap.BitmapCanvasProvider;
+import org.krysalis.barcode4j.output.eps.EPSCanvasProvider;
+import org.krysalis.barcode4j.output.java2d.Java2DCanvasProvider;
+import org.krysalis.barcode4j.output.svg.SVGCanvasProvider;
+import org.krysalis.barcode4j.output.svg.SVGStreamCanvasProvider;
+
+/**
+ * Simple throughput benchmark for all barcode types and output formats. For every
+ * combination of barcode type, message length (short, typical, maximum) and canvas,
+ * the benchmark first warms up and then measures the number of barcodes produced per second.
+ * The number of bytes allocated per barcode is reported, too, if the JVM can supply this
+ * information (Sun/Oracle VMs since Java 6).
+ * <p>
+ * Usage: <code>BarcodeBenchmark [types [canvases [seconds]]]</code> where types and canvases
+ * are comma-separated lists (or "all") and seconds is the measurement time per combination.
+ * The Ant target "benchmark" runs this class.
+ *
+ * @version $Id$
+ */
+public class BarcodeBenchmark {
+
+    /** The available canvases */
+    public static final String[] CANVASES = new String[] {
+        "null", "png-1bit", "png-gray", "bitmap-1bit", "svg-dom", "svg-stream", "eps", "java2d"};
+
+    /** Messages per barcode type: type, short message, typical message, maximum message */
+    private static final String[][] MESSAGES = new String[][] {
+        {"codabar", "a1b", "a0123456789b", "a" + repeat("0123456789", 4) + "b"},
+        {"code39", "A", "CODE39 TEST", "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-. $/+%"},
+        {"code128", "1", "Hello World 123", repeat("0123456789", 4) + repeat("ABCDEFGHIJ", 4)},
+        {"ean-128", "101", "0112345678901231" + "1001234",
+            "0112345678901231" + "10ABCDEFGHIJKLMNOPQRST" + Code128LogicImpl.FNC_1
+            + "21ABCDEFGHIJKLMNOPQRST"},
+        {"intl2of5", "12", "1234567890", repeat("0123456789", 4)},
+        {"itf-14", "1234567890123", "1234567890123", "1234567890123"},
+        {"ean-13", "123456789012", "123456789012", "123456789012+12345"},
+        {"ean-8", "1234567", "1234567", "1234567+12345"},
+        {"upc-a", "12345678901", "12345678901", "12345678901+12345"},
+        {"upc-e", "0127890", "0127890", "0127890+12345"},
+        {"postnet", "12345", "123456789", "12345678901"},
+        {"royal-mail-cbc", "B31HQ1A", "SN34RD1A", "SN34RD1A" + "ABCDEFGHIJ"},
+        {"usps4cb", "01234567094987654321", "0123456709498765432101234",
+            "01234567094987654321012345678"},
+        {"pdf417", "A", "Hello World! This is a typical PDF417 message. 1234567890",
+            repeat("Lorem ipsum dolor sit amet, 0123456789. ", 6)},
+        {"datamatrix", "A", "Hello World! This is a DataMatrix message. 1234567890",
+            repeat("Lorem ipsum dolor sit amet, 0123456789. ", 38)},
+    };
+
+    private static final String[] LENGTHS = new String[] {"short", "typical", "max"};
+
+    private long measureMillis;
+    private long warmupMillis;
+    private PrintStream out;
+    private Method allocatedBytesMethod;
+    private Object threadMXBean;
+    private Method threadIdMethod;
+    private DecimalFormat df;
+
+    /**
+     * Creates a new benchmark.
+     * @param measureMillis the measurement time per combination in milliseconds
+     * @param out the stream to write the results to
+     */
+    public BarcodeBenchmark(long measureMillis, PrintStream out) {
+        this.measureMillis = measureMillis;
+        this.warmupMillis = Math.max(measureMillis / 2, 100);
+        this.out = out;
+        DecimalFormatSymbols dfs = new DecimalFormatSymbols();
+        dfs.setDecimalSeparator('.');
+        this.df = new DecimalFormat("0.0", dfs);
+        initAllocationCounter();
+    }
+
+    private void initAllocationCounter() {
+        //Accessed through reflection, so the code still compiles and runs on Java 1.4
+        try {
+            Class factory = Class.forName("java.lang.management.ManagementFactory");
+            Object bean = factory.getMethod("getThreadMXBean", new Class[0])
+                    .invoke(null, new Object[0]);
+            Class clazz = Class.forName("com.sun.management.ThreadMXBean");
+            if (clazz.isInstance(bean)) {
+                Method method = clazz.getMethod("getThreadAllocatedBytes",
+                        new Class[] {Long.TYPE});
+                this.threadMXBean = bean;
+                this.allocatedBytesMethod = method;
+                this.threadIdMethod = Thread.class.getMethod("getId", new Class[0]);
+                getAllocatedBytes(); //test it
+            }
+        } catch (Exception e) {
+            this.threadMXBean = null;
+            this.allocatedBytesMethod = null;
+            this.threadIdMethod = null;
+        }
+    }
+
+    private long getAllocatedBytes() throws Exception {
+        if (this.allocatedBytesMethod == null) {
+            return -1;
+        }
+        Object threadId = this.threadIdMethod.invoke(Thread.currentThread(), new Object[0]);
+        return ((Long)this.allocatedBytesMethod.invoke(this.threadMXBean,
+                new Object[] {threadId})).longValue();
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuffer sb = new StringBuffer(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    private static BarcodeGenerator createGenerator(String type) throws Exception {
+        DefaultConfiguration cfg = new DefaultConfiguration("barcode");
+        cfg.addChild(new DefaultConfiguration(type));
+        return BarcodeUtil.getInstance().createBarcodeGenerator(cfg);
+    }
+
+    /**
+     * Runs the benchmark.
+     * @param types the barcode types to measure
+     * @param canvases the canvases to measure
+     * @throws Exception if an error occurs
+     */
+    public void run(List types, List canvases) throws Exception {
+        out.println("type\tlength\tcanvas\tops/s\tbytes/op");
+        for (int i = 0; i < MESSAGES.length; i++) {
+            String type = MESSAGES[i][0];
+            if (!types.contains(type)) {
+                continue;
+            }
+            BarcodeGenerator gen = createGenerator(type);
+            for (int l = 0; l < LENGTHS.length; l++) {
+                String msg = MESSAGES[i][l + 1];
+                for (int c = 0; c < CANVASES.length; c++) {
+                    String canvas = CANVASES[c];
+                    if (!canvases.contains(canvas)) {
+                        continue;
+                    }
+                    out.print(type + "\t" + LENGTHS[l] + "\t" + canvas + "\t");
+                    try {
+                        Result result = measure(gen, msg, canvas);
+                        out.print(df.format(result.opsPerSecond));
+                        out.print("\t");
+                        out.println(result.bytesPerOp >= 0
+                                ? String.valueOf(result.bytesPerOp) : "n/a");
+                    } catch (Exception e) {
+                        out.println("failed: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private Result measure(BarcodeGenerator gen, String msg, String canvas) throws Exception {
+        //Warm-up
+        long end = System.currentTimeMillis() + warmupMillis;
+        while (System.currentTimeMillis() < end) {
+            generate(gen, msg, canvas);
+        }
+
+        //Measurement
+        long ops = 0;
+        long allocStart = getAllocatedBytes();
+        long start = System.currentTimeMillis();
+        end = start + measureMillis;
+        long now;
+        do {
+            generate(gen, msg, canvas);
+            ops++;
+            now = System.currentTimeMillis();
+        } while (now < end);
+        long allocEnd = getAllocatedBytes();
+
+        Result result = new Result();
+        result.opsPerSecond = ops * 1000.0 / Math.max(now - start, 1);
+        if (allocStart >= 0) {
+            result.bytesPerOp = (allocEnd - allocStart) / ops;
+        } else {
+            result.bytesPerOp = -1;
+        }
+        return result;
+    }
+
+    private void generate(BarcodeGenerator gen, String msg, String canvas) throws Exception {
+        ByteArrayOutputStream bout;
+        if ("null".equals(canvas)) {
+            gen.generateBarcode(new NullCanvasProvider(), msg);
+        } else if ("png-1bit".equals(canvas)) {
+            bout = new ByteArrayOutputStream(4096);
+            BitmapCanvasProvider provider = new BitmapCanvasProvider(bout, "image/x-png", 300,
+                    BufferedImage.TYPE_BYTE_BINARY, false, 0);
+            gen.generateBarcode(provider, msg);
+            provider.finish();
+        } else if ("png-gray".equals(canvas)) {
+            bout = new ByteArrayOutputStream(4096);
+            BitmapCanvasProvider provider = new BitmapCanvasProvider(bout, "image/x-png", 300,
+                    BufferedImage.TYPE_BYTE_GRAY, true, 0);
+            gen.generateBarcode(provider, msg);
+            provider.finish();
+        } else if ("bitmap-1bit".equals(canvas)) {
+            BitmapCanvasProvider provider = new BitmapCanvasProvider(300,
+                    BufferedImage.TYPE_BYTE_BINARY, false, 0);
+            gen.generateBarcode(provider, msg);
+            provider.finish();
+        } else if ("svg-dom".equals(canvas)) {
+            SVGCanvasProvider provider = new SVGCanvasProvider(false, 0);
+            gen.generateBarcode(provider, msg);
+        } else if ("svg-stream".equals(canvas)) {
+            bout = new ByteArrayOutputStream(4096);
+            SVGStreamCanvasProvider provider = new SVGStreamCanvasProvider(bout, 0);
+            gen.generateBarcode(provider, msg);
+            provider.finish();
+        } else if ("eps".equals(canvas)) {
+            bout = new ByteArrayOutputStream(4096);
+            EPSCanvasProvider provider = new EPSCanvasProvider(bout, 0);
+            gen.generateBarcode(provider, msg);
+            provider.finish();
+        } else if ("java2d".equals(canvas)) {
+            BarcodeDimension dim = gen.calcDimensions(msg);
+            double scale = 300 / 25.4;
+            BufferedImage image = new BufferedImage(
+                    (int)Math.ceil(dim.getWidthPlusQuiet() * scale),
+                    (int)Math.ceil(dim.getHeightPlusQuiet() * scale),
+                    BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D g2d = image.createGraphics();
+            try {
+                g2d.scale(scale, scale);
+                CanvasProvider provider = new Java2DCanvasProvider(g2d, 0);
+                gen.generateBarcode(provider, msg);
+            } finally {
+                g2d.dispose();
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown canvas: " + canvas);
+        }
+    }
+
+    private static List parseList(String value, List all) {
+        if (value == null || "all".equals(value)) {
+            return all;
+        }
+        List result = Arrays.asList(value.split(","));
+        Iterator iter = result.iterator();
+        while (iter.hasNext()) {
+            String s = (String)iter.next();
+            if (!all.contains(s)) {
+                throw new IllegalArgumentException("Unknown value: " + s + " (valid: " + all + ")");
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Command-line entry point.
+     * @param args the arguments
+     * @throws Exception if an error occurs
+     */
+    public static void main(String[] args) throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        List allTypes = new java.util.ArrayList();
+        for (int i = 0; i < MESSAGES.length; i++) {
+            allTypes.add(MESSAGES[i][0]);
+        }
+        Set mainIDs = new java.util.HashSet(new DefaultBarcodeClassResolver().getBarcodeNames());
+        mainIDs.removeAll(allTypes);
+        if (!mainIDs.isEmpty()) {
+            System.err.println("WARNING: No benchmark messages for " + mainIDs);
+        }
+
+        List types = parseList(args.length > 0 ? args[0] : null, allTypes);
+        List canvases = parseList(args.length > 1 ? args[1] : null, Arrays.asList(CANVASES));
+        double seconds = (args.length > 2 ? Double.parseDouble(args[2]) : 2.0);
+        BarcodeBenchmark benchmark = new BarcodeBenchmark(
+                Math.round(seconds * 1000), System.out);
+        benchmark.run(types, canvases);
+    }
+
+    private static class Result {
+        private double opsPerSecond;
+        private long bytesPerOp;
+    }
+
+    /** Canvas that discards everything, used to measure the encoding only. */
+    private static class NullCanvasProvider extends AbstractCanvasProvider {
+
+        public NullCanvasProvider() {
+            super(0);
+        }
+
+        public void deviceFillRect(double x, double y, double w, double h) {
+            //nop
+        }
+
+        public void deviceText(String text, double x1, double x2, double y1,
+                String fontName, double fontSize, TextAlignment textAlign) {
+            //nop
+        }
+    }
+
+}
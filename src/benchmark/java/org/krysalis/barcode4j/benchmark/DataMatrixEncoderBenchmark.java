@@ -0,0 +1,160 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.benchmark;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+import org.krysalis.barcode4j.impl.datamatrix.DataMatrixBean;
+import org.krysalis.barcode4j.impl.datamatrix.DataMatrixEncodedSymbol;
+import org.krysalis.barcode4j.impl.datamatrix.DataMatrixLogicImpl;
+import org.krysalis.barcode4j.impl.datamatrix.DataMatrixSymbolInfo;
+
+/**
+ * Compares the two DataMatrix high-level encoders: the look-ahead algorithm from annex P of
+ * ISO/IEC 16022:2000(E) and the minimal encoder. For every message of a corpus of typical
+ * label contents, the chosen symbol, its data capacity and the encoding time of both encoders
+ * are reported.
+ * <p>
+ * Usage: <code>DataMatrixEncoderBenchmark [seconds]</code> where seconds is the measurement
+ * time per message and encoder. The Ant target "benchmark-datamatrix" runs this class.
+ *
+ * @version $Id$
+ */
+public class DataMatrixEncoderBenchmark {
+
+    /** The corpus: name and message */
+    private static final String[][] MESSAGES = new String[][] {
+        {"serial", "SN 4711-0815-2A"},
+        {"gs1-pharma", "010761234567890417260331" + "10ABC123" + "\u001D" + "21XYZ9876543"},
+        {"gs1-logistics", "00006141411234567890" + "02106141410000123" + "37100"
+            + "\u001D" + "4201234"},
+        {"asc-mh10", "[)>\u001E06\u001DP1234567\u001DQ100\u001D1T5551212\u001D"
+            + "12V123456789\u001DK1234\u001E\u0004"},
+        {"ppn", "[)>\u001E06\u001D9N110375286414\u001D1TABC12345\u001DD150117"
+            + "\u001DS12345ABCD\u001E\u0004"},
+        {"address", "Jane Doe\rAcme Corp.\r1234 Main Street\rSpringfield, IL 62704\rUSA"},
+        {"x12", "ISA*00*          *00*          *ZZ*SENDER         *ZZ*RECEIVER       >\r"},
+        {"url", "https://example.com/track?id=1Z999AA10123456784&lang=en"},
+        {"lowercase", "the quick brown fox jumps over the lazy dog 0123456789"},
+        {"digits", "12345678901234567890123456789012345678901234567890"},
+        {"latin-1", "Gr\u00FC\u00DFe aus M\u00FCnchen, Stra\u00DFe 12, 80331 M\u00FCnchen"},
+        {"mixed", "Lot: A1B2C3 Exp: 2026-03-31 Qty: 100 pcs Ref: #47/11"},
+        {"pallet", "[)>\u001E06\u001D" + repeat("P1234567\u001DQ100\u001D1T5551212\u001D", 20)
+            + "12V123456789\u001E\u0004"},
+    };
+
+    private static final DataMatrixBean ANNEX_P = new DataMatrixBean();
+    private static final DataMatrixBean MINIMAL = new DataMatrixBean();
+
+    static {
+        MINIMAL.setMinimalEncoding(true);
+    }
+
+    private long measureMillis;
+    private PrintStream out;
+    private DecimalFormat df;
+
+    /**
+     * Creates a new benchmark.
+     * @param measureMillis the measurement time per message and encoder in milliseconds
+     * @param out the stream to write the results to
+     */
+    public DataMatrixEncoderBenchmark(long measureMillis, PrintStream out) {
+        this.measureMillis = measureMillis;
+        this.out = out;
+        DecimalFormatSymbols dfs = new DecimalFormatSymbols();
+        dfs.setDecimalSeparator('.');
+        this.df = new DecimalFormat("0.0", dfs);
+    }
+
+    private static String repeat(String s, int count) {
+        StringBuffer sb = new StringBuffer(s.length() * count);
+        for (int i = 0; i < count; i++) {
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs the benchmark.
+     */
+    public void run() {
+        out.println("message\tchars\tannex P symbol\tannex P cw\tannex P us/op"
+                + "\tminimal symbol\tminimal cw\tminimal us/op");
+        int totalAnnexP = 0;
+        int totalMinimal = 0;
+        for (int i = 0; i < MESSAGES.length; i++) {
+            String msg = MESSAGES[i][1];
+            out.print(MESSAGES[i][0] + "\t" + msg.length());
+            totalAnnexP += report(msg, false);
+            totalMinimal += report(msg, true);
+            out.println();
+        }
+        out.println("Total symbol capacity (codewords): annex P " + totalAnnexP
+                + ", minimal " + totalMinimal);
+    }
+
+    private int report(String msg, boolean minimal) {
+        DataMatrixEncodedSymbol symbol = encode(msg, minimal);
+        DataMatrixSymbolInfo info = symbol.getSymbolInfo();
+        out.print("\t" + info.getSymbolWidth() + "x" + info.getSymbolHeight());
+        out.print("\t" + info.dataCapacity);
+        out.print("\t" + df.format(measure(msg, minimal)));
+        return info.dataCapacity;
+    }
+
+    private static DataMatrixEncodedSymbol encode(String msg, boolean minimal) {
+        return DataMatrixLogicImpl.encodeMessage(msg, minimal ? MINIMAL : ANNEX_P);
+    }
+
+    private double measure(String msg, boolean minimal) {
+        //Warm-up
+        long end = System.currentTimeMillis() + Math.max(measureMillis / 2, 100);
+        while (System.currentTimeMillis() < end) {
+            encode(msg, minimal);
+        }
+
+        //Measurement
+        long ops = 0;
+        long start = System.currentTimeMillis();
+        end = start + measureMillis;
+        long now;
+        do {
+            encode(msg, minimal);
+            ops++;
+            now = System.currentTimeMillis();
+        } while (now < end);
+        return (now - start) * 1000.0 / ops;
+    }
+
+    /**
+     * Command-line entry point.
+     * @param args the arguments
+     * @throws Exception if an error occurs
+     */
+    public static void main(String[] args) throws Exception {
+        double seconds = (args.length > 0 ? Double.parseDouble(args[0]) : 1.0);
+        DataMatrixEncoderBenchmark benchmark = new DataMatrixEncoderBenchmark(
+                Math.round(seconds * 1000), System.out);
+        benchmark.run();
+    }
+
+}
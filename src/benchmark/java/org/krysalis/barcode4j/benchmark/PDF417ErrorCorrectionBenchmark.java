@@ -0,0 +1,157 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.benchmark;
+
+import java.io.PrintStream;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+import org.krysalis.barcode4j.impl.pdf417.PDF417Constants;
+import org.krysalis.barcode4j.impl.pdf417.PDF417ErrorCorrection;
+
+/**
+ * Compares the PDF417 error correction of {@link PDF417ErrorCorrection} (logarithm tables,
+ * no allocation) with the former implementation doing two modulo operations per coefficient
+ * and data codeword. For every error correction level, the largest symbol (928 codewords) is
+ * filled with random data codewords, and the output of the two is checked to be identical
+ * before measuring.
+ * <p>
+ * Usage: <code>PDF417ErrorCorrectionBenchmark [seconds]</code> where seconds is the
+ * measurement time per level and implementation. The Ant target "benchmark-pdf417-ec" runs
+ * this class.
+ *
+ * @version $Id$
+ */
+public class PDF417ErrorCorrectionBenchmark {
+
+    /** The maximum number of codewords in a symbol (data and error correction) */
+    private static final int MAX_CODEWORDS = 928;
+
+    private long measureMillis;
+    private PrintStream out;
+    private DecimalFormat df;
+
+    /**
+     * Creates a new benchmark.
+     * @param measureMillis the measurement time per level and implementation in milliseconds
+     * @param out the stream to write the results to
+     */
+    public PDF417ErrorCorrectionBenchmark(long measureMillis, PrintStream out) {
+        this.measureMillis = measureMillis;
+        this.out = out;
+        DecimalFormatSymbols dfs = new DecimalFormatSymbols();
+        dfs.setDecimalSeparator('.');
+        this.df = new DecimalFormat("0.0", dfs);
+    }
+
+    /**
+     * Runs the benchmark.
+     */
+    public void run() {
+        out.println("ec-level\tdata cw\tec cw\tmodulo us/op\tlog tables us/op\tspeed-up");
+        java.util.Random rnd = new java.util.Random(929);
+        for (int level = 0; level <= 8; level++) {
+            int k = PDF417ErrorCorrection.getErrorCorrectionCodewordCount(level);
+            int n = MAX_CODEWORDS - k;
+            int[] codewords = new int[n + k];
+            for (int i = 0; i < n; i++) {
+                codewords[i] = rnd.nextInt(929);
+            }
+            int[] expected = generateModulo(codewords, n, level);
+            PDF417ErrorCorrection.generateErrorCorrection(codewords, n, level);
+            for (int j = 0; j < k; j++) {
+                if (expected[j] != codewords[n + j]) {
+                    throw new IllegalStateException("Different codewords for level " + level);
+                }
+            }
+            double reference = measure(codewords, n, level, true);
+            double current = measure(codewords, n, level, false);
+            out.println(level + "\t" + n + "\t" + k
+                    + "\t" + df.format(reference) + "\t" + df.format(current)
+                    + "\t" + df.format(reference / current));
+        }
+    }
+
+    private double measure(int[] codewords, int n, int level, boolean reference) {
+        //Warm-up
+        long end = System.currentTimeMillis() + Math.max(measureMillis / 2, 100);
+        while (System.currentTimeMillis() < end) {
+            generate(codewords, n, level, reference);
+        }
+
+        //Measurement
+        long ops = 0;
+        long start = System.currentTimeMillis();
+        end = start + measureMillis;
+        long now;
+        do {
+            generate(codewords, n, level, reference);
+            ops++;
+            now = System.currentTimeMillis();
+        } while (now < end);
+        return (now - start) * 1000.0 / ops;
+    }
+
+    private static void generate(int[] codewords, int n, int level, boolean reference) {
+        if (reference) {
+            generateModulo(codewords, n, level);
+        } else {
+            PDF417ErrorCorrection.generateErrorCorrection(codewords, n, level);
+        }
+    }
+
+    /**
+     * The former implementation of the error correction, kept as the reference.
+     */
+    private static int[] generateModulo(int[] codewords, int dataCount, int level) {
+        int[] coefficients = PDF417Constants.EC_COEFFICIENTS[level];
+        int k = coefficients.length;
+        int[] e = new int[k];
+        int t1, t2, t3;
+        for (int i = 0; i < dataCount; i++) {
+            t1 = (codewords[i] + e[k - 1]) % 929;
+            for (int j = k - 1; j >= 1; j--) {
+                t2 = (t1 * coefficients[j]) % 929;
+                t3 = 929 - t2;
+                e[j] = (e[j - 1] + t3) % 929;
+            }
+            t2 = (t1 * coefficients[0]) % 929;
+            t3 = 929 - t2;
+            e[0] = t3 % 929;
+        }
+        int[] result = new int[k];
+        for (int j = k - 1; j >= 0; j--) {
+            result[k - 1 - j] = (e[j] != 0 ? 929 - e[j] : 0);
+        }
+        return result;
+    }
+
+    /**
+     * Command-line entry point.
+     * @param args the arguments
+     * @throws Exception if an error occurs
+     */
+    public static void main(String[] args) throws Exception {
+        double seconds = (args.length > 0 ? Double.parseDouble(args[0]) : 1.0);
+        PDF417ErrorCorrectionBenchmark benchmark = new PDF417ErrorCorrectionBenchmark(
+                Math.round(seconds * 1000), System.out);
+        benchmark.run();
+    }
+
+}
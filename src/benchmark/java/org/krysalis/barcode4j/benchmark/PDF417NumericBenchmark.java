@@ -0,0 +1,163 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.benchmark;
+
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+import org.krysalis.barcode4j.impl.pdf417.PDF417HighLevelEncoder;
+
+/**
+ * Compares the PDF417 Numeric Compaction of {@link PDF417HighLevelEncoder} (base 900
+ * conversion over <code>long</code> limbs) with the former implementation based on
+ * {@link BigInteger}. Both are run on digit strings of typical lengths, and the output of
+ * the two is checked to be identical before measuring.
+ * <p>
+ * Usage: <code>PDF417NumericBenchmark [seconds]</code> where seconds is the measurement
+ * time per length and implementation. The Ant target "benchmark-pdf417-numeric" runs this
+ * class.
+ *
+ * @version $Id$
+ */
+public class PDF417NumericBenchmark {
+
+    /** The lengths of the digit strings (13 is the minimum for Numeric Compaction) */
+    private static final int[] LENGTHS = new int[] {13, 20, 44, 100, 500, 2000};
+
+    private long measureMillis;
+    private PrintStream out;
+    private DecimalFormat df;
+
+    /**
+     * Creates a new benchmark.
+     * @param measureMillis the measurement time per length and implementation in milliseconds
+     * @param out the stream to write the results to
+     */
+    public PDF417NumericBenchmark(long measureMillis, PrintStream out) {
+        this.measureMillis = measureMillis;
+        this.out = out;
+        DecimalFormatSymbols dfs = new DecimalFormatSymbols();
+        dfs.setDecimalSeparator('.');
+        this.df = new DecimalFormat("0.000", dfs);
+    }
+
+    private static String createDigits(int count) {
+        java.util.Random rnd = new java.util.Random(count);
+        StringBuffer sb = new StringBuffer(count);
+        for (int i = 0; i < count; i++) {
+            sb.append((char)('0' + rnd.nextInt(10)));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Runs the benchmark.
+     */
+    public void run() {
+        out.println("digits\tcodewords\tBigInteger us/op\tlong limbs us/op\tspeed-up");
+        for (int i = 0; i < LENGTHS.length; i++) {
+            String msg = createDigits(LENGTHS[i]);
+            StringBuffer expected = new StringBuffer();
+            encodeBigInteger(msg, 0, msg.length(), expected);
+            StringBuffer actual = new StringBuffer();
+            PDF417HighLevelEncoder.encodeNumeric(msg, 0, msg.length(), actual);
+            if (!expected.toString().equals(actual.toString())) {
+                throw new IllegalStateException("Different codewords for " + msg);
+            }
+            double reference = measure(msg, true);
+            double current = measure(msg, false);
+            out.println(msg.length() + "\t" + actual.length()
+                    + "\t" + df.format(reference) + "\t" + df.format(current)
+                    + "\t" + df.format(reference / current));
+        }
+    }
+
+    private double measure(String msg, boolean reference) {
+        StringBuffer sb = new StringBuffer(msg.length());
+        //Warm-up
+        long end = System.currentTimeMillis() + Math.max(measureMillis / 2, 100);
+        while (System.currentTimeMillis() < end) {
+            encode(msg, reference, sb);
+        }
+
+        //Measurement
+        long ops = 0;
+        long start = System.currentTimeMillis();
+        end = start + measureMillis;
+        long now;
+        do {
+            encode(msg, reference, sb);
+            ops++;
+            now = System.currentTimeMillis();
+        } while (now < end);
+        return (now - start) * 1000.0 / ops;
+    }
+
+    private static void encode(String msg, boolean reference, StringBuffer sb) {
+        sb.setLength(0);
+        if (reference) {
+            encodeBigInteger(msg, 0, msg.length(), sb);
+        } else {
+            PDF417HighLevelEncoder.encodeNumeric(msg, 0, msg.length(), sb);
+        }
+    }
+
+    /**
+     * The former implementation of the Numeric Compaction, kept as the reference.
+     */
+    private static void encodeBigInteger(String msg, int startpos, int count,
+            StringBuffer sb) {
+        int idx = 0;
+        StringBuffer tmp = new StringBuffer(count / 3 + 1);
+        final BigInteger num900 = BigInteger.valueOf(900);
+        final BigInteger num0 = BigInteger.valueOf(0);
+        while (idx < count) {
+            tmp.setLength(0);
+            int len = Math.min(44, count - idx);
+            String part = "1" + msg.substring(startpos + idx, startpos + idx + len);
+            BigInteger bigint = new BigInteger(part);
+            do {
+                BigInteger c = bigint.mod(num900);
+                tmp.append((char)(c.intValue()));
+                bigint = bigint.divide(num900);
+            } while (!bigint.equals(num0));
+
+            //Reverse temporary string
+            for (int i = tmp.length() - 1; i >= 0; i--) {
+                sb.append(tmp.charAt(i));
+            }
+            idx += len;
+        }
+    }
+
+    /**
+     * Command-line entry point.
+     * @param args the arguments
+     * @throws Exception if an error occurs
+     */
+    public static void main(String[] args) throws Exception {
+        double seconds = (args.length > 0 ? Double.parseDouble(args[0]) : 1.0);
+        PDF417NumericBenchmark benchmark = new PDF417NumericBenchmark(
+                Math.round(seconds * 1000), System.out);
+        benchmark.run();
+    }
+
+}
@@ -79,7 +79,7 @@ public class BarcodeXMLHandler implements XMLHandler, RendererContextConstants {
         PageViewport page = (PageViewport)context.getProperty(PAGE_VIEWPORT);
 
         BarcodeGenerator bargen = BarcodeUtil.getInstance().
-                createBarcodeGenerator(cfg);
+                getCachedBarcodeGenerator(cfg);
         String expandedMsg = VariableUtil.getExpandedMessage(
                 page, msg);
 
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.avalon.framework.configuration.Configuration;
+import org.apache.avalon.framework.configuration.ConfigurationException;
+import org.krysalis.barcode4j.impl.AbstractBarcodeBean;
+import org.krysalis.barcode4j.impl.ConfigurableBarcodeGenerator;
+import org.krysalis.barcode4j.output.CanvasProvider;
+
+/**
+ * Cache for configured BarcodeGenerator instances. Setting up a barcode generator from an
+ * Avalon Configuration involves class lookup, instantiation and configuration which is
+ * wasteful if the same barcode configuration is used over and over again (for example, in
+ * a servlet or in an XSL-FO document with many barcodes). This class keeps the most recently
+ * used generators, keyed by a canonical form of the barcode configuration element.
+ * <p>
+ * The generators returned by this class cannot be reconfigured and can safely be used by
+ * multiple threads at the same time. For the barcode implementations based on
+ * {@link ConfigurableBarcodeGenerator}, an immutable copy of the configured barcode bean is
+ * returned. Other generators are wrapped so that calls to them are serialized.
+ * This class itself is thread-safe, too.
+ *
+ * @version $Id$
+ */
+public class BarcodeGeneratorCache {
+
+    /** The default maximum number of cached generators. */
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    private BarcodeClassResolver classResolver;
+    private int maxEntries;
+    private Map generators;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Creates a new cache with the default maximum number of entries.
+     * @param classResolver the BarcodeClassResolver to use for lookup of barcode implementations
+     */
+    public BarcodeGeneratorCache(BarcodeClassResolver classResolver) {
+        this(classResolver, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * Creates a new cache.
+     * @param classResolver the BarcodeClassResolver to use for lookup of barcode implementations
+     * @param maxEntries the maximum number of generators to keep, the least recently used
+     *          generator is discarded if the limit is exceeded
+     */
+    public BarcodeGeneratorCache(BarcodeClassResolver classResolver, int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1");
+        }
+        this.classResolver = classResolver;
+        this.maxEntries = maxEntries;
+        this.generators = new LinkedHashMap(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry eldest) {
+                return size() > BarcodeGeneratorCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns a BarcodeGenerator for the given configuration. If a generator for an equivalent
+     * configuration has already been set up, it is reused. Otherwise, a new generator is
+     * created and added to the cache.
+     * @param cfg Configuration object that specifies the barcode to produce.
+     * @return a thread-safe BarcodeGenerator
+     * @throws BarcodeException if setting up a BarcodeGenerator fails
+     * @throws ConfigurationException if something's wrong wth the configuration
+     */
+    public BarcodeGenerator getBarcodeGenerator(Configuration cfg)
+                throws ConfigurationException, BarcodeException {
+        Configuration barcodeCfg = BarcodeUtil.findBarcodeConfiguration(cfg, this.classResolver);
+        String key;
+        try {
+            key = getCacheKey(barcodeCfg);
+        } catch (UnsupportedOperationException uoe) {
+            //Some Configuration implementations cannot enumerate their attributes
+            synchronized (this) {
+                this.missCount++;
+            }
+            return makeShareable(
+                    BarcodeUtil.createBarcodeGenerator(barcodeCfg, this.classResolver));
+        }
+        BarcodeGenerator gen;
+        synchronized (this) {
+            gen = (BarcodeGenerator)this.generators.get(key);
+            if (gen != null) {
+                this.hitCount++;
+                return gen;
+            }
+            this.missCount++;
+        }
+
+        //Set up the generator outside the lock
+        gen = makeShareable(
+                BarcodeUtil.createBarcodeGenerator(barcodeCfg, this.classResolver));
+
+        synchronized (this) {
+            BarcodeGenerator other = (BarcodeGenerator)this.generators.get(key);
+            if (other != null) {
+                //Another thread was faster
+                return other;
+            }
+            this.generators.put(key, gen);
+        }
+        return gen;
+    }
+
+    /**
+     * Returns a BarcodeGenerator which produces the same output as the given one but can
+     * safely be used by multiple threads at the same time. For barcode implementations
+     * based on {@link ConfigurableBarcodeGenerator} and for barcode beans, this is an
+     * immutable copy of the barcode bean. Other generators are wrapped so calls to them are serialized.
+     * @param gen the barcode generator
+     * @return the thread-safe barcode generator
+     */
+    public static BarcodeGenerator makeShareable(BarcodeGenerator gen) {
+        if (gen instanceof ConfigurableBarcodeGenerator) {
+            //Immutable beans can be used by multiple threads without locking
+            return ((ConfigurableBarcodeGenerator)gen).getBean().createImmutableCopy();
+        } else if (gen instanceof AbstractBarcodeBean) {
+            return ((AbstractBarcodeBean)gen).createImmutableCopy();
+        } else {
+            return new SynchronizedBarcodeGenerator(gen);
+        }
+    }
+
+    /** @return the maximum number of generators kept in this cache */
+    public int getMaxEntries() {
+        return this.maxEntries;
+    }
+
+    /** @return the number of generators currently held in this cache */
+    public synchronized int getSize() {
+        return this.generators.size();
+    }
+
+    /** @return the number of requests that could be served from the cache */
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    /** @return the number of requests that required a new generator to be set up */
+    public synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    /** Removes all generators from the cache and resets the hit and miss counters. */
+    public synchronized void clear() {
+        this.generators.clear();
+        this.hitCount = 0;
+        this.missCount = 0;
+    }
+
+    /**
+     * Builds a canonical string representation of a configuration tree. Two configuration
+     * trees which only differ in the order of their attributes produce the same key.
+     * @param cfg the configuration
+     * @return the cache key
+     */
+    static String getCacheKey(Configuration cfg) {
+        StringBuffer sb = new StringBuffer(128);
+        appendCanonical(sb, cfg);
+        return sb.toString();
+    }
+
+    private static void appendCanonical(StringBuffer sb, Configuration cfg) {
+        appendString(sb, cfg.getName());
+        String[] names = cfg.getAttributeNames();
+        Arrays.sort(names);
+        sb.append('[');
+        for (int i = 0; i < names.length; i++) {
+            appendString(sb, names[i]);
+            appendString(sb, cfg.getAttribute(names[i], null));
+        }
+        sb.append(']');
+        appendString(sb, cfg.getValue(null));
+        Configuration[] children = cfg.getChildren();
+        sb.append('{');
+        for (int i = 0; i < children.length; i++) {
+            appendCanonical(sb, children[i]);
+        }
+        sb.append('}');
+    }
+
+    private static void appendString(StringBuffer sb, String s) {
+        //Length prefix makes the representation unambiguous without escaping
+        if (s == null) {
+            sb.append('-');
+        } else {
+            sb.append(s.length()).append(':').append(s);
+        }
+    }
+
+    /**
+     * Wraps a BarcodeGenerator so only the BarcodeGenerator interface is visible and all
+     * calls are serialized.
+     */
+    private static class SynchronizedBarcodeGenerator implements BarcodeGenerator {
+
+        private BarcodeGenerator delegate;
+
+        public SynchronizedBarcodeGenerator(BarcodeGenerator delegate) {
+            this.delegate = delegate;
+        }
+
+        /** {@inheritDoc} */
+        public void generateBarcode(CanvasProvider canvas, String msg) {
+            synchronized (this.delegate) {
+                this.delegate.generateBarcode(canvas, msg);
+            }
+        }
+
+        /** {@inheritDoc} */
+        public BarcodeDimension calcDimensions(String msg) {
+            synchronized (this.delegate) {
+                return this.delegate.calcDimensions(msg);
+            }
+        }
+
+    }
+
+}
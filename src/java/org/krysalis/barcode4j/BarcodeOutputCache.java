@@ -0,0 +1,232 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.avalon.framework.configuration.Configuration;
+
+/**
+ * Cache for the final output (PNG, SVG, EPS etc.) of barcodes. Applications that produce the
+ * same barcodes over and over again (like a servlet serving product codes) can use this class
+ * to avoid encoding, painting and image compression for repeated requests.
+ * <p>
+ * The entries are keyed by the barcode configuration, the message, the output format,
+ * the resolution and the orientation. The total size of the cached output is limited. If the
+ * limit is exceeded, the least recently used entries are discarded. An entry that is larger
+ * than the whole cache is not stored at all.
+ * <p>
+ * This class is thread-safe. The byte arrays passed in and handed out are shared and must
+ * not be modified by the caller.
+ *
+ * @version $Id$
+ */
+public class BarcodeOutputCache implements BarcodeOutputCacheMBean {
+
+    /** The default maximum size of the cache (4 MB). */
+    public static final long DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+    /** Approximate memory overhead per entry (key, map entry), in bytes */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private long maxSize;
+    private long size;
+    private LinkedHashMap entries = new LinkedHashMap(64, 0.75f, true);
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Creates a new cache with the default maximum size.
+     */
+    public BarcodeOutputCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a new cache.
+     * @param maxSize the maximum total size of the cached output in bytes
+     */
+    public BarcodeOutputCache(long maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Builds a key for a barcode configuration which can be passed to the other methods
+     * of this class. Two configurations with the same content result in equal keys.
+     * @param cfg the barcode configuration
+     * @return the configuration key
+     */
+    public static String getConfigurationKey(Configuration cfg) {
+        return BarcodeGeneratorCache.getCacheKey(cfg);
+    }
+
+    /**
+     * Returns the cached output for a barcode.
+     * @param cfgKey the configuration key (see {@link #getConfigurationKey(Configuration)})
+     * @param msg the message
+     * @param format the output format (usually a MIME type, may carry additional variant
+     *          information)
+     * @param resolution the resolution (in dpi, 0 for resolution-independent formats)
+     * @param orientation the barcode orientation (0, 90, 180, 270)
+     * @return the cached output or null if there's no entry for the barcode
+     */
+    public synchronized byte[] get(String cfgKey, String msg, String format,
+                int resolution, int orientation) {
+        byte[] data = (byte[])entries.get(
+                new Key(cfgKey, msg, format, resolution, orientation));
+        if (data != null) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return data;
+    }
+
+    /**
+     * Adds the output for a barcode to the cache.
+     * @param cfgKey the configuration key (see {@link #getConfigurationKey(Configuration)})
+     * @param msg the message
+     * @param format the output format (usually a MIME type, may carry additional variant
+     *          information)
+     * @param resolution the resolution (in dpi, 0 for resolution-independent formats)
+     * @param orientation the barcode orientation (0, 90, 180, 270)
+     * @param data the output
+     */
+    public synchronized void put(String cfgKey, String msg, String format,
+                int resolution, int orientation, byte[] data) {
+        Key key = new Key(cfgKey, msg, format, resolution, orientation);
+        byte[] old = (byte[])entries.remove(key);
+        if (old != null) {
+            size -= getWeight(key, old);
+        }
+        long weight = getWeight(key, data);
+        if (weight > maxSize) {
+            return;
+        }
+        entries.put(key, data);
+        size += weight;
+        Iterator iter = entries.entrySet().iterator();
+        while (size > maxSize && iter.hasNext()) {
+            Map.Entry entry = (Map.Entry)iter.next();
+            size -= getWeight((Key)entry.getKey(), (byte[])entry.getValue());
+            iter.remove();
+        }
+    }
+
+    private static long getWeight(Key key, byte[] data) {
+        return data.length + key.getWeight() + ENTRY_OVERHEAD;
+    }
+
+    /** {@inheritDoc} */
+    public long getMaxSize() {
+        return this.maxSize;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getSize() {
+        return this.size;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized int getEntryCount() {
+        return this.entries.size();
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    /** {@inheritDoc} */
+    public synchronized double getHitRatio() {
+        long total = this.hitCount + this.missCount;
+        return (total > 0 ? (double)this.hitCount / total : 0.0);
+    }
+
+    /** {@inheritDoc} */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.size = 0;
+        this.hitCount = 0;
+        this.missCount = 0;
+    }
+
+    /** Key for the cache entries. */
+    private static class Key {
+
+        private String cfgKey;
+        private String msg;
+        private String format;
+        private int resolution;
+        private int orientation;
+        private int hash;
+
+        public Key(String cfgKey, String msg, String format, int resolution, int orientation) {
+            if (cfgKey == null || msg == null || format == null) {
+                throw new NullPointerException("cfgKey, msg and format must not be null");
+            }
+            this.cfgKey = cfgKey;
+            this.msg = msg;
+            this.format = format;
+            this.resolution = resolution;
+            this.orientation = BarcodeDimension.normalizeOrientation(orientation);
+            int h = cfgKey.hashCode();
+            h = 31 * h + msg.hashCode();
+            h = 31 * h + format.hashCode();
+            h = 31 * h + resolution;
+            h = 31 * h + this.orientation;
+            this.hash = h;
+        }
+
+        public int getWeight() {
+            return 2 * (cfgKey.length() + msg.length() + format.length());
+        }
+
+        public int hashCode() {
+            return this.hash;
+        }
+
+        public boolean equals(Object obj) {
+            if (obj == this) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)obj;
+            return this.hash == other.hash
+                && this.resolution == other.resolution
+                && this.orientation == other.orientation
+                && this.msg.equals(other.msg)
+                && this.format.equals(other.format)
+                && this.cfgKey.equals(other.cfgKey);
+        }
+    }
+
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j;
+
+/**
+ * Management interface of {@link BarcodeOutputCache}. It follows the naming conventions of
+ * a JMX standard MBean, so a cache instance can be registered with an MBean server
+ * by the application without Barcode4J depending on JMX.
+ *
+ * @version $Id$
+ */
+public interface BarcodeOutputCacheMBean {
+
+    /** @return the maximum total size of the cached output in bytes */
+    long getMaxSize();
+
+    /** @return the current total size of the cached output in bytes */
+    long getSize();
+
+    /** @return the number of cached entries */
+    int getEntryCount();
+
+    /** @return the number of requests that could be served from the cache */
+    long getHitCount();
+
+    /** @return the number of requests that could not be served from the cache */
+    long getMissCount();
+
+    /** @return the ratio of hits to all requests (0.0 to 1.0) */
+    double getHitRatio();
+
+    /** Removes all entries from the cache and resets the hit and miss counters. */
+    void clear();
+
+}
@@ -23,18 +23,19 @@ import org.w3c.dom.DocumentFragment;
 
 /**
  * This is a convenience class to generate barcodes. It is implemented as
- * Singleton to cache the BarcodeClassResolver. However, the class also
- * contains a set of static methods which you can use of you manage your own
- * BarcodeClassResolver.
+ * Singleton to cache the BarcodeClassResolver and the configured barcode generators.
+ * However, the class also contains a set of static methods which you can use of you
+ * manage your own BarcodeClassResolver.
  * 
  * @author Jeremias Maerki
  * @version $Id: BarcodeUtil.java,v 1.5 2007/02/14 10:19:07 jmaerki Exp $
  */
 public class BarcodeUtil {
     
-    private static BarcodeUtil instance = null;
+    private static final BarcodeUtil INSTANCE = new BarcodeUtil();
     
     private BarcodeClassResolver classResolver = new DefaultBarcodeClassResolver();
+    private BarcodeGeneratorCache generatorCache = new BarcodeGeneratorCache(classResolver);
     
     
     /**
@@ -50,10 +51,7 @@ public class BarcodeUtil {
      * @return the singleton
      */
     public static BarcodeUtil getInstance() {
-        if (instance == null) {
-            instance = new BarcodeUtil();
-        }
-        return instance;
+        return INSTANCE;
     }
     
     /**
@@ -64,6 +62,58 @@ public class BarcodeUtil {
         return this.classResolver;
     }
     
+    /**
+     * Returns the cache for configured barcode generators used by
+     * {@link #getCachedBarcodeGenerator(Configuration)}.
+     * @return the BarcodeGeneratorCache instance
+     */
+    public BarcodeGeneratorCache getBarcodeGeneratorCache() {
+        return this.generatorCache;
+    }
+    
+    /**
+     * Locates the configuration element which specifies the barcode implementation. This is
+     * either the given Configuration object itself or the first of its children with a name
+     * that the class resolver can resolve.
+     * @param cfg Configuration object that specifies the barcode to produce.
+     * @param classResolver The BarcodeClassResolver to use for lookup of
+     * barcode implementations.
+     * @return the barcode configuration element
+     * @throws BarcodeException if no barcode configuration element can be found
+     */
+    static Configuration findBarcodeConfiguration(Configuration cfg,
+                                    BarcodeClassResolver classResolver)
+            throws BarcodeException {
+        //First, check Configuration directly
+        if (canResolve(cfg.getName(), classResolver)) {
+            return cfg;
+        }
+
+        //Second, check children
+        Configuration[] children = cfg.getChildren();
+        if (children.length == 0) {
+            throw new BarcodeException("Barcode configuration element expected");
+        }
+
+        //Find barcode config element
+        for (int i = 0; i < children.length; i++) {
+            if (canResolve(children[i].getName(), classResolver)) {
+                return children[i];
+            }
+        }
+        throw new BarcodeException(
+            "No barcode configuration element not found");
+    }
+
+    private static boolean canResolve(String type, BarcodeClassResolver classResolver) {
+        try {
+            classResolver.resolve(type);
+            return true;
+        } catch (ClassNotFoundException cnfe) {
+            return false;
+        }
+    }
+    
     /**
      * Creates a BarcoderGenerator.
      * @param cfg Configuration object that specifies the barcode to produce.
@@ -76,37 +126,12 @@ public class BarcodeUtil {
     public static BarcodeGenerator createBarcodeGenerator(Configuration cfg, 
                                     BarcodeClassResolver classResolver) 
             throws BarcodeException, ConfigurationException {
+        Configuration barcodeCfg = findBarcodeConfiguration(cfg, classResolver);
         Class cl = null;
         try {
-            //First, check Configuration directly
-            String type = cfg.getName();
             try {
-                cl = classResolver.resolve(type);
+                cl = classResolver.resolve(barcodeCfg.getName());
             } catch (ClassNotFoundException cnfe) {
-                cl = null;
-            }
-            Configuration child = null;
-            if (cl == null) {
-                //Second, check children
-                Configuration[] children = cfg.getChildren();
-                if (children.length == 0) {
-                    throw new BarcodeException("Barcode configuration element expected");
-                }
-
-                //Find barcode config element            
-                for (int i = 0; i < children.length; i++) {
-                    child = children[i];
-                    type = child.getName();
-                    try {
-                        cl = classResolver.resolve(type);
-                        break;
-                    } catch (ClassNotFoundException cnfe) {
-                        cl = null;
-                    }
-                }
-            }
-
-            if (cl == null) {
                 throw new BarcodeException(
                     "No barcode configuration element not found");
             }
@@ -114,7 +139,7 @@ public class BarcodeUtil {
             //Instantiate the BarcodeGenerator            
             BarcodeGenerator gen = (BarcodeGenerator)cl.newInstance();
             try {
-                ContainerUtil.configure(gen, (child != null ? child : cfg));
+                ContainerUtil.configure(gen, barcodeCfg);
             } catch (IllegalArgumentException iae) {
                 throw new ConfigurationException("Cannot configure barcode generator", iae);
             }
@@ -146,6 +171,21 @@ public class BarcodeUtil {
         return createBarcodeGenerator(cfg, this.classResolver);
     }
     
+    /**
+     * Returns a BarcoderGenerator from the generator cache. Generators are shared between
+     * all callers using an equivalent barcode configuration, so the returned instance is
+     * thread-safe and cannot be reconfigured.
+     * @param cfg Configuration object that specifies the barcode to produce.
+     * @return the (possibly shared) BarcodeGenerator
+     * @throws BarcodeException if setting up a BarcodeGenerator fails
+     * @throws ConfigurationException if something's wrong wth the configuration
+     * @see BarcodeGeneratorCache
+     */
+    public BarcodeGenerator getCachedBarcodeGenerator(Configuration cfg) 
+            throws ConfigurationException, BarcodeException {
+        return this.generatorCache.getBarcodeGenerator(cfg);
+    }
+    
     /**
      * Convenience method to create an SVG barocde as a DOM fragment.
      * @param cfg Configuration object that specifies the barcode to produce.
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j;
+
+/**
+ * A two-dimensional matrix of black and white modules as produced by matrix symbologies
+ * like DataMatrix. The modules are packed into <code>long</code> values, 64 per value, and
+ * every row starts with a new value.
+ *
+ * @version $Id$
+ */
+public class BitMatrix {
+
+    private int width;
+    private int height;
+    private int rowSize;
+    private long[] bits;
+
+    /**
+     * Creates a new matrix with all modules set to white.
+     * @param width the number of modules per row
+     * @param height the number of rows
+     */
+    public BitMatrix(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Width and height must be at least 1");
+        }
+        this.width = width;
+        this.height = height;
+        this.rowSize = (width + 63) >>> 6;
+        this.bits = new long[rowSize * height];
+    }
+
+    /** @return the number of modules per row */
+    public int getWidth() {
+        return this.width;
+    }
+
+    /** @return the number of rows */
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Returns the color of a module.
+     * @param x the column
+     * @param y the row
+     * @return true if the module is black
+     */
+    public boolean get(int x, int y) {
+        return (bits[y * rowSize + (x >>> 6)] & (1L << (x & 63))) != 0;
+    }
+
+    /**
+     * Sets the color of a module.
+     * @param x the column
+     * @param y the row
+     * @param black true if the module is black
+     */
+    public void set(int x, int y, boolean black) {
+        int index = y * rowSize + (x >>> 6);
+        if (black) {
+            bits[index] |= 1L << (x & 63);
+        } else {
+            bits[index] &= ~(1L << (x & 63));
+        }
+    }
+
+    /**
+     * Returns the number of consecutive modules in a row that have the same color as the
+     * module at the given position (including that module). Whole 64-module blocks of the
+     * same color are skipped at once.
+     * @param x the column to start at
+     * @param y the row
+     * @return the length of the run (at least 1)
+     */
+    public int getRunLength(int x, int y) {
+        boolean black = get(x, y);
+        int offset = y * rowSize;
+        int pos = x;
+        while (pos < width) {
+            long word = bits[offset + (pos >>> 6)];
+            if (!black) {
+                word = ~word;
+            }
+            int shift = pos & 63;
+            word >>>= shift;
+            int available = 64 - shift;
+            if (word == (-1L >>> shift)) {
+                pos += available;
+            } else {
+                while ((word & 1) != 0) {
+                    word >>>= 1;
+                    pos++;
+                }
+                break;
+            }
+        }
+        return Math.min(pos, width) - x;
+    }
+
+    /** {@inheritDoc} */
+    public String toString() {
+        StringBuffer sb = new StringBuffer((width + 1) * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                sb.append(get(x, y) ? '1' : '0');
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+}
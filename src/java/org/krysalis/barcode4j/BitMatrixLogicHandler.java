@@ -0,0 +1,38 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j;
+
+/**
+ * Extension of the 2D logic handler for handlers that can consume a complete module matrix
+ * at once. Matrix symbologies like DataMatrix pass the whole symbol to
+ * {@link #addBitMatrix(BitMatrix)} instead of generating startRow/addBar/endRow events when
+ * they are given a handler implementing this interface.
+ *
+ * @version $Id$
+ */
+public interface BitMatrixLogicHandler extends TwoDimBarcodeLogicHandler {
+
+    /**
+     * Adds the complete module matrix of the symbol. This is called between
+     * startBarcode() and endBarcode() in place of the row events.
+     * @param matrix the module matrix (one bit per module, set bits are black)
+     */
+    void addBitMatrix(BitMatrix matrix);
+
+}
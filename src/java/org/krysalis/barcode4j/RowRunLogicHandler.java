@@ -0,0 +1,41 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j;
+
+/**
+ * Extension of the 2D logic handler for handlers that can consume a complete row of bars
+ * at once. Stacked symbologies like PDF417 pass each row as a list of run widths to
+ * {@link #addRowRuns(int[], int)} instead of generating startRow/addBar/endRow events when
+ * they are given a handler implementing this interface.
+ *
+ * @version $Id$
+ */
+public interface RowRunLogicHandler extends TwoDimBarcodeLogicHandler {
+
+    /**
+     * Adds a complete row of the symbol. This is called between startBarcode() and
+     * endBarcode() in place of the startRow(), addBar() and endRow() events of the row. No
+     * bar groups are signalled for the row.
+     * @param runs the widths (in modules) of the bars and spaces, alternating and starting
+     *          with a bar. The array may be reused by the caller after this method returns.
+     * @param count the number of runs in the row
+     */
+    void addRowRuns(int[] runs, int count);
+
+}
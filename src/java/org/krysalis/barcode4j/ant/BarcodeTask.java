@@ -20,18 +20,12 @@ import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
 
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-
 import org.krysalis.barcode4j.BarcodeException;
 import org.krysalis.barcode4j.BarcodeGenerator;
 import org.krysalis.barcode4j.BarcodeUtil;
 import org.krysalis.barcode4j.output.bitmap.BitmapCanvasProvider;
 import org.krysalis.barcode4j.output.eps.EPSCanvasProvider;
-import org.krysalis.barcode4j.output.svg.SVGCanvasProvider;
+import org.krysalis.barcode4j.output.svg.SVGStreamCanvasProvider;
 import org.krysalis.barcode4j.tools.MimeTypes;
 
 import org.apache.avalon.framework.configuration.Configuration;
@@ -97,20 +91,10 @@ public class BarcodeTask extends Task {
             BarcodeGenerator gen = util.createBarcodeGenerator(getConfiguration());
 
             if (MimeTypes.MIME_SVG.equals(format)) {
-                // Create Barcode and render it to SVG
-                SVGCanvasProvider svg = new SVGCanvasProvider(false, orientation);
+                // Create Barcode and stream it as SVG
+                SVGStreamCanvasProvider svg = new SVGStreamCanvasProvider(out, orientation);
                 gen.generateBarcode(svg, message);
-
-                // Serialize SVG barcode
-                try {
-                    TransformerFactory factory = TransformerFactory.newInstance();
-                    Transformer trans = factory.newTransformer();
-                    Source src = new javax.xml.transform.dom.DOMSource(svg.getDOMFragment());
-                    Result res = new javax.xml.transform.stream.StreamResult(out);
-                    trans.transform(src, res);
-                } catch (TransformerException te) {
-                    throw new BuildException("XML/XSLT library error", te);
-                }
+                svg.finish();
             } else if (MimeTypes.MIME_EPS.equals(format)) {
                 EPSCanvasProvider eps = new EPSCanvasProvider(out, orientation);
                 gen.generateBarcode(eps, message);
@@ -0,0 +1,440 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.batch;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.krysalis.barcode4j.BarcodeGenerator;
+import org.krysalis.barcode4j.BarcodeGeneratorCache;
+import org.krysalis.barcode4j.output.bitmap.BitmapCanvasProvider;
+import org.krysalis.barcode4j.output.bitmap.BitmapEncoderRegistry;
+import org.krysalis.barcode4j.output.eps.EPSCanvasProvider;
+import org.krysalis.barcode4j.output.svg.SVGStreamCanvasProvider;
+import org.krysalis.barcode4j.tools.MimeTypes;
+
+/**
+ * Generates barcodes for a large number of messages in one go, using several worker threads.
+ * Each worker thread keeps its own output buffer and canvas provider which are reused for
+ * all barcodes processed by the thread. The barcode generator is shared by all worker threads (see
+ * {@link BarcodeGeneratorCache#makeShareable(BarcodeGenerator)}).
+ * <p>
+ * The results are passed to a {@link BatchHandler}, either in the order of the messages
+ * (default) or in the order in which they are completed. Messages that cannot be encoded
+ * are reported to the handler and don't stop the batch.
+ * <p>
+ * Example:
+ * <pre>
+ * BarcodeBatch batch = new BarcodeBatch(new Code128Bean(), MimeTypes.MIME_PNG);
+ * batch.setResolution(300);
+ * batch.setThreadCount(4);
+ * int errors = batch.process(messages.iterator(), handler);
+ * </pre>
+ *
+ * @version $Id$
+ */
+public class BarcodeBatch {
+
+    /** Maximum number of completed results per thread waiting for delivery */
+    private static final int MAX_PENDING_PER_THREAD = 16;
+
+    private BarcodeGenerator generator;
+    private String format;
+    private int resolution = 300;
+    private int orientation = 0;
+    private boolean grayscale = false;
+    private int threadCount = Runtime.getRuntime().availableProcessors();
+    private boolean ordered = true;
+
+    /**
+     * Creates a new batch.
+     * @param generator the barcode generator to use
+     * @param format the output format (MIME type, see {@link MimeTypes})
+     */
+    public BarcodeBatch(BarcodeGenerator generator, String format) {
+        if (generator == null) {
+            throw new NullPointerException("generator must not be null");
+        }
+        String mime = MimeTypes.expandFormat(format);
+        if (mime == null) {
+            throw new IllegalArgumentException("No output format specified");
+        }
+        if (!MimeTypes.MIME_SVG.equals(mime) && !MimeTypes.MIME_EPS.equals(mime)
+                && !BitmapEncoderRegistry.supports(mime)) {
+            throw new IllegalArgumentException("Unsupported output format: " + format);
+        }
+        this.generator = BarcodeGeneratorCache.makeShareable(generator);
+        this.format = mime;
+    }
+
+    /** @return the output format (MIME type) */
+    public String getFormat() {
+        return this.format;
+    }
+
+    /**
+     * Sets the resolution for bitmap output.
+     * @param resolution the resolution in dpi
+     */
+    public void setResolution(int resolution) {
+        if (resolution <= 0) {
+            throw new IllegalArgumentException("Resolution must be positive");
+        }
+        this.resolution = resolution;
+    }
+
+    /** @return the resolution for bitmap output (in dpi) */
+    public int getResolution() {
+        return this.resolution;
+    }
+
+    /**
+     * Sets the barcode orientation.
+     * @param orientation the barcode orientation (0, 90, 180, 270)
+     */
+    public void setOrientation(int orientation) {
+        this.orientation = orientation;
+    }
+
+    /** @return the barcode orientation */
+    public int getOrientation() {
+        return this.orientation;
+    }
+
+    /**
+     * Controls whether bitmaps are produced as 8-bit grayscale images with anti-aliasing
+     * instead of 1-bit black and white images.
+     * @param grayscale true for grayscale bitmaps
+     */
+    public void setGrayscale(boolean grayscale) {
+        this.grayscale = grayscale;
+    }
+
+    /** @return true if bitmaps are produced in grayscale */
+    public boolean isGrayscale() {
+        return this.grayscale;
+    }
+
+    /**
+     * Sets the number of worker threads. The default is the number of available processors.
+     * @param threadCount the number of threads (1 processes all messages in the calling thread)
+     */
+    public void setThreadCount(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("threadCount must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /** @return the number of worker threads */
+    public int getThreadCount() {
+        return this.threadCount;
+    }
+
+    /**
+     * Controls whether the results are passed to the handler in the order of the messages
+     * (the default) or as soon as they are available.
+     * @param ordered true for results in message order
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    /** @return true if the results are passed to the handler in the order of the messages */
+    public boolean isOrdered() {
+        return this.ordered;
+    }
+
+    /**
+     * Generates the barcodes for all messages. The method returns when all messages have been
+     * processed.
+     * @param messages the messages (an Iterator over java.lang.String instances). The iterator
+     *          is only ever accessed by one thread at a time.
+     * @param handler the handler which receives the results
+     * @return the number of messages that could not be processed
+     * @throws IOException if the handler reports an I/O error
+     * @throws InterruptedException if the calling thread is interrupted while waiting for the
+     *          worker threads
+     */
+    public int process(Iterator messages, BatchHandler handler)
+                throws IOException, InterruptedException {
+        Run run = new Run(messages, handler, this.ordered,
+                this.threadCount * MAX_PENDING_PER_THREAD);
+        if (this.threadCount == 1) {
+            run.work();
+        } else {
+            Thread[] threads = new Thread[this.threadCount];
+            for (int i = 0; i < threads.length; i++) {
+                final Run r = run;
+                threads[i] = new Thread("barcode4j-batch-" + i) {
+                    public void run() {
+                        r.work();
+                    }
+                };
+                threads[i].setDaemon(true);
+                threads[i].start();
+            }
+            try {
+                for (int i = 0; i < threads.length; i++) {
+                    threads[i].join();
+                }
+            } catch (InterruptedException ie) {
+                run.abort();
+                throw ie;
+            }
+        }
+        return run.finish();
+    }
+
+    /**
+     * Generates a single barcode.
+     * @param msg the message
+     * @param worker the state of the calling worker thread
+     * @return the generated barcode
+     * @throws Exception if an error occurs
+     */
+    private byte[] generate(String msg, WorkerState worker) throws Exception {
+        ByteArrayOutputStream bout = worker.bout;
+        bout.reset();
+        if (MimeTypes.MIME_SVG.equals(this.format)) {
+            if (worker.svg == null) {
+                worker.svg = new SVGStreamCanvasProvider(bout, this.orientation);
+            } else {
+                worker.svg.reset(bout);
+            }
+            this.generator.generateBarcode(worker.svg, msg);
+            worker.svg.finish();
+        } else if (MimeTypes.MIME_EPS.equals(this.format)) {
+            if (worker.eps == null) {
+                worker.eps = new EPSCanvasProvider(bout, this.orientation);
+            } else {
+                worker.eps.reset(bout);
+            }
+            this.generator.generateBarcode(worker.eps, msg);
+            worker.eps.finish();
+        } else {
+            if (worker.bitmap == null) {
+                int imageType = (this.grayscale
+                        ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_BYTE_BINARY);
+                worker.bitmap = new BitmapCanvasProvider(
+                        bout, this.format, this.resolution,
+                        imageType, this.grayscale, this.orientation);
+            } else {
+                worker.bitmap.reset(bout);
+            }
+            this.generator.generateBarcode(worker.bitmap, msg);
+            worker.bitmap.finish();
+        }
+        return bout.toByteArray();
+    }
+
+    /** The state of one call to {@link BarcodeBatch#process(Iterator, BatchHandler)}. */
+    private class Run {
+
+        private Iterator messages;
+        private BatchHandler handler;
+        private boolean ordered;
+        private int maxPending;
+
+        private int nextIndex;
+        private int nextToDeliver;
+        /** Completed items waiting for their predecessors (ordered mode) */
+        private Map pending = new java.util.HashMap();
+        /** Completed items that can be passed to the handler */
+        private List ready = new java.util.ArrayList();
+        /** Number of completed items that haven't been passed to the handler, yet */
+        private int undelivered;
+        /** True while a worker is passing items to the handler */
+        private boolean delivering;
+        private int errorCount;
+        private boolean aborted;
+        private IOException ioError;
+        private RuntimeException runtimeError;
+        private Error error;
+
+        public Run(Iterator messages, BatchHandler handler, boolean ordered, int maxPending) {
+            this.messages = messages;
+            this.handler = handler;
+            this.ordered = ordered;
+            this.maxPending = maxPending;
+        }
+
+        /** Worker loop: fetches messages and generates barcodes until there are no more. */
+        public void work() {
+            WorkerState worker = new WorkerState();
+            try {
+                while (true) {
+                    Item item;
+                    synchronized (this) {
+                        while (undelivered >= maxPending && !aborted) {
+                            wait();
+                        }
+                        if (aborted || !messages.hasNext()) {
+                            return;
+                        }
+                        item = new Item(nextIndex++, (String)messages.next());
+                    }
+                    try {
+                        item.data = generate(item.msg, worker);
+                    } catch (Exception e) {
+                        item.exception = e;
+                    }
+                    complete(item);
+                }
+            } catch (InterruptedException ie) {
+                abort();
+            } catch (RuntimeException re) {
+                synchronized (this) {
+                    if (runtimeError == null) {
+                        runtimeError = re;
+                    }
+                }
+                abort();
+            } catch (Error e) {
+                synchronized (this) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+                abort();
+            }
+        }
+
+        /**
+         * Hands a completed item over for delivery. The handler is called outside the lock, so
+         * the other workers can fetch and generate messages while the handler writes the
+         * output. Only one worker delivers at a time; it also delivers the items completed by
+         * the other workers in the meantime, so the order is preserved.
+         * @param item the completed item
+         */
+        private void complete(Item item) {
+            synchronized (this) {
+                if (aborted) {
+                    return;
+                }
+                undelivered++;
+                if (!ordered) {
+                    ready.add(item);
+                } else {
+                    pending.put(new Integer(item.index), item);
+                    Item next;
+                    while ((next = (Item)pending.remove(new Integer(nextToDeliver))) != null) {
+                        ready.add(next);
+                        nextToDeliver++;
+                    }
+                }
+                if (delivering) {
+                    return; //picked up by the delivering worker
+                }
+                delivering = true;
+            }
+            while (true) {
+                Item[] items;
+                synchronized (this) {
+                    if (aborted || ready.isEmpty()) {
+                        delivering = false;
+                        return;
+                    }
+                    items = (Item[])ready.toArray(new Item[ready.size()]);
+                    ready.clear();
+                }
+                for (int i = 0; i < items.length; i++) {
+                    if (!deliver(items[i])) {
+                        break;
+                    }
+                }
+                synchronized (this) {
+                    undelivered -= items.length;
+                    notifyAll();
+                }
+            }
+        }
+
+        private boolean deliver(Item item) {
+            try {
+                if (item.exception != null) {
+                    errorCount++;
+                    handler.handleError(item.index, item.msg, item.exception);
+                } else {
+                    handler.handleOutput(item.index, item.msg, item.data);
+                }
+                return true;
+            } catch (IOException ioe) {
+                synchronized (this) {
+                    ioError = ioe;
+                    aborted = true;
+                    notifyAll();
+                }
+                return false;
+            }
+        }
+
+        /** Stops the workers as soon as possible. */
+        public synchronized void abort() {
+            aborted = true;
+            notifyAll();
+        }
+
+        /**
+         * Called after all workers have ended.
+         * @return the number of failed messages
+         * @throws IOException if the handler reported an I/O error
+         */
+        public synchronized int finish() throws IOException {
+            if (error != null) {
+                throw error;
+            }
+            if (runtimeError != null) {
+                throw runtimeError;
+            }
+            if (ioError != null) {
+                throw ioError;
+            }
+            return errorCount;
+        }
+    }
+
+    /** The objects a worker thread reuses for all its barcodes. */
+    private static class WorkerState {
+
+        private ByteArrayOutputStream bout = new ByteArrayOutputStream(4096);
+        private SVGStreamCanvasProvider svg;
+        private EPSCanvasProvider eps;
+        private BitmapCanvasProvider bitmap;
+    }
+
+    /** A single message and its result. */
+    private static class Item {
+
+        private int index;
+        private String msg;
+        private byte[] data;
+        private Exception exception;
+
+        public Item(int index, String msg) {
+            this.index = index;
+            this.msg = msg;
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.batch;
+
+import java.io.IOException;
+
+/**
+ * Receives the results of a {@link BarcodeBatch}. The methods of this interface are never
+ * called by more than one thread at a time, so implementations don't need to be thread-safe.
+ *
+ * @version $Id$
+ */
+public interface BatchHandler {
+
+    /**
+     * Called for every barcode that has been generated successfully.
+     * @param index the index of the message (0-based, in the order of the message iterator)
+     * @param msg the message
+     * @param data the generated barcode in the output format of the batch
+     * @throws IOException if an I/O error occurs while handling the output. This aborts
+     *          the batch.
+     */
+    void handleOutput(int index, String msg, byte[] data) throws IOException;
+
+    /**
+     * Called for every barcode that could not be generated (for example, because of an
+     * invalid message). The batch continues with the next message.
+     * @param index the index of the message (0-based, in the order of the message iterator)
+     * @param msg the message
+     * @param e the exception that occurred
+     * @throws IOException if an I/O error occurs while handling the error. This aborts
+     *          the batch.
+     */
+    void handleError(int index, String msg, Exception e) throws IOException;
+
+}
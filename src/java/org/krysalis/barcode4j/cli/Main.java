@@ -16,27 +16,31 @@
 package org.krysalis.barcode4j.cli;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
-
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
+import java.util.StringTokenizer;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.krysalis.barcode4j.BarcodeException;
 import org.krysalis.barcode4j.BarcodeGenerator;
 import org.krysalis.barcode4j.BarcodeUtil;
+import org.krysalis.barcode4j.batch.BarcodeBatch;
+import org.krysalis.barcode4j.batch.BatchHandler;
 import org.krysalis.barcode4j.output.bitmap.BitmapCanvasProvider;
 import org.krysalis.barcode4j.output.bitmap.BitmapEncoderRegistry;
 import org.krysalis.barcode4j.output.eps.EPSCanvasProvider;
-import org.krysalis.barcode4j.output.svg.SVGCanvasProvider;
+import org.krysalis.barcode4j.output.svg.SVGStreamCanvasProvider;
 import org.krysalis.barcode4j.tools.MimeTypes;
 
 import org.apache.avalon.framework.configuration.Configuration;
@@ -71,6 +75,8 @@ public class Main {
     public static PrintStream stdout = System.out;
     /** stderr for this application (default: System.err) */
     public static PrintStream stderr = System.err;
+    /** stdin for this application (default: System.in), used by the batch mode */
+    public static InputStream stdin = System.in;
 
     private static ExitHandler exitHandler = new DefaultExitHandler();
     private Options options;
@@ -108,10 +114,13 @@ public class Main {
 
             //Message
             msg = cl.getArgs();
-            if (msg.length == 0) {
+            if (cl.hasOption("b")) {
+                if (msg.length > 0) {
+                    throw new ParseException("No message allowed in batch mode");
+                }
+            } else if (msg.length == 0) {
                 throw new ParseException("No message");
-            }
-            if (msg.length > 1) {
+            } else if (msg.length > 1) {
                 throw new ParseException("Too many parameters: " + msg.length);
             }
         } catch (MissingOptionException moe) {
@@ -127,6 +136,10 @@ public class Main {
             return; //never reached
         }
         try {
+            if (cl.hasOption("b")) {
+                handleBatch(cl);
+                return;
+            }
             OutputStream out;
             if (!cl.hasOption("o")) {
                 log = new AdvancedConsoleLogger(AdvancedConsoleLogger.LEVEL_ERROR,
@@ -159,21 +172,10 @@ public class Main {
                     getConfiguration(cl));
 
             if (MimeTypes.MIME_SVG.equals(format)) {
-                //Create Barcode and render it to SVG
-                SVGCanvasProvider svg = new SVGCanvasProvider(false, orientation);
+                //Create Barcode and stream it as SVG
+                SVGStreamCanvasProvider svg = new SVGStreamCanvasProvider(out, orientation);
                 gen.generateBarcode(svg, msg[0]);
-
-                //Serialize SVG barcode
-                try {
-                    TransformerFactory factory = TransformerFactory.newInstance();
-                    Transformer trans = factory.newTransformer();
-                    Source src = new javax.xml.transform.dom.DOMSource(
-                        svg.getDOMFragment());
-                    Result res = new javax.xml.transform.stream.StreamResult(out);
-                    trans.transform(src, res);
-                } catch (TransformerException te) {
-                    exitHandler.failureExit(this, "XML/XSLT library error", te, -6);
-                }
+                svg.finish();
             } else if (MimeTypes.MIME_EPS.equals(format)) {
                 EPSCanvasProvider eps = new EPSCanvasProvider(out, orientation);
                 gen.generateBarcode(eps, msg[0]);
@@ -207,6 +209,94 @@ public class Main {
         } catch (BarcodeException be) {
             exitHandler.failureExit(this,
                 "Error generating the barcode", be, -3);
+        } catch (InterruptedException ie) {
+            exitHandler.failureExit(this, "Interrupted", ie, -3);
+        }
+    }
+
+    private void handleBatch(CommandLine cl) throws IOException, ConfigurationException,
+                BarcodeException, InterruptedException {
+        boolean toStdout = !cl.hasOption("o");
+        int logLevel = AdvancedConsoleLogger.LEVEL_INFO;
+        if (cl.hasOption('v')) {
+            logLevel = AdvancedConsoleLogger.LEVEL_DEBUG;
+        }
+        //If the ZIP file goes to stdout, all messages have to go to stderr
+        log = new AdvancedConsoleLogger(logLevel, false, toStdout ? stderr : stdout, stderr);
+        printAppHeader();
+
+        String format = MimeTypes.expandFormat(
+                cl.getOptionValue("f", MimeTypes.MIME_SVG));
+        BarcodeBatch batch;
+        try {
+            batch = new BarcodeBatch(
+                    BarcodeUtil.getInstance().createBarcodeGenerator(getConfiguration(cl)),
+                    format);
+            batch.setResolution(Integer.parseInt(cl.getOptionValue('d', "300")));
+            if (cl.hasOption("t")) {
+                batch.setThreadCount(Integer.parseInt(cl.getOptionValue("t")));
+            }
+        } catch (IllegalArgumentException iae) {
+            exitHandler.failureExit(this, "Bad command line: " + iae.getMessage(), null, -2);
+            return; //never reached
+        }
+        batch.setGrayscale(!cl.hasOption("bw"));
+        log.info("Generating " + format + " with " + batch.getThreadCount() + " thread(s)...");
+
+        String input = cl.getOptionValue("b");
+        InputStream in;
+        if ("-".equals(input)) {
+            in = stdin;
+        } else {
+            File inFile = new File(input);
+            if (!inFile.isFile()) {
+                throw new FileNotFoundException("Message file not found: " + inFile);
+            }
+            in = new java.io.FileInputStream(inFile);
+        }
+        MessageReader messages = new MessageReader(new BufferedReader(
+                new java.io.InputStreamReader(in, "UTF-8")),
+                MimeTypes.getFileExtension(format));
+
+        BatchOutput output;
+        if (toStdout) {
+            output = new ZipBatchOutput(stdout, messages);
+        } else {
+            File outFile = new File(cl.getOptionValue("o"));
+            if (outFile.getName().toLowerCase().endsWith(".zip")) {
+                log.debug("Output to ZIP file: " + outFile.getCanonicalPath());
+                output = new ZipBatchOutput(new java.io.FileOutputStream(outFile), messages);
+            } else {
+                log.debug("Output to directory: " + outFile.getCanonicalPath());
+                if (!outFile.isDirectory() && !outFile.mkdirs()) {
+                    throw new IOException("Could not create directory: " + outFile);
+                }
+                output = new DirectoryBatchOutput(outFile, messages);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        int errors;
+        try {
+            errors = batch.process(messages, output) + output.getInvalidNameCount();
+        } finally {
+            output.close();
+            if (in != stdin) {
+                in.close();
+            }
+        }
+        if (messages.getError() != null) {
+            throw messages.getError();
+        }
+        long duration = Math.max(System.currentTimeMillis() - start, 1);
+        int count = messages.getCount();
+        log.info("Generated " + (count - errors) + " of " + count + " barcodes in "
+                + duration + " ms (" + (count * 1000L / duration) + " barcodes/s)");
+        if (errors > 0) {
+            exitHandler.failureExit(this,
+                errors + " barcode(s) could not be generated", null, -3);
+        } else {
+            exitHandler.successfulExit(this);
         }
     }
 
@@ -269,6 +359,23 @@ public class Main {
                 .withDescription("(for bitmaps) create monochrome (1-bit) "
                     + "image instead of grayscale (8-bit)")
                 .create());
+
+            //Batch mode
+            this.options.addOption(OptionBuilder
+                .withArgName("file")
+                .withLongOpt("batch")
+                .hasArg()
+                .withDescription("batch mode: read the messages from a file "
+                    + "(\"-\" for stdin). One message per line, optionally followed "
+                    + "by a tab and the output filename.")
+                .create('b'));
+            this.options.addOption(OptionBuilder
+                .withArgName("integer")
+                .withLongOpt("threads")
+                .hasArg()
+                .withDescription("(for batch mode) the number of threads\n"
+                    + "Default: number of processors")
+                .create('t'));
         }
         return this.options;
     }
@@ -355,7 +462,7 @@ public class Main {
         help.printHelp(writer, HelpFormatter.DEFAULT_WIDTH,
             "java -jar barcode4j.jar "
                 + "[-v] [[-s <symbology>]|[-c <cfg-file>]] [-f <format>] "
-                + "[-d <dpi>] [-bw] [-o <file>] <message>",
+                + "[-d <dpi>] [-bw] [-o <file>] [<message>|-b <file> [-t <threads>]]",
             null,
             getOptions(),
             HelpFormatter.DEFAULT_LEFT_PAD, HelpFormatter.DEFAULT_DESC_PAD,
@@ -381,9 +488,223 @@ public class Main {
                     ? "\nAdditional supported formats:\n" + additionalMimes
                     : "")
                 + "\n"
-                + "\nIf -o is omitted the output is written to stdout.");
+                + "\nIf -o is omitted the output is written to stdout."
+                + "\nIn batch mode (-b), -o specifies a directory or a ZIP file"
+                + " (*.zip). If -o is omitted, a ZIP file is written to stdout.");
         writer.flush();
 
     }
 
+    /**
+     * Reads the messages for the batch mode, one per line. A message may be followed by a tab
+     * character and the output filename.
+     */
+    private static class MessageReader implements Iterator {
+
+        private BufferedReader reader;
+        private String extension;
+        private Map names = java.util.Collections.synchronizedMap(new java.util.HashMap());
+        private String nextMessage;
+        private int lineNo;
+        private int count;
+        private IOException error;
+
+        public MessageReader(BufferedReader reader, String extension) {
+            this.reader = reader;
+            this.extension = (extension != null ? extension : "bin");
+        }
+
+        public boolean hasNext() {
+            if (nextMessage == null && error == null) {
+                try {
+                    String line;
+                    do {
+                        line = reader.readLine();
+                        lineNo++;
+                    } while (line != null && line.trim().length() == 0);
+                    if (line != null) {
+                        String name;
+                        int tab = line.indexOf('\t');
+                        if (tab >= 0) {
+                            name = line.substring(tab + 1).trim();
+                            line = line.substring(0, tab);
+                        } else {
+                            String s = "00000" + (count + 1);
+                            name = s.substring(s.length() - 6) + "." + extension;
+                        }
+                        names.put(new Integer(count), new String[] {name, String.valueOf(lineNo)});
+                        nextMessage = line;
+                    }
+                } catch (IOException ioe) {
+                    error = ioe;
+                }
+            }
+            return nextMessage != null;
+        }
+
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            String msg = nextMessage;
+            nextMessage = null;
+            count++;
+            return msg;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        /**
+         * Returns the output filename and the line number of a message and forgets them.
+         * @param index the index of the message
+         * @return the filename and the line number
+         */
+        public String[] takeName(int index) {
+            return (String[])names.remove(new Integer(index));
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public IOException getError() {
+            return error;
+        }
+    }
+
+    /** Base class for the batch output. */
+    private abstract class BatchOutput implements BatchHandler {
+
+        private MessageReader messages;
+        private Set usedNames = new java.util.HashSet();
+        private int invalidNames;
+
+        public BatchOutput(MessageReader messages) {
+            this.messages = messages;
+        }
+
+        public void handleOutput(int index, String msg, byte[] data) throws IOException {
+            String[] info = messages.takeName(index);
+            String name = info[0];
+            if (!isValidName(name)) {
+                //Skip the message but continue with the rest of the batch
+                log.error("Line " + info[1] + " (" + msg + "): Invalid output filename: " + name);
+                invalidNames++;
+                return;
+            }
+            if (!usedNames.add(name)) {
+                log.error("Line " + info[1] + " (" + msg + "): Duplicate output filename: "
+                        + name);
+                invalidNames++;
+                return;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(name + ": " + msg);
+            }
+            write(name, data);
+        }
+
+        public void handleError(int index, String msg, Exception e) throws IOException {
+            String[] info = messages.takeName(index);
+            log.error("Line " + info[1] + " (" + msg + "): " + e.getMessage());
+        }
+
+        /**
+         * Indicates whether an output filename is acceptable. The name must be relative and
+         * must not contain any ".." path segments.
+         * @param name the output filename
+         * @return true if the name is valid
+         * @throws IOException if an I/O error occurs while checking the name
+         */
+        protected boolean isValidName(String name) throws IOException {
+            if (name.length() == 0 || name.charAt(0) == '/' || name.charAt(0) == '\\') {
+                return false;
+            }
+            StringTokenizer segments = new StringTokenizer(name, "/\\");
+            while (segments.hasMoreTokens()) {
+                if ("..".equals(segments.nextToken())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the number of messages skipped because of an invalid or duplicate output
+         *          filename
+         */
+        public int getInvalidNameCount() {
+            return invalidNames;
+        }
+
+        protected abstract void write(String name, byte[] data) throws IOException;
+
+        public abstract void close() throws IOException;
+    }
+
+    /** Writes the batch output to individual files in a directory. */
+    private class DirectoryBatchOutput extends BatchOutput {
+
+        private File dir;
+
+        public DirectoryBatchOutput(File dir, MessageReader messages) {
+            super(messages);
+            this.dir = dir;
+        }
+
+        protected boolean isValidName(String name) throws IOException {
+            //The file must end up inside the output directory
+            String dirPath = dir.getCanonicalPath() + File.separator;
+            return super.isValidName(name)
+                    && new File(dir, name).getCanonicalPath().startsWith(dirPath);
+        }
+
+        protected void write(String name, byte[] data) throws IOException {
+            File file = new File(dir, name);
+            File parent = file.getParentFile();
+            if (!parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Could not create directory: " + parent);
+            }
+            OutputStream out = new java.io.FileOutputStream(file);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+        }
+
+        public void close() throws IOException {
+            //nop
+        }
+    }
+
+    /** Writes the batch output to a ZIP file. */
+    private class ZipBatchOutput extends BatchOutput {
+
+        private ZipOutputStream zip;
+        private OutputStream target;
+
+        public ZipBatchOutput(OutputStream out, MessageReader messages) {
+            super(messages);
+            this.target = out;
+            this.zip = new ZipOutputStream(new java.io.BufferedOutputStream(out));
+        }
+
+        protected void write(String name, byte[] data) throws IOException {
+            zip.putNextEntry(new ZipEntry(name));
+            zip.write(data);
+            zip.closeEntry();
+        }
+
+        public void close() throws IOException {
+            zip.finish();
+            zip.flush();
+            if (target != stdout) {
+                zip.close();
+            }
+        }
+    }
+
 }
\ No newline at end of file
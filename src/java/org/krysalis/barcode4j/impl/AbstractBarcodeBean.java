@@ -23,11 +23,17 @@ import org.krysalis.barcode4j.tools.UnitConv;
 
 /**
  * Base class for most barcode implementations.
+ * <p>
+ * Barcode beans are configured through their setter methods. Once configured, a bean can be
+ * turned into an immutable copy using {@link #createImmutableCopy()}. The
+ * {@link #generateBarcode(CanvasProvider, String)} and {@link #calcDimensions(String)} methods
+ * of an immutable bean can safely be called by multiple threads at the same time, so a single
+ * instance can be shared, for example, by all request threads of a servlet.
  *
  * @version $Id: AbstractBarcodeBean.java,v 1.7 2008/05/13 13:00:45 jmaerki Exp $
  */
 public abstract class AbstractBarcodeBean
-            implements BarcodeGenerator {
+            implements BarcodeGenerator, Cloneable {
 
     /** Net height of bars in mm */
     protected double height          = 15.0; //mm
@@ -48,6 +54,56 @@ public abstract class AbstractBarcodeBean
     /** pattern to be applied over the human readable message */
     protected String pattern;
 
+    private boolean immutable;
+
+    /**
+     * Indicates whether this bean is immutable, i.e. its settings cannot be changed anymore.
+     * @return true if the bean is immutable
+     * @see #createImmutableCopy()
+     */
+    public boolean isImmutable() {
+        return this.immutable;
+    }
+
+    /**
+     * Creates an immutable copy of this bean with the current settings. The original bean
+     * remains unchanged and can be further modified without affecting the copy. Calling any
+     * setter on the copy results in an {@link IllegalStateException}.
+     * @return the immutable copy (or this instance if it is already immutable)
+     */
+    public AbstractBarcodeBean createImmutableCopy() {
+        if (isImmutable()) {
+            return this;
+        }
+        AbstractBarcodeBean copy = (AbstractBarcodeBean)clone();
+        copy.immutable = true;
+        return copy;
+    }
+
+    /**
+     * Must be called by every method that changes the settings of the bean.
+     * @throws IllegalStateException if the bean is immutable
+     */
+    protected void checkMutable() {
+        if (isImmutable()) {
+            throw new IllegalStateException("The barcode bean is immutable: "
+                    + getClass().getName());
+        }
+    }
+
+    /**
+     * Creates a copy of this bean. Subclasses holding mutable helper objects must override
+     * this method to copy them so the clone doesn't share them with the original.
+     * @return the copy
+     */
+    protected Object clone() {
+        try {
+            return super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new RuntimeException("Internal error: " + e.getMessage());
+        }
+    }
+
     /**
      * returns the pattern to be applied over the human readable message
      * @return String
@@ -61,6 +117,7 @@ public abstract class AbstractBarcodeBean
      * @param v String
      */
     public void setPattern(String v) {
+        checkMutable();
       this.pattern = v;
     }
 
@@ -114,6 +171,7 @@ public abstract class AbstractBarcodeBean
      * @param height the height of the bars (in mm)
      */
     public void setBarHeight(double height) {
+        checkMutable();
         this.height = height;
     }
 
@@ -122,6 +180,7 @@ public abstract class AbstractBarcodeBean
      * @param height the full height (in mm)
      */
     public void setHeight(double height) {
+        checkMutable();
         this.height = height - getHumanReadableHeight();
     }
 
@@ -138,6 +197,7 @@ public abstract class AbstractBarcodeBean
      * @param width the width of the narrow module (in mm)
      */
     public void setModuleWidth(double width) {
+        checkMutable();
         this.moduleWidth = width;
     }
 
@@ -161,6 +221,7 @@ public abstract class AbstractBarcodeBean
      * @param value true if a quiet zone should be included
      */
     public void doQuietZone(boolean value) {
+        checkMutable();
         this.doQuietZone = value;
     }
 
@@ -187,6 +248,7 @@ public abstract class AbstractBarcodeBean
      * @param width the width of the quiet zone (in mm)
      */
     public void setQuietZone(double width) {
+        checkMutable();
         this.quietZone = width;
     }
 
@@ -196,6 +258,7 @@ public abstract class AbstractBarcodeBean
      * @param height the height of the vertical quiet zone (in mm)
      */
     public void setVerticalQuietZone(double height) {
+        checkMutable();
         this.quietZoneVertical = new Double(height);
     }
 
@@ -212,6 +275,7 @@ public abstract class AbstractBarcodeBean
      * @param placement the placement of the human-readable part
      */
     public void setMsgPosition(HumanReadablePlacement placement) {
+        checkMutable();
         this.msgPos = placement;
     }
 
@@ -228,6 +292,7 @@ public abstract class AbstractBarcodeBean
      * @param size the font size
      */
     public void setFontSize(double size) {
+        checkMutable();
         this.fontSize = size;
     }
 
@@ -244,6 +309,7 @@ public abstract class AbstractBarcodeBean
      * @param name the font name
      */
     public void setFontName(String name) {
+        checkMutable();
         this.fontName = name;
     }
 
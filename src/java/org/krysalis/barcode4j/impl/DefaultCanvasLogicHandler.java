@@ -46,8 +46,23 @@ public class DefaultCanvasLogicHandler implements ClassicBarcodeLogicHandler {
      * @param canvas the canvas to paint to
      */
     public DefaultCanvasLogicHandler(AbstractBarcodeBean bcBean, Canvas canvas) {
+        this(bcBean, canvas, null);
+    }
+
+    /**
+     * Constructor for the case where the barcode dimensions have already been calculated by the
+     * caller (usually from the encoded message), so they don't have to be determined again
+     * in {@link #startBarcode(String, String)}.
+     * @param bcBean the barcode implementation class
+     * @param canvas the canvas to paint to
+     * @param dimensions the precalculated barcode dimensions (or null to calculate them
+     *          on demand)
+     */
+    public DefaultCanvasLogicHandler(AbstractBarcodeBean bcBean, Canvas canvas,
+            BarcodeDimension dimensions) {
         this.bcBean = bcBean;
         this.canvas = canvas;
+        this.dimensions = dimensions;
     }
 
     /**
@@ -82,8 +97,10 @@ public class DefaultCanvasLogicHandler implements ClassicBarcodeLogicHandler {
         this.formattedMsg = MessagePatternUtil.applyCustomMessagePattern(
                 formattedMsg, bcBean.getPattern());
 
-        //Calculate extents
-        this.dimensions = bcBean.calcDimensions(msg);
+        //Calculate extents (unless they have been supplied)
+        if (this.dimensions == null) {
+            this.dimensions = bcBean.calcDimensions(msg);
+        }
 
         canvas.establishDimensions(dimensions);
         x = getStartX();
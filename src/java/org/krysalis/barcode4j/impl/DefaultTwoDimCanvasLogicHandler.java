@@ -17,7 +17,9 @@ package org.krysalis.barcode4j.impl;
 
 import org.krysalis.barcode4j.BarGroup;
 import org.krysalis.barcode4j.BarcodeDimension;
-import org.krysalis.barcode4j.TwoDimBarcodeLogicHandler;
+import org.krysalis.barcode4j.BitMatrix;
+import org.krysalis.barcode4j.BitMatrixLogicHandler;
+import org.krysalis.barcode4j.RowRunLogicHandler;
 import org.krysalis.barcode4j.output.Canvas;
 
 /**
@@ -26,10 +28,14 @@ import org.krysalis.barcode4j.output.Canvas;
  * @author Jeremias Maerki
  * @version $Id: DefaultTwoDimCanvasLogicHandler.java,v 1.1 2006/06/22 09:01:19 jmaerki Exp $
  */
-public class DefaultTwoDimCanvasLogicHandler implements TwoDimBarcodeLogicHandler {
+public class DefaultTwoDimCanvasLogicHandler
+        implements BitMatrixLogicHandler, RowRunLogicHandler {
     
     private AbstractBarcodeBean bcBean;
     private Canvas canvas;
+    private BarcodeDimension dimensions;
+    private boolean established;
+    private double offsetX = 0.0;
     private double x = 0.0;
     private double y = 0.0;
     
@@ -39,15 +45,41 @@ public class DefaultTwoDimCanvasLogicHandler implements TwoDimBarcodeLogicHandle
      * @param canvas the canvas to paint to
      */
     public DefaultTwoDimCanvasLogicHandler(AbstractBarcodeBean bcBean, Canvas canvas) {
+        this(bcBean, canvas, null);
+    }
+
+    /**
+     * Constructor for the case where the symbol dimensions are already known from the encoded
+     * symbol, so the message doesn't have to be encoded a second time in
+     * {@link #startBarcode(String, String)}.
+     * @param bcBean the barcode implementation class
+     * @param canvas the canvas to paint to
+     * @param dimensions the precalculated barcode dimensions (or null to calculate them
+     *          on demand)
+     */
+    public DefaultTwoDimCanvasLogicHandler(AbstractBarcodeBean bcBean, Canvas canvas,
+            BarcodeDimension dimensions) {
         this.bcBean = bcBean;
         this.canvas = canvas;
+        this.dimensions = dimensions;
     }
-    
+
+    /**
+     * Sets the horizontal position of the next symbol relative to the left quiet zone. This
+     * allows painting several symbols side by side with one handler (for example a DataMatrix
+     * structured append sequence): the canvas dimensions are only established by the first
+     * symbol, so they must be supplied to the constructor and cover all symbols.
+     * @param offsetX the horizontal offset (in mm)
+     */
+    public void setOffsetX(double offsetX) {
+        this.offsetX = offsetX;
+    }
+
     private double getStartX() {
         if (bcBean.hasQuietZone()) {
-            return bcBean.getQuietZone();
+            return bcBean.getQuietZone() + offsetX;
         } else {
-            return 0.0;
+            return offsetX;
         }
     }            
 
@@ -61,10 +93,15 @@ public class DefaultTwoDimCanvasLogicHandler implements TwoDimBarcodeLogicHandle
 
     /** @see org.krysalis.barcode4j.ClassicBarcodeLogicHandler */
     public void startBarcode(String msg, String formattedMsg) {
-        //Calculate extents
-        BarcodeDimension dim = bcBean.calcDimensions(msg);
-        
-        canvas.establishDimensions(dim);
+        //Calculate extents (unless they have been supplied)
+        if (this.dimensions == null) {
+            this.dimensions = bcBean.calcDimensions(msg);
+        }
+
+        if (!established) {
+            canvas.establishDimensions(this.dimensions);
+            established = true;
+        }
         y = getStartY();
     }
 
@@ -87,6 +124,29 @@ public class DefaultTwoDimCanvasLogicHandler implements TwoDimBarcodeLogicHandle
         x += w;
     }
 
+    /**
+     * Paints the module matrix. Consecutive black modules in a row are painted as a single
+     * rectangle. Canvas providers implementing
+     * {@link org.krysalis.barcode4j.output.MatrixCanvasProvider} receive the whole matrix.
+     * @see org.krysalis.barcode4j.BitMatrixLogicHandler#addBitMatrix(BitMatrix)
+     */
+    public void addBitMatrix(BitMatrix matrix) {
+        final double rowHeight = bcBean.getBarHeight();
+        canvas.drawBitMatrix(matrix, getStartX(), y, bcBean.getBarWidth(1), rowHeight);
+        y += matrix.getHeight() * rowHeight;
+    }
+
+    /**
+     * Paints a complete row of bars. Canvas providers implementing
+     * {@link org.krysalis.barcode4j.output.MatrixCanvasProvider} receive the whole row.
+     * @see org.krysalis.barcode4j.RowRunLogicHandler#addRowRuns(int[], int)
+     */
+    public void addRowRuns(int[] runs, int count) {
+        final double rowHeight = bcBean.getBarHeight();
+        canvas.drawRowRuns(runs, count, getStartX(), y, bcBean.getBarWidth(1), rowHeight);
+        y += rowHeight;
+    }
+
     /** @see org.krysalis.barcode4j.ClassicBarcodeLogicHandler */
     public void endBarGroup() {
         //nop
@@ -64,6 +64,7 @@ public class CodabarBean extends AbstractBarcodeBean {
      * @param mode the checksum mode
      */
     public void setChecksumMode(ChecksumMode mode) {
+        checkMutable();
         this.checksumMode = mode;
     }
 
@@ -80,6 +81,7 @@ public class CodabarBean extends AbstractBarcodeBean {
      * @param value the wide factory (should be > 1.0)
      */
     public void setWideFactor(double value) {
+        checkMutable();
         if (value <= 1.0) {
             throw new IllegalArgumentException("wide factor must be > 1.0");
         }
@@ -112,6 +114,7 @@ public class CodabarBean extends AbstractBarcodeBean {
      * @param value true to enable the start/stop character, false to disable
      */
     public void setDisplayStartStop(boolean value) {
+        checkMutable();
         this.displayStartStop = value;
     }
 
@@ -52,6 +52,7 @@ public class Code128Bean extends AbstractBarcodeBean {
      * @param codeset the codesets to use (see {@link Code128Constants}.CODESET_*)
      */
     public void setCodeset(int codeset) {
+        checkMutable();
         if (codeset == 0) {
             throw new IllegalArgumentException("At least one codeset must be allowed");
         }
@@ -82,10 +83,11 @@ public class Code128Bean extends AbstractBarcodeBean {
 
     /** {@inheritDoc} */
     public BarcodeDimension calcDimensions(String msg) {
-        Code128LogicImpl impl = createLogicImpl();
-        int msgLen = 0;
+        return calcDimensions(createLogicImpl().createEncodedMessage(msg));
+    }
 
-        msgLen = impl.createEncodedMessage(msg).length + 1;
+    private BarcodeDimension calcDimensions(int[] encodedMsg) {
+        int msgLen = encodedMsg.length + 1;
 
         final double width = ((msgLen * 11) + 13) * getModuleWidth();
         final double qz = (hasQuietZone() ? quietZone : 0);
@@ -106,12 +108,14 @@ public class Code128Bean extends AbstractBarcodeBean {
             throw new NullPointerException("Parameter msg must not be empty");
         }
 
-        ClassicBarcodeLogicHandler handler =
-                new DefaultCanvasLogicHandler(this, new Canvas(canvas));
+        Code128LogicImpl impl = createLogicImpl();
+        int[] encodedMsg = impl.createEncodedMessage(msg);
+
+        ClassicBarcodeLogicHandler handler = new DefaultCanvasLogicHandler(
+                this, new Canvas(canvas), calcDimensions(encodedMsg));
         //handler = new LoggingLogicHandlerProxy(handler);
 
-        Code128LogicImpl impl = createLogicImpl();
-        impl.generateBarcodeLogic(handler, msg);
+        impl.generateBarcodeLogic(handler, msg, encodedMsg);
     }
 
 }
\ No newline at end of file
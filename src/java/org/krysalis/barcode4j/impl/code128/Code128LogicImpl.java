@@ -302,9 +302,19 @@ public class Code128LogicImpl {
      * @param msg the message to encode
      */
     public void generateBarcodeLogic(ClassicBarcodeLogicHandler logic, String msg) {
+        generateBarcodeLogic(logic, msg, createEncodedMessage(msg));
+    }
+
+    /**
+     * Generates the barcode logic for a message that has already been encoded.
+     * @param logic the logic handler to receive the generated events
+     * @param msg the original message
+     * @param encodedMsg the array of character set indexes for the message
+     * @see #createEncodedMessage(String)
+     */
+    void generateBarcodeLogic(ClassicBarcodeLogicHandler logic, String msg, int[] encodedMsg) {
         logic.startBarcode(msg, MessageUtil.filterNonPrintableCharacters(msg));
 
-        int[] encodedMsg = createEncodedMessage(msg);
         for (int i = 0; i < encodedMsg.length; i++) {
             encodeChar(logic, encodedMsg[i]);
         }
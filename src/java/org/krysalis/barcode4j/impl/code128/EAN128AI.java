@@ -366,6 +366,74 @@ public class EAN128AI {
         return isCheckDigitType(type[idx]);
     }
 
+    /** @return the number of digits of the AI itself */
+    public int getIDLength() {
+        return lenID;
+    }
+
+    /** @return true if the AI has a predefined length, so no FNC1 is needed after its data */
+    public boolean isFixed() {
+        return fixed;
+    }
+
+    /** @return the minimum length of the data (all parts) */
+    public int getMinLength() {
+        return lenMinAll;
+    }
+
+    /** @return the maximum length of the data (all parts) */
+    public int getMaxLength() {
+        return lenMaxAll;
+    }
+
+    /** @return the minimum length of the parts following the variable-length part */
+    public int getMinLengthAfterVariableLength() {
+        return minLenAfterVariableLen;
+    }
+
+    /** @return true if a missing check digit at the end of the data may be added */
+    public boolean canAddCheckDigit() {
+        return canDoChecksumADD;
+    }
+
+    /** @return the number of parts of the data */
+    public int getPartCount() {
+        return type.length;
+    }
+
+    /**
+     * @param idx the index of the part
+     * @return the type of the part (one of the TYPE* constants)
+     */
+    public byte getPartType(int idx) {
+        return type[idx];
+    }
+
+    /**
+     * @param idx the index of the part
+     * @return the minimum length of the part
+     */
+    public int getPartMinLength(int idx) {
+        return lenMin[idx];
+    }
+
+    /**
+     * @param idx the index of the part
+     * @return the maximum length of the part
+     */
+    public int getPartMaxLength(int idx) {
+        return lenMax[idx];
+    }
+
+    /**
+     * @param idx the index of the part
+     * @return where the check digit calculation of the part starts: 0 for the start of the
+     *          AI, i + 1 for the start of part i
+     */
+    public int getCheckDigitStart(int idx) {
+        return checkDigitStart[idx];
+    }
+
     public static final String getType(byte type) {
         String ret = "?";
         try {
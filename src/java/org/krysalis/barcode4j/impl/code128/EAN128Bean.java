@@ -53,7 +53,11 @@ public class EAN128Bean extends Code128Bean {
      * @see org.krysalis.barcode4j.BarcodeGenerator#calcDimensions(String)
      */
     public BarcodeDimension calcDimensions(String msg) {
-        int msgLen = impl.getEncodedMessage(msg).length + 1; 
+        return calcDimensions(impl.getEncodedMessage(msg));
+    }
+
+    private BarcodeDimension calcDimensions(int[] encodedMsg) {
+        int msgLen = encodedMsg.length + 1; 
         //TODO If the output is able to calculate text lenghts (e.g. awt, fop), and 
         //the human readable part is longer then barcode the size should be enlarged!
         final double width = ((msgLen * 11) + 13) * getModuleWidth();
@@ -71,11 +75,19 @@ public class EAN128Bean extends Code128Bean {
             throw new NullPointerException("Parameter msg must not be empty");
         }
 
-        ClassicBarcodeLogicHandler handler = 
-                new DefaultCanvasLogicHandler(this, new Canvas(canvas));
+        EAN128LogicImpl encoded = impl.encodeMessage(msg);
+        ClassicBarcodeLogicHandler handler = new DefaultCanvasLogicHandler(
+                this, new Canvas(canvas), calcDimensions(encoded.getEncodedMessage()));
         //handler = new LoggingLogicHandlerProxy(handler);
         
-        impl.generateBarcodeLogic(handler, msg);
+        encoded.generateBarcodeLogic(handler);
+    }
+
+    /** {@inheritDoc} */
+    protected Object clone() {
+        EAN128Bean copy = (EAN128Bean)super.clone();
+        copy.impl = new EAN128LogicImpl(this.impl);
+        return copy;
     }
     
     /**
@@ -83,6 +95,7 @@ public class EAN128Bean extends Code128Bean {
      * @param mode the checksum mode
      */
     public void setChecksumMode(ChecksumMode mode) {
+        checkMutable();
         this.checksumMode = mode;
         impl.setChecksumMode(mode);
     }
@@ -108,6 +121,7 @@ public class EAN128Bean extends Code128Bean {
      * @param c the group separator character.
      */
     public void setGroupSeparator(char c) {
+        checkMutable();
         groupSeparator = c;
         impl.setGroupSeparator(c);
     }
@@ -118,6 +132,7 @@ public class EAN128Bean extends Code128Bean {
     }
 
     public void setImpl(EAN128LogicImpl impl) {
+        checkMutable();
         this.impl = impl;
     }*/
 
@@ -139,6 +154,7 @@ public class EAN128Bean extends Code128Bean {
      * @param string a template like "(01)n13+cd(421)n3+an1-9(10)an1-20"
      */
     public void setTemplate(String string) {
+        checkMutable();
         template = string;
         impl.setTemplate(string);
     }
@@ -155,6 +171,7 @@ public class EAN128Bean extends Code128Bean {
      * @param c the character for the check digit marker
      */
     public void setCheckDigitMarker(char c) {
+        checkMutable();
         checkDigitMarker = c;
         impl.setCheckDigitMarker(c); 
     }
@@ -171,6 +188,7 @@ public class EAN128Bean extends Code128Bean {
      * @param b true if the brackets in the human-readable part should be omitted
      */
     public void setOmitBrackets(boolean b) {
+        checkMutable();
         omitBrackets = b;
         impl.setOmitBrackets(b);
     }
@@ -63,6 +63,33 @@ public class EAN128LogicImpl { //extends Code128LogicImpl{
         setTemplate(template);
     }
 
+    /**
+     * Creates a new instance with the same settings as the given one. The message related
+     * state is not copied.
+     * @param settings the instance to copy the settings from
+     */
+    EAN128LogicImpl(EAN128LogicImpl settings) {
+        this.ais = settings.ais;
+        this.groupSeparator = settings.groupSeparator;
+        this.checkDigitMarker = settings.checkDigitMarker;
+        this.omitBrackets = settings.omitBrackets;
+        this.checksumADD = settings.checksumADD;
+        this.checksumCHECK = settings.checksumCHECK;
+    }
+
+    /**
+     * Encodes a message. The result is held by a new instance with the same settings, this
+     * instance isn't modified. Therefore, this method may be called by multiple threads
+     * concurrently as long as the settings are not changed.
+     * @param msg the message to encode
+     * @return a new instance holding the encoded message
+     */
+    EAN128LogicImpl encodeMessage(String msg) {
+        EAN128LogicImpl encoded = new EAN128LogicImpl(this);
+        encoded.setMessage(msg);
+        return encoded;
+    }
+
     protected void setMessage(String msg) {
         if (msg == null || !msg.equals(msgCache)) {
             code128Msg.setLength(0);
@@ -96,8 +123,12 @@ public class EAN128LogicImpl { //extends Code128LogicImpl{
      * @see #getEncoder()
      */
     public int[] getEncodedMessage(String msg) {
-        setMessage(msg);
-        return encodedMsg;
+        return encodeMessage(msg).getEncodedMessage();
+    }
+
+    /** @return the array of character set indexes for the current message */
+    int[] getEncodedMessage() {
+        return this.encodedMsg;
     }
 
     /**
@@ -106,10 +137,16 @@ public class EAN128LogicImpl { //extends Code128LogicImpl{
      * @param msg the message to encode
      */
     public void generateBarcodeLogic(ClassicBarcodeLogicHandler logic, String msg) {
-        setMessage(msg);
+        encodeMessage(msg).generateBarcodeLogic(logic);
+    }
 
+    /**
+     * Generates the barcode logic for the current message.
+     * @param logic the logic handler to receive the generated events
+     */
+    void generateBarcodeLogic(ClassicBarcodeLogicHandler logic) {
         Code128LogicImpl c128 = new Code128LogicImpl();
-        logic.startBarcode(msg, getHumanReadableMsg());
+        logic.startBarcode(getMessage(), getHumanReadableMsg());
         for (int i = 0; i < encodedMsg.length; i++) {
             c128.encodeChar(logic, encodedMsg[i]);
         }
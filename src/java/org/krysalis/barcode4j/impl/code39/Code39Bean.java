@@ -57,6 +57,7 @@ public class Code39Bean extends AbstractBarcodeBean {
      * @param mode the checksum mode
      */
     public void setChecksumMode(ChecksumMode mode) {
+        checkMutable();
         this.checksumMode = mode;
     }
 
@@ -81,6 +82,7 @@ public class Code39Bean extends AbstractBarcodeBean {
      * @param width the interchar gap width
      */
     public void setIntercharGapWidth(double width) {
+        checkMutable();
         this.intercharGapWidth = width;
     }
 
@@ -97,6 +99,7 @@ public class Code39Bean extends AbstractBarcodeBean {
      * @param value the wide factory (should be > 1.0)
      */
     public void setWideFactor(double value) {
+        checkMutable();
         if (value <= 1.0) {
             throw new IllegalArgumentException("wide factor must be > 1.0");
         }
@@ -118,6 +121,7 @@ public class Code39Bean extends AbstractBarcodeBean {
      * @param value true to enable the start/stop character, false to disable
      */
     public void setDisplayStartStop(boolean value) {
+        checkMutable();
         this.displayStartStop = value;
         if (value) {
             //Checksum must also be enabled if start/stop is shown
@@ -141,6 +145,7 @@ public class Code39Bean extends AbstractBarcodeBean {
      *   false to ignore
      */
     public void setDisplayChecksum(boolean value) {
+        checkMutable();
         if (isDisplayStartStop() && !value) {
             return; //display-checksum may not be false if start/stop is displayed
         }
@@ -161,6 +166,7 @@ public class Code39Bean extends AbstractBarcodeBean {
      * @param value true to enable the extended character set
      */
     public void setExtendedCharSetEnabled(boolean value) {
+        checkMutable();
         this.extendedCharSet = value;
     }
 
@@ -18,7 +18,9 @@ package org.krysalis.barcode4j.impl.datamatrix;
 import java.awt.Dimension;
 
 import org.krysalis.barcode4j.impl.ConfigurableBarcodeGenerator;
+import org.krysalis.barcode4j.tools.DefaultURLResolver;
 import org.krysalis.barcode4j.tools.Length;
+import org.krysalis.barcode4j.tools.WorkerPool;
 
 import org.apache.avalon.framework.configuration.Configurable;
 import org.apache.avalon.framework.configuration.Configuration;
@@ -64,6 +66,30 @@ public class DataMatrix extends ConfigurableBarcodeGenerator
         if (size != null) {
             getDataMatrixBean().setMaxSize(parseSymbolSize(size));
         }
+
+        getDataMatrixBean().setMinimalEncoding(
+                cfg.getChild("minimal-encoding").getValueAsBoolean(false));
+        getDataMatrixBean().setGS1Mode(
+                cfg.getChild("gs1-mode").getValueAsBoolean(false));
+
+        getDataMatrixBean().setMaxSymbols(
+                cfg.getChild("max-symbols").getValueAsInteger(1));
+
+        if (cfg.getChild("parallel").getValueAsBoolean(false)) {
+            getDataMatrixBean().setWorkerPool(WorkerPool.getDefaultInstance());
+        }
+
+        Configuration resolverCfg = cfg.getChild("url-resolver", false);
+        if (resolverCfg != null) {
+            getDataMatrixBean().setURLResolver(new DefaultURLResolver(
+                    resolverCfg.getAttributeAsInteger("max-size",
+                            DefaultURLResolver.DEFAULT_MAX_CONTENT_LENGTH),
+                    resolverCfg.getAttributeAsInteger("cache-size",
+                            DefaultURLResolver.DEFAULT_CACHE_SIZE),
+                    resolverCfg.getAttributeAsLong("cache-ttl",
+                            DefaultURLResolver.DEFAULT_TIME_TO_LIVE / 1000) * 1000,
+                    resolverCfg.getAttributeAsBoolean("offline", false)));
+        }
     }
 
     private Dimension parseSymbolSize(String size) {
@@ -16,15 +16,18 @@
 package org.krysalis.barcode4j.impl.datamatrix;
 
 import java.awt.Dimension;
-import java.io.IOException;
 
 import org.krysalis.barcode4j.BarcodeDimension;
+import org.krysalis.barcode4j.BitMatrix;
 import org.krysalis.barcode4j.TwoDimBarcodeLogicHandler;
 import org.krysalis.barcode4j.impl.AbstractBarcodeBean;
 import org.krysalis.barcode4j.impl.DefaultTwoDimCanvasLogicHandler;
 import org.krysalis.barcode4j.output.Canvas;
 import org.krysalis.barcode4j.output.CanvasProvider;
+import org.krysalis.barcode4j.tools.DefaultURLResolver;
+import org.krysalis.barcode4j.tools.URLResolver;
 import org.krysalis.barcode4j.tools.UnitConv;
+import org.krysalis.barcode4j.tools.WorkerPool;
 
 /**
  * This class is an implementation of DataMatrix (ISO 16022:2000(E)).
@@ -47,6 +50,28 @@ public class DataMatrixBean extends AbstractBarcodeBean {
     /** Optional: the maximum size of the symbol. */
     private Dimension maxSize;
 
+    /** True if the encoder producing the smallest number of codewords is used. */
+    private boolean minimalEncoding;
+
+    /** True if the message is encoded as GS1 DataMatrix. */
+    private boolean gs1Mode;
+
+    /** Optional: the resolver for messages enclosed in "url()". */
+    private URLResolver urlResolver;
+
+    /** The maximum number of symbols a message may be split into (structured append). */
+    private int maxSymbols = 1;
+
+    /** Optional: the pool calculating the error correction of large symbols in parallel. */
+    private WorkerPool workerPool;
+
+    /**
+     * The symbols satisfying the shape and size constraints (created on demand). Not
+     * synchronized: concurrent calls may look up the index twice but always store an
+     * equivalent, immutable instance.
+     */
+    private DataMatrixSymbolIndex symbolIndex;
+
     /** Create a new instance. */
     public DataMatrixBean() {
         this.height = 0.0; //not used by DataMatrix
@@ -61,7 +86,9 @@ public class DataMatrixBean extends AbstractBarcodeBean {
      * <code>SymbolShapeHint.FORCE_SQUARE</code> or <code>SymbolShapeHint.FORCE_RECTANGLE</code>.
      */
     public void setShape(SymbolShapeHint shape) {
+        checkMutable();
         this.shape = shape;
+        this.symbolIndex = null;
     }
 
     /**
@@ -77,7 +104,9 @@ public class DataMatrixBean extends AbstractBarcodeBean {
      * @param minSize the minimum size (in pixels), or null for no constraint
      */
     public void setMinSize(Dimension minSize) {
-        this.minSize = new Dimension(minSize);
+        checkMutable();
+        this.minSize = (minSize != null ? new Dimension(minSize) : null);
+        this.symbolIndex = null;
     }
 
     /**
@@ -98,7 +127,9 @@ public class DataMatrixBean extends AbstractBarcodeBean {
      * @param maxSize the maximum size (in pixels), or null for no constraint
      */
     public void setMaxSize(Dimension maxSize) {
-        this.maxSize = new Dimension(maxSize);
+        checkMutable();
+        this.maxSize = (maxSize != null ? new Dimension(maxSize) : null);
+        this.symbolIndex = null;
     }
 
     /**
@@ -114,6 +145,128 @@ public class DataMatrixBean extends AbstractBarcodeBean {
         }
     }
 
+    /**
+     * Controls which high-level encoder is used. By default, the encodation modes are chosen
+     * with the look-ahead algorithm described in annex P of ISO/IEC 16022:2000(E). The minimal
+     * encoder instead determines the mode sequence resulting in the smallest number of
+     * codewords which often allows a smaller symbol. It takes somewhat longer to encode.
+     * @param value true to use the minimal encoder, false for the annex P algorithm
+     */
+    public void setMinimalEncoding(boolean value) {
+        checkMutable();
+        this.minimalEncoding = value;
+    }
+
+    /**
+     * Indicates whether the encoder producing the smallest number of codewords is used.
+     * @return true if the minimal encoder is used, false for the annex P algorithm
+     */
+    public boolean isMinimalEncoding() {
+        return this.minimalEncoding;
+    }
+
+    /**
+     * Enables or disables GS1 mode. In GS1 mode, the message consists of GS1 application
+     * identifiers and their data without brackets (as for EAN-128). Variable-length fields
+     * followed by another AI are terminated with a group separator (GS, ASCII 29). The message
+     * is validated and the symbol starts with FNC1 as required for GS1 DataMatrix.
+     * @param value true to enable GS1 mode
+     */
+    public void setGS1Mode(boolean value) {
+        checkMutable();
+        this.gs1Mode = value;
+    }
+
+    /**
+     * Indicates whether the message is encoded as GS1 DataMatrix.
+     * @return true if GS1 mode is enabled
+     */
+    public boolean isGS1Mode() {
+        return this.gs1Mode;
+    }
+
+    /**
+     * Sets the resolver used for messages enclosed in "url()". If no resolver is set, the
+     * shared {@link DefaultURLResolver} instance is used.
+     * @param resolver the URL resolver (or null for the default resolver)
+     */
+    public void setURLResolver(URLResolver resolver) {
+        checkMutable();
+        this.urlResolver = resolver;
+    }
+
+    /**
+     * Returns the resolver used for messages enclosed in "url()".
+     * @return the URL resolver
+     */
+    public URLResolver getURLResolver() {
+        return (this.urlResolver != null
+                ? this.urlResolver : DefaultURLResolver.getDefaultInstance());
+    }
+
+    /**
+     * Sets the maximum number of symbols a message may be split into. If a message doesn't fit
+     * into a single symbol and this value is larger than 1, the message is distributed over
+     * up to this number of symbols linked by structured append. They are painted side by
+     * side, separated by twice the quiet zone (or one module if the quiet zone is disabled).
+     * @param count the maximum number of symbols (1 to 16, default: 1)
+     */
+    public void setMaxSymbols(int count) {
+        checkMutable();
+        if (count < 1 || count > DataMatrixHighLevelEncoder.MAX_STRUCTURED_APPEND_SYMBOLS) {
+            throw new IllegalArgumentException("The number of symbols must be between 1 and "
+                    + DataMatrixHighLevelEncoder.MAX_STRUCTURED_APPEND_SYMBOLS + ": " + count);
+        }
+        this.maxSymbols = count;
+    }
+
+    /**
+     * Returns the maximum number of symbols a message may be split into.
+     * @return the maximum number of symbols
+     */
+    public int getMaxSymbols() {
+        return this.maxSymbols;
+    }
+
+    /**
+     * Sets the worker pool used to calculate the interleaved error correction blocks of the
+     * larger symbols (from 52x52 on, ten blocks for 144x144) in parallel. By default, all
+     * blocks are calculated in the calling thread. Parallel calculation only pays off for the
+     * largest symbols and when there are spare processors, for example on a server rendering
+     * few, very large symbols. The shared pool is available through
+     * {@link WorkerPool#getDefaultInstance()}.
+     * @param pool the worker pool, or null to calculate the error correction in the calling
+     *          thread
+     */
+    public void setWorkerPool(WorkerPool pool) {
+        checkMutable();
+        this.workerPool = pool;
+    }
+
+    /**
+     * Returns the worker pool used to calculate the error correction in parallel.
+     * @return the worker pool, or null if the error correction is calculated in the calling
+     *          thread
+     */
+    public WorkerPool getWorkerPool() {
+        return this.workerPool;
+    }
+
+    /**
+     * Returns the index of the symbols satisfying the shape and size constraints of this bean.
+     * The index is determined once and reused until the constraints change. Concurrent calls
+     * may look up the same index twice, which is harmless since indexes are immutable.
+     * @return the symbol index
+     */
+    protected DataMatrixSymbolIndex getSymbolIndex() {
+        DataMatrixSymbolIndex index = this.symbolIndex;
+        if (index == null || !index.isCurrent()) {
+            index = DataMatrixSymbolInfo.getIndex(shape, minSize, maxSize);
+            this.symbolIndex = index;
+        }
+        return index;
+    }
+
     /** {@inheritDoc} */
     public void generateBarcode(CanvasProvider canvas, String msg) {
         if ((msg == null)
@@ -121,23 +274,94 @@ public class DataMatrixBean extends AbstractBarcodeBean {
             throw new NullPointerException("Parameter msg must not be empty");
         }
 
-        TwoDimBarcodeLogicHandler handler =
-                new DefaultTwoDimCanvasLogicHandler(this, new Canvas(canvas));
+        DataMatrixEncodedSymbol[] symbols = encodeSymbols(msg);
+        if (symbols.length == 1) {
+            generateBarcode(canvas, symbols[0]);
+            return;
+        }
 
+        //Structured append: the symbols are painted side by side
+        BitMatrix[] matrices = DataMatrixLogicImpl.createSymbolMatrices(symbols,
+                getWorkerPool());
+        DefaultTwoDimCanvasLogicHandler handler = new DefaultTwoDimCanvasLogicHandler(
+                this, new Canvas(canvas), calcDimensions(symbols));
         DataMatrixLogicImpl impl = new DataMatrixLogicImpl();
-        impl.generateBarcodeLogic(handler, msg, getShape(), getMinSize(), getMaxSize());
+        double x = 0;
+        for (int i = 0; i < matrices.length; i++) {
+            handler.setOffsetX(x);
+            impl.generateBarcodeLogic(handler, msg, matrices[i]);
+            x += matrices[i].getWidth() * getModuleWidth() + getSymbolSpacing();
+        }
+    }
+
+    /**
+     * Paints a single encoded symbol, for example one symbol of a structured append sequence
+     * returned by {@link #encodeSymbols(String)}.
+     * @param canvas the canvas to paint on
+     * @param symbol the encoded symbol
+     */
+    public void generateBarcode(CanvasProvider canvas, DataMatrixEncodedSymbol symbol) {
+        TwoDimBarcodeLogicHandler handler = new DefaultTwoDimCanvasLogicHandler(
+                this, new Canvas(canvas), calcDimensions(symbol));
+
+        DataMatrixLogicImpl impl = new DataMatrixLogicImpl(getWorkerPool());
+        impl.generateBarcodeLogic(handler, symbol);
+    }
+
+    /**
+     * Encodes a message, splitting it into several symbols linked by structured append if it
+     * doesn't fit into a single symbol and if {@link #getMaxSymbols()} permits it.
+     * @param msg the message
+     * @return the encoded symbols in sequence order
+     */
+    public DataMatrixEncodedSymbol[] encodeSymbols(String msg) {
+        return DataMatrixLogicImpl.encodeSymbols(msg, this);
     }
 
     /** {@inheritDoc} */
     public BarcodeDimension calcDimensions(String msg) {
-        String encoded;
-        try {
-            encoded = DataMatrixHighLevelEncoder.encodeHighLevel(msg,
-                    shape, getMinSize(), getMaxSize());
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Cannot fetch data: " + e.getLocalizedMessage());
+        DataMatrixEncodedSymbol[] symbols = encodeSymbols(msg);
+        if (symbols.length == 1) {
+            return calcDimensions(symbols[0]);
+        } else {
+            return calcDimensions(symbols);
+        }
+    }
+
+    /**
+     * Calculates the dimensions of a sequence of symbols painted side by side.
+     * @param symbols the encoded symbols
+     * @return the barcode dimensions
+     */
+    protected BarcodeDimension calcDimensions(DataMatrixEncodedSymbol[] symbols) {
+        double width = 0;
+        double height = 0;
+        for (int i = 0; i < symbols.length; i++) {
+            DataMatrixSymbolInfo symbolInfo = symbols[i].getSymbolInfo();
+            if (i > 0) {
+                width += getSymbolSpacing();
+            }
+            width += symbolInfo.getSymbolWidth() * getModuleWidth();
+            height = Math.max(height, symbolInfo.getSymbolHeight() * getBarHeight());
         }
-        DataMatrixSymbolInfo symbolInfo = DataMatrixSymbolInfo.lookup(encoded.length(), shape);
+        double qzh = (hasQuietZone() ? getQuietZone() : 0);
+        double qzv = (hasQuietZone() ? getVerticalQuietZone() : 0);
+        return new BarcodeDimension(width, height,
+                width + (2 * qzh), height + (2 * qzv),
+                qzh, qzv);
+    }
+
+    private double getSymbolSpacing() {
+        return (hasQuietZone() ? 2 * getQuietZone() : getModuleWidth());
+    }
+
+    /**
+     * Calculates the dimensions of an already encoded symbol.
+     * @param symbol the encoded symbol
+     * @return the barcode dimensions
+     */
+    protected BarcodeDimension calcDimensions(DataMatrixEncodedSymbol symbol) {
+        DataMatrixSymbolInfo symbolInfo = symbol.getSymbolInfo();
 
         double width = symbolInfo.getSymbolWidth() * getModuleWidth();
         double height = symbolInfo.getSymbolHeight() * getBarHeight();
@@ -155,7 +379,7 @@ public class DataMatrixBean extends AbstractBarcodeBean {
 
     /** {@inheritDoc} */
     public double getBarWidth(int width) {
-        return moduleWidth;
+        return width * moduleWidth;
     }
 
     /** {@inheritDoc} */
@@ -163,4 +387,4 @@ public class DataMatrixBean extends AbstractBarcodeBean {
         return moduleWidth;
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.impl.datamatrix;
+
+/**
+ * Holds the result of the high-level encoding step of a DataMatrix message, i.e. the data
+ * codewords and the symbol size chosen for them. It allows the dimensions of a symbol to be
+ * calculated and the symbol to be painted without running the high-level encoder twice.
+ *
+ * @version $Id$
+ */
+public class DataMatrixEncodedSymbol {
+
+    private String msg;
+    private int[] codewords;
+    private DataMatrixSymbolInfo symbolInfo;
+
+    /**
+     * Creates a new encoded symbol.
+     * @param msg the original message
+     * @param codewords the data codewords (without error correction codewords)
+     * @param symbolInfo the symbol size the codewords are placed in
+     */
+    public DataMatrixEncodedSymbol(String msg, String codewords,
+            DataMatrixSymbolInfo symbolInfo) {
+        this(msg, new int[codewords.length()], symbolInfo);
+        for (int i = 0; i < this.codewords.length; i++) {
+            this.codewords[i] = codewords.charAt(i);
+        }
+    }
+
+    /**
+     * Creates a new encoded symbol.
+     * @param msg the original message
+     * @param codewords the data codewords (without error correction codewords). The array is
+     *          not copied and must not be changed afterwards.
+     * @param symbolInfo the symbol size the codewords are placed in
+     */
+    public DataMatrixEncodedSymbol(String msg, int[] codewords,
+            DataMatrixSymbolInfo symbolInfo) {
+        this.msg = msg;
+        this.codewords = codewords;
+        this.symbolInfo = symbolInfo;
+    }
+
+    /** @return the original message */
+    public String getMessage() {
+        return this.msg;
+    }
+
+    /** @return the data codewords (without error correction codewords) */
+    public String getCodewords() {
+        StringBuffer sb = new StringBuffer(this.codewords.length);
+        for (int i = 0; i < this.codewords.length; i++) {
+            sb.append((char)this.codewords[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the data codewords (without error correction codewords). The array is shared
+     * and must not be changed.
+     * @return the data codewords
+     */
+    public int[] getCodewordArray() {
+        return this.codewords;
+    }
+
+    /** @return the symbol size information */
+    public DataMatrixSymbolInfo getSymbolInfo() {
+        return this.symbolInfo;
+    }
+
+}
@@ -18,8 +18,16 @@
 
 package org.krysalis.barcode4j.impl.datamatrix;
 
+import java.util.Arrays;
+
+import org.krysalis.barcode4j.tools.WorkerPool;
+
 /**
  * Error Correction Code for ECC200.
+ * <p>
+ * The Reed-Solomon codewords are calculated using precomputed multiplication tables, one per
+ * generator polynomial, so the inner loop needs neither the log/antilog lookup nor a modulo
+ * operation. The tables are built the first time a generator polynomial is used.
  * 
  * @version $Id: DataMatrixErrorCorrection.java,v 1.2 2006/12/22 15:58:27 jmaerki Exp $
  */
@@ -30,6 +38,12 @@ public class DataMatrixErrorCorrection implements DataMatrixReedSolomonFactors {
     private static final int[] LOG;
     private static final int[] ALOG;
     
+    /** Maps a number of error correction codewords to the index of its factor set (or -1) */
+    private static final int[] FACTOR_SET_INDEX;
+    
+    /** Multiplication tables for each factor set, created on demand */
+    private static final int[][] MULTIPLICATION_TABLES = new int[FACTOR_SETS.length][];
+    
     static {
         //Create log and antilog table
         LOG = new int[256];
@@ -44,6 +58,12 @@ public class DataMatrixErrorCorrection implements DataMatrixReedSolomonFactors {
                 p ^= MODULO_VALUE;
             }
         }
+        
+        FACTOR_SET_INDEX = new int[FACTOR_SETS[FACTOR_SETS.length - 1] + 1];
+        Arrays.fill(FACTOR_SET_INDEX, -1);
+        for (int i = 0; i < FACTOR_SETS.length; i++) {
+            FACTOR_SET_INDEX[FACTOR_SETS[i]] = i;
+        }
     }
     
     /**
@@ -53,86 +73,147 @@ public class DataMatrixErrorCorrection implements DataMatrixReedSolomonFactors {
      * @return the codewords with interleaved error correction.
      */
     public static String encodeECC200(String codewords, DataMatrixSymbolInfo symbolInfo) {
-        if (codewords.length() != symbolInfo.dataCapacity) {
+        int[] data = new int[codewords.length()];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = codewords.charAt(i);
+        }
+        int[] result = encodeECC200(data, symbolInfo);
+        StringBuffer sb = new StringBuffer(result.length);
+        for (int i = 0; i < result.length; i++) {
+            sb.append((char)result[i]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates the ECC200 error correction for an encoded message.
+     * @param codewords the data codewords
+     * @param symbolInfo information about the symbol to be encoded
+     * @return the data codewords followed by the interleaved error correction codewords
+     */
+    public static int[] encodeECC200(int[] codewords, DataMatrixSymbolInfo symbolInfo) {
+        return encodeECC200(codewords, symbolInfo, null);
+    }
+
+    /**
+     * Creates the ECC200 error correction for an encoded message. If a worker pool is given,
+     * the interleaved blocks of the larger symbols (from 52x52 on, ten blocks for 144x144) are
+     * calculated in parallel on the pool. Symbols with a single block are always calculated in
+     * the calling thread.
+     * @param codewords the data codewords
+     * @param symbolInfo information about the symbol to be encoded
+     * @param pool the worker pool for the interleaved blocks, or null to calculate them in the
+     *          calling thread
+     * @return the data codewords followed by the interleaved error correction codewords
+     */
+    public static int[] encodeECC200(final int[] codewords, DataMatrixSymbolInfo symbolInfo,
+            WorkerPool pool) {
+        if (codewords.length != symbolInfo.dataCapacity) {
             throw new IllegalArgumentException(
                     "The number of codewords does not match the selected symbol");
         }
-        StringBuffer sb = new StringBuffer(symbolInfo.dataCapacity + symbolInfo.errorCodewords);
-        sb.append(codewords);
-        int blockCount = symbolInfo.getInterleavedBlockCount();
+        final int[] result = new int[symbolInfo.dataCapacity + symbolInfo.errorCodewords];
+        System.arraycopy(codewords, 0, result, 0, codewords.length);
+        final int blockCount = symbolInfo.getInterleavedBlockCount();
         if (blockCount == 1) {
-            String ecc = createECCBlock(codewords, symbolInfo.errorCodewords);
-            sb.append(ecc);
-        } else {
-            sb.setLength(sb.capacity());
-            int[] dataSizes = new int[blockCount];
-            int[] errorSizes = new int[blockCount];
-            int[] startPos = new int[blockCount];
-            for (int i = 0; i < blockCount; i++) {
-                dataSizes[i] = symbolInfo.getDataLengthForInterleavedBlock(i + 1);
-                errorSizes[i] = symbolInfo.getErrorLengthForInterleavedBlock(i + 1);
-                startPos[i] = 0;
-                if (i > 0) {
-                    startPos[i] = startPos[i - 1] + dataSizes[i];
-                }
-            }
+            createECCBlock(codewords, 0, 1, codewords.length,
+                    result, symbolInfo.dataCapacity, 1, 
+                    getMultiplicationTable(symbolInfo.errorCodewords), symbolInfo.errorCodewords);
+            return result;
+        }
+        
+        //The blocks are interleaved, so every blockCount-th codeword belongs to a block
+        if (pool == null) {
             for (int block = 0; block < blockCount; block++) {
-                StringBuffer temp = new StringBuffer(dataSizes[block]);
-                for (int d = block; d < symbolInfo.dataCapacity; d += blockCount) {
-                    temp.append(codewords.charAt(d));
-                }
-                String ecc = createECCBlock(temp.toString(), errorSizes[block]);
-                int pos = 0;
-                for (int e = block; e < errorSizes[block] * blockCount; e += blockCount) {
-                    sb.setCharAt(symbolInfo.dataCapacity + e, ecc.charAt(pos++));
-                }
+                int dataSize = symbolInfo.getDataLengthForInterleavedBlock(block + 1);
+                int errorSize = symbolInfo.getErrorLengthForInterleavedBlock(block + 1);
+                createECCBlock(codewords, block, blockCount, dataSize,
+                        result, symbolInfo.dataCapacity + block, blockCount,
+                        getMultiplicationTable(errorSize), errorSize);
             }
+            return result;
         }
-        return sb.toString();
-        
-    }
 
-    private static String createECCBlock(String codewords, int numECWords) {
-        return createECCBlock(codewords, 0, codewords.length(), numECWords);
-    }
-    
-    private static String createECCBlock(String codewords, int start, int len, int numECWords) {
-        int table = -1;
-        for (int i = 0; i < FACTOR_SETS.length; i++) {
-            if (FACTOR_SETS[i] == numECWords) {
-                table = i;
-                break;
-            }
+        //Every block writes to its own set of array elements, so no locking is necessary
+        Runnable[] tasks = new Runnable[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            final int block = i;
+            final int dataSize = symbolInfo.getDataLengthForInterleavedBlock(block + 1);
+            final int errorSize = symbolInfo.getErrorLengthForInterleavedBlock(block + 1);
+            final int[] mul = getMultiplicationTable(errorSize);
+            final int eccStart = symbolInfo.dataCapacity + block;
+            tasks[i] = new Runnable() {
+                public void run() {
+                    createECCBlock(codewords, block, blockCount, dataSize,
+                            result, eccStart, blockCount, mul, errorSize);
+                }
+            };
         }
+        pool.run(tasks);
+        return result;
+    }
+
+    /**
+     * Returns the multiplication table for the generator polynomial used to create the
+     * given number of error correction codewords. The product of a value m (0-255) and the
+     * polynomial factor k is found at index <code>m * numECWords + (numECWords - 1 - k)</code>,
+     * i.e. the factors are stored in the order the error correction codewords are emitted.
+     * @param numECWords the number of error correction codewords
+     * @return the multiplication table
+     */
+    private static int[] getMultiplicationTable(int numECWords) {
+        int table = (numECWords >= 0 && numECWords < FACTOR_SET_INDEX.length
+                ? FACTOR_SET_INDEX[numECWords] : -1);
         if (table < 0) {
             throw new IllegalArgumentException(
                     "Illegal number of error correction codewords specified: " + numECWords);
         }
-        int[] poly = DataMatrixReedSolomonFactors.FACTORS[table];
-        char[] ecc = new char[numECWords];
-        for (int i = 0; i < numECWords; i++) {
-            ecc[i] = 0;
-        }
-        for (int i = start; i < start + len; i++) {
-            int m = ecc[numECWords - 1] ^ codewords.charAt(i);
-            for (int k = numECWords - 1; k > 0; k--) {
-                if (m != 0 && poly[k] != 0) {
-                    ecc[k] = (char)(ecc[k - 1] ^ ALOG[(LOG[m] + LOG[poly[k]]) % 255]);
-                } else {
-                    ecc[k] = ecc[k - 1];
+        synchronized (MULTIPLICATION_TABLES) {
+            int[] mul = MULTIPLICATION_TABLES[table];
+            if (mul == null) {
+                int[] poly = FACTORS[table];
+                mul = new int[256 * numECWords];
+                for (int m = 1; m < 256; m++) {
+                    int row = m * numECWords;
+                    for (int k = 0; k < numECWords; k++) {
+                        if (poly[k] != 0) {
+                            mul[row + numECWords - 1 - k] = ALOG[(LOG[m] + LOG[poly[k]]) % 255];
+                        }
+                    }
                 }
+                MULTIPLICATION_TABLES[table] = mul;
             }
-            if (m != 0 && poly[0] != 0) {
-                ecc[0] = (char)(ALOG[(LOG[m] + LOG[poly[0]]) % 255]);
-            } else {
-                ecc[0] = 0;
-            }
-        }
-        char[] eccReversed = new char[numECWords];
-        for (int i = 0; i < numECWords; i++) {
-            eccReversed[i] = ecc[numECWords - i - 1]; 
+            return mul;
         }
-        return String.valueOf(eccReversed);
     }
     
+    /**
+     * Calculates the error correction codewords for one block. The calculation is done in
+     * place, using the target array elements as the shift register. The target elements
+     * must therefore be 0 when this method is called.
+     * @param data the data codewords
+     * @param start the index of the first data codeword of the block
+     * @param step the distance between two data codewords of the block
+     * @param len the number of data codewords in the block
+     * @param target the array receiving the error correction codewords
+     * @param targetStart the index of the first error correction codeword
+     * @param targetStep the distance between two error correction codewords of the block
+     * @param mul the multiplication table for the generator polynomial
+     * @param numECWords the number of error correction codewords
+     */
+    private static void createECCBlock(int[] data, int start, int step, int len,
+            int[] target, int targetStart, int targetStep, int[] mul, int numECWords) {
+        int last = targetStart + (numECWords - 1) * targetStep;
+        for (int i = 0, d = start; i < len; i++, d += step) {
+            int row = (target[targetStart] ^ data[d]) * numECWords;
+            int t = targetStart;
+            while (t < last) {
+                int next = t + targetStep;
+                target[t] = target[next] ^ mul[row++];
+                t = next;
+            }
+            target[last] = mul[row];
+        }
+    }
+
 }
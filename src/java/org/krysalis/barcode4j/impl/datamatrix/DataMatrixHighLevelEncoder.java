@@ -21,9 +21,16 @@ package org.krysalis.barcode4j.impl.datamatrix;
 import java.awt.Dimension;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
-import org.krysalis.barcode4j.tools.URLUtil;
+import org.krysalis.barcode4j.impl.code128.CheckDigit;
+import org.krysalis.barcode4j.impl.code128.Code128LogicImpl;
+import org.krysalis.barcode4j.impl.code128.EAN128AI;
+import org.krysalis.barcode4j.impl.code128.EAN128Bean;
+import org.krysalis.barcode4j.tools.URLResolver;
 
 /**
  * DataMatrix ECC 200 data encoder following the algorithm described in ISO/IEC 16022:200(E) in
@@ -47,9 +54,52 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
 
     private static final String DEFAULT_ASCII_ENCODING = "ISO-8859-1";
 
+    /* Character classes used by the look-ahead test */
+    private static final int CC_DIGIT = 0x01;
+    private static final int CC_EXTENDED = 0x02;
+    private static final int CC_NATIVE_C40 = 0x04;
+    private static final int CC_NATIVE_TEXT = 0x08;
+    private static final int CC_NATIVE_X12 = 0x10;
+    private static final int CC_X12_TERM_SEP = 0x20;
+    private static final int CC_NATIVE_EDIFACT = 0x40;
+    private static final int CC_SPECIAL_B256 = 0x80;
+
+    private static final byte[] CHAR_CLASSES = new byte[256];
+
+    static {
+        for (char ch = 0; ch < CHAR_CLASSES.length; ch++) {
+            int cc = 0;
+            cc |= (isDigit(ch) ? CC_DIGIT : 0);
+            cc |= (isExtendedASCII(ch) ? CC_EXTENDED : 0);
+            cc |= (isNativeC40(ch) ? CC_NATIVE_C40 : 0);
+            cc |= (isNativeText(ch) ? CC_NATIVE_TEXT : 0);
+            cc |= (isNativeX12(ch) ? CC_NATIVE_X12 : 0);
+            cc |= (isX12TermSep(ch) ? CC_X12_TERM_SEP : 0);
+            cc |= (isNativeEDIFACT(ch) ? CC_NATIVE_EDIFACT : 0);
+            cc |= (isSpecialB256(ch) ? CC_SPECIAL_B256 : 0);
+            CHAR_CLASSES[ch] = (byte)cc;
+        }
+    }
+
     private static final String URL_START = "url(";
     private static final String URL_END = ")";
 
+    /** The field separator in GS1 mode (GS) */
+    private static final char GS1_SEPARATOR = '\u001D';
+
+    /** The maximum number of symbols linked by structured append */
+    public static final int MAX_STRUCTURED_APPEND_SYMBOLS = 16;
+    /** Structured append codeword, symbol sequence indicator and two file ID codewords */
+    private static final int STRUCTURED_APPEND_HEADER_LENGTH = 4;
+    /** Characters checked beyond the split point found by the binary search (EDIFACT group) */
+    private static final int SPLIT_LOOKAHEAD = 4;
+    /**
+     * Marked digits from which the look-ahead returns to ASCII without scanning: 12 digits
+     * are 6 codewords as digit pairs and 8 in C40, Text or X12, which pays for the unlatch
+     * and a later latch back.
+     */
+    private static final int NUMERIC_RUN_THRESHOLD = 12;
+
     /**
      * Converts the message to a byte array using the default encoding (cp437) as defined by the
      * specification
@@ -110,17 +160,55 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
      */
     public static String encodeHighLevel(String msg,
             SymbolShapeHint shape, Dimension minSize, Dimension maxSize) throws IOException {
-        //the codewords 0..255 are encoded as Unicode characters
-        Encoder[] encoders = new Encoder[] {new ASCIIEncoder(),
-                new C40Encoder(), new TextEncoder(), new X12Encoder(), new EdifactEncoder(),
-                new Base256Encoder()};
+        DataMatrixBean bean = new DataMatrixBean();
+        bean.setShape(shape);
+        bean.setMinSize(minSize);
+        bean.setMaxSize(maxSize);
+        int[] codewords = encodeHighLevelToCodewords(msg, bean);
+        StringBuffer sb = new StringBuffer(codewords.length);
+        for (int i = 0; i < codewords.length; i++) {
+            sb.append((char)codewords[i]);
+        }
+        return sb.toString();
+    }
 
-        int encodingMode = ASCII_ENCODATION; //Default mode
-        EncoderContext context = createEncoderContext(msg);
-        context.setSymbolShape(shape);
-        context.setSizeConstraints(minSize, maxSize);
+    /**
+     * Performs message encoding of a DataMatrix message with the settings of a DataMatrix bean:
+     * its shape and size constraints, the encoder ({@link DataMatrixBean#isMinimalEncoding()}),
+     * GS1 mode and the resolver for messages enclosed in "url()". Either the algorithm
+     * described in annex P of ISO/IEC 16022:2000(E) is used or, if requested, an encoder that
+     * determines the sequence of encodation modes resulting in the smallest number of codewords.
+     * <p>
+     * In GS1 mode, the message is a sequence of GS1 application identifiers (AIs) and their
+     * data, written without brackets, as for EAN-128. Variable-length fields not at the end of
+     * the message are terminated by a group separator (GS, ASCII 29). The message is
+     * validated against the EAN-128 AI table (check digits are added or verified). The
+     * symbol starts with FNC1 (codeword 232) and uses GS as the field separator.
+     * @param msg the message
+     * @param bean the bean providing the encoder settings
+     * @return the data codewords (values from 0 to 255), including padding. The length of
+     *          the array is the data capacity of the symbol.
+     * @throws IOException if an I/O error occurs while fetching external data
+     */
+    public static int[] encodeHighLevelToCodewords(String msg, DataMatrixBean bean)
+                throws IOException {
+        boolean gs1 = bean.isGS1Mode();
+        EncoderContext context;
+        if (gs1) {
+            context = createGS1EncoderContext(msg);
+        } else {
+            context = createEncoderContext(msg, bean.getURLResolver());
+        }
+        return encode(context, msg, bean.getSymbolIndex(), bean.isMinimalEncoding(), gs1);
+    }
 
-        if (msg.startsWith(MACRO_05_HEADER) && msg.endsWith(MACRO_TRAILER)) {
+    private static int[] encode(EncoderContext context, String msg,
+            DataMatrixSymbolIndex symbolIndex, boolean minimal, boolean gs1) {
+        context.setSymbolIndex(symbolIndex);
+
+        if (gs1) {
+            context.writeCodeword(FNC1);
+        } else if (msg.startsWith(MACRO_05_HEADER) && msg.endsWith(MACRO_TRAILER)) {
             context.writeCodeword(MACRO_05);
             context.setSkipAtEnd(2);
             context.pos += MACRO_05_HEADER.length();
@@ -129,15 +217,150 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
             context.setSkipAtEnd(2);
             context.pos += MACRO_06_HEADER.length();
         }
+        return encode(context, minimal);
+    }
+
+    /**
+     * Encodes a message as a sequence of up to 16 symbols linked by structured append (ISO/IEC
+     * 16022:2006, 5.6) if it doesn't fit into a single symbol. The message is split greedily:
+     * each part is the longest prefix of the remaining message found to fit into a symbol
+     * satisfying the constraints. The split point is found by a binary search over the part
+     * length, which assumes that a longer part never needs fewer codewords. That only holds
+     * up to a few characters: C40, Text and X12 pack three characters into two codewords and
+     * EDIFACT four into three, so a part can fit while one that is a character or two
+     * shorter doesn't (it ends with an unlatch or falls back to ASCII). Each part found
+     * always fits, and the lengths just beyond it are checked one by one, so such a part
+     * isn't cut short. Each part is preceded by the structured append header
+     * (codeword 233, the symbol sequence indicator and the two file identification codewords).
+     * If the message fits into a single symbol, it is encoded as usual. Macro 05/06 headers
+     * and GS1 mode are not supported when the message is split.
+     * The settings are taken from the bean as for
+     * {@link #encodeHighLevelToCodewords(String, DataMatrixBean)}, the maximum number of
+     * symbols from {@link DataMatrixBean#getMaxSymbols()}.
+     * @param msg the message
+     * @param bean the bean providing the encoder settings
+     * @return the data codewords of every symbol (values from 0 to 255), including padding.
+     *          The length of each array is the data capacity of the symbol.
+     * @throws IOException if an I/O error occurs while fetching external data
+     */
+    public static int[][] encodeHighLevelToSymbols(String msg, DataMatrixBean bean)
+                throws IOException {
+        int maxSymbols = bean.getMaxSymbols();
+        if (maxSymbols == 1 || bean.isGS1Mode()) {
+            return new int[][] {encodeHighLevelToCodewords(msg, bean)};
+        }
+        DataMatrixSymbolIndex symbolIndex = bean.getSymbolIndex();
+        boolean minimal = bean.isMinimalEncoding();
+        EncoderContext context = createEncoderContext(msg, bean.getURLResolver());
+        String data = context.getMessage();
+        int len = data.length();
+        int maxCapacity = symbolIndex.getMaxCapacity();
+        //Characters need at least half a codeword: larger messages can't fit a single symbol
+        if (len <= 2 * maxCapacity) {
+            try {
+                return new int[][] {encode(context, msg, symbolIndex, minimal, false)};
+            } catch (IllegalArgumentException iae) {
+                //too large for a single symbol
+            }
+        }
+
+        List parts = new ArrayList(maxSymbols);
+        int pos = 0;
+        while (pos < len) {
+            if (parts.size() == maxSymbols) {
+                throw new IllegalArgumentException("The message doesn't fit into "
+                        + maxSymbols + " symbols");
+            }
+            //Binary search for the longest part that fits into a single symbol
+            int limit = Math.min(len, pos + 2 * maxCapacity);
+            int low = pos;
+            int high = limit;
+            int[] best = null;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                int[] codewords = encodePart(data.substring(pos, mid), symbolIndex, minimal);
+                if (codewords != null) {
+                    low = mid;
+                    best = codewords;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            //The encoded length is only monotonic up to a C40 triple or EDIFACT group
+            for (int end = low + 1, last = Math.min(limit, low + SPLIT_LOOKAHEAD);
+                    end <= last; end++) {
+                int[] codewords = encodePart(data.substring(pos, end), symbolIndex, minimal);
+                if (codewords != null) {
+                    low = end;
+                    best = codewords;
+                }
+            }
+            if (best == null) {
+                throw new IllegalArgumentException(
+                        "The symbols are too small for structured append");
+            }
+            parts.add(best);
+            pos = low;
+        }
+
+        //The header has a fixed size, so its content can be filled in after the split
+        int count = parts.size();
+        int fileID = (data.hashCode() & 0x7fffffff) % (254 * 254);
+        int[][] symbols = new int[count][];
+        for (int i = 0; i < count; i++) {
+            symbols[i] = (int[])parts.get(i);
+            symbols[i][1] = (i << 4) | (17 - count);
+            symbols[i][2] = fileID / 254 + 1;
+            symbols[i][3] = fileID % 254 + 1;
+        }
+        return symbols;
+    }
+
+    /**
+     * Encodes one part of a structured append sequence.
+     * @param part the part of the message (binary string)
+     * @param symbolIndex the index of the symbols satisfying the shape and size constraints
+     * @param minimal true to minimize the number of codewords instead of following annex P
+     * @return the codewords or null if the part doesn't fit into a symbol
+     */
+    private static int[] encodePart(String part, DataMatrixSymbolIndex symbolIndex,
+            boolean minimal) {
+        byte[] bytes = new byte[part.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte)part.charAt(i);
+        }
+        EncoderContext context = new EncoderContext(bytes);
+        context.setSymbolIndex(symbolIndex);
+        context.writeCodeword(STRUCTURED_APPEND);
+        for (int i = 0; i < STRUCTURED_APPEND_HEADER_LENGTH - 1; i++) {
+            context.writeCodeword((char)1); //filled in when the number of parts is known
+        }
+        try {
+            return encode(context, minimal);
+        } catch (IllegalArgumentException iae) {
+            return null; //no symbol is large enough
+        }
+    }
+
+    private static int[] encode(EncoderContext context, boolean minimal) {
+        //the codewords 0..255 are encoded as Unicode characters
+        Encoder[] encoders = new Encoder[] {new ASCIIEncoder(),
+                new C40Encoder(), new TextEncoder(), new X12Encoder(), new EdifactEncoder(),
+                new Base256Encoder()};
 
-        while (context.hasMoreCharacters()) {
-            encoders[encodingMode].encode(context);
-            if (context.newEncoding >= 0) {
-                encodingMode = context.newEncoding;
-                context.resetEncoderSignal();
+        int encodingMode = ASCII_ENCODATION; //Default mode
+        if (minimal) {
+            encodingMode = new MinimalEncoder().encode(context);
+        } else {
+            while (context.hasMoreCharacters()) {
+                encoders[encodingMode].encode(context);
+                if (context.newEncoding >= 0) {
+                    encodingMode = context.newEncoding;
+                    context.resetEncoderSignal();
+                }
             }
         }
-        int len = context.codewords.length();
+        int len = context.getCodewordCount();
         context.updateSymbolInfo();
         int capacity = context.symbolInfo.dataCapacity;
         if (len < capacity) {
@@ -149,23 +372,166 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
             }
         }
         //Padding
-        StringBuffer codewords = context.codewords;
-        if (codewords.length() < capacity) {
-            codewords.append(DataMatrixConstants.PAD);
+        if (context.getCodewordCount() < capacity) {
+            context.writeCodeword(DataMatrixConstants.PAD);
+        }
+        while (context.getCodewordCount() < capacity) {
+            context.writeCodeword(randomize253State(DataMatrixConstants.PAD,
+                    context.getCodewordCount() + 1));
+        }
+
+        return context.getCodewords();
+    }
+
+    /**
+     * Creates the encoder context for a GS1 message by walking its application identifiers
+     * with the EAN-128 AI table. Every field is validated (length, characters, date and
+     * check digit) and a missing check digit is added. GS is written after every
+     * variable-length field that is followed by another AI. The AIs and the numeric fields
+     * are marked as numeric runs for the encoders.
+     * @param msg the message (AIs and data without brackets)
+     * @return the encoder context for the element string following the leading FNC1
+     */
+    private static EncoderContext createGS1EncoderContext(String msg) {
+        final int len = msg.length();
+        StringBuffer sb = new StringBuffer(len + 1);
+        BitSet numeric = new BitSet(len + 1);
+        int offset = 0;
+        while (offset < len) {
+            EAN128AI ai;
+            try {
+                ai = EAN128AI.getAI(msg, offset);
+            } catch (Exception e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+            int dataStart = offset + ai.getIDLength();
+            if (dataStart > len) {
+                throw new IllegalArgumentException("Unable to read AI: Message too short!");
+            }
+            int end = dataStart;
+            while (end < len && !isGS1Separator(msg.charAt(end))) {
+                end++;
+            }
+            final int minLen = ai.getMinLength();
+            final int maxLen = ai.getMaxLength();
+            boolean addCheckDigit = false;
+            if (end - dataStart < minLen) {
+                if (ai.canAddCheckDigit() && end - dataStart == minLen - 1) {
+                    addCheckDigit = true;
+                } else if ((ai.isFixed() || minLen == maxLen) && end < len) {
+                    throw new IllegalArgumentException("Separator not allowed in fixed length"
+                            + " field of AI " + msg.substring(offset, dataStart) + "!");
+                } else {
+                    throw new IllegalArgumentException("Field \""
+                            + msg.substring(dataStart, end) + "\" too short! Length should be "
+                            + minLen + " at least!");
+                }
+            } else if (end - dataStart > maxLen) {
+                if (ai.isFixed() || minLen == maxLen) {
+                    end = dataStart + maxLen;
+                } else {
+                    throw new IllegalArgumentException("Variable length field \""
+                            + msg.substring(dataStart, end) + "\" too long! Length should be "
+                            + maxLen + " at the most!");
+                }
+            }
+
+            appendGS1Field(msg, offset, dataStart, true, sb, numeric);
+            final int parts = ai.getPartCount();
+            int[] partStarts = new int[parts + 1];
+            partStarts[0] = offset;
+            int start = dataStart;
+            for (int i = 0; i < parts; i++) {
+                partStarts[i + 1] = start;
+                int partEnd;
+                if (ai.getPartMinLength(i) == ai.getPartMaxLength(i)) {
+                    partEnd = start + ai.getPartMinLength(i);
+                } else {
+                    partEnd = end - ai.getMinLengthAfterVariableLength();
+                }
+                byte type = ai.getPartType(i);
+                if (EAN128AI.isCheckDigitType(type)) {
+                    char cd = CheckDigit.calcCheckdigit(msg, partStarts[ai.getCheckDigitStart(i)],
+                            start, CheckDigit.CD31);
+                    if (!addCheckDigit || i < parts - 1) {
+                        char found = msg.charAt(start);
+                        if (found != cd && found != EAN128Bean.DEFAULT_CHECK_DIGIT_MARKER) {
+                            throw new IllegalArgumentException("Checkdigit is wrong! Correct is "
+                                    + cd + " but I found " + found + "!");
+                        }
+                    }
+                    numeric.set(sb.length());
+                    sb.append(cd);
+                } else {
+                    checkGS1Part(msg, start, partEnd, type);
+                    appendGS1Field(msg, start, partEnd, type != EAN128AI.TYPEAlphaNum
+                            && type != EAN128AI.TYPEAlpha, sb, numeric);
+                }
+                start = partEnd;
+            }
+
+            offset = end;
+            if (offset < len && isGS1Separator(msg.charAt(offset))) {
+                offset++;
+            }
+            if (!ai.isFixed() && offset < len) {
+                sb.append(GS1_SEPARATOR);
+            }
         }
-        while (codewords.length() < capacity) {
-            codewords.append(randomize253State(DataMatrixConstants.PAD, codewords.length() + 1));
+        EncoderContext context = new EncoderContext(sb.toString());
+        context.setNumericRuns(numeric);
+        return context;
+    }
+
+    private static boolean isGS1Separator(char ch) {
+        return ch == GS1_SEPARATOR || ch == Code128LogicImpl.FNC_1;
+    }
+
+    private static void appendGS1Field(String msg, int start, int end, boolean isNumeric,
+            StringBuffer sb, BitSet numeric) {
+        if (isNumeric) {
+            numeric.set(sb.length(), sb.length() + end - start);
         }
+        sb.append(msg.substring(start, end));
+    }
 
-        return context.codewords.toString();
+    private static void checkGS1Part(String msg, int start, int end, byte type) {
+        if (type == EAN128AI.TYPEError) {
+            throw new IllegalArgumentException("This AI is not allowed by configuration!");
+        }
+        for (int i = start; i < end; i++) {
+            char ch = msg.charAt(i);
+            if (type == EAN128AI.TYPEAlphaNum || type == EAN128AI.TYPEAlpha) {
+                if (ch > 128 || (type == EAN128AI.TYPEAlpha && Character.isDigit(ch))) {
+                    throw new IllegalArgumentException("Character \'" + ch + "\' must be a"
+                            + " valid ASCII byte" + (type == EAN128AI.TYPEAlpha
+                                    ? " but not number!" : "!"));
+                }
+            } else if (!Character.isDigit(ch)) {
+                throw new IllegalArgumentException("Character \'" + ch + "\' must be a Digit!");
+            }
+        }
+        if (type == EAN128AI.TYPENumDate) {
+            char cm1 = msg.charAt(start + 2);
+            char cm2 = msg.charAt(start + 3);
+            char cd1 = msg.charAt(start + 4);
+            char cd2 = msg.charAt(start + 5);
+            if ((cm1 == '0' && cm2 == '0') || (cm1 == '1' && cm2 > '2') || cm1 > '1') {
+                throw new IllegalArgumentException("Illegal Month \"" + cm1 + cm2 + "\"!");
+            }
+            if ((cd1 == '3' && cd2 > '1') || cd1 > '3') {
+                throw new IllegalArgumentException("Illegal Day \"" + cd1 + cd2 + "\"!");
+            }
+        }
     }
 
-    private static EncoderContext createEncoderContext(String msg) throws IOException {
+    private static EncoderContext createEncoderContext(String msg, URLResolver resolver)
+                throws IOException {
         if (msg.startsWith(URL_START) && msg.endsWith(URL_END)) {
             //URL processing
             String url = msg.substring(URL_START.length(), msg.length() - URL_END.length());
             byte[] data;
-            data = URLUtil.getData(url, DEFAULT_ASCII_ENCODING);
+            data = resolver.getData(url, DEFAULT_ASCII_ENCODING);
             return new EncoderContext(data);
         } else {
             return new EncoderContext(msg);
@@ -175,15 +541,23 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
     private static class EncoderContext {
 
         private String msg;
-        private SymbolShapeHint shape = SymbolShapeHint.FORCE_NONE;
-        private Dimension minSize;
-        private Dimension maxSize;
-        private StringBuffer codewords;
+        private DataMatrixSymbolIndex symbolIndex;
+        private int[] codewords;
+        private int codewordCount;
         private int pos = 0;
         private int newEncoding = -1;
         private DataMatrixSymbolInfo symbolInfo;
         private int skipAtEnd = 0;
 
+        /* Look-ahead support: built once per message, reused for every look-ahead test */
+        private byte[] charClasses;
+        private boolean[] x12TermSepAhead;
+        /* GS1 mode: end of the numeric run (AI or numeric field) a position belongs to */
+        private int[] numericRunEnds;
+        private float[] charCounts = new float[6];
+        private int[] intCharCounts = new int[6];
+        private byte[] mins = new byte[6];
+
         public EncoderContext(String msg) {
             //From this point on Strings are not Unicode anymore!
             byte[] msgBinary;
@@ -202,7 +576,8 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
                 sb.append(ch);
             }
             this.msg = sb.toString(); //Not Unicode here!
-            this.codewords = new StringBuffer(msg.length());
+            this.codewords = new int[Math.max(msg.length(), 8)];
+            initLookAhead();
         }
 
         public EncoderContext(byte[] data) {
@@ -213,16 +588,63 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
                 sb.append(ch);
             }
             this.msg = sb.toString(); //Not Unicode here!
-            this.codewords = new StringBuffer(msg.length());
+            this.codewords = new int[Math.max(msg.length(), 8)];
+            initLookAhead();
+        }
+
+        /**
+         * Classifies all characters of the message once, so the look-ahead test doesn't have
+         * to do it again every time it scans the rest of the message.
+         */
+        private void initLookAhead() {
+            int len = this.msg.length();
+            this.charClasses = new byte[len];
+            for (int i = 0; i < len; i++) {
+                this.charClasses[i] = CHAR_CLASSES[this.msg.charAt(i)];
+            }
+            //x12TermSepAhead[p]: the first character from p on that is not a native X12
+            //character other than a terminator/separator is a terminator/separator
+            this.x12TermSepAhead = new boolean[len + 1];
+            for (int i = len - 1; i >= 0; i--) {
+                int cc = this.charClasses[i];
+                if ((cc & CC_X12_TERM_SEP) != 0) {
+                    this.x12TermSepAhead[i] = true;
+                } else if ((cc & CC_NATIVE_X12) != 0) {
+                    this.x12TermSepAhead[i] = this.x12TermSepAhead[i + 1];
+                }
+            }
         }
 
-        public void setSymbolShape(SymbolShapeHint shape) {
-            this.shape = shape;
+        /**
+         * Marks the characters known to be digits of a numeric run, for example the AIs and
+         * numeric fields of a GS1 message.
+         * @param numeric the positions of the marked characters
+         */
+        public void setNumericRuns(BitSet numeric) {
+            int len = this.msg.length();
+            this.numericRunEnds = new int[len + 1];
+            for (int i = len - 1; i >= 0; i--) {
+                if (numeric.get(i)) {
+                    this.numericRunEnds[i] = (numeric.get(i + 1)
+                            ? this.numericRunEnds[i + 1] : i + 1);
+                }
+            }
+        }
+
+        /**
+         * Returns the number of marked digits starting at the given position.
+         * @param p the position
+         * @return the length of the remaining numeric run (0 if the position isn't marked)
+         */
+        public int getNumericRunLength(int p) {
+            if (this.numericRunEnds == null || this.numericRunEnds[p] == 0) {
+                return 0;
+            }
+            return this.numericRunEnds[p] - p;
         }
 
-        public void setSizeConstraints(Dimension minSize, Dimension maxSize) {
-            this.minSize = minSize;
-            this.maxSize = maxSize;
+        public void setSymbolIndex(DataMatrixSymbolIndex symbolIndex) {
+            this.symbolIndex = symbolIndex;
         }
 
         public String getMessage() {
@@ -242,15 +664,31 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
         }
 
         public void writeCodewords(String codewords) {
-            this.codewords.append(codewords);
+            for (int i = 0, c = codewords.length(); i < c; i++) {
+                writeCodeword(codewords.charAt(i));
+            }
         }
 
         public void writeCodeword(char codeword) {
-            this.codewords.append(codeword);
+            if (this.codewordCount == this.codewords.length) {
+                int[] larger = new int[this.codewords.length * 2];
+                System.arraycopy(this.codewords, 0, larger, 0, this.codewordCount);
+                this.codewords = larger;
+            }
+            this.codewords[this.codewordCount++] = codeword;
         }
 
         public int getCodewordCount() {
-            return this.codewords.length();
+            return this.codewordCount;
+        }
+
+        public int[] getCodewords() {
+            if (this.codewordCount == this.codewords.length) {
+                return this.codewords;
+            }
+            int[] result = new int[this.codewordCount];
+            System.arraycopy(this.codewords, 0, result, 0, this.codewordCount);
+            return result;
         }
 
         public void signalEncoderChange(int encoding) {
@@ -279,7 +717,7 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
 
         public void updateSymbolInfo(int len) {
             if (this.symbolInfo == null || len > this.symbolInfo.dataCapacity) {
-                this.symbolInfo = DataMatrixSymbolInfo.lookup(len, shape, minSize, maxSize, true);
+                this.symbolInfo = symbolIndex.lookup(len, true);
             }
         }
 
@@ -301,14 +739,15 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
 
         public void encode(EncoderContext context) {
             //step B
-            int n = determineConsecutiveDigitCount(context.msg, context.pos);
-            if (n >= 2) {
+            if (context.pos + 1 < context.msg.length()
+                    && (context.charClasses[context.pos] & CC_DIGIT) != 0
+                    && (context.charClasses[context.pos + 1] & CC_DIGIT) != 0) {
                 context.writeCodeword(encodeASCIIDigits(context.msg.charAt(context.pos),
                         context.msg.charAt(context.pos + 1)));
                 context.pos += 2;
             } else {
                 char c = context.getCurrentChar();
-                int newMode = lookAheadTest(context.msg, context.pos, getEncodingMode());
+                int newMode = lookAheadTest(context, context.pos, getEncodingMode());
                 if (newMode != getEncodingMode()) {
                     switch (newMode) {
                     case BASE256_ENCODATION:
@@ -394,7 +833,7 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
 
                 int count = buffer.length();
                 if ((count % 3) == 0) {
-                    int newMode = lookAheadTest(context.msg, context.pos, getEncodingMode());
+                    int newMode = lookAheadTest(context, context.pos, getEncodingMode());
                     if (newMode != getEncodingMode()) {
                         context.signalEncoderChange(newMode);
                         break;
@@ -592,7 +1031,7 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
                 if ((count % 3) == 0) {
                     writeNextTriplet(context, buffer);
 
-                    int newMode = lookAheadTest(context.msg, context.pos, getEncodingMode());
+                    int newMode = lookAheadTest(context, context.pos, getEncodingMode());
                     if (newMode != getEncodingMode()) {
                         context.signalEncoderChange(newMode);
                         break;
@@ -660,7 +1099,7 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
                     context.writeCodewords(encodeToCodewords(buffer, 0));
                     buffer.delete(0, 4);
 
-                    int newMode = lookAheadTest(context.msg, context.pos, getEncodingMode());
+                    int newMode = lookAheadTest(context, context.pos, getEncodingMode());
                     if (newMode != getEncodingMode()) {
                         context.signalEncoderChange(ASCII_ENCODATION);
                         break;
@@ -773,7 +1212,7 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
 
                 context.pos++;
 
-                int newMode = lookAheadTest(context.msg, context.pos, getEncodingMode());
+                int newMode = lookAheadTest(context, context.pos, getEncodingMode());
                 if (newMode != getEncodingMode()) {
                     context.signalEncoderChange(newMode);
                     break;
@@ -803,6 +1242,455 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
 
     }
 
+    /**
+     * Encoder that determines the sequence of encodation modes resulting in the smallest
+     * number of data codewords instead of following the look-ahead heuristic of annex P.
+     * <p>
+     * The message is treated as a graph whose nodes are (position, encodation mode) pairs.
+     * The edges are the codeword groups each mode produces from a position (a character or
+     * digit pair in ASCII, a value triplet in C40/Text, a character triplet in X12, a
+     * character quadruple in EDIFACT, a byte in Base 256) and the latches and unlatches
+     * between the modes. All edges lead forward or stay on the same position, so the shortest
+     * path is found in a single pass over the message.
+     * <p>
+     * The end-of-symbol shortcuts of annex P depend on the remaining capacity of the symbol
+     * (omitting the C40, Text or X12 unlatch if the symbol is full or before a single trailing
+     * ASCII codeword, omitting the EDIFACT unlatch if at most two codewords are left). They
+     * are applied after the search, by {@link #chooseEnding(EncoderContext, int, int)}, which
+     * checks every candidate ending against the symbol that would actually be used. The
+     * two-byte length field of Base 256 sections with more than 249 bytes is only accounted
+     * for on the cheapest path to each position.
+     */
+    private static class MinimalEncoder {
+
+        private static final int MODES = 6;
+        private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+        /** Number of C40 values for each character */
+        private static final byte[] C40_SIZES = new byte[256];
+        /** Number of Text values for each character */
+        private static final byte[] TEXT_SIZES = new byte[256];
+
+        static {
+            C40Encoder c40 = new C40Encoder();
+            TextEncoder text = new TextEncoder();
+            StringBuffer sb = new StringBuffer();
+            for (char ch = 0; ch < C40_SIZES.length; ch++) {
+                C40_SIZES[ch] = (byte)c40.encodeChar(ch, sb);
+                TEXT_SIZES[ch] = (byte)text.encodeChar(ch, sb);
+                sb.setLength(0);
+            }
+        }
+
+        private C40Encoder c40Encoder = new C40Encoder();
+        private TextEncoder textEncoder = new TextEncoder();
+        private X12Encoder x12Encoder = new X12Encoder();
+        private EdifactEncoder edifactEncoder = new EdifactEncoder();
+
+        private static final int TAIL_NONE = 0;
+        private static final int TAIL_UNLATCH = 1;
+        private static final int TAIL_ASCII = 2;
+
+        private int[][] costs;
+        private int[][] prevPositions;
+        private byte[][] prevModes;
+        private int[] b256Lengths;
+
+        /* The chosen ending: the path ends in endMode at endPos, followed by endTail */
+        private int endMode;
+        private int endPos;
+        private int endTail;
+        private int endCost;
+        private int endCapacity;
+
+        /**
+         * Encodes the remaining characters of the message.
+         * @param context the encoder context
+         * @return the encodation mode at the end of the message
+         */
+        public int encode(EncoderContext context) {
+            final int start = context.pos;
+            final int n = context.getTotalMessageCharCount() - start;
+            findShortestPaths(context, start, n);
+            chooseEnding(context, start, n);
+
+            //Collect the path backwards
+            int steps = 1;
+            int mode = endMode;
+            int pos = endPos;
+            while (pos > 0 || mode != ASCII_ENCODATION) {
+                int prev = prevPositions[mode][pos];
+                mode = prevModes[mode][pos];
+                pos = prev;
+                steps++;
+            }
+            int[] pathModes = new int[steps];
+            int[] pathPositions = new int[steps];
+            mode = endMode;
+            pos = endPos;
+            for (int i = steps - 1; i >= 0; i--) {
+                pathModes[i] = mode;
+                pathPositions[i] = pos;
+                if (i > 0) {
+                    int prev = prevPositions[mode][pos];
+                    mode = prevModes[mode][pos];
+                    pos = prev;
+                }
+            }
+
+            writeCodewords(context, start, pathModes, pathPositions);
+            context.pos = start + n;
+            switch (endTail) {
+            case TAIL_UNLATCH:
+                writeEdifact(context, new StringBuffer(), start + endPos, start + n, true);
+                return ASCII_ENCODATION;
+            case TAIL_ASCII:
+                //Implicit unlatch: the decoder switches to ASCII near the end of the symbol
+                writeASCII(context, start + endPos, start + n);
+                return ASCII_ENCODATION;
+            default:
+                return (endMode == EDIFACT_ENCODATION ? ASCII_ENCODATION : endMode);
+            }
+        }
+
+        /**
+         * Chooses how the data ends. The shortcuts for C40, Text, X12 and EDIFACT are only
+         * valid depending on the space left in the symbol, so they are checked here against
+         * the symbol that would actually be used. Candidates are compared by symbol capacity
+         * first and by codeword count second.
+         */
+        private void chooseEnding(EncoderContext context, int start, int n) {
+            final int base = context.getCodewordCount();
+            this.endMode = ASCII_ENCODATION;
+            this.endPos = n;
+            this.endTail = TAIL_NONE;
+            this.endCost = costs[ASCII_ENCODATION][n];
+            this.endCapacity = getCapacity(context, base + endCost);
+
+            for (int mode = C40_ENCODATION; mode <= X12_ENCODATION; mode++) {
+                //The unlatch is only necessary if the symbol isn't full
+                int cost = costs[mode][n];
+                int capacity = getCapacity(context, base + cost);
+                considerEnding(mode, n, TAIL_NONE, (capacity > base + cost ? cost + 1 : cost),
+                        capacity);
+                //A single ASCII codeword filling the symbol needs no unlatch
+                for (int j = 1; j <= 2 && j <= n; j++) {
+                    cost = costs[mode][n - j];
+                    if (getASCIICost(context, start + n - j, start + n) == 1
+                            && getCapacity(context, base + cost + 1) == base + cost + 1) {
+                        considerEnding(mode, n - j, TAIL_ASCII, cost + 1, base + cost + 1);
+                    }
+                }
+            }
+
+            //EDIFACT
+            for (int k = 0; k <= 3 && k <= n; k++) {
+                int cost = costs[EDIFACT_ENCODATION][n - k];
+                if (cost >= INFINITY) {
+                    continue;
+                }
+                if (k == 0) {
+                    //With at most 2 codewords left the decoder switches to ASCII by itself
+                    int capacity = getCapacity(context, base + cost);
+                    if (capacity - (base + cost) <= 2) {
+                        considerEnding(EDIFACT_ENCODATION, n, TAIL_NONE, cost, capacity);
+                    }
+                } else {
+                    int asciiCost = getASCIICost(context, start + n - k, start + n);
+                    int capacity = getCapacity(context, base + cost + asciiCost);
+                    if (asciiCost <= 2 && capacity - (base + cost) <= 2) {
+                        considerEnding(EDIFACT_ENCODATION, n - k, TAIL_ASCII,
+                                cost + asciiCost, capacity);
+                    }
+                }
+                //Explicit unlatch, only valid if at least 3 codewords are left for it
+                boolean encodable = true;
+                for (int i = n - k; i < n; i++) {
+                    encodable &= (context.charClasses[start + i] & CC_NATIVE_EDIFACT) != 0;
+                }
+                int total = cost + Math.min(k + 1, 3);
+                int capacity = getCapacity(context, base + total);
+                if (encodable && capacity - (base + cost) >= 3) {
+                    considerEnding(EDIFACT_ENCODATION, n - k, TAIL_UNLATCH, total, capacity);
+                }
+            }
+        }
+
+        private void considerEnding(int mode, int pos, int tail, int cost, int capacity) {
+            if (cost >= INFINITY) {
+                return;
+            }
+            if (capacity < endCapacity || (capacity == endCapacity && cost < endCost)) {
+                this.endMode = mode;
+                this.endPos = pos;
+                this.endTail = tail;
+                this.endCost = cost;
+                this.endCapacity = capacity;
+            }
+        }
+
+        private int getCapacity(EncoderContext context, int codewordCount) {
+            DataMatrixSymbolInfo symbol = context.symbolIndex.lookup(codewordCount);
+            return (symbol != null ? symbol.dataCapacity : Integer.MAX_VALUE);
+        }
+
+        private int getASCIICost(EncoderContext context, int from, int to) {
+            if (to - from == 2 && (context.charClasses[from] & CC_DIGIT) != 0
+                    && (context.charClasses[from + 1] & CC_DIGIT) != 0) {
+                return 1;
+            }
+            int cost = 0;
+            for (int i = from; i < to; i++) {
+                cost += ((context.charClasses[i] & CC_EXTENDED) != 0 ? 2 : 1);
+            }
+            return cost;
+        }
+
+        private void findShortestPaths(EncoderContext context, int start, int n) {
+            final String msg = context.msg;
+            final byte[] charClasses = context.charClasses;
+            this.costs = new int[MODES][n + 1];
+            this.prevPositions = new int[MODES][n + 1];
+            this.prevModes = new byte[MODES][n + 1];
+            this.b256Lengths = new int[n + 1];
+            for (int mode = 0; mode < MODES; mode++) {
+                Arrays.fill(costs[mode], INFINITY);
+            }
+            costs[ASCII_ENCODATION][0] = 0;
+
+            for (int i = 0; i <= n; i++) {
+                //Unlatches on the same position
+                relax(ASCII_ENCODATION, i, C40_ENCODATION, i, 1);
+                relax(ASCII_ENCODATION, i, TEXT_ENCODATION, i, 1);
+                relax(ASCII_ENCODATION, i, X12_ENCODATION, i, 1);
+                if (i < n) {
+                    //EDIFACT endings depend on the symbol, see chooseEnding()
+                    relax(ASCII_ENCODATION, i, EDIFACT_ENCODATION, i, 1);
+                }
+                relax(ASCII_ENCODATION, i, BASE256_ENCODATION, i, 0); //length field ends it
+
+                //Latches on the same position
+                relax(C40_ENCODATION, i, ASCII_ENCODATION, i, 1);
+                relax(TEXT_ENCODATION, i, ASCII_ENCODATION, i, 1);
+                relax(X12_ENCODATION, i, ASCII_ENCODATION, i, 1);
+                relax(EDIFACT_ENCODATION, i, ASCII_ENCODATION, i, 1);
+                if (relax(BASE256_ENCODATION, i, ASCII_ENCODATION, i, 2)) { //latch + length
+                    b256Lengths[i] = 0;
+                }
+
+                if (i == n) {
+                    break;
+                }
+
+                //ASCII
+                int cc = charClasses[start + i];
+                if ((cc & CC_DIGIT) != 0 && i + 1 < n
+                        && (charClasses[start + i + 1] & CC_DIGIT) != 0) {
+                    relax(ASCII_ENCODATION, i + 2, ASCII_ENCODATION, i, 1);
+                }
+                relax(ASCII_ENCODATION, i + 1, ASCII_ENCODATION, i,
+                        ((cc & CC_EXTENDED) != 0 ? 2 : 1));
+
+                //C40 and Text
+                relaxTriplets(msg, start, n, i, C40_ENCODATION, C40_SIZES);
+                relaxTriplets(msg, start, n, i, TEXT_ENCODATION, TEXT_SIZES);
+
+                //X12
+                if (i + 3 <= n
+                        && (charClasses[start + i] & CC_NATIVE_X12) != 0
+                        && (charClasses[start + i + 1] & CC_NATIVE_X12) != 0
+                        && (charClasses[start + i + 2] & CC_NATIVE_X12) != 0) {
+                    relax(X12_ENCODATION, i + 3, X12_ENCODATION, i, 2);
+                }
+
+                //EDIFACT: a full quadruple or 1 to 3 characters followed by the unlatch
+                for (int k = 1; k <= 4 && i + k <= n; k++) {
+                    if ((charClasses[start + i + k - 1] & CC_NATIVE_EDIFACT) == 0) {
+                        break;
+                    }
+                    if (k == 4) {
+                        relax(EDIFACT_ENCODATION, i + 4, EDIFACT_ENCODATION, i, 3);
+                    } else if (i + k < n) {
+                        relax(ASCII_ENCODATION, i + k, EDIFACT_ENCODATION, i, Math.min(k + 1, 3));
+                    }
+                }
+
+                //Base 256
+                int len = b256Lengths[i] + 1;
+                if (len <= 1555) {
+                    //The length field grows to two bytes with the 250th byte
+                    if (relax(BASE256_ENCODATION, i + 1, BASE256_ENCODATION, i,
+                            (len == 250 ? 2 : 1))) {
+                        b256Lengths[i + 1] = len;
+                    }
+                }
+            }
+        }
+
+        private void relaxTriplets(String msg, int start, int n, int i,
+                int mode, byte[] sizes) {
+            //The shortest run of characters that fills complete triplets
+            int values = 0;
+            for (int j = i; j < n; j++) {
+                values += sizes[msg.charAt(start + j)];
+                if ((values % 3) == 0) {
+                    relax(mode, j + 1, mode, i, (values / 3) * 2);
+                    return;
+                }
+            }
+            if ((values % 3) == 2) {
+                //At the end of the data, the last triplet may be padded with a Shift 1
+                relax(mode, n, mode, i, ((values + 1) / 3) * 2);
+            }
+        }
+
+        private boolean relax(int mode, int pos, int prevMode, int prevPos, int cost) {
+            int prevCost = costs[prevMode][prevPos];
+            if (prevCost >= INFINITY) {
+                return false;
+            }
+            int newCost = prevCost + cost;
+            if (newCost < costs[mode][pos]) {
+                costs[mode][pos] = newCost;
+                prevModes[mode][pos] = (byte)prevMode;
+                prevPositions[mode][pos] = prevPos;
+                return true;
+            } else {
+                return false;
+            }
+        }
+
+        private void writeCodewords(EncoderContext context, int start,
+                int[] pathModes, int[] pathPositions) {
+            final String msg = context.msg;
+            StringBuffer buffer = new StringBuffer();
+            for (int k = 1; k < pathModes.length; k++) {
+                int prevMode = pathModes[k - 1];
+                int mode = pathModes[k];
+                int from = start + pathPositions[k - 1];
+                int to = start + pathPositions[k];
+                if (prevMode == mode) {
+                    switch (mode) {
+                    case ASCII_ENCODATION:
+                        writeASCII(context, from, to);
+                        break;
+                    case C40_ENCODATION:
+                    case TEXT_ENCODATION:
+                    case X12_ENCODATION:
+                        C40Encoder encoder;
+                        if (mode == C40_ENCODATION) {
+                            encoder = c40Encoder;
+                        } else if (mode == TEXT_ENCODATION) {
+                            encoder = textEncoder;
+                        } else {
+                            encoder = x12Encoder;
+                        }
+                        buffer.setLength(0);
+                        for (int i = from; i < to; i++) {
+                            encoder.encodeChar(msg.charAt(i), buffer);
+                        }
+                        if ((buffer.length() % 3) == 2) {
+                            buffer.append('\0'); //Shift 1
+                        }
+                        for (int i = 0; i < buffer.length(); i += 3) {
+                            context.writeCodewords(encoder.encodeToCodewords(buffer, i));
+                        }
+                        break;
+                    case EDIFACT_ENCODATION:
+                        writeEdifact(context, buffer, from, to, false);
+                        break;
+                    case BASE256_ENCODATION:
+                        context.writeCodeword(randomize255State(
+                                msg.charAt(from), context.getCodewordCount() + 1));
+                        break;
+                    default:
+                        throw new IllegalStateException("Illegal mode: " + mode);
+                    }
+                } else if (mode == ASCII_ENCODATION) {
+                    switch (prevMode) {
+                    case C40_ENCODATION:
+                    case TEXT_ENCODATION:
+                    case X12_ENCODATION:
+                        context.writeCodeword(C40_UNLATCH);
+                        break;
+                    case EDIFACT_ENCODATION:
+                        writeEdifact(context, buffer, from, to, true);
+                        break;
+                    case BASE256_ENCODATION:
+                        break; //ended by the length field
+                    default:
+                        throw new IllegalStateException("Illegal mode: " + prevMode);
+                    }
+                } else {
+                    switch (mode) {
+                    case C40_ENCODATION:
+                        context.writeCodeword(LATCH_TO_C40);
+                        break;
+                    case TEXT_ENCODATION:
+                        context.writeCodeword(LATCH_TO_TEXT);
+                        break;
+                    case X12_ENCODATION:
+                        context.writeCodeword(LATCH_TO_ANSIX12);
+                        break;
+                    case EDIFACT_ENCODATION:
+                        context.writeCodeword(LATCH_TO_EDIFACT);
+                        break;
+                    case BASE256_ENCODATION:
+                        context.writeCodeword(LATCH_TO_BASE256);
+                        int dataCount = 0;
+                        while (k + dataCount + 1 < pathModes.length
+                                && pathModes[k + dataCount + 1] == BASE256_ENCODATION) {
+                            dataCount++;
+                        }
+                        if (dataCount <= 249) {
+                            context.writeCodeword(randomize255State(
+                                    (char)dataCount, context.getCodewordCount() + 1));
+                        } else {
+                            context.writeCodeword(randomize255State(
+                                    (char)((dataCount / 250) + 249),
+                                    context.getCodewordCount() + 1));
+                            context.writeCodeword(randomize255State(
+                                    (char)(dataCount % 250), context.getCodewordCount() + 1));
+                        }
+                        break;
+                    default:
+                        throw new IllegalStateException("Illegal mode: " + mode);
+                    }
+                }
+            }
+        }
+
+        private void writeASCII(EncoderContext context, int from, int to) {
+            final String msg = context.msg;
+            if (to - from == 2 && isDigit(msg.charAt(from)) && isDigit(msg.charAt(from + 1))) {
+                context.writeCodeword(encodeASCIIDigits(msg.charAt(from), msg.charAt(from + 1)));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                char c = msg.charAt(i);
+                if (isExtendedASCII(c)) {
+                    context.writeCodeword(UPPER_SHIFT);
+                    context.writeCodeword((char)(c - 128 + 1));
+                } else {
+                    context.writeCodeword((char)(c + 1));
+                }
+            }
+        }
+
+        private void writeEdifact(EncoderContext context, StringBuffer buffer,
+                int from, int to, boolean unlatch) {
+            buffer.setLength(0);
+            for (int i = from; i < to; i++) {
+                edifactEncoder.encodeChar(context.msg.charAt(i), buffer);
+            }
+            if (unlatch) {
+                buffer.append((char)31); //Unlatch
+            }
+            context.writeCodewords(edifactEncoder.encodeToCodewords(buffer, 0));
+        }
+
+    }
+
     private static char encodeASCIIDigits(char digit1, char digit2) {
         if (isDigit(digit1) && isDigit(digit2)) {
             int num = (digit1 - 48) * 10 + (digit2 - 48);
@@ -812,27 +1700,43 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
         }
     }
 
-    private static int lookAheadTest(String msg, int startpos, int currentMode) {
-        if (startpos >= msg.length()) {
+    private static int lookAheadTest(EncoderContext context, int startpos, int currentMode) {
+        final int len = context.msg.length();
+        if (startpos >= len) {
             return currentMode;
         }
-        float[] charCounts;
+        //A run of marked digits is best encoded as digit pairs, no need to look further
+        if (currentMode != ASCII_ENCODATION
+                && context.getNumericRunLength(startpos) >= NUMERIC_RUN_THRESHOLD) {
+            return ASCII_ENCODATION;
+        }
+        final byte[] charClasses = context.charClasses;
+        final float[] charCounts = context.charCounts;
+        final int[] intCharCounts = context.intCharCounts;
+        final byte[] mins = context.mins;
         //step J
         if (currentMode == ASCII_ENCODATION) {
-            charCounts = new float[] {0, 1, 1, 1, 1, 1.25f};
+            charCounts[ASCII_ENCODATION] = 0;
+            charCounts[C40_ENCODATION] = 1;
+            charCounts[TEXT_ENCODATION] = 1;
+            charCounts[X12_ENCODATION] = 1;
+            charCounts[EDIFACT_ENCODATION] = 1;
+            charCounts[BASE256_ENCODATION] = 1.25f;
         } else {
-            charCounts = new float[] {1, 2, 2, 2, 2, 2.25f};
+            charCounts[ASCII_ENCODATION] = 1;
+            charCounts[C40_ENCODATION] = 2;
+            charCounts[TEXT_ENCODATION] = 2;
+            charCounts[X12_ENCODATION] = 2;
+            charCounts[EDIFACT_ENCODATION] = 2;
+            charCounts[BASE256_ENCODATION] = 2.25f;
             charCounts[currentMode] = 0;
         }
 
         int charsProcessed = 0;
         while (true) {
             //step K
-            if ((startpos + charsProcessed) == msg.length()) {
-                int min = Integer.MAX_VALUE;
-                byte[] mins = new byte[6];
-                int[] intCharCounts = new int[6];
-                min = findMinimums(charCounts, intCharCounts, min, mins);
+            if ((startpos + charsProcessed) == len) {
+                int min = findMinimums(charCounts, intCharCounts, mins);
                 int minCount = getMinimumCount(mins);
 
                 if (intCharCounts[ASCII_ENCODATION] == min) {
@@ -850,58 +1754,56 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
                 }
             }
 
-            char c = msg.charAt(startpos + charsProcessed);
+            int cc = charClasses[startpos + charsProcessed];
+            boolean extended = (cc & CC_EXTENDED) != 0;
             charsProcessed++;
 
             //step L
-            if (isDigit(c)) {
-                charCounts[ASCII_ENCODATION] += 0.5;
-            } else if (isExtendedASCII(c)) {
-                charCounts[ASCII_ENCODATION] = (int)Math.ceil(charCounts[ASCII_ENCODATION]);
-                charCounts[ASCII_ENCODATION] += 2;
+            if ((cc & CC_DIGIT) != 0) {
+                charCounts[ASCII_ENCODATION] += 0.5f;
             } else {
                 charCounts[ASCII_ENCODATION] = (int)Math.ceil(charCounts[ASCII_ENCODATION]);
-                charCounts[ASCII_ENCODATION] += 1;
+                charCounts[ASCII_ENCODATION] += (extended ? 2 : 1);
             }
 
             //step M
-            if (isNativeC40(c)) {
+            if ((cc & CC_NATIVE_C40) != 0) {
                 charCounts[C40_ENCODATION] += 2f / 3f;
-            } else if (isExtendedASCII(c)) {
+            } else if (extended) {
                 charCounts[C40_ENCODATION] += 8f / 3f;
             } else {
                 charCounts[C40_ENCODATION] += 4f / 3f;
             }
 
             //step N
-            if (isNativeText(c)) {
+            if ((cc & CC_NATIVE_TEXT) != 0) {
                 charCounts[TEXT_ENCODATION] += 2f / 3f;
-            } else if (isExtendedASCII(c)) {
+            } else if (extended) {
                 charCounts[TEXT_ENCODATION] += 8f / 3f;
             } else {
                 charCounts[TEXT_ENCODATION] += 4f / 3f;
             }
 
             //step O
-            if (isNativeX12(c)) {
+            if ((cc & CC_NATIVE_X12) != 0) {
                 charCounts[X12_ENCODATION] += 2f / 3f;
-            } else if (isExtendedASCII(c)) {
+            } else if (extended) {
                 charCounts[X12_ENCODATION] += 13f / 3f;
             } else {
                 charCounts[X12_ENCODATION] += 10f / 3f;
             }
 
             //step P
-            if (isNativeEDIFACT(c)) {
+            if ((cc & CC_NATIVE_EDIFACT) != 0) {
                 charCounts[EDIFACT_ENCODATION] += 3f / 4f;
-            } else if (isExtendedASCII(c)) {
+            } else if (extended) {
                 charCounts[EDIFACT_ENCODATION] += 17f / 4f;
             } else {
                 charCounts[EDIFACT_ENCODATION] += 13f / 4f;
             }
 
             // step Q
-            if (isSpecialB256(c)) {
+            if ((cc & CC_SPECIAL_B256) != 0) {
                 charCounts[BASE256_ENCODATION] += 4;
             } else {
                 charCounts[BASE256_ENCODATION] += 1;
@@ -909,15 +1811,7 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
 
             //step R
             if (charsProcessed >= 4) {
-                /*
-                for (int a = 0; a < charCounts.length; a++) {
-                    System.out.println(a + " " + ENCODATION_NAMES[a] + " " + charCounts[a]);
-                }*/
-
-                int min = Integer.MAX_VALUE;
-                int[] intCharCounts = new int[6];
-                byte[] mins = new byte[6];
-                min = findMinimums(charCounts, intCharCounts, min, mins);
+                int min = findMinimums(charCounts, intCharCounts, mins);
                 int minCount = getMinimumCount(mins);
 
                 if (intCharCounts[ASCII_ENCODATION] + 1 <= intCharCounts[BASE256_ENCODATION]
@@ -946,14 +1840,8 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
                         return C40_ENCODATION;
                     } else if (intCharCounts[C40_ENCODATION] == intCharCounts[X12_ENCODATION]) {
                         int p = startpos + charsProcessed + 1;
-                        while (p < msg.length()) {
-                            char tc = msg.charAt(p);
-                            if (isX12TermSep(tc)) {
-                                return X12_ENCODATION;
-                            } else if (!isNativeX12(tc)) {
-                                break;
-                            }
-                            p++;
+                        if (p < len && context.x12TermSepAhead[p]) {
+                            return X12_ENCODATION;
                         }
                         return C40_ENCODATION;
                     }
@@ -962,19 +1850,22 @@ public class DataMatrixHighLevelEncoder implements DataMatrixConstants {
         }
     }
 
-    private static int findMinimums(float[] charCounts, int[] intCharCounts,
-            int min, byte[] mins) {
-        Arrays.fill(mins, (byte)0);
+    private static int findMinimums(float[] charCounts, int[] intCharCounts, byte[] mins) {
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < 6; i++) {
+            mins[i] = 0;
+        }
         for (int i = 0; i < 6; i++) {
             intCharCounts[i] = (int)Math.ceil(charCounts[i]);
             int current = intCharCounts[i];
             if (min > current) {
                 min = current;
-                Arrays.fill(mins, (byte)0);
+                for (int j = 0; j < i; j++) {
+                    mins[j] = 0;
+                }
             }
             if (min == current) {
                 mins[i]++;
-
             }
         }
         return min;
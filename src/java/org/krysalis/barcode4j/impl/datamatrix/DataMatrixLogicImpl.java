@@ -21,7 +21,10 @@ package org.krysalis.barcode4j.impl.datamatrix;
 import java.awt.Dimension;
 import java.io.IOException;
 
+import org.krysalis.barcode4j.BitMatrix;
+import org.krysalis.barcode4j.BitMatrixLogicHandler;
 import org.krysalis.barcode4j.TwoDimBarcodeLogicHandler;
+import org.krysalis.barcode4j.tools.WorkerPool;
 
 /**
  * Top-level class for the logic part of the DataMatrix implementation.
@@ -32,6 +35,22 @@ public class DataMatrixLogicImpl {
 
     private static final boolean DEBUG = false;
 
+    private WorkerPool workerPool;
+
+    /** Creates a new instance that creates the error correction in the calling thread. */
+    public DataMatrixLogicImpl() {
+        this(null);
+    }
+
+    /**
+     * Creates a new instance.
+     * @param workerPool the pool calculating the interleaved error correction blocks in
+     *          parallel, or null to calculate them in the calling thread
+     */
+    public DataMatrixLogicImpl(WorkerPool workerPool) {
+        this.workerPool = workerPool;
+    }
+
     /**
      * Generates the barcode logic.
      * @param logic the logic handler to receive generated events
@@ -42,69 +61,203 @@ public class DataMatrixLogicImpl {
      */
     public void generateBarcodeLogic(TwoDimBarcodeLogicHandler logic, String msg,
             SymbolShapeHint shape, Dimension minSize, Dimension maxSize) {
+        DataMatrixBean bean = new DataMatrixBean();
+        bean.setShape(shape);
+        bean.setMinSize(minSize);
+        bean.setMaxSize(maxSize);
+        generateBarcodeLogic(logic, encodeMessage(msg, bean));
+    }
 
+    /**
+     * Performs the high-level encoding of a message and determines the symbol size
+     * that is used to hold it. The symbol constraints and the encoder settings are taken
+     * from the bean (see {@link DataMatrixHighLevelEncoder#encodeHighLevelToCodewords(String,
+     * DataMatrixBean)}).
+     * @param msg the message to encode
+     * @param bean the bean providing the encoder settings
+     * @return the encoded symbol
+     */
+    public static DataMatrixEncodedSymbol encodeMessage(String msg, DataMatrixBean bean) {
         //ECC 200
         //1. step: Data encodation
-        String encoded;
+        int[] encoded;
         try {
-            encoded = DataMatrixHighLevelEncoder.encodeHighLevel(msg, shape, minSize, maxSize);
+            encoded = DataMatrixHighLevelEncoder.encodeHighLevelToCodewords(msg, bean);
         } catch (IOException e) {
             throw new IllegalArgumentException("Cannot fetch data: " + e.getLocalizedMessage());
         }
 
-        DataMatrixSymbolInfo symbolInfo = DataMatrixSymbolInfo.lookup(encoded.length(),
-                shape, minSize, maxSize, true);
+        DataMatrixSymbolInfo symbolInfo = bean.getSymbolIndex().lookup(encoded.length, true);
         if (DEBUG) {
             System.out.println(symbolInfo);
         }
+        return new DataMatrixEncodedSymbol(msg, encoded, symbolInfo);
+    }
+
+    /**
+     * Performs the high-level encoding of a message that may be split into a sequence of
+     * symbols linked by structured append if it doesn't fit into a single symbol (see
+     * {@link DataMatrixHighLevelEncoder#encodeHighLevelToSymbols(String, DataMatrixBean)}).
+     * @param msg the message to encode
+     * @param bean the bean providing the encoder settings and the maximum number of symbols
+     * @return the encoded symbols in sequence order
+     */
+    public static DataMatrixEncodedSymbol[] encodeSymbols(String msg, DataMatrixBean bean) {
+        int[][] encoded;
+        try {
+            encoded = DataMatrixHighLevelEncoder.encodeHighLevelToSymbols(msg, bean);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot fetch data: " + e.getLocalizedMessage());
+        }
+
+        DataMatrixSymbolIndex symbolIndex = bean.getSymbolIndex();
+        DataMatrixEncodedSymbol[] symbols = new DataMatrixEncodedSymbol[encoded.length];
+        for (int i = 0; i < encoded.length; i++) {
+            symbols[i] = new DataMatrixEncodedSymbol(msg, encoded[i],
+                    symbolIndex.lookup(encoded[i].length, true));
+        }
+        return symbols;
+    }
+
+    /**
+     * Generates the barcode logic for a message that has already been high-level encoded.
+     * @param logic the logic handler to receive generated events
+     * @param symbol the encoded symbol
+     */
+    public void generateBarcodeLogic(TwoDimBarcodeLogicHandler logic,
+            DataMatrixEncodedSymbol symbol) {
+        generateBarcodeLogic(logic, symbol.getMessage(),
+                createSymbolMatrix(symbol, this.workerPool));
+    }
+
+    /**
+     * Generates the barcode logic for a symbol whose module matrix has already been created
+     * (see {@link #createSymbolMatrices(DataMatrixEncodedSymbol[], WorkerPool)}).
+     * @param logic the logic handler to receive generated events
+     * @param msg the encoded message
+     * @param matrix the module matrix of the symbol
+     */
+    public void generateBarcodeLogic(TwoDimBarcodeLogicHandler logic, String msg,
+            BitMatrix matrix) {
+        //4. step: low-level encoding
+        logic.startBarcode(msg, msg);
+        encodeLowLevel(logic, matrix);
+        logic.endBarcode();
+    }
+
+    /**
+     * Creates the module matrix of an encoded symbol (error correction and module placement).
+     * @param symbol the encoded symbol
+     * @param workerPool the pool calculating the interleaved error correction blocks in
+     *          parallel, or null to calculate them in the calling thread
+     * @return the module matrix
+     */
+    public static BitMatrix createSymbolMatrix(DataMatrixEncodedSymbol symbol,
+            WorkerPool workerPool) {
+        DataMatrixSymbolInfo symbolInfo = symbol.getSymbolInfo();
 
         //2. step: ECC generation
-        String codewords = DataMatrixErrorCorrection.encodeECC200(
-                encoded, symbolInfo);
+        int[] codewords = DataMatrixErrorCorrection.encodeECC200(
+                symbol.getCodewordArray(), symbolInfo, workerPool);
 
         //3. step: Module placement in Matrix
         DefaultDataMatrixPlacement placement = new DefaultDataMatrixPlacement(
                     codewords,
                     symbolInfo.getSymbolDataWidth(), symbolInfo.getSymbolDataHeight());
         placement.place();
+        return createSymbolMatrix(placement, symbolInfo);
+    }
 
-        //4. step: low-level encoding
-        logic.startBarcode(msg, msg);
-        encodeLowLevel(logic, placement, symbolInfo);
-        logic.endBarcode();
+    /**
+     * Creates the module matrices of a sequence of encoded symbols. With a worker pool, the
+     * symbols are processed concurrently, one task per symbol.
+     * @param symbols the encoded symbols
+     * @param workerPool the pool creating the matrices in parallel, or null to create them
+     *          in the calling thread
+     * @return the module matrices in the same order as the symbols
+     */
+    public static BitMatrix[] createSymbolMatrices(final DataMatrixEncodedSymbol[] symbols,
+            WorkerPool workerPool) {
+        final BitMatrix[] matrices = new BitMatrix[symbols.length];
+        if (workerPool == null) {
+            for (int i = 0; i < symbols.length; i++) {
+                matrices[i] = createSymbolMatrix(symbols[i], null);
+            }
+        } else {
+            Runnable[] tasks = new Runnable[symbols.length];
+            for (int i = 0; i < symbols.length; i++) {
+                final int index = i;
+                tasks[i] = new Runnable() {
+                    public void run() {
+                        //The symbols are the unit of work, the blocks of each symbol aren't split
+                        matrices[index] = createSymbolMatrix(symbols[index], null);
+                    }
+                };
+            }
+            workerPool.run(tasks);
+        }
+        return matrices;
     }
 
-    private void encodeLowLevel(TwoDimBarcodeLogicHandler logic,
-            DataMatrixPlacement placement, DataMatrixSymbolInfo symbolInfo) {
+    private void encodeLowLevel(TwoDimBarcodeLogicHandler logic, BitMatrix matrix) {
+        if (logic instanceof BitMatrixLogicHandler) {
+            ((BitMatrixLogicHandler)logic).addBitMatrix(matrix);
+            return;
+        }
+        //Emit runs of same-colored modules as single bars
+        int width = matrix.getWidth();
+        for (int y = 0, c = matrix.getHeight(); y < c; y++) {
+            logic.startRow();
+            int x = 0;
+            while (x < width) {
+                int run = matrix.getRunLength(x, y);
+                logic.addBar(matrix.get(x, y), run);
+                x += run;
+            }
+            logic.endRow();
+        }
+    }
+
+    /**
+     * Creates the complete module matrix of the symbol, i.e. the placed data modules
+     * including the finder and timing patterns around each data region.
+     * @param placement the module placement holding the data modules
+     * @param symbolInfo information about the symbol
+     * @return the module matrix
+     */
+    static BitMatrix createSymbolMatrix(DataMatrixPlacement placement,
+            DataMatrixSymbolInfo symbolInfo) {
         int symbolWidth = symbolInfo.getSymbolDataWidth();
         int symbolHeight = symbolInfo.getSymbolDataHeight();
+        int fullWidth = symbolInfo.getSymbolWidth();
+        BitMatrix matrix = new BitMatrix(fullWidth, symbolInfo.getSymbolHeight());
+        int row = 0;
         for (int y = 0; y < symbolHeight; y++) {
             if ((y % symbolInfo.matrixHeight) == 0) {
-                logic.startRow();
-                for (int x = 0; x < symbolInfo.getSymbolWidth(); x++) {
-                    logic.addBar((x % 2) == 0, 1);
+                for (int x = 0; x < fullWidth; x += 2) {
+                    matrix.set(x, row, true); //top timing pattern
                 }
-                logic.endRow();
+                row++;
             }
-            logic.startRow();
+            int col = 0;
             for (int x = 0; x < symbolWidth; x++) {
                 if ((x % symbolInfo.matrixWidth) == 0) {
-                    logic.addBar(true, 1); //left finder edge
+                    matrix.set(col++, row, true); //left finder edge
                 }
-                logic.addBar(placement.getBit(x, y), 1);
+                matrix.set(col++, row, placement.getBit(x, y));
                 if ((x % symbolInfo.matrixWidth) == symbolInfo.matrixWidth - 1) {
-                    logic.addBar((y % 2) == 0, 1); //right finder edge
+                    matrix.set(col++, row, (y % 2) == 0); //right finder edge
                 }
             }
-            logic.endRow();
+            row++;
             if ((y % symbolInfo.matrixHeight) == symbolInfo.matrixHeight - 1) {
-                logic.startRow();
-                for (int x = 0; x < symbolInfo.getSymbolWidth(); x++) {
-                    logic.addBar(true, 1);
+                for (int x = 0; x < fullWidth; x++) {
+                    matrix.set(x, row, true); //bottom finder edge
                 }
-                logic.endRow();
+                row++;
             }
         }
+        return matrix;
     }
 
 }
@@ -0,0 +1,232 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.impl.datamatrix;
+
+import java.util.Map;
+
+/**
+ * Immutable map telling where each bit of each codeword is placed in the data area of an
+ * ECC200 symbol. The placement only depends on the size of the data area, so the maps are
+ * built once per size using the Symbol Character Placement Program from Annex M.1 in
+ * ISO/IEC 16022:2000(E) and then shared by all symbols of that size.
+ *
+ * @version $Id$
+ */
+final class DataMatrixPlacementMap {
+
+    /** Cache of placement maps (key: Integer of (numcols << 16) | numrows) */
+    private static final Map CACHE = new java.util.HashMap();
+
+    private int numcols;
+    private int numrows;
+    /** Module positions ((row << 16) | col), 8 per codeword, most significant bit first */
+    private int[] modules;
+    /** True if the fixed pattern in the lower right corner needs to be painted */
+    private boolean fixedCorner;
+
+    private boolean[] used;
+    private int count;
+
+    private DataMatrixPlacementMap(int numcols, int numrows) {
+        this.numcols = numcols;
+        this.numrows = numrows;
+        this.used = new boolean[numcols * numrows];
+        this.modules = new int[numcols * numrows];
+        build();
+        this.used = null;
+        if (count < modules.length) {
+            int[] trimmed = new int[count];
+            System.arraycopy(modules, 0, trimmed, 0, count);
+            this.modules = trimmed;
+        }
+    }
+
+    /**
+     * Returns the placement map for a data area of the given size.
+     * @param numcols the number of columns of the data area
+     * @param numrows the number of rows of the data area
+     * @return the placement map
+     */
+    public static DataMatrixPlacementMap getInstance(int numcols, int numrows) {
+        Integer key = new Integer((numcols << 16) | numrows);
+        synchronized (CACHE) {
+            DataMatrixPlacementMap map = (DataMatrixPlacementMap)CACHE.get(key);
+            if (map == null) {
+                map = new DataMatrixPlacementMap(numcols, numrows);
+                CACHE.put(key, map);
+            }
+            return map;
+        }
+    }
+
+    /** @return the number of codewords placed by this map */
+    public int getCodewordCount() {
+        return modules.length / 8;
+    }
+
+    /**
+     * Places the codewords by setting the modules on the given placement.
+     * @param codewords the codewords
+     * @param placement the placement receiving the modules
+     */
+    public void place(int[] codewords, DataMatrixPlacement placement) {
+        int[] modules = this.modules;
+        int i = 0;
+        for (int pos = 0, c = modules.length / 8; pos < c; pos++) {
+            int v = codewords[pos];
+            for (int mask = 0x80; mask != 0; mask >>= 1) {
+                int m = modules[i++];
+                placement.setBit(m & 0xFFFF, m >>> 16, (v & mask) != 0);
+            }
+        }
+        if (fixedCorner) {
+            placement.setBit(numcols - 1, numrows - 1, true);
+            placement.setBit(numcols - 2, numrows - 2, true);
+        }
+    }
+
+    private boolean hasBit(int col, int row) {
+        return used[row * numcols + col];
+    }
+
+    private void build() {
+        int row = 4;
+        int col = 0;
+        
+        do {
+            /* repeatedly first check for one of the special corner cases, then... */
+            if ((row == numrows) && (col == 0)) {
+                corner1();
+            }
+            if ((row == numrows - 2) && (col == 0) && ((numcols % 4) != 0)) {
+                corner2();
+            }
+            if ((row == numrows - 2) && (col == 0) && ((numcols % 8 == 4))) {
+                corner3();
+            }
+            if ((row == numrows + 4) && (col == 2) && (!((numcols % 8) != 0))) {
+                corner4();
+            }
+            /* sweep upward diagonally, inserting successive characters... */
+            do {
+                if ((row < numrows) && (col >= 0) && !hasBit(col, row)) {
+                    utah(row, col);
+                }
+                row -= 2;
+                col += 2;
+            } while ((row >= 0 && (col < numcols)));
+            row++;
+            col += 3;
+            
+            /* and then sweep downward diagonally, inserting successive characters, ... */
+            do {
+                if ((row >= 0) && (col < numcols) && !hasBit(col, row)) {
+                    utah(row, col);
+                }
+                row += 2;
+                col -= 2;
+            } while ((row < numrows) && (col >= 0));
+            row += 3; col += 1;
+            
+            /* ...until the entire array is scanned */
+        } while ((row < numrows) || (col < numcols));
+        
+        /* Lastly, if the lower righthand corner is untouched, fill in fixed pattern */
+        fixedCorner = !hasBit(numcols - 1, numrows - 1);
+    }
+
+    private void module(int row, int col) {
+        if (row < 0) {
+            row += numrows;
+            col += 4 - ((numrows + 4) % 8);
+        }
+        if (col < 0) {
+            col += numcols;
+            row += 4 - ((numcols + 4) % 8);
+        }
+        used[row * numcols + col] = true;
+        if (count == modules.length) {
+            int[] larger = new int[modules.length + 64];
+            System.arraycopy(modules, 0, larger, 0, count);
+            modules = larger;
+        }
+        modules[count++] = (row << 16) | col;
+    }
+    
+    /**
+     * Places the 8 bits of a utah-shaped symbol character in ECC200.
+     * @param row the row
+     * @param col the column
+     */
+    private void utah(int row, int col) {
+        module(row - 2, col - 2);
+        module(row - 2, col - 1);
+        module(row - 1, col - 2);
+        module(row - 1, col - 1);
+        module(row - 1, col);
+        module(row, col - 2);
+        module(row, col - 1);
+        module(row, col);
+    }
+    
+    private void corner1() {
+        module(numrows - 1, 0);
+        module(numrows - 1, 1);
+        module(numrows - 1, 2);
+        module(0, numcols - 2);
+        module(0, numcols - 1);
+        module(1, numcols - 1);
+        module(2, numcols - 1);
+        module(3, numcols - 1);
+    }
+    
+    private void corner2() {
+        module(numrows - 3, 0);
+        module(numrows - 2, 0);
+        module(numrows - 1, 0);
+        module(0, numcols - 4);
+        module(0, numcols - 3);
+        module(0, numcols - 2);
+        module(0, numcols - 1);
+        module(1, numcols - 1);
+    }
+    
+    private void corner3() {
+        module(numrows - 3, 0);
+        module(numrows - 2, 0);
+        module(numrows - 1, 0);
+        module(0, numcols - 2);
+        module(0, numcols - 1);
+        module(1, numcols - 1);
+        module(2, numcols - 1);
+        module(3, numcols - 1);
+    }
+    
+    private void corner4() {
+        module(numrows - 1, 0);
+        module(numrows - 1, numcols - 1);
+        module(0, numcols - 3);
+        module(0, numcols - 2);
+        module(0, numcols - 1);
+        module(1, numcols - 3);
+        module(1, numcols - 2);
+        module(1, numcols - 1);
+    }
+    
+}
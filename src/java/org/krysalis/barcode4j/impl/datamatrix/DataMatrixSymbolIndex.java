@@ -0,0 +1,164 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.impl.datamatrix;
+
+import java.awt.Dimension;
+import java.util.List;
+
+/**
+ * Immutable index over the DataMatrix symbols that satisfy a given set of constraints (shape
+ * and minimum/maximum size). The symbols are filtered once when the index is created, so
+ * looking up the smallest symbol for a number of data codewords is a binary search. All
+ * fields are final, so instances can be shared between threads without synchronization.
+ * Instances are obtained through
+ * {@link DataMatrixSymbolInfo#getIndex(SymbolShapeHint, Dimension, Dimension)}.
+ *
+ * @version $Id$
+ */
+public final class DataMatrixSymbolIndex {
+
+    private final DataMatrixSymbolInfo[] source;
+    private final SymbolShapeHint shape;
+    private final Dimension minSize;
+    private final Dimension maxSize;
+
+    /** The symbols matching the constraints, in the order of the symbol set */
+    private final DataMatrixSymbolInfo[] symbols;
+    /** The largest data capacity found among symbols[0..i] */
+    private final int[] capacities;
+
+    /**
+     * Creates a new index.
+     * @param source the symbol set
+     * @param shape the symbol shape constraint
+     * @param minSize the minimum symbol size constraint or null for no constraint
+     * @param maxSize the maximum symbol size constraint or null for no constraint
+     */
+    DataMatrixSymbolIndex(DataMatrixSymbolInfo[] source, SymbolShapeHint shape,
+            Dimension minSize, Dimension maxSize) {
+        this.source = source;
+        this.shape = shape;
+        this.minSize = (minSize != null ? new Dimension(minSize) : null);
+        this.maxSize = (maxSize != null ? new Dimension(maxSize) : null);
+
+        List matches = new java.util.ArrayList(source.length);
+        for (int i = 0, c = source.length; i < c; i++) {
+            if (matches(source[i])) {
+                matches.add(source[i]);
+            }
+        }
+        this.symbols = (DataMatrixSymbolInfo[])matches.toArray(
+                new DataMatrixSymbolInfo[matches.size()]);
+        //The first symbol in the set that is large enough wins. Using the running maximum
+        //keeps the array sorted even if the symbol set isn't sorted by capacity.
+        this.capacities = new int[symbols.length];
+        int max = 0;
+        for (int i = 0; i < symbols.length; i++) {
+            max = Math.max(max, symbols[i].dataCapacity);
+            capacities[i] = max;
+        }
+    }
+
+    private boolean matches(DataMatrixSymbolInfo symbol) {
+        if (shape == SymbolShapeHint.FORCE_SQUARE && symbol.rectangular) {
+            return false;
+        }
+        if (shape == SymbolShapeHint.FORCE_RECTANGLE && !symbol.rectangular) {
+            return false;
+        }
+        if (minSize != null
+                && (symbol.getSymbolWidth() < minSize.width
+                        || symbol.getSymbolHeight() < minSize.height)) {
+            return false;
+        }
+        if (maxSize != null
+                && (symbol.getSymbolWidth() > maxSize.width
+                        || symbol.getSymbolHeight() > maxSize.height)) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the smallest symbol that can hold the given number of data codewords.
+     * @param dataCodewords the number of data codewords
+     * @return the symbol or null if no symbol satisfying the constraints is large enough
+     */
+    public DataMatrixSymbolInfo lookup(int dataCodewords) {
+        int low = 0;
+        int high = capacities.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (capacities[mid] < dataCodewords) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return (low < symbols.length ? symbols[low] : null);
+    }
+
+    /**
+     * Returns the smallest symbol that can hold the given number of data codewords.
+     * @param dataCodewords the number of data codewords
+     * @param fail true if an exception should be thrown if no symbol is large enough
+     * @return the symbol or null if no symbol is large enough and fail is false
+     */
+    public DataMatrixSymbolInfo lookup(int dataCodewords, boolean fail) {
+        DataMatrixSymbolInfo symbol = lookup(dataCodewords);
+        if (symbol == null && fail) {
+            throw new IllegalArgumentException(
+                "Can't find a symbol arrangement that matches the message. Data codewords: "
+                    + dataCodewords);
+        }
+        return symbol;
+    }
+
+    /**
+     * Returns the largest number of data codewords any symbol of this index can hold.
+     * @return the maximum data capacity (0 if no symbol satisfies the constraints)
+     */
+    public int getMaxCapacity() {
+        return (capacities.length > 0 ? capacities[capacities.length - 1] : 0);
+    }
+
+    /** @return the symbol shape constraint */
+    public SymbolShapeHint getShape() {
+        return this.shape;
+    }
+
+    /** @return the minimum symbol size constraint or null if there's no constraint */
+    public Dimension getMinSize() {
+        return (this.minSize != null ? new Dimension(this.minSize) : null);
+    }
+
+    /** @return the maximum symbol size constraint or null if there's no constraint */
+    public Dimension getMaxSize() {
+        return (this.maxSize != null ? new Dimension(this.maxSize) : null);
+    }
+
+    /**
+     * Indicates whether this index has been built from the symbol set currently in use.
+     * @return true if the index is up to date
+     */
+    boolean isCurrent() {
+        return this.source == DataMatrixSymbolInfo.getSymbols();
+    }
+
+}
@@ -19,6 +19,7 @@
 package org.krysalis.barcode4j.impl.datamatrix;
 
 import java.awt.Dimension;
+import java.util.Map;
 
 /**
  * Symbol info table for DataMatrix.
@@ -65,12 +66,62 @@ public class DataMatrixSymbolInfo {
 
     private static DataMatrixSymbolInfo[] symbols = PROD_SYMBOLS;
 
+    /** Maximum number of indexes kept in the cache */
+    private static final int MAX_CACHED_INDEXES = 64;
+
+    /** Cache of symbol indexes (key: String describing the constraints) */
+    private static final Map INDEXES = new java.util.HashMap();
+
     /**
      * Overrides the symbol info set used by this class. Used for testing purposes.
      * @param override the symbol info set to use
      */
     public static void overrideSymbolSet(DataMatrixSymbolInfo[] override) {
-        symbols = override;
+        synchronized (INDEXES) {
+            symbols = override;
+            INDEXES.clear();
+        }
+    }
+
+    /** @return the symbol info set currently in use */
+    static DataMatrixSymbolInfo[] getSymbols() {
+        return symbols;
+    }
+
+    /**
+     * Returns the index of all symbols satisfying the given constraints. Indexes are cached,
+     * so this is cheap for constraints that have been used before.
+     * @param shape the symbol shape constraint
+     * @param minSize the minimum symbol size constraint or null for no constraint
+     * @param maxSize the maximum symbol size constraint or null for no constraint
+     * @return the symbol index
+     */
+    public static DataMatrixSymbolIndex getIndex(SymbolShapeHint shape,
+            Dimension minSize, Dimension maxSize) {
+        StringBuffer sb = new StringBuffer(32);
+        sb.append(shape != null ? shape.getName() : null);
+        if (minSize != null) {
+            sb.append(':').append(minSize.width).append('x').append(minSize.height);
+        } else {
+            sb.append(":-");
+        }
+        if (maxSize != null) {
+            sb.append(':').append(maxSize.width).append('x').append(maxSize.height);
+        } else {
+            sb.append(":-");
+        }
+        String key = sb.toString();
+        synchronized (INDEXES) {
+            DataMatrixSymbolIndex index = (DataMatrixSymbolIndex)INDEXES.get(key);
+            if (index == null) {
+                if (INDEXES.size() >= MAX_CACHED_INDEXES) {
+                    INDEXES.clear();
+                }
+                index = new DataMatrixSymbolIndex(symbols, shape, minSize, maxSize);
+                INDEXES.put(key, index);
+            }
+            return index;
+        }
     }
 
     public boolean rectangular;
@@ -123,34 +174,7 @@ public class DataMatrixSymbolInfo {
 
     public static DataMatrixSymbolInfo lookup(int dataCodewords,
             SymbolShapeHint shape, Dimension minSize, Dimension maxSize, boolean fail) {
-        for (int i = 0, c = symbols.length; i < c; i++) {
-            DataMatrixSymbolInfo symbol = symbols[i];
-            if (shape == SymbolShapeHint.FORCE_SQUARE && symbol.rectangular) {
-                continue;
-            }
-            if (shape == SymbolShapeHint.FORCE_RECTANGLE && !symbol.rectangular) {
-                continue;
-            }
-            if (minSize != null
-                    && (symbol.getSymbolWidth() < minSize.width
-                            || symbol.getSymbolHeight() < minSize.height)) {
-                continue;
-            }
-            if (maxSize != null
-                    && (symbol.getSymbolWidth() > maxSize.width
-                            || symbol.getSymbolHeight() > maxSize.height)) {
-                continue;
-            }
-            if (dataCodewords <= symbol.dataCapacity) {
-                return symbol;
-            }
-        }
-        if (fail) {
-            throw new IllegalArgumentException(
-                "Can't find a symbol arrangement that matches the message. Data codewords: "
-                    + dataCodewords);
-        }
-        return null;
+        return getIndex(shape, minSize, maxSize).lookup(dataCodewords, fail);
     }
 
     public int getHorzDataRegions() {
@@ -18,16 +18,18 @@
 
 package org.krysalis.barcode4j.impl.datamatrix;
 
-import java.util.Arrays;
-
 /**
- * Default implementation of DataMatrixPlacement which uses a byte array to store the bits
- * (one bit per byte to allow for checking whether a bit has been set or not).
+ * Default implementation of DataMatrixPlacement which packs the bits into long values, one
+ * row after the other. A second set of long values records which bits have been set.
  */
 class DefaultDataMatrixPlacement extends DataMatrixPlacement {
     
+    /** Number of long values per row */
+    private int rowSize;
     /** Buffer for the bits */
-    protected byte[] bits;
+    private long[] bits;
+    /** Marks the bits that have been set */
+    private long[] used;
     
     /**
      * Main constructor
@@ -37,23 +39,46 @@ class DefaultDataMatrixPlacement extends DataMatrixPlacement {
      */
     public DefaultDataMatrixPlacement(String codewords, int numcols, int numrows) {
         super(codewords, numcols, numrows);
-        this.bits = new byte[numcols * numrows];
-        Arrays.fill(this.bits, (byte)-1); //Initialize with "not set" value
+        init();
+    }
+    
+    /**
+     * Main constructor
+     * @param codewords the codewords to place
+     * @param numcols the number of columns
+     * @param numrows the number of rows
+     */
+    public DefaultDataMatrixPlacement(int[] codewords, int numcols, int numrows) {
+        super(codewords, numcols, numrows);
+        init();
+    }
+    
+    private void init() {
+        this.rowSize = (numcols + 63) >>> 6;
+        this.bits = new long[rowSize * numrows];
+        this.used = new long[rowSize * numrows];
     }
     
     /** @see org.krysalis.barcode4j.impl.datamatrix.DataMatrixPlacement#getBit(int, int) */
     protected boolean getBit(int col, int row) {
-        return bits[row * numcols + col] == 1;
+        return (bits[row * rowSize + (col >>> 6)] & (1L << (col & 63))) != 0;
     }
 
     /** @see org.krysalis.barcode4j.impl.datamatrix.DataMatrixPlacement#setBit(int, int, boolean) */
     protected void setBit(int col, int row, boolean bit) {
-        bits[row * numcols + col] = (bit ? (byte)1 : (byte)0);
+        int index = row * rowSize + (col >>> 6);
+        long mask = 1L << (col & 63);
+        if (bit) {
+            bits[index] |= mask;
+        } else {
+            bits[index] &= ~mask;
+        }
+        used[index] |= mask;
     }
 
     /** @see org.krysalis.barcode4j.impl.datamatrix.DataMatrixPlacement#hasBit(int, int) */
     protected boolean hasBit(int col, int row) {
-        return bits[row * numcols + col] >= 0;
+        return (used[row * rowSize + (col >>> 6)] & (1L << (col & 63))) != 0;
     }
     
 }
\ No newline at end of file
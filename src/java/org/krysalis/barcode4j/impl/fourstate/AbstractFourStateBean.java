@@ -44,6 +44,7 @@ public abstract class AbstractFourStateBean extends HeightVariableBarcodeBean {
      * @param mode the checksum mode
      */
     public void setChecksumMode(ChecksumMode mode) {
+        checkMutable();
         this.checksumMode = mode;
     }
 
@@ -73,6 +74,7 @@ public abstract class AbstractFourStateBean extends HeightVariableBarcodeBean {
      * @param width the interchar gap width
      */
     public void setIntercharGapWidth(double width) {
+        checkMutable();
         this.intercharGapWidth = width;
     }
     
@@ -89,6 +91,7 @@ public abstract class AbstractFourStateBean extends HeightVariableBarcodeBean {
      * @param height the height of the track
      */
     public void setTrackHeight(double height) {
+        checkMutable();
         this.trackHeight = height;
         updateHeight();
     }
@@ -106,6 +109,7 @@ public abstract class AbstractFourStateBean extends HeightVariableBarcodeBean {
      * @param height the height of the ascender/descender
      */
     public void setAscenderHeight(double height) {
+        checkMutable();
         this.ascenderHeight = height;
         updateHeight();
     }
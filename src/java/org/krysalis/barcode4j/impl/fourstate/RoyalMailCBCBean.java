@@ -46,6 +46,7 @@ public class RoyalMailCBCBean extends AbstractFourStateBean {
     
     /** {@inheritDoc} */
     public void setMsgPosition(HumanReadablePlacement placement) {
+        checkMutable();
         //nop, no human-readable with this symbology!!!
     }
 
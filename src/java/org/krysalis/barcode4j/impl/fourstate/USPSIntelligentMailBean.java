@@ -71,6 +71,7 @@ public class USPSIntelligentMailBean extends AbstractFourStateBean {
      * @param height the height of the vertical quiet zone (in mm)
      */
     public void setVerticalQuietZone(double height) {
+        checkMutable();
         this.quietZoneVertical = new Double(height);
     }
     
@@ -71,6 +71,7 @@ public class ITF14Bean extends Interleaved2Of5Bean {
      * @param value true for a bearer box, false for horizontal bearer bars.
      */
     public void setBearerBox(boolean value) {
+        checkMutable();
         this.bearerBox = value;
     }
 
@@ -87,11 +88,13 @@ public class ITF14Bean extends Interleaved2Of5Bean {
      * @param width the bearer bar width (in millimeters)
      */
     public void setBearerBarWidth(double width) {
+        checkMutable();
         this.bearerBarWidth = width;
     }
 
     /** {@inheritDoc} */
     public void doQuietZone(boolean value) {
+        checkMutable();
         if (!value) {
             throw new IllegalArgumentException("Quiet zone may not be disabled for ITF-14!");
         }
@@ -64,6 +64,7 @@ public class Interleaved2Of5Bean extends AbstractBarcodeBean {
      *   false to ignore
      */
     public void setDisplayChecksum(boolean value) {
+        checkMutable();
         this.displayChecksum = value;
     }
     
@@ -120,6 +121,7 @@ public class Interleaved2Of5Bean extends AbstractBarcodeBean {
      * @param mode the checksum mode
      */
     public void setChecksumMode(ChecksumMode mode) {
+        checkMutable();
         this.checksumMode = mode;
     }
 
@@ -144,6 +146,7 @@ public class Interleaved2Of5Bean extends AbstractBarcodeBean {
      * @param value the wide factory (should be > 1.0)
      */
     public void setWideFactor(double value) {
+        checkMutable();
         if (value <= 1.0) {
             throw new IllegalArgumentException("wide factor must be > 1.0");
         }
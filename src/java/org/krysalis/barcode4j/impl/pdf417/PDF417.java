@@ -92,6 +92,9 @@ public class PDF417 extends ConfigurableBarcodeGenerator
         if (child != null) {
             getPDF417Bean().setWidthToHeightRatio(child.getValueAsFloat());
         }
+
+        getPDF417Bean().setMinimalEncoding(
+                cfg.getChild("minimal-encoding").getValueAsBoolean(false));
     }
    
     /**
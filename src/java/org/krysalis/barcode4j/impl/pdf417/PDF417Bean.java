@@ -56,6 +56,8 @@ public class PDF417Bean extends AbstractBarcodeBean {
     private int maxCols = MAX_COLUMN_COUNT;
     private double widthToHeightRatio = DEFAULT_WIDTH_TO_HEIGHT_RATIO;
     private int errorCorrectionLevel = DEFAULT_ERROR_CORRECTION_LEVEL;
+    private boolean minimalEncoding;
+    private PDF417DimensionCache dimensionCache;
 
     /** Create a new instance. */
     public PDF417Bean() {
@@ -73,10 +75,11 @@ public class PDF417Bean extends AbstractBarcodeBean {
             throw new NullPointerException("Parameter msg must not be empty");
         }
 
+        PDF417EncodedSymbol symbol = PDF417LogicImpl.encodeMessage(msg, this);
         TwoDimBarcodeLogicHandler handler = new DefaultTwoDimCanvasLogicHandler(
-                this, new Canvas(canvas));
+                this, new Canvas(canvas), calcDimensions(symbol));
 
-        PDF417LogicImpl.generateBarcodeLogic(handler, msg, this);
+        PDF417LogicImpl.generateBarcodeLogic(handler, symbol, getErrorCorrectionLevel());
     }
 
 
@@ -84,17 +87,33 @@ public class PDF417Bean extends AbstractBarcodeBean {
      * @see org.krysalis.barcode4j.BarcodeGenerator#calcDimensions(String)
      */
     public BarcodeDimension calcDimensions(String msg) {
+        return calcDimensions(PDF417LogicImpl.encodeMessage(msg, this));
+    }
 
-        int sourceCodeWords = PDF417HighLevelEncoder.encodeHighLevel(msg).length();
-        Dimension dimension = PDF417LogicImpl.determineDimensions(this,
-                sourceCodeWords);
-
-        if (dimension == null) {
-            throw new IllegalArgumentException("Unable to fit message in columns");
+    /**
+     * Determines the number of columns and rows for a number of source codewords under the
+     * current settings. The result is remembered until the settings change.
+     * @param sourceCodeWords the number of source codewords
+     * @return dimension object containing cols as width and rows as height (or null if the
+     *          message doesn't fit)
+     */
+    Dimension determineDimensions(int sourceCodeWords) {
+        PDF417DimensionCache cache = this.dimensionCache;
+        if (cache == null || !cache.matches(this)) {
+            cache = new PDF417DimensionCache(this);
+            this.dimensionCache = cache;
         }
+        return cache.getDimensions(sourceCodeWords);
+    }
 
-        double width = (17 * dimension.width + 69) * getModuleWidth();
-        double height = (getBarHeight() * dimension.height);
+    /**
+     * Calculates the dimensions of an already encoded symbol.
+     * @param symbol the encoded symbol
+     * @return the barcode dimensions
+     */
+    protected BarcodeDimension calcDimensions(PDF417EncodedSymbol symbol) {
+        double width = (17 * symbol.getColumns() + 69) * getModuleWidth();
+        double height = (getBarHeight() * symbol.getRows());
         double qzh = (hasQuietZone() ? getQuietZone() : 0);
         double qzv = (hasQuietZone() ? getVerticalQuietZone() : 0);
         return new BarcodeDimension(width, height,
@@ -166,6 +185,14 @@ public class PDF417Bean extends AbstractBarcodeBean {
         return widthToHeightRatio;
     }
 
+    /**
+     * Indicates whether the encoder producing the smallest number of codewords is used.
+     * @return true if the minimal encoder is used, false for the annex P algorithm
+     */
+    public boolean isMinimalEncoding() {
+        return this.minimalEncoding;
+    }
+
     private void checkValidColumnCount(int cols) {
         if (cols < MIN_COLUMN_COUNT || cols > MAX_COLUMN_COUNT) {
             throw new IllegalArgumentException(
@@ -186,6 +213,7 @@ public class PDF417Bean extends AbstractBarcodeBean {
      * @param cols the number of columns
      */
     public void setColumns(int cols) {
+        checkMutable();
         setMinCols(cols);
         setMaxCols(cols);
     }
@@ -195,6 +223,7 @@ public class PDF417Bean extends AbstractBarcodeBean {
      * @param level the error correction level (a value between 0 and 8)
      */
     public void setErrorCorrectionLevel(int level) {
+        checkMutable();
         if (level < 0 || level > 8) {
             throw new IllegalArgumentException(
                     "Error correction level must be between 0 and 8!");
@@ -207,6 +236,7 @@ public class PDF417Bean extends AbstractBarcodeBean {
      * @param maxCols the maximum number of columns..
      */
     public void setMaxCols(int maxCols) {
+        checkMutable();
         checkValidColumnCount(maxCols);
         this.maxCols = maxCols;
     }
@@ -216,6 +246,7 @@ public class PDF417Bean extends AbstractBarcodeBean {
      * @param maxRows the maximum number of rows.
      */
     public void setMaxRows(int maxRows) {
+        checkMutable();
         checkValidRowCount(maxRows);
         this.maxRows = maxRows;
     }
@@ -225,6 +256,7 @@ public class PDF417Bean extends AbstractBarcodeBean {
      * @param minCols The minimum number of columns.
      */
     public void setMinCols(int minCols) {
+        checkMutable();
         checkValidColumnCount(minCols);
         this.minCols = minCols;
     }
@@ -234,6 +266,7 @@ public class PDF417Bean extends AbstractBarcodeBean {
      * @param minRows the minimum of rows to set.
      */
     public void setMinRows(int minRows) {
+        checkMutable();
         checkValidRowCount(minRows);
         this.minRows = minRows;
     }
@@ -243,6 +276,7 @@ public class PDF417Bean extends AbstractBarcodeBean {
      * @param height the height of the rows (in mm)
      */
     public void setRowHeight(double height) {
+        checkMutable();
         setBarHeight(height);
     }
 
@@ -252,7 +286,20 @@ public class PDF417Bean extends AbstractBarcodeBean {
      * @param widthToHeightRatio the ratio of the barcode width to the height
      */
     public void setWidthToHeightRatio(double widthToHeightRatio) {
+        checkMutable();
         this.widthToHeightRatio = widthToHeightRatio;
     }
 
+    /**
+     * Controls which high-level encoder is used. By default, the compaction modes are chosen
+     * with the algorithm described in annex P of ISO/IEC 15438:2001(E). The minimal encoder
+     * instead determines the combination of Text (and its submodes), Byte and Numeric
+     * Compaction resulting in the smallest number of codewords.
+     * @param value true to use the minimal encoder, false for the annex P algorithm
+     */
+    public void setMinimalEncoding(boolean value) {
+        checkMutable();
+        this.minimalEncoding = value;
+    }
+
 }
\ No newline at end of file
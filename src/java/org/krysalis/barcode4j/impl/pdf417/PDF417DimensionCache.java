@@ -0,0 +1,106 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.impl.pdf417;
+
+import java.awt.Dimension;
+
+/**
+ * Remembers the number of columns and rows chosen for each number of source codewords under
+ * the constraints of a {@link PDF417Bean} (error correction level, minimum and maximum number
+ * of columns and rows, preferred width to height ratio, module width and row height). The
+ * bean keeps an instance and replaces it when its settings change.
+ *
+ * @version $Id$
+ */
+final class PDF417DimensionCache {
+
+    /** Source codeword counts beyond this can't fit in a symbol and aren't cached */
+    private static final int MAX_CACHED_CODEWORDS = 929;
+    /** Marks a codeword count for which no dimensions satisfy the constraints */
+    private static final int NO_FIT = -1;
+
+    private final int errorCorrectionLevel;
+    private final int minCols;
+    private final int maxCols;
+    private final int minRows;
+    private final int maxRows;
+    private final double preferredRatio;
+    private final double moduleWidth;
+    private final double rowHeight;
+
+    /** Columns (upper 16 bits) and rows (lower 16 bits) per codeword count, 0 if unknown */
+    private final int[] dimensions = new int[MAX_CACHED_CODEWORDS];
+
+    /**
+     * Creates a new cache for the current settings of a bean.
+     * @param bean the PDF417 bean
+     */
+    PDF417DimensionCache(PDF417Bean bean) {
+        this.errorCorrectionLevel = bean.getErrorCorrectionLevel();
+        this.minCols = bean.getMinCols();
+        this.maxCols = bean.getMaxCols();
+        this.minRows = bean.getMinRows();
+        this.maxRows = bean.getMaxRows();
+        this.preferredRatio = bean.getWidthToHeightRatio();
+        this.moduleWidth = bean.getModuleWidth();
+        this.rowHeight = bean.getBarHeight();
+    }
+
+    /**
+     * Indicates whether this cache has been created for the current settings of a bean.
+     * @param bean the PDF417 bean
+     * @return true if the cached dimensions apply to the bean
+     */
+    boolean matches(PDF417Bean bean) {
+        return errorCorrectionLevel == bean.getErrorCorrectionLevel()
+                && minCols == bean.getMinCols()
+                && maxCols == bean.getMaxCols()
+                && minRows == bean.getMinRows()
+                && maxRows == bean.getMaxRows()
+                && preferredRatio == bean.getWidthToHeightRatio()
+                && moduleWidth == bean.getModuleWidth()
+                && rowHeight == bean.getBarHeight();
+    }
+
+    /**
+     * Returns the number of columns and rows for a number of source codewords.
+     * @param sourceCodeWords the number of source codewords
+     * @return dimension object containing cols as width and rows as height (or null if the
+     *          constraints can't be satisfied)
+     */
+    Dimension getDimensions(int sourceCodeWords) {
+        if (sourceCodeWords < 0 || sourceCodeWords >= MAX_CACHED_CODEWORDS) {
+            return determineDimensions(sourceCodeWords);
+        }
+        //Concurrent calls may compute the same entry twice but always store the same value
+        int packed = dimensions[sourceCodeWords];
+        if (packed == 0) {
+            Dimension dim = determineDimensions(sourceCodeWords);
+            packed = (dim != null ? (dim.width << 16) | dim.height : NO_FIT);
+            dimensions[sourceCodeWords] = packed;
+        }
+        return (packed != NO_FIT ? new Dimension(packed >>> 16, packed & 0xFFFF) : null);
+    }
+
+    private Dimension determineDimensions(int sourceCodeWords) {
+        return PDF417LogicImpl.determineDimensions(sourceCodeWords, errorCorrectionLevel,
+                minCols, maxCols, minRows, maxRows, preferredRatio, moduleWidth, rowHeight);
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.impl.pdf417;
+
+/**
+ * Holds the result of the high-level encoding step of a PDF417 message, i.e. the source
+ * codewords and the number of data columns and rows chosen for them. It allows the dimensions
+ * of a symbol to be calculated and the symbol to be painted without running the high-level
+ * encoder twice.
+ *
+ * @version $Id$
+ */
+public class PDF417EncodedSymbol {
+
+    private String msg;
+    private String highLevel;
+    private int columns;
+    private int rows;
+
+    /**
+     * Creates a new encoded symbol.
+     * @param msg the original message
+     * @param highLevel the source codewords produced by the high-level encoder
+     * @param columns the number of data columns
+     * @param rows the number of rows
+     */
+    public PDF417EncodedSymbol(String msg, String highLevel, int columns, int rows) {
+        this.msg = msg;
+        this.highLevel = highLevel;
+        this.columns = columns;
+        this.rows = rows;
+    }
+
+    /** @return the original message */
+    public String getMessage() {
+        return this.msg;
+    }
+
+    /** @return the source codewords produced by the high-level encoder */
+    public String getHighLevelCodewords() {
+        return this.highLevel;
+    }
+
+    /** @return the number of data columns */
+    public int getColumns() {
+        return this.columns;
+    }
+
+    /** @return the number of rows */
+    public int getRows() {
+        return this.rows;
+    }
+
+}
@@ -26,6 +26,36 @@ package org.krysalis.barcode4j.impl.pdf417;
  */
 public class PDF417ErrorCorrection implements PDF417Constants {
 
+    /** The prime defining the field GF(929) */
+    private static final int MODULUS = 929;
+    /** Primitive element of GF(929) */
+    private static final int GENERATOR = 3;
+
+    /** EXP[i] = 3^i mod 929 for i = 0..2*927, so EXP[LOG[a] + LOG[b]] needs no reduction */
+    private static final int[] EXP = new int[2 * (MODULUS - 1)];
+    /** LOG[a] is the discrete logarithm of a (a = 1..928) */
+    private static final int[] LOG = new int[MODULUS];
+    /** Logarithms of the EC_COEFFICIENTS (-1 for a zero coefficient) */
+    private static final int[][] COEFFICIENT_LOGS = new int[EC_COEFFICIENTS.length][];
+
+    static {
+        int x = 1;
+        for (int i = 0; i < MODULUS - 1; i++) {
+            EXP[i] = x;
+            EXP[i + MODULUS - 1] = x;
+            LOG[x] = i;
+            x = (x * GENERATOR) % MODULUS;
+        }
+        for (int level = 0; level < EC_COEFFICIENTS.length; level++) {
+            int[] coefficients = EC_COEFFICIENTS[level];
+            int[] logs = new int[coefficients.length];
+            for (int j = 0; j < coefficients.length; j++) {
+                logs[j] = (coefficients[j] != 0 ? LOG[coefficients[j]] : -1);
+            }
+            COEFFICIENT_LOGS[level] = logs;
+        }
+    }
+
     /**
      * Determines the number of error correction codewords for a specified error correction
      * level.
@@ -69,29 +99,89 @@ public class PDF417ErrorCorrection implements PDF417Constants {
      */
     public static String generateErrorCorrection(String dataCodewords, int errorCorrectionLevel) {
         int k = getErrorCorrectionCodewordCount(errorCorrectionLevel);
-        char[] e = new char[k];
         int sld = dataCodewords.length();
-        int t1, t2, t3;
+        int[] codewords = new int[sld + k];
         for (int i = 0; i < sld; i++) {
-            t1 = (dataCodewords.charAt(i) + e[e.length - 1]) % 929;
-            for (int j = k - 1; j >= 1; j--) {
-                t2 = (t1 * EC_COEFFICIENTS[errorCorrectionLevel][j]) % 929;
-                t3 = 929 - t2;
-                e[j] = (char)((e[j - 1] + t3) % 929);
-            }
-            t2 = (t1 * EC_COEFFICIENTS[errorCorrectionLevel][0]) % 929;
-            t3 = 929 - t2;
-            e[0] = (char)(t3 % 929);
-            //System.out.println(HighLevelEncoderTest.visualize(new String(e)));
+            codewords[i] = dataCodewords.charAt(i);
         }
+        generateErrorCorrection(codewords, sld, errorCorrectionLevel);
         StringBuffer sb = new StringBuffer(k);
-        for (int j = k - 1; j >= 0; j--) {
-            if (e[j] != 0) {
-                e[j] = (char)(929 - e[j]);
-            }
-            sb.append(e[j]);
+        for (int j = sld; j < codewords.length; j++) {
+            sb.append((char)codewords[j]);
         }
         return sb.toString();
     }
     
+    /**
+     * Generates the error correction codewords according to 4.10 in ISO/IEC 15438:2001(E).
+     * The error correction codewords are written directly behind the data codewords so the
+     * array must have room for at least {@link #getErrorCorrectionCodewordCount(int)} more
+     * codewords.
+     * @param codewords the data codewords, receives the error correction codewords
+     * @param dataCount the number of data codewords
+     * @param errorCorrectionLevel the error correction level (0-8)
+     */
+    public static void generateErrorCorrection(int[] codewords, int dataCount, 
+            int errorCorrectionLevel) {
+        generateErrorCorrection(codewords, 0, dataCount, errorCorrectionLevel,
+                codewords, dataCount);
+    }
+
+    /**
+     * Generates the error correction codewords according to 4.10 in ISO/IEC 15438:2001(E).
+     * Multiplications in GF(929) are done through logarithm tables, and the division
+     * remainder is accumulated directly in the target buffer, so no memory is allocated.
+     * The target range must not overlap the data codewords.
+     * @param data the array containing the data codewords (values 0..928)
+     * @param dataOffset the index of the first data codeword
+     * @param dataCount the number of data codewords
+     * @param errorCorrectionLevel the error correction level (0-8)
+     * @param ec receives the error correction codewords
+     * @param ecOffset the index at which the error correction codewords are written
+     */
+    public static void generateErrorCorrection(int[] data, int dataOffset, int dataCount,
+            int errorCorrectionLevel, int[] ec, int ecOffset) {
+        int k = getErrorCorrectionCodewordCount(errorCorrectionLevel);
+        if (data.length < dataOffset + dataCount) {
+            throw new IllegalArgumentException("The data codewords exceed the array");
+        }
+        if (ec.length < ecOffset + k) {
+            throw new IllegalArgumentException(
+                    "The codeword array is too small for the error correction codewords");
+        }
+        int[] logs = COEFFICIENT_LOGS[errorCorrectionLevel];
+        //The remainder is kept in ec with the highest-order term first (negated as in 4.10)
+        int last = ecOffset + k - 1;
+        for (int pos = ecOffset; pos <= last; pos++) {
+            ec[pos] = 0;
+        }
+        for (int i = dataOffset, end = dataOffset + dataCount; i < end; i++) {
+            int t1 = data[i] + ec[ecOffset];
+            if (t1 >= MODULUS) {
+                t1 -= MODULUS;
+            }
+            if (t1 == 0) {
+                //Nothing to subtract, just shift the remainder
+                System.arraycopy(ec, ecOffset + 1, ec, ecOffset, k - 1);
+                ec[last] = 0;
+                continue;
+            }
+            int t1Log = LOG[t1];
+            for (int pos = ecOffset, j = k - 1; j >= 1; pos++, j--) {
+                int e = ec[pos + 1];
+                if (logs[j] >= 0) {
+                    e -= EXP[t1Log + logs[j]];
+                    if (e < 0) {
+                        e += MODULUS;
+                    }
+                }
+                ec[pos] = e;
+            }
+            ec[last] = (logs[0] >= 0 ? MODULUS - EXP[t1Log + logs[0]] : 0);
+        }
+        for (int pos = ecOffset; pos <= last; pos++) {
+            ec[pos] = (ec[pos] != 0 ? MODULUS - ec[pos] : 0);
+        }
+    }
+    
 }
@@ -19,7 +19,6 @@
 package org.krysalis.barcode4j.impl.pdf417;
 
 import java.io.UnsupportedEncodingException;
-import java.math.BigInteger;
 import java.util.Arrays;
 
 /**
@@ -33,6 +32,15 @@ public class PDF417HighLevelEncoder implements PDF417Constants {
     private static final byte[] MIXED = new byte[128];
     private static final byte[] PUNCTUATION = new byte[128];
 
+    /** Maximum number of digits per Numeric Compaction group */
+    private static final int NUMERIC_GROUP_DIGITS = 44;
+    /** Maximum number of codewords per group ("1" + 44 digits is less than 900^15) */
+    private static final int NUMERIC_GROUP_CODEWORDS = 15;
+    /** Number of decimal digits per limb in the base 900 conversion */
+    private static final int NUMERIC_LIMB_DIGITS = 15;
+    private static final long NUMERIC_LIMB_BASE = 1000000000000000L;
+    private static final int NUMERIC_LIMBS = 3;
+
     static {
         //Construct inverse lookups
         Arrays.fill(MIXED, (byte)-1);
@@ -126,6 +134,22 @@ public class PDF417HighLevelEncoder implements PDF417Constants {
         return sb.toString();
     }
 
+    /**
+     * Performs high-level encoding of a PDF417 message.
+     * @param msg the message
+     * @param minimal true to use the minimal encoder which determines the combination of
+     *          compaction modes resulting in the smallest number of codewords, false to use
+     *          the algorithm described in annex P of ISO/IEC 15438:2001(E)
+     * @return the encoded message (the char values range from 0 to 928)
+     */
+    public static String encodeHighLevel(String msg, boolean minimal) {
+        if (minimal) {
+            return new MinimalEncoder().encode(msg);
+        } else {
+            return encodeHighLevel(msg);
+        }
+    }
+
     /**
      * Encode parts of the message using Text Compaction as described in ISO/IEC 15438:2001(E),
      * chapter 4.4.2.
@@ -231,21 +255,34 @@ public class PDF417HighLevelEncoder implements PDF417Constants {
                 break;
             }
         }
+        appendTextValues(tmp, sb);
+        if ((tmp.length() % 2) != 0 && submode == SUBMODE_PUNCTUATION) {
+            submode = SUBMODE_ALPHA; //the pad value is "al" in submode Punctuation
+        }
+        return submode;
+    }
+
+    /**
+     * Combines pairs of text values (0..29) to codewords. An odd number of values is padded
+     * with a "ps" value.
+     * @param values the text values
+     * @param sb receives the encoded codewords
+     */
+    private static void appendTextValues(StringBuffer values, StringBuffer sb) {
         char h = 0;
-        int len = tmp.length();
+        int len = values.length();
         for (int i = 0; i < len; i++) {
             boolean odd = (i % 2) != 0;
             if (odd) {
-                h = (char)((h * 30) + tmp.charAt(i));
+                h = (char)((h * 30) + values.charAt(i));
                 sb.append(h);
             } else {
-                h = tmp.charAt(i);
+                h = values.charAt(i);
             }
         }
         if ((len % 2) != 0) {
             sb.append((char)((h * 30) + 29)); //ps
         }
-        return submode;
     }
 
     /**
@@ -296,25 +333,63 @@ public class PDF417HighLevelEncoder implements PDF417Constants {
         }
     }
 
+    /**
+     * Encode parts of the message using Numeric Compaction as described in ISO/IEC
+     * 15438:2001(E), chapter 4.4.4. Groups of up to 44 digits, prefixed with a "1", are
+     * converted from base 10 to base 900.
+     * <p>
+     * The conversion uses <code>long</code> limbs of 15 decimal digits each (at most three per
+     * group) and schoolbook division by 900: the remainder times 10^15 plus the next limb is
+     * always smaller than 9 * 10^17 and thus fits into a <code>long</code>. No objects are
+     * created per group.
+     * @param msg the message
+     * @param startpos the start position within the message
+     * @param count the number of digits to be encoded
+     * @param sb receives the encoded codewords
+     */
     public static void encodeNumeric(String msg, int startpos, int count, StringBuffer sb) {
+        long[] limbs = new long[NUMERIC_LIMBS];
+        char[] tmp = new char[NUMERIC_GROUP_CODEWORDS];
         int idx = 0;
-        StringBuffer tmp = new StringBuffer(count / 3 + 1);
-        final BigInteger num900 = BigInteger.valueOf(900);
-        final BigInteger num0 = BigInteger.valueOf(0);
-        while (idx < count - 1) {
-            tmp.setLength(0);
-            int len = Math.min(44, count - idx);
-            String part = "1" + msg.substring(startpos + idx, startpos + idx + len);
-            BigInteger bigint = new BigInteger(part);
-            do {
-                BigInteger c = bigint.mod(num900);
-                tmp.append((char)(c.intValue()));
-                bigint = bigint.divide(num900);
-            } while (!bigint.equals(num0));
-
-            //Reverse temporary string
-            for (int i = tmp.length() - 1; i >= 0; i--) {
-                sb.append(tmp.charAt(i));
+        while (idx < count) {
+            int len = Math.min(NUMERIC_GROUP_DIGITS, count - idx);
+
+            //Parse "1" followed by the digits, most significant limb first
+            int digits = len + 1;
+            int limbCount = (digits + NUMERIC_LIMB_DIGITS - 1) / NUMERIC_LIMB_DIGITS;
+            int p = startpos + idx;
+            long value = 1;
+            for (int i = digits - (limbCount - 1) * NUMERIC_LIMB_DIGITS; i > 1; i--) {
+                value = value * 10 + (msg.charAt(p++) - '0');
+            }
+            limbs[0] = value;
+            for (int l = 1; l < limbCount; l++) {
+                value = 0;
+                for (int i = 0; i < NUMERIC_LIMB_DIGITS; i++) {
+                    value = value * 10 + (msg.charAt(p++) - '0');
+                }
+                limbs[l] = value;
+            }
+
+            //Divide by 900 until nothing is left, the remainders are the codewords
+            int n = 0;
+            int first = 0;
+            while (first < limbCount) {
+                long rem = 0;
+                for (int l = first; l < limbCount; l++) {
+                    long cur = rem * NUMERIC_LIMB_BASE + limbs[l];
+                    limbs[l] = cur / 900;
+                    rem = cur % 900;
+                }
+                tmp[n++] = (char)rem;
+                while (first < limbCount && limbs[first] == 0) {
+                    first++;
+                }
+            }
+
+            //Most significant codeword first
+            for (int i = n - 1; i >= 0; i--) {
+                sb.append(tmp[i]);
             }
             idx += len;
         }
@@ -473,5 +548,316 @@ public class PDF417HighLevelEncoder implements PDF417Constants {
         return idx - startpos;
     }
 
+    /**
+     * Determines the sequence of compaction modes (and text submodes) resulting in the
+     * smallest number of codewords. The costs are counted in text values, i.e. half
+     * codewords. For every position in the message, the cheapest way to reach each state is
+     * kept. The states are the four text submodes (each with an even or odd number of text
+     * values written so far, since an odd count needs a pad value), byte compaction (with the
+     * number of bytes modulo 6, as six bytes are packed into five codewords) and numeric
+     * compaction (with the number of digits in the current group of up to 44 digits). The
+     * running time is linear in the length of the message.
+     */
+    private static class MinimalEncoder {
+
+        private static final int TEXT_STATE = 0;
+        private static final int BYTE_STATE = TEXT_STATE + 8;
+        private static final int NUMERIC_STATE = BYTE_STATE + 6;
+        private static final int STATES = NUMERIC_STATE + NUMERIC_GROUP_DIGITS;
+        /** Flags a shift to byte compaction in the predecessor of a text state */
+        private static final int SHIFTED = 0x40;
+        private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+        /** Number of text values needed to latch from one text submode to another */
+        private static final int[][] LATCH_COSTS = new int[][] {
+            {0, 1, 1, 2}, {2, 0, 1, 2}, {1, 1, 0, 1}, {1, 2, 2, 0}};
+        /** The text values latching from one text submode to another */
+        private static final char[][][] LATCHES = new char[][][] {
+            {{}, {27}, {28}, {28, 25}}, //from Alpha: ll, ml, ml+pl
+            {{28, 28}, {}, {28}, {28, 25}}, //from Lower: ml+al, ml, ml+pl
+            {{28}, {27}, {}, {25}}, //from Mixed: al, ll, pl
+            {{29}, {29, 27}, {29, 28}, {}}}; //from Punctuation: al, al+ll, al+ml
+
+        /**
+         * Number of codewords for a numeric group of n digits. "1" followed by n digits is
+         * at least 10^n and less than 2 * 10^n. For n up to 44, there's no power of 900 in
+         * that range, so the number of codewords only depends on n.
+         */
+        private static final int[] NUMERIC_CODEWORDS = new int[NUMERIC_GROUP_DIGITS + 1];
+
+        static {
+            StringBuffer zeros = new StringBuffer(NUMERIC_GROUP_DIGITS);
+            StringBuffer sb = new StringBuffer();
+            for (int n = 1; n <= NUMERIC_GROUP_DIGITS; n++) {
+                zeros.append('0');
+                sb.setLength(0);
+                encodeNumeric(zeros.toString(), 0, n, sb);
+                NUMERIC_CODEWORDS[n] = sb.length();
+            }
+        }
+
+        private static int getTextValue(char ch, int submode) {
+            switch (submode) {
+            case SUBMODE_ALPHA:
+                return (ch == ' ' ? 26 : (ch >= 'A' && ch <= 'Z' ? ch - 'A' : -1));
+            case SUBMODE_LOWER:
+                return (ch == ' ' ? 26 : (ch >= 'a' && ch <= 'z' ? ch - 'a' : -1));
+            case SUBMODE_MIXED:
+                return (ch < 128 ? MIXED[ch] : -1);
+            default:
+                return (ch < 128 ? PUNCTUATION[ch] : -1);
+            }
+        }
+
+        private static boolean canShift(char ch, int submode) {
+            if (submode == SUBMODE_PUNCTUATION) {
+                return false;
+            }
+            return getTextValue(ch, SUBMODE_PUNCTUATION) >= 0
+                    || (submode == SUBMODE_LOWER && ch >= 'A' && ch <= 'Z');
+        }
+
+        private static void relax(int[] costs, byte[] prev, int state, int cost, int from) {
+            if (cost < costs[state]) {
+                costs[state] = cost;
+                prev[state] = (byte)from;
+            }
+        }
+
+        /**
+         * Adds the transitions for encoding a character in text compaction.
+         * @param ch the character
+         * @param submode the current text submode
+         * @param parity the number of text values written so far modulo 2
+         * @param cost the cost so far
+         * @param from the state to record as predecessor
+         */
+        private static void relaxText(int[] next, byte[] prev, char ch,
+                int submode, int parity, int cost, int from) {
+            for (int t = SUBMODE_ALPHA; t <= SUBMODE_PUNCTUATION; t++) {
+                if (getTextValue(ch, t) >= 0) {
+                    int c = LATCH_COSTS[submode][t] + 1;
+                    relax(next, prev, TEXT_STATE + t * 2 + ((parity + c) & 1), cost + c, from);
+                }
+            }
+            if (canShift(ch, submode)) {
+                relax(next, prev, TEXT_STATE + submode * 2 + parity, cost + 2, from);
+            }
+        }
+
+        /**
+         * Encodes a message.
+         * @param msg the message
+         * @return the encoded message (the char values range from 0 to 928)
+         */
+        public String encode(String msg) {
+            final int n = msg.length();
+            byte[] bytes = getBytesForMessage(msg);
+            byte[][] prev = new byte[n + 1][STATES];
+            int[] costs = new int[STATES];
+            int[] next = new int[STATES];
+            Arrays.fill(costs, INFINITY);
+            costs[TEXT_STATE + SUBMODE_ALPHA * 2] = 0; //Text Compaction is the default mode
+
+            for (int i = 0; i < n; i++) {
+                final char ch = msg.charAt(i);
+                final boolean byteEncodable = (bytes[i] != 63 || ch == '?');
+                final boolean digit = isDigit(ch);
+                final byte[] p = prev[i + 1];
+                Arrays.fill(next, INFINITY);
+
+                //Continue in text compaction, leaving it costs a pad value if needed
+                int textExit = INFINITY;
+                int textExitState = -1;
+                for (int s = TEXT_STATE; s < BYTE_STATE; s++) {
+                    int cost = costs[s];
+                    if (cost >= INFINITY) {
+                        continue;
+                    }
+                    int submode = (s - TEXT_STATE) >> 1;
+                    int parity = s & 1;
+                    relaxText(next, p, ch, submode, parity, cost, s);
+                    if (byteEncodable) {
+                        //In submode Punctuation, the pad value latches to Alpha
+                        int shifted = (submode == SUBMODE_PUNCTUATION && parity != 0
+                                ? TEXT_STATE + SUBMODE_ALPHA * 2 : s - parity);
+                        relax(next, p, shifted, cost + parity + 4, s | SHIFTED);
+                    }
+                    if (cost + parity < textExit) {
+                        textExit = cost + parity;
+                        textExitState = s;
+                    }
+                }
+
+                //Byte and numeric compaction are left by a latch
+                int otherExit = INFINITY;
+                int otherExitState = -1;
+                int byteExit = INFINITY;
+                int byteExitState = -1;
+                for (int s = BYTE_STATE; s < STATES; s++) {
+                    int cost = costs[s];
+                    if (cost < otherExit) {
+                        otherExit = cost;
+                        otherExitState = s;
+                    }
+                    if (s < NUMERIC_STATE && cost < byteExit) {
+                        byteExit = cost;
+                        byteExitState = s;
+                    }
+                }
+                int numericExit = INFINITY;
+                int numericExitState = -1;
+                if (otherExit < INFINITY) {
+                    //Latch to text compaction starts in submode Alpha
+                    relaxText(next, p, ch, SUBMODE_ALPHA, 0, otherExit + 2, otherExitState);
+                    for (int s = NUMERIC_STATE; s < STATES; s++) {
+                        if (costs[s] < numericExit) {
+                            numericExit = costs[s];
+                            numericExitState = s;
+                        }
+                    }
+                }
+
+                if (byteEncodable) {
+                    for (int k = 0; k < 6; k++) {
+                        int cost = costs[BYTE_STATE + k];
+                        if (cost < INFINITY) {
+                            //The sixth byte of a group is free: six bytes need five codewords
+                            relax(next, p, BYTE_STATE + (k + 1) % 6,
+                                    cost + (k == 5 ? 0 : 2), BYTE_STATE + k);
+                        }
+                    }
+                    if (textExit < INFINITY) {
+                        relax(next, p, BYTE_STATE + 1, textExit + 4, textExitState);
+                    }
+                    if (numericExit < INFINITY) {
+                        relax(next, p, BYTE_STATE + 1, numericExit + 4, numericExitState);
+                    }
+                }
+
+                if (digit) {
+                    for (int k = 1; k <= NUMERIC_GROUP_DIGITS; k++) {
+                        int cost = costs[NUMERIC_STATE + k - 1];
+                        if (cost >= INFINITY) {
+                            continue;
+                        }
+                        if (k < NUMERIC_GROUP_DIGITS) {
+                            relax(next, p, NUMERIC_STATE + k, cost
+                                    + 2 * (NUMERIC_CODEWORDS[k + 1] - NUMERIC_CODEWORDS[k]),
+                                    NUMERIC_STATE + k - 1);
+                        } else {
+                            relax(next, p, NUMERIC_STATE,
+                                    cost + 2 * NUMERIC_CODEWORDS[1], NUMERIC_STATE + k - 1);
+                        }
+                    }
+                    int entry = 2 + 2 * NUMERIC_CODEWORDS[1];
+                    if (textExit < INFINITY) {
+                        relax(next, p, NUMERIC_STATE, textExit + entry, textExitState);
+                    }
+                    if (byteExit < INFINITY) {
+                        relax(next, p, NUMERIC_STATE, byteExit + entry, byteExitState);
+                    }
+                }
+
+                int[] tmp = costs;
+                costs = next;
+                next = tmp;
+            }
+
+            //Find the cheapest final state and collect the path backwards
+            int best = -1;
+            int bestCost = INFINITY;
+            for (int s = 0; s < STATES; s++) {
+                int cost = costs[s] + (s < BYTE_STATE ? (s & 1) : 0);
+                if (costs[s] < INFINITY && cost < bestCost) {
+                    bestCost = cost;
+                    best = s;
+                }
+            }
+            int[] states = new int[n + 1];
+            boolean[] shifts = new boolean[n];
+            if (best < 0) {
+                //Report the first character that can't be encoded
+                for (int i = 0; i < n; i++) {
+                    char ch = msg.charAt(i);
+                    if (!isText(ch) && bytes[i] == 63 && ch != '?') {
+                        throw new IllegalArgumentException("Non-encodable character detected: "
+                                + ch + " (Unicode: " + (int)ch + ")");
+                    }
+                }
+                throw new IllegalStateException("No encoding found");
+            }
+            states[n] = best;
+            for (int i = n; i > 0; i--) {
+                int from = prev[i][states[i]];
+                shifts[i - 1] = (from & SHIFTED) != 0;
+                states[i - 1] = from & ~SHIFTED;
+            }
+
+            return writeCodewords(msg, bytes, states, shifts, bestCost / 2);
+        }
+
+        private String writeCodewords(String msg, byte[] bytes, int[] states,
+                boolean[] shifts, int codewordCount) {
+            StringBuffer sb = new StringBuffer(codewordCount);
+            StringBuffer values = new StringBuffer();
+            int n = msg.length();
+            int i = 0;
+            while (i < n) {
+                int from = states[i];
+                int to = states[i + 1];
+                if (to >= BYTE_STATE) {
+                    appendTextValues(values, sb);
+                    values.setLength(0);
+                    boolean numeric = (to >= NUMERIC_STATE);
+                    int end = i + 1;
+                    while (end < n && (states[end + 1] >= NUMERIC_STATE) == numeric
+                            && states[end + 1] >= BYTE_STATE) {
+                        end++;
+                    }
+                    if (numeric) {
+                        sb.append((char)LATCH_TO_NUMERIC);
+                        encodeNumeric(msg, i, end - i, sb);
+                    } else {
+                        encodeBinary(msg, bytes, i, end - i, BYTE_COMPACTION, sb);
+                    }
+                    i = end;
+                    continue;
+                }
+
+                int submode;
+                if (from >= BYTE_STATE) {
+                    sb.append((char)LATCH_TO_TEXT);
+                    submode = SUBMODE_ALPHA;
+                } else {
+                    submode = (from - TEXT_STATE) >> 1;
+                }
+                char ch = msg.charAt(i);
+                if (shifts[i]) {
+                    appendTextValues(values, sb);
+                    values.setLength(0);
+                    sb.append((char)SHIFT_TO_BYTE);
+                    sb.append((char)(bytes[i] & 0xff));
+                } else {
+                    int target = (to - TEXT_STATE) >> 1;
+                    int value = getTextValue(ch, target);
+                    int parity = (values.length() + LATCH_COSTS[submode][target] + 1) & 1;
+                    if (value >= 0 && parity == (to & 1)) {
+                        values.append(LATCHES[submode][target]);
+                        values.append((char)value);
+                    } else if (getTextValue(ch, SUBMODE_PUNCTUATION) >= 0) {
+                        values.append((char)29); //ps
+                        values.append((char)PUNCTUATION[ch]);
+                    } else {
+                        values.append((char)27); //as
+                        values.append((char)(ch - 'A'));
+                    }
+                }
+                i++;
+            }
+            appendTextValues(values, sb);
+            return sb.toString();
+        }
+    }
 
 }
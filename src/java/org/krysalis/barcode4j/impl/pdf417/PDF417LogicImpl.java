@@ -22,6 +22,7 @@ import java.awt.Dimension;
 
 import org.krysalis.barcode4j.BarGroup;
 import org.krysalis.barcode4j.ClassicBarcodeLogicHandler;
+import org.krysalis.barcode4j.RowRunLogicHandler;
 import org.krysalis.barcode4j.TwoDimBarcodeLogicHandler;
 
 /**
@@ -31,6 +32,30 @@ import org.krysalis.barcode4j.TwoDimBarcodeLogicHandler;
  */
 public class PDF417LogicImpl {
 
+    /** Bar and space widths of the start pattern */
+    private static final byte[] START_RUNS = new byte[] {8, 1, 1, 1, 1, 1, 1, 3};
+    /** Bar and space widths of the stop pattern */
+    private static final byte[] STOP_RUNS = new byte[] {7, 1, 1, 3, 1, 1, 1, 2, 1};
+    /** Number of bars and spaces per codeword */
+    private static final int CODEWORD_RUN_COUNT = 8;
+
+    /**
+     * Bar and space widths of every codeword in each of the three clusters. Every codeword
+     * consists of four bars and four spaces, starting with a bar.
+     */
+    private static final byte[][][] CODEWORD_RUNS
+            = new byte[PDF417Constants.CODEWORD_TABLE.length][][];
+
+    static {
+        for (int cluster = 0; cluster < CODEWORD_RUNS.length; cluster++) {
+            int[] patterns = PDF417Constants.CODEWORD_TABLE[cluster];
+            CODEWORD_RUNS[cluster] = new byte[patterns.length][];
+            for (int cw = 0; cw < patterns.length; cw++) {
+                CODEWORD_RUNS[cluster][cw] = toRuns(patterns[cw], 17);
+            }
+        }
+    }
+
     /**
      * Calculates the necessary number of rows as described in annex Q of ISO/IEC 15438:2001(E).
      * @param m the number of source codewords prior to the additional of the Symbol Length
@@ -110,34 +135,67 @@ public class PDF417LogicImpl {
         return c * r - k;
     }
 
-    private static void encodeChar(int pattern, int len, ClassicBarcodeLogicHandler logic) {
+    /**
+     * Converts a bar pattern to the widths of its bars and spaces.
+     * @param pattern the pattern (one bit per module, most significant bit first)
+     * @param len the number of modules
+     * @return the widths (the first run has the color of the first module)
+     */
+    static byte[] toRuns(int pattern, int len) {
+        byte[] runs = new byte[len];
+        int count = 0;
         int map = 1 << len - 1;
-        boolean last = (pattern & map) != 0; //Initialize to inverse of first bit
+        boolean last = (pattern & map) != 0;
         int width = 0;
         for (int i = 0; i < len; i++) {
             boolean black = (pattern & map) != 0;
             if (last == black) {
                 width++;
             } else {
-                logic.addBar(last, width);
+                runs[count++] = (byte)width;
                 last = black;
                 width = 1;
             }
             map >>= 1;
         }
-        logic.addBar(last, width);
+        runs[count++] = (byte)width;
+        byte[] result = new byte[count];
+        System.arraycopy(runs, 0, result, 0, count);
+        return result;
     }
 
-    private static void encodeLowLevel(String fullCodewords, int c, int r,
+    private static void encodeRuns(byte[] runs, ClassicBarcodeLogicHandler logic) {
+        for (int i = 0; i < runs.length; i++) {
+            logic.addBar((i & 1) == 0, runs[i]);
+        }
+    }
+
+    private static int appendRuns(byte[] runs, int[] target, int pos) {
+        for (int i = 0; i < runs.length; i++) {
+            target[pos++] = runs[i];
+        }
+        return pos;
+    }
+
+    private static void encodeCharacter(byte[] runs, BarGroup type,
+            TwoDimBarcodeLogicHandler logic) {
+        logic.startBarGroup(type, null);
+        encodeRuns(runs, logic);
+        logic.endBarGroup();
+    }
+
+    private static void encodeLowLevel(int[] fullCodewords, int c, int r,
             int errorCorrectionLevel, TwoDimBarcodeLogicHandler logic) {
+        RowRunLogicHandler rowHandler = null;
+        int[] rowRuns = null;
+        if (logic instanceof RowRunLogicHandler) {
+            rowHandler = (RowRunLogicHandler)logic;
+            rowRuns = new int[START_RUNS.length + (c + 2) * CODEWORD_RUN_COUNT
+                    + STOP_RUNS.length];
+        }
         int idx = 0;
         for (int y = 0; y < r; y++) {
             int cluster = (y % 3);
-            logic.startRow();
-            logic.startBarGroup(BarGroup.START_CHARACTER, null);
-            encodeChar(PDF417Constants.START_PATTERN, 17, logic);
-            logic.endBarGroup();
-
             int left, right;
             if (cluster == 0) {
                 left = (30 * (y / 3)) + ((r - 1) / 3);
@@ -149,29 +207,29 @@ public class PDF417LogicImpl {
                 left = (30 * (y / 3)) + (c - 1);
                 right = (30 * (y / 3)) + (errorCorrectionLevel * 3) + ((r - 1) % 3);
             }
-            int pattern;
-
-            logic.startBarGroup(BarGroup.MSG_CHARACTER, null);
-            pattern = PDF417Constants.CODEWORD_TABLE[cluster][left];
-            encodeChar(pattern, 17, logic);
-            logic.endBarGroup();
+            byte[][] runs = CODEWORD_RUNS[cluster];
+
+            if (rowHandler != null) {
+                //Hand over the whole row at once
+                int pos = appendRuns(START_RUNS, rowRuns, 0);
+                pos = appendRuns(runs[left], rowRuns, pos);
+                for (int x = 0; x < c; x++) {
+                    pos = appendRuns(runs[fullCodewords[idx++]], rowRuns, pos);
+                }
+                pos = appendRuns(runs[right], rowRuns, pos);
+                pos = appendRuns(STOP_RUNS, rowRuns, pos);
+                rowHandler.addRowRuns(rowRuns, pos);
+                continue;
+            }
 
+            logic.startRow();
+            encodeCharacter(START_RUNS, BarGroup.START_CHARACTER, logic);
+            encodeCharacter(runs[left], BarGroup.MSG_CHARACTER, logic);
             for (int x = 0; x < c; x++) {
-                logic.startBarGroup(BarGroup.MSG_CHARACTER, null);
-                pattern = PDF417Constants.CODEWORD_TABLE[cluster][fullCodewords.charAt(idx)];
-                encodeChar(pattern, 17, logic);
-                logic.endBarGroup();
-                idx++;
+                encodeCharacter(runs[fullCodewords[idx++]], BarGroup.MSG_CHARACTER, logic);
             }
-
-            logic.startBarGroup(BarGroup.MSG_CHARACTER, null);
-            pattern = PDF417Constants.CODEWORD_TABLE[cluster][right];
-            encodeChar(pattern, 17, logic);
-            logic.endBarGroup();
-
-            logic.startBarGroup(BarGroup.STOP_CHARACTER, null);
-            encodeChar(PDF417Constants.STOP_PATTERN, 18, logic);
-            logic.endBarGroup();
+            encodeCharacter(runs[right], BarGroup.MSG_CHARACTER, logic);
+            encodeCharacter(STOP_RUNS, BarGroup.STOP_CHARACTER, logic);
             logic.endRow();
         }
     }
@@ -184,24 +242,47 @@ public class PDF417LogicImpl {
      */
     public static void generateBarcodeLogic(TwoDimBarcodeLogicHandler logic,
             String msg, PDF417Bean pdf417Bean) {
+        generateBarcodeLogic(logic, encodeMessage(msg, pdf417Bean),
+                pdf417Bean.getErrorCorrectionLevel());
+    }
 
-        int errorCorrectionLevel = pdf417Bean.getErrorCorrectionLevel();
-
+    /**
+     * Performs the high-level encoding of a message and determines the number of columns
+     * and rows of the symbol.
+     * @param msg the message to encode
+     * @param pdf417Bean reference to the PDF417 bean for configuration access
+     * @return the encoded symbol
+     */
+    public static PDF417EncodedSymbol encodeMessage(String msg, PDF417Bean pdf417Bean) {
         //1. step: High-level encoding
-        int errorCorrectionCodeWords = PDF417ErrorCorrection.getErrorCorrectionCodewordCount(
-                errorCorrectionLevel);
-        String highLevel = PDF417HighLevelEncoder.encodeHighLevel(msg);
-        int sourceCodeWords = highLevel.length();
-
-        Dimension dimension = determineDimensions(pdf417Bean, sourceCodeWords);
+        String highLevel = PDF417HighLevelEncoder.encodeHighLevel(msg,
+                pdf417Bean.isMinimalEncoding());
 
+        Dimension dimension = pdf417Bean.determineDimensions(highLevel.length());
         if (dimension == null) {
             throw new IllegalArgumentException(
                     "Unable to fit message in columns");
         }
+        return new PDF417EncodedSymbol(msg, highLevel, dimension.width, dimension.height);
+    }
+
+    /**
+     * Generates the barcode logic for a message that has already been high-level encoded.
+     * @param logic the logic handler to receive generated events
+     * @param symbol the encoded symbol
+     * @param errorCorrectionLevel the error correction level (value between 0 and 8)
+     */
+    public static void generateBarcodeLogic(TwoDimBarcodeLogicHandler logic,
+            PDF417EncodedSymbol symbol, int errorCorrectionLevel) {
+
+        String msg = symbol.getMessage();
+        String highLevel = symbol.getHighLevelCodewords();
+        int errorCorrectionCodeWords = PDF417ErrorCorrection.getErrorCorrectionCodewordCount(
+                errorCorrectionLevel);
+        int sourceCodeWords = highLevel.length();
 
-        int rows = dimension.height;
-        int cols = dimension.width;
+        int rows = symbol.getRows();
+        int cols = symbol.getColumns();
         int pad = getNumberOfPadCodewords(sourceCodeWords,
                 errorCorrectionCodeWords, cols, rows);
 
@@ -214,18 +295,18 @@ public class PDF417LogicImpl {
                             + msg.length() + " bytes)");
         }
 
-        StringBuffer sb = new StringBuffer(n);
-        sb.append((char)n);
-        sb.append(highLevel);
+        int[] fullCodewords = new int[n + errorCorrectionCodeWords];
+        int idx = 0;
+        fullCodewords[idx++] = n;
+        for (int i = 0; i < sourceCodeWords; i++) {
+            fullCodewords[idx++] = highLevel.charAt(i);
+        }
         for (int i = 0; i < pad; i++) {
-            sb.append((char)900); //PAD characters
+            fullCodewords[idx++] = 900; //PAD characters
         }
-        String dataCodewords = sb.toString();
 
-        //3. step: Error correction
-        String ec = PDF417ErrorCorrection.generateErrorCorrection(
-                dataCodewords, errorCorrectionLevel);
-        String fullCodewords = dataCodewords + ec;
+        //3. step: Error correction (written in place behind the data codewords)
+        PDF417ErrorCorrection.generateErrorCorrection(fullCodewords, n, errorCorrectionLevel);
 
         //4. step: low-level encoding
         logic.startBarcode(msg, msg);
@@ -242,47 +323,78 @@ public class PDF417LogicImpl {
      */
     public static Dimension determineDimensions(PDF417Bean pdf417Bean,
             int sourceCodeWords) {
+        return determineDimensions(sourceCodeWords, pdf417Bean.getErrorCorrectionLevel(),
+                pdf417Bean.getMinCols(), pdf417Bean.getMaxCols(),
+                pdf417Bean.getMinRows(), pdf417Bean.getMaxRows(),
+                pdf417Bean.getWidthToHeightRatio(),
+                pdf417Bean.getModuleWidth(), pdf417Bean.getBarHeight());
+    }
 
-        int minCols = pdf417Bean.getMinCols();
-        int maxCols = pdf417Bean.getMaxCols();
-        int maxRows = pdf417Bean.getMaxRows();
-        int minRows = pdf417Bean.getMinRows();
-        double preferredRatio = pdf417Bean.getWidthToHeightRatio();
-
-        double ratio = 0;
-        Dimension dimension = null;
-        int errorCorrectionCodeWords = PDF417ErrorCorrection.getErrorCorrectionCodewordCount(
-                pdf417Bean.getErrorCorrectionLevel());
-
-        for (int cols = minCols; cols <= maxCols; cols++) {
-
-            int rows = calculateNumberOfRows(sourceCodeWords,
-                    errorCorrectionCodeWords, cols);
-
-            if (rows < minRows) {
-                break;
-            }
-
-            if (rows > maxRows) {
-                continue;
-            }
-
-            double newRatio = ((17 * cols + 69) * pdf417Bean.getModuleWidth())
-                    / (rows * pdf417Bean.getBarHeight());
-
-            // ignore if previous ratio is closer to preferred ratio
-            if (dimension != null
-                    && Math.abs(newRatio - preferredRatio) > Math.abs(ratio
-                            - preferredRatio)) {
-                continue;
-            }
-
-            ratio = newRatio;
-            dimension = new Dimension(cols, rows);
+    /**
+     * Determines the number of columns and rows for the specified number of codewords. Among
+     * the column counts satisfying the constraints, the one resulting in the width to height
+     * ratio closest to the preferred ratio is chosen (the larger one if two are equally
+     * close).
+     * <p>
+     * The number of rows is ceil((m + 1 + k) / c), so the row constraints translate directly
+     * to a range of column counts. The width to height ratio strictly increases with the
+     * number of columns, so the best column count is found by solving the ratio equation
+     * and checking the neighbours instead of trying every column count.
+     * @param sourceCodeWords the number of source codewords (m)
+     * @param errorCorrectionLevel the error correction level (value between 0 and 8)
+     * @param minCols the minimum number of columns
+     * @param maxCols the maximum number of columns
+     * @param minRows the minimum number of rows
+     * @param maxRows the maximum number of rows
+     * @param preferredRatio the preferred ratio of the barcode width to the height
+     * @param moduleWidth the module width
+     * @param rowHeight the row height
+     * @return dimension object containing cols as width and rows as height (or null if the
+     *          constraints can't be satisfied)
+     */
+    public static Dimension determineDimensions(int sourceCodeWords, int errorCorrectionLevel,
+            int minCols, int maxCols, int minRows, int maxRows,
+            double preferredRatio, double moduleWidth, double rowHeight) {
+        int n = sourceCodeWords + 1
+                + PDF417ErrorCorrection.getErrorCorrectionCodewordCount(errorCorrectionLevel);
+
+        //Column range for minRows <= ceil(n / cols) <= maxRows
+        int low = Math.max(minCols, (n + maxRows - 1) / maxRows);
+        int high = maxCols;
+        if (minRows > 1) {
+            high = Math.min(high, (n - 1) / (minRows - 1));
+        }
+        if (low > high) {
+            return null;
+        }
 
+        //Estimate: (17 * cols + 69) * cols * moduleWidth = preferredRatio * n * rowHeight
+        double estimate = (Math.sqrt(69 * 69 + 68 * preferredRatio * n * rowHeight / moduleWidth)
+                - 69) / 34;
+        int cols = low;
+        if (estimate > low) {
+            cols = (estimate < high ? (int)Math.ceil(estimate) : high);
         }
+        //Find the smallest column count with a ratio not below the preferred ratio
+        while (cols > low
+                && getRatio(cols - 1, n, moduleWidth, rowHeight) >= preferredRatio) {
+            cols--;
+        }
+        while (cols < high && getRatio(cols, n, moduleWidth, rowHeight) < preferredRatio) {
+            cols++;
+        }
+        //The next smaller column count may be closer to the preferred ratio
+        if (cols > low
+                && Math.abs(getRatio(cols - 1, n, moduleWidth, rowHeight) - preferredRatio)
+                    < Math.abs(getRatio(cols, n, moduleWidth, rowHeight) - preferredRatio)) {
+            cols--;
+        }
+        return new Dimension(cols, (n + cols - 1) / cols);
+    }
 
-        return dimension;
+    private static double getRatio(int cols, int n, double moduleWidth, double rowHeight) {
+        int rows = (n + cols - 1) / cols;
+        return ((17 * cols + 69) * moduleWidth) / (rows * rowHeight);
     }
 }
 
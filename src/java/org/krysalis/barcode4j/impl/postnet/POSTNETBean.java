@@ -65,6 +65,7 @@ public class POSTNETBean extends HeightVariableBarcodeBean {
      * @param height the height of the vertical quiet zone (in mm)
      */
     public void setVerticalQuietZone(double height) {
+        checkMutable();
         this.quietZoneVertical = new Double(height);
     }
     
@@ -82,6 +83,7 @@ public class POSTNETBean extends HeightVariableBarcodeBean {
      * @param mode the checksum mode
      */
     public void setChecksumMode(ChecksumMode mode) {
+        checkMutable();
         this.checksumMode = mode;
     }
 
@@ -106,6 +108,7 @@ public class POSTNETBean extends HeightVariableBarcodeBean {
      * @param width the interchar gap width
      */
     public void setIntercharGapWidth(double width) {
+        checkMutable();
         this.intercharGapWidth = width;
     }
     
@@ -122,6 +125,7 @@ public class POSTNETBean extends HeightVariableBarcodeBean {
      * @param height the height of a short bar
      */
     public void setShortBarHeight(double height) {
+        checkMutable();
         this.shortBarHeight = height;
     }
     
@@ -165,6 +169,7 @@ public class POSTNETBean extends HeightVariableBarcodeBean {
      *   false to ignore
      */
     public void setDisplayChecksum(boolean value) {
+        checkMutable();
         this.displayChecksum = value;
     }
     
@@ -212,6 +217,7 @@ public class POSTNETBean extends HeightVariableBarcodeBean {
      * @param baselinePosition the baseline position
      */
     public void setBaselinePosition(BaselineAlignment baselinePosition) {
+        checkMutable();
         this.baselinePosition = baselinePosition;
     }
 
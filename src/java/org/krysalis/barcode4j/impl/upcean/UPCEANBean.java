@@ -48,6 +48,7 @@ public abstract class UPCEANBean extends AbstractBarcodeBean {
      * @param mode the checksum mode
      */
     public void setChecksumMode(ChecksumMode mode) {
+        checkMutable();
         this.checksumMode = mode;
     }
 
@@ -16,6 +16,7 @@
 package org.krysalis.barcode4j.output;
 
 import org.krysalis.barcode4j.BarcodeDimension;
+import org.krysalis.barcode4j.BitMatrix;
 import org.krysalis.barcode4j.TextAlignment;
 
 /**
@@ -83,6 +84,67 @@ public class Canvas {
         getCanvasImp().deviceFillRect(x, y, w, h);
     }
 
+    /**
+     * Draws a module matrix, painting every run of black modules in a row as one rectangle.
+     * The matrix is passed on as a whole if the canvas provider implements
+     * {@link MatrixCanvasProvider}.
+     * @param matrix the module matrix (set bits are black)
+     * @param x x coordinate of the upper left corner of the matrix
+     * @param y y coordinate of the upper left corner of the matrix
+     * @param moduleWidth the width of a module
+     * @param rowHeight the height of a row of modules
+     */
+    public void drawBitMatrix(BitMatrix matrix, double x, double y,
+                double moduleWidth, double rowHeight) {
+        if (canvasImp instanceof MatrixCanvasProvider) {
+            ((MatrixCanvasProvider)canvasImp).deviceFillMatrix(
+                    matrix, x, y, moduleWidth, rowHeight);
+            return;
+        }
+        final int width = matrix.getWidth();
+        double rowY = y;
+        for (int row = 0, c = matrix.getHeight(); row < c; row++) {
+            int col = 0;
+            while (col < width) {
+                int run = matrix.getRunLength(col, row);
+                if (matrix.get(col, row)) {
+                    canvasImp.deviceFillRect(x + col * moduleWidth, rowY,
+                            run * moduleWidth, rowHeight);
+                }
+                col += run;
+            }
+            rowY += rowHeight;
+        }
+    }
+
+    /**
+     * Draws one row of bars given as run widths. The row is passed on as a whole if the
+     * canvas provider implements {@link MatrixCanvasProvider}.
+     * @param runs the widths (in modules) of the bars and spaces, alternating and starting
+     *          with a bar
+     * @param count the number of runs in the row
+     * @param x x coordinate of the left edge of the row
+     * @param y y coordinate of the top edge of the row
+     * @param moduleWidth the width of a module
+     * @param rowHeight the height of the row
+     */
+    public void drawRowRuns(int[] runs, int count, double x, double y,
+                double moduleWidth, double rowHeight) {
+        if (canvasImp instanceof MatrixCanvasProvider) {
+            ((MatrixCanvasProvider)canvasImp).deviceFillRowRuns(
+                    runs, count, x, y, moduleWidth, rowHeight);
+            return;
+        }
+        double barX = x;
+        for (int i = 0; i < count; i++) {
+            final double w = runs[i] * moduleWidth;
+            if ((i & 1) == 0) {
+                canvasImp.deviceFillRect(barX, y, w, rowHeight);
+            }
+            barX += w;
+        }
+    }
+
     /**
      * Draws a centered character.
      * @param ch the character
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.output;
+
+import org.krysalis.barcode4j.BitMatrix;
+
+/**
+ * Optional extension of {@link CanvasProvider} for output formats that can paint a complete
+ * module matrix or a complete row of bars at once, instead of receiving one
+ * {@link CanvasProvider#deviceFillRect(double, double, double, double)} call per bar.
+ * {@link Canvas} uses these methods when the canvas provider implements this interface.
+ * <p>
+ * The result must be the same as painting the bars one by one: a bar covering the columns
+ * <code>col</code> to <code>col + run - 1</code> of the row starting at <code>rowY</code> is
+ * the rectangle <code>(x + col * moduleWidth, rowY, run * moduleWidth, rowHeight)</code>,
+ * and <code>rowY</code> starts at <code>y</code> and grows by <code>rowHeight</code> per row.
+ *
+ * @version $Id$
+ */
+public interface MatrixCanvasProvider extends CanvasProvider {
+
+    /**
+     * Paints a module matrix. Every run of black modules in a row is one filled rectangle.
+     * @param matrix the module matrix (set bits are black)
+     * @param x x coordinate of the upper left corner of the matrix
+     * @param y y coordinate of the upper left corner of the matrix
+     * @param moduleWidth the width of a module
+     * @param rowHeight the height of a row of modules
+     */
+    void deviceFillMatrix(BitMatrix matrix, double x, double y,
+            double moduleWidth, double rowHeight);
+
+    /**
+     * Paints one row of bars given as run widths.
+     * @param runs the widths (in modules) of the bars and spaces, alternating and starting
+     *          with a bar
+     * @param count the number of runs in the row
+     * @param x x coordinate of the left edge of the row
+     * @param y y coordinate of the top edge of the row
+     * @param moduleWidth the width of a module
+     * @param rowHeight the height of the row
+     */
+    void deviceFillRowRuns(int[] runs, int count, double x, double y,
+            double moduleWidth, double rowHeight);
+
+}
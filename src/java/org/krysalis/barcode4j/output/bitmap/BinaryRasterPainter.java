@@ -0,0 +1,313 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.output.bitmap;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+import org.krysalis.barcode4j.BarcodeDimension;
+import org.krysalis.barcode4j.BitMatrix;
+
+/**
+ * Paints bars directly into the packed pixel data of a 1-bit image
+ * (<code>BufferedImage.TYPE_BYTE_BINARY</code>), bypassing Java2D. The edges of every bar are
+ * snapped to whole device pixels.
+ * <p>
+ * Rectangles are collected per band of identical device rows (all bars of a linear barcode,
+ * or a row of modules of a 2D barcode) in a single scanline buffer. When the band changes
+ * (or on {@link #flush()}), the buffer is copied into all rows of the band.
+ *
+ * @version $Id$
+ */
+class BinaryRasterPainter {
+
+    private byte[] data;
+    private int scanlineStride;
+    private int width;
+    private int height;
+    private boolean blackIsZero;
+
+    private int orientation;
+    private double barcodeWidth;
+    private double barcodeHeight;
+    private double scaleX;
+    private double scaleY;
+
+    private byte[] bandMask;
+    private int bandY1 = -1;
+    private int bandY2 = -1;
+    private int bandMinByte = Integer.MAX_VALUE;
+    private int bandMaxByte = -1;
+
+    /**
+     * Creates a new painter.
+     * @param image the image to paint on (must be of type TYPE_BYTE_BINARY)
+     * @param dim the barcode dimensions
+     * @param orientation the barcode orientation (0, 90, 180, 270)
+     */
+    public BinaryRasterPainter(BufferedImage image, BarcodeDimension dim, int orientation) {
+        if (!isSupported(image)) {
+            throw new IllegalArgumentException("Only 1-bit packed images are supported");
+        }
+        WritableRaster raster = image.getRaster();
+        this.data = ((DataBufferByte)raster.getDataBuffer()).getData();
+        this.scanlineStride = ((MultiPixelPackedSampleModel)raster.getSampleModel())
+                .getScanlineStride();
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.blackIsZero = ((((IndexColorModel)image.getColorModel()).getRGB(0)) & 0xFFFFFF) == 0;
+
+        this.orientation = BarcodeDimension.normalizeOrientation(orientation);
+        this.barcodeWidth = dim.getWidthPlusQuiet();
+        this.barcodeHeight = dim.getHeightPlusQuiet();
+        this.scaleX = this.width / dim.getWidthPlusQuiet(this.orientation);
+        this.scaleY = this.height / dim.getHeightPlusQuiet(this.orientation);
+        this.bandMask = new byte[this.scanlineStride];
+    }
+
+    /**
+     * Indicates whether an image can be painted on by this class.
+     * @param image the image
+     * @return true if the image is a 1-bit packed image
+     */
+    public static boolean isSupported(BufferedImage image) {
+        return image.getType() == BufferedImage.TYPE_BYTE_BINARY
+            && image.getColorModel().getPixelSize() == 1
+            && image.getRaster().getDataBuffer() instanceof DataBufferByte
+            && image.getRaster().getSampleModel() instanceof MultiPixelPackedSampleModel
+            && image.getRaster().getSampleModelTranslateX() == 0
+            && image.getRaster().getSampleModelTranslateY() == 0;
+    }
+
+    /**
+     * Fills the whole image in white.
+     */
+    public void clear() {
+        byte white = (byte)(this.blackIsZero ? 0xFF : 0x00);
+        int rowBytes = (this.width + 7) >> 3;
+        for (int y = 0; y < this.height; y++) {
+            int offset = y * this.scanlineStride;
+            for (int i = 0; i < rowBytes; i++) {
+                this.data[offset + i] = white;
+            }
+        }
+    }
+
+    /**
+     * Fills a rectangle in black.
+     * @param x the x coordinate (in mm, in the barcode's coordinate system)
+     * @param y the y coordinate (in mm, in the barcode's coordinate system)
+     * @param w the width (in mm)
+     * @param h the height (in mm)
+     */
+    public void fillRect(double x, double y, double w, double h) {
+        double x1;
+        double y1;
+        double x2;
+        double y2;
+        switch (this.orientation) {
+        case 90:
+            x1 = y;
+            x2 = y + h;
+            y1 = barcodeWidth - x - w;
+            y2 = barcodeWidth - x;
+            break;
+        case 180:
+            x1 = barcodeWidth - x - w;
+            x2 = barcodeWidth - x;
+            y1 = barcodeHeight - y - h;
+            y2 = barcodeHeight - y;
+            break;
+        case 270:
+            x1 = barcodeHeight - y - h;
+            x2 = barcodeHeight - y;
+            y1 = x;
+            y2 = x + w;
+            break;
+        default:
+            x1 = x;
+            x2 = x + w;
+            y1 = y;
+            y2 = y + h;
+        }
+        if (selectBand(y1, y2)) {
+            fillSpan(x1, x2);
+        }
+    }
+
+    /**
+     * Fills the black modules of a module matrix (see
+     * {@link org.krysalis.barcode4j.output.MatrixCanvasProvider#deviceFillMatrix(BitMatrix,
+     * double, double, double, double)}). Without rotation, the device rows of each matrix row
+     * are determined once and the runs are set directly in the band.
+     * @param matrix the module matrix (set bits are black)
+     * @param x the x coordinate of the matrix (in mm, in the barcode's coordinate system)
+     * @param y the y coordinate of the matrix (in mm, in the barcode's coordinate system)
+     * @param moduleWidth the width of a module (in mm)
+     * @param rowHeight the height of a row of modules (in mm)
+     */
+    public void fillMatrix(BitMatrix matrix, double x, double y,
+            double moduleWidth, double rowHeight) {
+        final int width = matrix.getWidth();
+        double rowY = y;
+        for (int row = 0, c = matrix.getHeight(); row < c; row++) {
+            if (this.orientation != 0 || selectBand(rowY, rowY + rowHeight)) {
+                int col = 0;
+                while (col < width) {
+                    int run = matrix.getRunLength(col, row);
+                    if (matrix.get(col, row)) {
+                        double barX = x + col * moduleWidth;
+                        double barW = run * moduleWidth;
+                        if (this.orientation == 0) {
+                            fillSpan(barX, barX + barW);
+                        } else {
+                            fillRect(barX, rowY, barW, rowHeight);
+                        }
+                    }
+                    col += run;
+                }
+            }
+            rowY += rowHeight;
+        }
+    }
+
+    /**
+     * Fills one row of bars given as run widths (see
+     * {@link org.krysalis.barcode4j.output.MatrixCanvasProvider#deviceFillRowRuns(int[], int,
+     * double, double, double, double)}).
+     * @param runs the widths (in modules) of the bars and spaces, starting with a bar
+     * @param count the number of runs
+     * @param x the x coordinate of the row (in mm, in the barcode's coordinate system)
+     * @param y the y coordinate of the row (in mm, in the barcode's coordinate system)
+     * @param moduleWidth the width of a module (in mm)
+     * @param rowHeight the height of the row (in mm)
+     */
+    public void fillRowRuns(int[] runs, int count, double x, double y,
+            double moduleWidth, double rowHeight) {
+        if (this.orientation == 0 && !selectBand(y, y + rowHeight)) {
+            return; //nothing visible
+        }
+        double barX = x;
+        for (int i = 0; i < count; i++) {
+            final double w = runs[i] * moduleWidth;
+            if ((i & 1) == 0) {
+                if (this.orientation == 0) {
+                    fillSpan(barX, barX + w);
+                } else {
+                    fillRect(barX, y, w, rowHeight);
+                }
+            }
+            barX += w;
+        }
+    }
+
+    /**
+     * Makes the device rows covering the given vertical range the current band.
+     * @param y1 the top edge (in mm, in device orientation)
+     * @param y2 the bottom edge (in mm, in device orientation)
+     * @return false if the range is outside the image
+     */
+    private boolean selectBand(double y1, double y2) {
+        int py1 = snap(y1 * scaleY);
+        int py2 = Math.max(snap(y2 * scaleY), py1 + 1);
+        py1 = Math.max(py1, 0);
+        py2 = Math.min(py2, this.height);
+        if (py1 >= py2) {
+            return false;
+        }
+        if (py1 != this.bandY1 || py2 != this.bandY2) {
+            flush();
+            this.bandY1 = py1;
+            this.bandY2 = py2;
+        }
+        return true;
+    }
+
+    /**
+     * Fills the given horizontal range in the current band.
+     * @param x1 the left edge (in mm, in device orientation)
+     * @param x2 the right edge (in mm, in device orientation)
+     */
+    private void fillSpan(double x1, double x2) {
+        int px1 = snap(x1 * scaleX);
+        int px2 = Math.max(snap(x2 * scaleX), px1 + 1);
+        px1 = Math.max(px1, 0);
+        px2 = Math.min(px2, this.width);
+        if (px1 < px2) {
+            setBits(px1, px2);
+        }
+    }
+
+    private static int snap(double value) {
+        return (int)Math.floor(value + 0.5);
+    }
+
+    private void setBits(int x1, int x2) {
+        int b1 = x1 >> 3;
+        int b2 = (x2 - 1) >> 3;
+        int m1 = 0xFF >>> (x1 & 7);
+        int m2 = (0xFF << (7 - ((x2 - 1) & 7))) & 0xFF;
+        byte[] mask = this.bandMask;
+        if (b1 == b2) {
+            mask[b1] |= (byte)(m1 & m2);
+        } else {
+            mask[b1] |= (byte)m1;
+            for (int i = b1 + 1; i < b2; i++) {
+                mask[i] = (byte)0xFF;
+            }
+            mask[b2] |= (byte)m2;
+        }
+        this.bandMinByte = Math.min(this.bandMinByte, b1);
+        this.bandMaxByte = Math.max(this.bandMaxByte, b2);
+    }
+
+    /**
+     * Transfers any pending bars to the image. Must be called before anything else
+     * paints on the image and before the image is used.
+     */
+    public void flush() {
+        if (this.bandMaxByte < 0) {
+            return;
+        }
+        byte[] mask = this.bandMask;
+        int from = this.bandMinByte;
+        int to = this.bandMaxByte;
+        for (int y = this.bandY1; y < this.bandY2; y++) {
+            int offset = y * this.scanlineStride;
+            if (this.blackIsZero) {
+                for (int i = from; i <= to; i++) {
+                    this.data[offset + i] &= ~mask[i];
+                }
+            } else {
+                for (int i = from; i <= to; i++) {
+                    this.data[offset + i] |= mask[i];
+                }
+            }
+        }
+        for (int i = from; i <= to; i++) {
+            mask[i] = 0;
+        }
+        this.bandMinByte = Integer.MAX_VALUE;
+        this.bandMaxByte = -1;
+    }
+
+}
@@ -86,6 +86,21 @@ public class BitmapBuilder {
     public static Graphics2D prepareGraphics2D(BufferedImage image, 
                 BarcodeDimension dim, int orientation,
                 boolean antiAlias) {
+        return prepareGraphics2D(image, dim, orientation, antiAlias, true);
+    }
+
+    /**
+     * Prepares a Graphics2D object for painting on a given BufferedImage.
+     * @param image the BufferedImage instance
+     * @param dim the barcode dimensions
+     * @param orientation the barcode orientation (0, 90, 180, 270)
+     * @param antiAlias true if anti-aliasing should be enabled
+     * @param clear true if the image should be cleared (filled in white)
+     * @return the Graphics2D object to paint on
+     */
+    static Graphics2D prepareGraphics2D(BufferedImage image,
+                BarcodeDimension dim, int orientation,
+                boolean antiAlias, boolean clear) {
         Graphics2D g2d = image.createGraphics();
         if (antiAlias) {
             g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, 
@@ -97,7 +112,9 @@ public class BitmapBuilder {
             RenderingHints.VALUE_FRACTIONALMETRICS_ON);
         g2d.setBackground(Color.white);
         g2d.setColor(Color.black);
-        g2d.clearRect(0, 0, image.getWidth(), image.getHeight());
+        if (clear) {
+            g2d.clearRect(0, 0, image.getWidth(), image.getHeight());
+        }
         g2d.scale(image.getWidth() / dim.getWidthPlusQuiet(orientation), 
                 image.getHeight() / dim.getHeightPlusQuiet(orientation));
         return g2d;
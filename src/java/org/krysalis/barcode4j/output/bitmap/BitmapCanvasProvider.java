@@ -20,18 +20,33 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 import org.krysalis.barcode4j.BarcodeDimension;
+import org.krysalis.barcode4j.BitMatrix;
 import org.krysalis.barcode4j.TextAlignment;
 import org.krysalis.barcode4j.output.AbstractCanvasProvider;
+import org.krysalis.barcode4j.output.Canvas;
+import org.krysalis.barcode4j.output.MatrixCanvasProvider;
 import org.krysalis.barcode4j.output.java2d.Java2DCanvasProvider;
+import org.krysalis.barcode4j.tools.UnitConv;
 
 /**
  * CanvasProvider implementation for generating bitmaps. This class wraps
- * Java2DCanvasProvider to do the actual rendering.
+ * Java2DCanvasProvider to do the actual rendering. For 1-bit images
+ * (<code>BufferedImage.TYPE_BYTE_BINARY</code>), the bars are written directly into the
+ * image's pixel data and snapped to whole pixels. Java2D is only used for the text in this case
+ * and only set up if the barcode actually has a human-readable part. Module matrices and rows
+ * of bars are then painted without going through a rectangle per bar (see
+ * {@link MatrixCanvasProvider}).
+ * <p>
+ * After {@link #finish()}, an instance can be reused for the next barcode by calling
+ * {@link #reset(OutputStream)}. The image is then reused if it is large enough for the next
+ * barcode, so the image returned by {@link #getBufferedImage()} is only valid until the next
+ * barcode is painted.
  * 
  * @author Jeremias Maerki
  * @version $Id: BitmapCanvasProvider.java,v 1.4 2008/05/13 13:00:46 jmaerki Exp $
  */
-public class BitmapCanvasProvider extends AbstractCanvasProvider {
+public class BitmapCanvasProvider extends AbstractCanvasProvider
+        implements MatrixCanvasProvider {
 
     private OutputStream out;
     private String mime;
@@ -39,7 +54,10 @@ public class BitmapCanvasProvider extends AbstractCanvasProvider {
     private int imageType;
     private boolean antiAlias;
     private BufferedImage image;
+    private BufferedImage backingImage;
+    private BufferedImage reusableImage;
     private Java2DCanvasProvider delegate;
+    private BinaryRasterPainter rasterPainter;
 
     /**
      * Creates a new BitmapCanvasProvider. 
@@ -70,12 +88,30 @@ public class BitmapCanvasProvider extends AbstractCanvasProvider {
         this(null, null, resolution, imageType, antiAlias, orientation);
     }
 
+    /**
+     * Prepares this instance for painting another barcode. The image of the previous barcode
+     * is reused if it is large enough.
+     * @param out OutputStream to write the next bitmap to (may be null if the image is
+     *          retrieved through {@link #getBufferedImage()})
+     */
+    public void reset(OutputStream out) {
+        this.out = out;
+        this.bardim = null;
+        this.rasterPainter = null;
+        if (this.delegate != null) {
+            this.delegate.getGraphics2D().dispose();
+            this.delegate = null;
+        }
+        this.reusableImage = this.backingImage;
+    }
+
     /**
      * Call this method to finish any pending operations after the 
      * BarcodeGenerator has finished its work.
      * @throws IOException in case of an I/O problem
      */
     public void finish() throws IOException {
+        flushRaster();
         this.image.flush();
         if (this.out != null) {
             final BitmapEncoder encoder = BitmapEncoderRegistry.getInstance(mime);
@@ -88,29 +124,93 @@ public class BitmapCanvasProvider extends AbstractCanvasProvider {
      * @return the image.
      */
     public BufferedImage getBufferedImage() {
+        flushRaster();
         return this.image;
     }
 
+    private void flushRaster() {
+        if (this.rasterPainter != null) {
+            this.rasterPainter.flush();
+        }
+    }
+
     /** {@inheritDoc} */
     public void establishDimensions(BarcodeDimension dim) {
         super.establishDimensions(dim);
-        this.image = BitmapBuilder.prepareImage(dim, getOrientation(),
-                this.resolution, this.imageType);
-        this.delegate = new Java2DCanvasProvider(
+        this.image = null;
+        if (this.reusableImage != null) {
+            int bmw = UnitConv.mm2px(dim.getWidthPlusQuiet(getOrientation()), this.resolution);
+            int bmh = UnitConv.mm2px(dim.getHeightPlusQuiet(getOrientation()), this.resolution);
+            int w = this.reusableImage.getWidth();
+            int h = this.reusableImage.getHeight();
+            if (w == bmw && h == bmh) {
+                this.image = this.reusableImage;
+            } else if (w >= bmw && h >= bmh && bmw > 0 && bmh > 0) {
+                this.image = this.reusableImage.getSubimage(0, 0, bmw, bmh);
+            }
+            this.reusableImage = null;
+        }
+        if (this.image == null) {
+            this.image = BitmapBuilder.prepareImage(dim, getOrientation(),
+                    this.resolution, this.imageType);
+            this.backingImage = this.image;
+        }
+        if (BinaryRasterPainter.isSupported(this.image)) {
+            this.rasterPainter = new BinaryRasterPainter(this.image, dim, getOrientation());
+            this.rasterPainter.clear();
+            this.delegate = null; //created on demand for the text
+        } else {
+            this.rasterPainter = null;
+            this.delegate = createDelegate(true);
+        }
+    }
+
+    private Java2DCanvasProvider createDelegate(boolean clear) {
+        BarcodeDimension dim = getDimensions();
+        Java2DCanvasProvider provider = new Java2DCanvasProvider(
             BitmapBuilder.prepareGraphics2D(this.image, dim, getOrientation(),
-                    this.antiAlias), getOrientation());
-        this.delegate.establishDimensions(dim);
+                    this.antiAlias, clear), getOrientation());
+        provider.establishDimensions(dim);
+        return provider;
     }
 
     /** {@inheritDoc} */
     public void deviceFillRect(double x, double y, double w, double h) {
-        this.delegate.deviceFillRect(x, y, w, h);
+        if (this.rasterPainter != null) {
+            this.rasterPainter.fillRect(x, y, w, h);
+        } else {
+            this.delegate.deviceFillRect(x, y, w, h);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void deviceFillMatrix(BitMatrix matrix, double x, double y,
+            double moduleWidth, double rowHeight) {
+        if (this.rasterPainter != null) {
+            this.rasterPainter.fillMatrix(matrix, x, y, moduleWidth, rowHeight);
+        } else {
+            new Canvas(this.delegate).drawBitMatrix(matrix, x, y, moduleWidth, rowHeight);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void deviceFillRowRuns(int[] runs, int count, double x, double y,
+            double moduleWidth, double rowHeight) {
+        if (this.rasterPainter != null) {
+            this.rasterPainter.fillRowRuns(runs, count, x, y, moduleWidth, rowHeight);
+        } else {
+            new Canvas(this.delegate).drawRowRuns(runs, count, x, y, moduleWidth, rowHeight);
+        }
     }
 
     /** {@inheritDoc} */
     public void deviceText(String text,
             double x1, double x2, double y1,
             String fontName, double fontSize, TextAlignment textAlign) {
+        flushRaster();
+        if (this.delegate == null) {
+            this.delegate = createDelegate(false);
+        }
         this.delegate.deviceText(text, x1, x2, y1, fontName, fontSize, textAlign);
     }
 
@@ -26,17 +26,23 @@ import java.text.SimpleDateFormat;
 import org.krysalis.barcode4j.BarcodeDimension;
 import org.krysalis.barcode4j.TextAlignment;
 import org.krysalis.barcode4j.output.AbstractCanvasProvider;
+import org.krysalis.barcode4j.tools.RedirectableOutputStream;
 import org.krysalis.barcode4j.tools.UnitConv;
 
 /**
  * CanvasProvider implementation for EPS output (Encapsulated PostScript).
+ * <p>
+ * An instance can be reused for several barcodes by calling {@link #reset(OutputStream)}
+ * after {@link #finish()}. The writer and the number formatters are then kept.
  * @author Jeremias Maerki
  * @version $Id: EPSCanvasProvider.java,v 1.7 2009/03/12 15:04:55 jmaerki Exp $
  */
 public class EPSCanvasProvider extends AbstractCanvasProvider {
 
+    private RedirectableOutputStream target;
     private Writer writer;
     private DecimalFormat df;
+    private SimpleDateFormat sdf;
     private IOException firstError;
     private double height;
 
@@ -48,14 +54,32 @@ public class EPSCanvasProvider extends AbstractCanvasProvider {
      */
     public EPSCanvasProvider(OutputStream out, int orientation) throws IOException {
         super(orientation);
+        this.target = new RedirectableOutputStream(out);
         try {
-            this.writer = new java.io.OutputStreamWriter(out, "US-ASCII");
+            this.writer = new java.io.OutputStreamWriter(this.target, "US-ASCII");
         } catch (UnsupportedEncodingException uee) {
             throw new RuntimeException(
                     "Incompatible VM: Need US-ASCII encoding. " + uee.getMessage());
         }
     }
 
+    /**
+     * Prepares this instance for painting another barcode to a different OutputStream.
+     * Anything left over from an unfinished barcode is discarded.
+     * @param out OutputStream to write the next EPS to
+     */
+    public void reset(OutputStream out) {
+        this.target.setTarget(null);
+        try {
+            this.writer.flush();
+        } catch (IOException ioe) {
+            //ignore, the output is discarded anyway
+        }
+        this.target.setTarget(out);
+        this.firstError = null;
+        this.bardim = null;
+    }
+
     /**
      * Returns the DecimalFormat instance to use internally to format numbers.
      * @return a DecimalFormat instance
@@ -92,7 +116,9 @@ public class EPSCanvasProvider extends AbstractCanvasProvider {
                 + format(widthpt) + " "
                 + format(heightpt) + "\n");
         writer.write("%%Creator: Barcode4J (http://barcode4j.krysalis.org)\n");
-        final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        if (sdf == null) {
+            sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        }
         writer.write("%%CreationDate: " + sdf.format(new java.util.Date()) + "\n");
         writer.write("%%LanguageLevel: 1\n");
         writer.write("%%EndComments\n");
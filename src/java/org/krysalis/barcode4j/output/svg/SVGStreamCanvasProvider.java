@@ -0,0 +1,453 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.output.svg;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+
+import org.krysalis.barcode4j.BarcodeDimension;
+import org.krysalis.barcode4j.BitMatrix;
+import org.krysalis.barcode4j.TextAlignment;
+import org.krysalis.barcode4j.output.BarcodeCanvasSetupException;
+import org.krysalis.barcode4j.output.MatrixCanvasProvider;
+import org.krysalis.barcode4j.tools.RedirectableOutputStream;
+
+/**
+ * CanvasProvider implementation that writes SVG directly to a character or byte stream
+ * without building a DOM first. Bars are not written as individual "rect" elements. Instead,
+ * all bars are collected in a single "path" element and horizontally adjacent bars of the
+ * same height (as found in 2D barcodes) are merged into a single sub-path. Module matrices and
+ * rows of bars are written with a single write per matrix or row (see
+ * {@link MatrixCanvasProvider}).
+ * <p>
+ * {@link #finish()} must be called after the barcode has been painted. After that, the
+ * instance can be reused for the next barcode by calling {@link #reset(OutputStream)} or
+ * {@link #reset(Writer)}, which keeps the writer and the internal buffer.
+ *
+ * @version $Id$
+ */
+public class SVGStreamCanvasProvider extends AbstractSVGGeneratingCanvasProvider
+        implements MatrixCanvasProvider {
+
+    private static final double EPSILON = 0.00001;
+
+    private RedirectableOutputStream target;
+    private Writer writer;
+    private boolean writeXMLDeclaration;
+    private IOException firstError;
+
+    private boolean pathOpen;
+    private boolean rectPending;
+    private double rectX;
+    private double rectY;
+    private double rectW;
+    private double rectH;
+
+    private StringBuffer sb = new StringBuffer(256);
+
+    /**
+     * Creates a new SVGStreamCanvasProvider writing UTF-8 encoded SVG (including an XML
+     * declaration) to an OutputStream.
+     * @param out the OutputStream to write to
+     * @param orientation the barcode orientation (0, 90, 180, 270)
+     * @throws BarcodeCanvasSetupException if setting up the provider fails
+     */
+    public SVGStreamCanvasProvider(OutputStream out, int orientation)
+                throws BarcodeCanvasSetupException {
+        super(null, orientation);
+        this.target = new RedirectableOutputStream(out);
+        this.writer = createWriter(this.target);
+        this.writeXMLDeclaration = true;
+    }
+
+    /**
+     * Creates a new SVGStreamCanvasProvider writing to a Writer. No XML declaration is
+     * written, so the output can also be embedded in other XML content.
+     * @param writer the Writer to write to
+     * @param orientation the barcode orientation (0, 90, 180, 270)
+     * @throws BarcodeCanvasSetupException if setting up the provider fails
+     */
+    public SVGStreamCanvasProvider(Writer writer, int orientation)
+                throws BarcodeCanvasSetupException {
+        this(writer, null, orientation);
+    }
+
+    /**
+     * Creates a new SVGStreamCanvasProvider writing to a Writer. No XML declaration is
+     * written, so the output can also be embedded in other XML content.
+     * @param writer the Writer to write to
+     * @param namespacePrefix the namespace prefix to use, null for no prefix
+     * @param orientation the barcode orientation (0, 90, 180, 270)
+     * @throws BarcodeCanvasSetupException if setting up the provider fails
+     */
+    public SVGStreamCanvasProvider(Writer writer, String namespacePrefix, int orientation)
+                throws BarcodeCanvasSetupException {
+        super(namespacePrefix, orientation);
+        this.writer = writer;
+    }
+
+    private static Writer createWriter(OutputStream out) {
+        try {
+            return new java.io.OutputStreamWriter(out, "UTF-8");
+        } catch (UnsupportedEncodingException uee) {
+            throw new RuntimeException(
+                    "Incompatible VM: Need UTF-8 encoding. " + uee.getMessage());
+        }
+    }
+
+    /**
+     * Prepares this instance for painting another barcode to an OutputStream (UTF-8 encoded,
+     * including an XML declaration). Anything left over from an unfinished barcode is
+     * discarded.
+     * @param out the OutputStream to write the next barcode to
+     */
+    public void reset(OutputStream out) {
+        if (this.target == null) {
+            this.target = new RedirectableOutputStream(out);
+            this.writer = createWriter(this.target);
+            this.writeXMLDeclaration = true;
+        } else {
+            this.target.setTarget(null);
+            try {
+                this.writer.flush();
+            } catch (IOException ioe) {
+                //ignore, the output is discarded anyway
+            }
+            this.target.setTarget(out);
+        }
+        resetState();
+    }
+
+    /**
+     * Prepares this instance for painting another barcode to a Writer (without an XML
+     * declaration).
+     * @param writer the Writer to write the next barcode to
+     */
+    public void reset(Writer writer) {
+        this.target = null;
+        this.writer = writer;
+        this.writeXMLDeclaration = false;
+        resetState();
+    }
+
+    private void resetState() {
+        this.firstError = null;
+        this.pathOpen = false;
+        this.rectPending = false;
+        this.bardim = null;
+    }
+
+    /**
+     * Writes the end of the SVG document. Must be called after barcode painting call
+     * returns.
+     * @throws IOException if an I/O error happened during SVG generation
+     */
+    public void finish() throws IOException {
+        if (firstError != null) {
+            throw firstError;
+        }
+        closePath();
+        sb.setLength(0);
+        sb.append("</");
+        appendName("g");
+        sb.append("></");
+        appendName("svg");
+        sb.append(">\n");
+        writer.write(sb.toString());
+        writer.flush();
+        if (firstError != null) {
+            throw firstError;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void establishDimensions(BarcodeDimension dim) {
+        super.establishDimensions(dim);
+        int orientation = BarcodeDimension.normalizeOrientation(getOrientation());
+        double w = dim.getWidthPlusQuiet(orientation);
+        double h = dim.getHeightPlusQuiet(orientation);
+        sb.setLength(0);
+        if (writeXMLDeclaration) {
+            sb.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        }
+        sb.append('<');
+        appendName("svg");
+        if (isNamespaceEnabled()) {
+            String prefix = getNamespacePrefix();
+            if (prefix == null || prefix.length() == 0) {
+                sb.append(" xmlns=\"");
+            } else {
+                sb.append(" xmlns:").append(prefix).append("=\"");
+            }
+            sb.append(SVG_NAMESPACE).append('"');
+        }
+        sb.append(" width=\"");
+        appendNumber(w);
+        sb.append("mm\" height=\"");
+        appendNumber(h);
+        sb.append("mm\" viewBox=\"0 0 ");
+        appendNumber(w);
+        sb.append(' ');
+        appendNumber(h);
+        sb.append("\"><");
+        appendName("g");
+        sb.append(" fill=\"black\" stroke=\"none\"");
+        switch (orientation) {
+        case 90:
+            sb.append(" transform=\"rotate(-90) translate(-");
+            appendNumber(h);
+            sb.append(")\"");
+            break;
+        case 180:
+            sb.append(" transform=\"rotate(-180) translate(-");
+            appendNumber(w);
+            sb.append(" -");
+            appendNumber(h);
+            sb.append(")\"");
+            break;
+        case 270:
+            sb.append(" transform=\"rotate(-270) translate(0 -");
+            appendNumber(w);
+            sb.append(")\"");
+            break;
+        default:
+            //nop
+        }
+        sb.append('>');
+        write();
+    }
+
+    /** {@inheritDoc} */
+    public void deviceFillRect(double x, double y, double w, double h) {
+        sb.setLength(0);
+        addRect(x, y, w, h);
+        writeBuffered();
+    }
+
+    /** {@inheritDoc} */
+    public void deviceFillMatrix(BitMatrix matrix, double x, double y,
+            double moduleWidth, double rowHeight) {
+        sb.setLength(0);
+        final int width = matrix.getWidth();
+        double rowY = y;
+        for (int row = 0, c = matrix.getHeight(); row < c; row++) {
+            int col = 0;
+            while (col < width) {
+                int run = matrix.getRunLength(col, row);
+                if (matrix.get(col, row)) {
+                    addRect(x + col * moduleWidth, rowY, run * moduleWidth, rowHeight);
+                }
+                col += run;
+            }
+            rowY += rowHeight;
+        }
+        writeBuffered();
+    }
+
+    /** {@inheritDoc} */
+    public void deviceFillRowRuns(int[] runs, int count, double x, double y,
+            double moduleWidth, double rowHeight) {
+        sb.setLength(0);
+        double barX = x;
+        for (int i = 0; i < count; i++) {
+            final double w = runs[i] * moduleWidth;
+            if ((i & 1) == 0) {
+                addRect(barX, y, w, rowHeight);
+            }
+            barX += w;
+        }
+        writeBuffered();
+    }
+
+    /**
+     * Merges a bar into the pending rectangle or makes it the pending rectangle. A previously
+     * pending rectangle is appended to the buffer but not written.
+     */
+    private void addRect(double x, double y, double w, double h) {
+        if (rectPending) {
+            if (Math.abs(y - rectY) < EPSILON && Math.abs(h - rectH) < EPSILON
+                    && Math.abs(x - (rectX + rectW)) < EPSILON) {
+                //Extend the pending rectangle
+                rectW = x + w - rectX;
+                return;
+            }
+            appendPendingRect();
+        }
+        rectPending = true;
+        rectX = x;
+        rectY = y;
+        rectW = w;
+        rectH = h;
+    }
+
+    private void writeBuffered() {
+        if (sb.length() > 0) {
+            write();
+        }
+    }
+
+    private void writePendingRect() {
+        sb.setLength(0);
+        appendPendingRect();
+        write();
+    }
+
+    private void appendPendingRect() {
+        if (!pathOpen) {
+            sb.append('<');
+            appendName("path");
+            sb.append(" d=\"");
+            pathOpen = true;
+        }
+        sb.append('M');
+        appendNumber(rectX);
+        sb.append(' ');
+        appendNumber(rectY);
+        sb.append('h');
+        appendNumber(rectW);
+        sb.append('v');
+        appendNumber(rectH);
+        sb.append('h');
+        appendNumber(-rectW);
+        sb.append('z');
+        rectPending = false;
+    }
+
+    private void closePath() {
+        if (rectPending) {
+            writePendingRect();
+        }
+        if (pathOpen) {
+            sb.setLength(0);
+            sb.append("\"/>");
+            write();
+            pathOpen = false;
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void deviceText(String text, double x1, double x2, double y1,
+                            String fontName, double fontSize, TextAlignment textAlign) {
+        closePath();
+        String anchor;
+        double tx;
+        if (textAlign == TextAlignment.TA_LEFT) {
+            anchor = "start";
+            tx = x1;
+        } else if (textAlign == TextAlignment.TA_RIGHT) {
+            anchor = "end";
+            tx = x2;
+        } else {
+            anchor = "middle";
+            tx = x1 + (x2 - x1) / 2;
+        }
+        sb.setLength(0);
+        sb.append('<');
+        appendName("text");
+        sb.append(" font-family=\"");
+        appendEscaped(fontName);
+        sb.append("\" font-size=\"");
+        appendNumber(fontSize);
+        sb.append("\" text-anchor=\"").append(anchor);
+        sb.append("\" x=\"");
+        appendNumber(tx);
+        sb.append("\" y=\"");
+        appendNumber(y1);
+        sb.append('"');
+        if (textAlign == TextAlignment.TA_JUSTIFY) {
+            sb.append(" textLength=\"");
+            appendNumber(x2 - x1);
+            sb.append('"');
+        }
+        sb.append('>');
+        appendEscaped(text);
+        sb.append("</");
+        appendName("text");
+        sb.append('>');
+        write();
+    }
+
+    private void write() {
+        if (firstError != null) {
+            return;
+        }
+        try {
+            writer.write(sb.toString());
+        } catch (IOException ioe) {
+            firstError = ioe;
+        }
+    }
+
+    private void appendName(String localName) {
+        String prefix = getNamespacePrefix();
+        if (prefix != null && prefix.length() > 0) {
+            sb.append(prefix).append(':');
+        }
+        sb.append(localName);
+    }
+
+    private void appendEscaped(String text) {
+        for (int i = 0, c = text.length(); i < c; i++) {
+            char ch = text.charAt(i);
+            switch (ch) {
+            case '<':
+                sb.append("&lt;");
+                break;
+            case '>':
+                sb.append("&gt;");
+                break;
+            case '&':
+                sb.append("&amp;");
+                break;
+            case '"':
+                sb.append("&quot;");
+                break;
+            default:
+                sb.append(ch);
+            }
+        }
+    }
+
+    /**
+     * Appends a number with up to four fraction digits (same as the "0.####" pattern
+     * used by {@link #getDecimalFormat()}) without going through DecimalFormat.
+     * @param value the value
+     */
+    private void appendNumber(double value) {
+        long scaled = Math.round(value * 10000);
+        if (scaled < 0) {
+            sb.append('-');
+            scaled = -scaled;
+        }
+        sb.append(scaled / 10000);
+        int fraction = (int)(scaled % 10000);
+        if (fraction != 0) {
+            sb.append('.');
+            int divisor = 1000;
+            while (fraction != 0) {
+                sb.append((char)('0' + fraction / divisor));
+                fraction %= divisor;
+                divisor /= 10;
+            }
+        }
+    }
+
+}
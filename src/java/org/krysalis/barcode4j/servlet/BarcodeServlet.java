@@ -23,16 +23,13 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.xml.transform.Result;
-import javax.xml.transform.Source;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerFactory;
 
 import org.krysalis.barcode4j.BarcodeGenerator;
+import org.krysalis.barcode4j.BarcodeOutputCache;
 import org.krysalis.barcode4j.BarcodeUtil;
 import org.krysalis.barcode4j.output.bitmap.BitmapCanvasProvider;
 import org.krysalis.barcode4j.output.eps.EPSCanvasProvider;
-import org.krysalis.barcode4j.output.svg.SVGCanvasProvider;
+import org.krysalis.barcode4j.output.svg.SVGStreamCanvasProvider;
 import org.krysalis.barcode4j.tools.MimeTypes;
 
 import org.apache.avalon.framework.configuration.Configuration;
@@ -76,8 +73,40 @@ public class BarcodeServlet extends HttpServlet {
     /** Parameter name for the pattern to format the human readable message */
     public static final String BARCODE_HUMAN_READABLE_PATTERN = "hrpattern";
 
+    /**
+     * Name of the init parameter that enables caching of the generated output. The value is
+     * the maximum size of the cache in bytes. Caching is disabled by default.
+     */
+    public static final String INIT_PARAM_OUTPUT_CACHE_SIZE = "output-cache-size";
+
 
     private transient Logger log = new ConsoleLogger(ConsoleLogger.LEVEL_INFO);
+    private transient BarcodeOutputCache outputCache;
+
+    /** {@inheritDoc} */
+    public void init() throws ServletException {
+        String size = getInitParameter(INIT_PARAM_OUTPUT_CACHE_SIZE);
+        if (size != null && size.trim().length() > 0) {
+            long maxSize;
+            try {
+                maxSize = Long.parseLong(size.trim());
+            } catch (NumberFormatException nfe) {
+                throw new ServletException("Invalid value for init parameter "
+                        + INIT_PARAM_OUTPUT_CACHE_SIZE + ": " + size);
+            }
+            if (maxSize > 0) {
+                this.outputCache = new BarcodeOutputCache(maxSize);
+            }
+        }
+    }
+
+    /**
+     * Returns the cache for the generated output.
+     * @return the output cache or null if output caching is disabled
+     */
+    public BarcodeOutputCache getOutputCache() {
+        return this.outputCache;
+    }
 
     /**
      * @see javax.servlet.http.HttpServlet#doGet(HttpServletRequest, HttpServletResponse)
@@ -96,58 +125,42 @@ public class BarcodeServlet extends HttpServlet {
                 msg = "0123456789";
             }
 
-            BarcodeUtil util = BarcodeUtil.getInstance();
-            BarcodeGenerator gen = util.createBarcodeGenerator(cfg);
-
-            ByteArrayOutputStream bout = new ByteArrayOutputStream(4096);
-            try {
-                if (format.equals(MimeTypes.MIME_SVG)) {
-                    //Create Barcode and render it to SVG
-                    SVGCanvasProvider svg = new SVGCanvasProvider(false, orientation);
-                    gen.generateBarcode(svg, msg);
-                    org.w3c.dom.DocumentFragment frag = svg.getDOMFragment();
+            int resolution = 0;
+            boolean grayscale = false;
+            if (!format.equals(MimeTypes.MIME_SVG) && !format.equals(MimeTypes.MIME_EPS)) {
+                String resText = request.getParameter(BARCODE_IMAGE_RESOLUTION);
+                resolution = 300; //dpi
+                if (resText != null) {
+                    resolution = Integer.parseInt(resText);
+                }
+                if (resolution > 2400) {
+                    throw new IllegalArgumentException(
+                        "Resolutions above 2400dpi are not allowed");
+                }
+                if (resolution < 10) {
+                    throw new IllegalArgumentException(
+                        "Minimum resolution must be 10dpi");
+                }
+                String gray = request.getParameter(BARCODE_IMAGE_GRAYSCALE);
+                grayscale = "true".equalsIgnoreCase(gray);
+            }
 
-                    //Serialize SVG barcode
-                    TransformerFactory factory = TransformerFactory.newInstance();
-                    Transformer trans = factory.newTransformer();
-                    Source src = new javax.xml.transform.dom.DOMSource(frag);
-                    Result res = new javax.xml.transform.stream.StreamResult(bout);
-                    trans.transform(src, res);
-                } else if (format.equals(MimeTypes.MIME_EPS)) {
-                    EPSCanvasProvider eps = new EPSCanvasProvider(bout, orientation);
-                    gen.generateBarcode(eps, msg);
-                    eps.finish();
-                } else {
-                    String resText = request.getParameter(BARCODE_IMAGE_RESOLUTION);
-                    int resolution = 300; //dpi
-                    if (resText != null) {
-                        resolution = Integer.parseInt(resText);
-                    }
-                    if (resolution > 2400) {
-                        throw new IllegalArgumentException(
-                            "Resolutions above 2400dpi are not allowed");
-                    }
-                    if (resolution < 10) {
-                        throw new IllegalArgumentException(
-                            "Minimum resolution must be 10dpi");
-                    }
-                    String gray = request.getParameter(BARCODE_IMAGE_GRAYSCALE);
-                    BitmapCanvasProvider bitmap = ("true".equalsIgnoreCase(gray)
-                        ? new BitmapCanvasProvider(
-                                bout, format, resolution,
-                                BufferedImage.TYPE_BYTE_GRAY, true, orientation)
-                        : new BitmapCanvasProvider(
-                                bout, format, resolution,
-                                BufferedImage.TYPE_BYTE_BINARY, false, orientation));
-                    gen.generateBarcode(bitmap, msg);
-                    bitmap.finish();
+            byte[] data = null;
+            String cfgKey = null;
+            String variant = (grayscale ? format + ";gray" : format);
+            if (outputCache != null) {
+                cfgKey = BarcodeOutputCache.getConfigurationKey(cfg);
+                data = outputCache.get(cfgKey, msg, variant, resolution, orientation);
+            }
+            if (data == null) {
+                data = generate(cfg, msg, format, resolution, grayscale, orientation);
+                if (outputCache != null) {
+                    outputCache.put(cfgKey, msg, variant, resolution, orientation, data);
                 }
-            } finally {
-                bout.close();
             }
             response.setContentType(format);
-            response.setContentLength(bout.size());
-            response.getOutputStream().write(bout.toByteArray());
+            response.setContentLength(data.length);
+            response.getOutputStream().write(data);
             response.getOutputStream().flush();
         } catch (Exception e) {
             log.error("Error while generating barcode", e);
@@ -158,6 +171,39 @@ public class BarcodeServlet extends HttpServlet {
         }
     }
 
+    private byte[] generate(Configuration cfg, String msg, String format,
+                int resolution, boolean grayscale, int orientation) throws Exception {
+        BarcodeUtil util = BarcodeUtil.getInstance();
+        BarcodeGenerator gen = util.getCachedBarcodeGenerator(cfg);
+
+        ByteArrayOutputStream bout = new ByteArrayOutputStream(4096);
+        try {
+            if (format.equals(MimeTypes.MIME_SVG)) {
+                //Create Barcode and stream it as SVG
+                SVGStreamCanvasProvider svg = new SVGStreamCanvasProvider(bout, orientation);
+                gen.generateBarcode(svg, msg);
+                svg.finish();
+            } else if (format.equals(MimeTypes.MIME_EPS)) {
+                EPSCanvasProvider eps = new EPSCanvasProvider(bout, orientation);
+                gen.generateBarcode(eps, msg);
+                eps.finish();
+            } else {
+                BitmapCanvasProvider bitmap = (grayscale
+                    ? new BitmapCanvasProvider(
+                            bout, format, resolution,
+                            BufferedImage.TYPE_BYTE_GRAY, true, orientation)
+                    : new BitmapCanvasProvider(
+                            bout, format, resolution,
+                            BufferedImage.TYPE_BYTE_BINARY, false, orientation));
+                gen.generateBarcode(bitmap, msg);
+                bitmap.finish();
+            }
+        } finally {
+            bout.close();
+        }
+        return bout.toByteArray();
+    }
+
     /**
      * Check the request for the desired output format.
      * @param request the request to use
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Map;
+
+/**
+ * Default {@link URLResolver} implementation. Besides the URL schemes supported by
+ * {@link URL} and RFC 2397 data URLs, resources on the class path can be referenced with
+ * "classpath:" URLs.
+ * <p>
+ * The content of a URL may not exceed a maximum number of bytes. Resolved content is kept in
+ * a small LRU cache, so a label that is rendered repeatedly (or measured and then painted)
+ * doesn't read the same payload again. Cache entries expire after a configurable time. Entries
+ * for local files are also discarded as soon as the file's modification time or length
+ * changes. "classpath:" URLs are resolved through the thread's context class loader and are
+ * cached under the resource URL they resolve to, so applications with different class loaders
+ * sharing the default instance don't see each other's content. In offline mode, only "file:",
+ * "classpath:" and data URLs are accepted.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @version $Id$
+ */
+public class DefaultURLResolver implements URLResolver {
+
+    /** The default maximum content length in bytes */
+    public static final int DEFAULT_MAX_CONTENT_LENGTH = 64 * 1024;
+    /** The default maximum number of cache entries */
+    public static final int DEFAULT_CACHE_SIZE = 32;
+    /** The default time in milliseconds after which cached content is resolved again */
+    public static final long DEFAULT_TIME_TO_LIVE = 60 * 1000;
+
+    private static final String DATA_PROTOCOL = "data:";
+    private static final String FILE_PROTOCOL = "file:";
+    private static final String CLASSPATH_PROTOCOL = "classpath:";
+
+    private static final DefaultURLResolver DEFAULT_INSTANCE = new DefaultURLResolver();
+
+    private int maxContentLength;
+    private long timeToLive;
+    private boolean offline;
+    private Map cache;
+
+    /**
+     * Creates a new resolver with the default limits that also accepts remote URLs.
+     */
+    public DefaultURLResolver() {
+        this(DEFAULT_MAX_CONTENT_LENGTH, DEFAULT_CACHE_SIZE, DEFAULT_TIME_TO_LIVE, false);
+    }
+
+    /**
+     * Creates a new resolver.
+     * @param maxContentLength the maximum number of bytes a URL may point to
+     * @param cacheSize the maximum number of cached URLs (0 disables caching)
+     * @param timeToLive the time in milliseconds after which cached content is resolved again
+     * @param offline true if only "file:", "classpath:" and data URLs are accepted
+     */
+    public DefaultURLResolver(int maxContentLength, final int cacheSize, long timeToLive,
+            boolean offline) {
+        if (maxContentLength < 0 || cacheSize < 0 || timeToLive < 0) {
+            throw new IllegalArgumentException("Limits must not be negative");
+        }
+        this.maxContentLength = maxContentLength;
+        this.timeToLive = timeToLive;
+        this.offline = offline;
+        if (cacheSize > 0) {
+            this.cache = new java.util.LinkedHashMap(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+
+                protected boolean removeEldestEntry(Map.Entry eldest) {
+                    return size() > cacheSize;
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns the resolver that is used if no other resolver has been configured.
+     * @return the shared default resolver
+     */
+    public static DefaultURLResolver getDefaultInstance() {
+        return DEFAULT_INSTANCE;
+    }
+
+    /** @return the maximum number of bytes a URL may point to */
+    public int getMaxContentLength() {
+        return this.maxContentLength;
+    }
+
+    /** @return true if only "file:", "classpath:" and data URLs are accepted */
+    public boolean isOffline() {
+        return this.offline;
+    }
+
+    /** {@inheritDoc} */
+    public byte[] getData(String url, String encoding) throws IOException {
+        if (url.startsWith(DATA_PROTOCOL)) {
+            byte[] data = URLUtil.getData(url, encoding);
+            checkLength(url, data.length);
+            return data;
+        }
+        if (offline && !url.startsWith(FILE_PROTOCOL) && !url.startsWith(CLASSPATH_PROTOCOL)) {
+            throw new IOException("Only file:, classpath: and data: URLs are allowed"
+                    + " in offline mode: " + url);
+        }
+
+        URL u = null;
+        String key = url;
+        if (url.startsWith(CLASSPATH_PROTOCOL)) {
+            //The same name may point to different resources for different class loaders
+            u = toURL(url);
+            key = u.toExternalForm();
+        }
+        long now = System.currentTimeMillis();
+        if (cache != null) {
+            CacheEntry entry;
+            synchronized (cache) {
+                entry = (CacheEntry)cache.get(key);
+            }
+            if (entry != null && entry.isValid(now, timeToLive)) {
+                return (byte[])entry.data.clone();
+            }
+        }
+
+        if (u == null) {
+            u = toURL(url);
+        }
+        File file = toFile(u);
+        long lastModified = 0;
+        long length = 0;
+        if (file != null) {
+            //Determined before reading so a concurrent change invalidates the entry later
+            lastModified = file.lastModified();
+            length = file.length();
+        }
+        byte[] data = load(url, u);
+        if (cache != null) {
+            CacheEntry entry = new CacheEntry(data, now, file, lastModified, length);
+            synchronized (cache) {
+                cache.put(key, entry);
+            }
+        }
+        return (byte[])data.clone();
+    }
+
+    /**
+     * Removes all entries from the cache.
+     */
+    public void clearCache() {
+        if (cache != null) {
+            synchronized (cache) {
+                cache.clear();
+            }
+        }
+    }
+
+    private URL toURL(String url) throws IOException {
+        if (url.startsWith(CLASSPATH_PROTOCOL)) {
+            String name = url.substring(CLASSPATH_PROTOCOL.length());
+            if (name.startsWith("/")) {
+                name = name.substring(1);
+            }
+            ClassLoader cl = Thread.currentThread().getContextClassLoader();
+            if (cl == null) {
+                cl = DefaultURLResolver.class.getClassLoader();
+            }
+            URL u = cl.getResource(name);
+            if (u == null) {
+                throw new FileNotFoundException("Resource not found on the class path: " + url);
+            }
+            return u;
+        } else {
+            return new URL(url);
+        }
+    }
+
+    private static File toFile(URL u) {
+        if (!"file".equals(u.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(new URI(u.toExternalForm()));
+        } catch (URISyntaxException use) {
+            return null;
+        } catch (IllegalArgumentException iae) {
+            //not a hierarchical file URI, expiry is based on time only
+            return null;
+        }
+    }
+
+    private byte[] load(String url, URL u) throws IOException {
+        URLConnection conn = u.openConnection();
+        int contentLength = conn.getContentLength();
+        if (contentLength > 0) {
+            checkLength(url, contentLength);
+        }
+        InputStream in = conn.getInputStream();
+        try {
+            ByteArrayOutputStream baout = new ByteArrayOutputStream(
+                    contentLength > 0 ? contentLength : 1024);
+            byte[] buf = new byte[1024];
+            int total = 0;
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                total += n;
+                checkLength(url, total);
+                baout.write(buf, 0, n);
+            }
+            return baout.toByteArray();
+        } finally {
+            IOUtil.closeQuietly(in);
+        }
+    }
+
+    private void checkLength(String url, long length) throws IOException {
+        if (length > maxContentLength) {
+            throw new IOException("The content of " + url + " exceeds the limit of "
+                    + maxContentLength + " bytes");
+        }
+    }
+
+    private static class CacheEntry {
+
+        private byte[] data;
+        private long created;
+        private File file;
+        private long lastModified;
+        private long length;
+
+        public CacheEntry(byte[] data, long created, File file, long lastModified, long length) {
+            this.data = data;
+            this.created = created;
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        public boolean isValid(long now, long timeToLive) {
+            if (now - created >= timeToLive) {
+                return false;
+            }
+            if (file != null) {
+                return file.lastModified() == lastModified && file.length() == length;
+            }
+            return true;
+        }
+    }
+
+}
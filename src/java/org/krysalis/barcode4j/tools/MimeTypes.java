@@ -78,6 +78,25 @@ public class MimeTypes {
         return format.toLowerCase();
     }
 
+    /**
+     * Returns the usual file extension for a format.
+     * @param format short format name or MIME type
+     * @return the file extension (without a dot) or null if the format is unknown
+     */
+    public static String getFileExtension(String format) {
+        String fmt = expandFormat(format);
+        if (fmt == null) {
+            return null;
+        }
+        for (int i = 0; i < FORMAT_MAPPINGS.length; i++) {
+            if (fmt.equals(FORMAT_MAPPINGS[i][1])
+                    && FORMAT_MAPPINGS[i][0].indexOf('/') < 0) {
+                return FORMAT_MAPPINGS[i][0];
+            }
+        }
+        return null;
+    }
+
     /**
      * Indicates whether a format is a bitmap format.
      * @param format short format name or MIME type
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.tools;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * OutputStream which forwards everything to a target stream that can be exchanged at any
+ * time. This allows a Writer (and its encoder and buffers) to be reused for several output
+ * streams. While no target is set, all output is discarded.
+ *
+ * @version $Id$
+ */
+public class RedirectableOutputStream extends OutputStream {
+
+    private OutputStream target;
+
+    /**
+     * Creates a new instance.
+     * @param target the initial target (may be null)
+     */
+    public RedirectableOutputStream(OutputStream target) {
+        this.target = target;
+    }
+
+    /**
+     * Sets the stream to forward to.
+     * @param target the new target (null to discard all output)
+     */
+    public void setTarget(OutputStream target) {
+        this.target = target;
+    }
+
+    /** @return the stream output is forwarded to (may be null) */
+    public OutputStream getTarget() {
+        return this.target;
+    }
+
+    /** {@inheritDoc} */
+    public void write(int b) throws IOException {
+        if (this.target != null) {
+            this.target.write(b);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (this.target != null) {
+            this.target.write(b, off, len);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void flush() throws IOException {
+        if (this.target != null) {
+            this.target.flush();
+        }
+    }
+
+    /**
+     * Does not close the target stream as it is owned by the caller.
+     * @throws IOException never thrown
+     */
+    public void close() throws IOException {
+        flush();
+    }
+
+}
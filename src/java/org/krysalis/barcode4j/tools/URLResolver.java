@@ -0,0 +1,42 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.tools;
+
+import java.io.IOException;
+
+/**
+ * Resolves URLs referenced by barcode messages (for example DataMatrix "url(...)" messages)
+ * to their binary content.
+ *
+ * @version $Id$
+ */
+public interface URLResolver {
+
+    /**
+     * Returns the data pointed at by a URL as a byte array.
+     * @param url the URL
+     * @param encoding the encoding to use for converting text content to binary content
+     *          (used for non-base64 data URLs)
+     * @return the data as a byte array
+     * @throws IOException if the URL cannot be resolved, is not allowed or if its content
+     *          is too large
+     */
+    byte[] getData(String url, String encoding) throws IOException;
+
+}
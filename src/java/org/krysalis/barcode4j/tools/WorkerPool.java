@@ -0,0 +1,215 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.tools;
+
+import java.util.LinkedList;
+
+/**
+ * A fixed number of daemon threads that run groups of short, independent tasks in parallel,
+ * for example the interleaved error correction blocks of a large DataMatrix symbol. The
+ * threads are started when the pool is first used and are reused for all later groups.
+ * <p>
+ * The calling thread works on its own group, too. A group therefore always completes, even
+ * if all threads of the pool are busy with the groups of other callers or if a task submits
+ * another group to the same pool.
+ * <p>
+ * Instances are thread-safe.
+ *
+ * @version $Id$
+ */
+public class WorkerPool {
+
+    private static WorkerPool defaultInstance;
+
+    private final int threadCount;
+    /** Groups with tasks not yet claimed by any thread (guarded by itself) */
+    private final LinkedList queue = new LinkedList();
+    private boolean started;
+
+    /**
+     * Creates a new pool.
+     * @param threadCount the number of threads in addition to the calling thread (at least 1)
+     */
+    public WorkerPool(int threadCount) {
+        if (threadCount < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1");
+        }
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Returns the shared pool, with one thread less than there are processors available
+     * (but at least one thread).
+     * @return the shared pool
+     */
+    public static synchronized WorkerPool getDefaultInstance() {
+        if (defaultInstance == null) {
+            defaultInstance = new WorkerPool(
+                    Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        }
+        return defaultInstance;
+    }
+
+    /**
+     * Returns the number of threads in the pool.
+     * @return the number of threads
+     */
+    public int getThreadCount() {
+        return this.threadCount;
+    }
+
+    /**
+     * Runs a group of tasks and returns when all of them have completed. The tasks run
+     * concurrently in the calling thread and the threads of the pool, so they must not depend
+     * on each other. If a task throws an exception, the remaining tasks are still run and the
+     * first exception is rethrown in the calling thread.
+     * @param tasks the tasks
+     */
+    public void run(Runnable[] tasks) {
+        if (tasks.length < 2) {
+            for (int i = 0; i < tasks.length; i++) {
+                tasks[i].run();
+            }
+            return;
+        }
+        Group group = new Group(tasks);
+        synchronized (queue) {
+            if (!started) {
+                startThreads();
+            }
+            queue.addLast(group);
+            queue.notifyAll();
+        }
+        group.work();
+        synchronized (queue) {
+            //All tasks are claimed, so the group doesn't need another thread
+            queue.remove(group);
+        }
+        group.await();
+        group.rethrow();
+    }
+
+    private void startThreads() {
+        for (int i = 0; i < threadCount; i++) {
+            Thread thread = new Thread("barcode4j-worker-" + i) {
+                public void run() {
+                    work();
+                }
+            };
+            thread.setDaemon(true);
+            thread.start();
+        }
+        started = true;
+    }
+
+    private void work() {
+        while (true) {
+            Group group;
+            Runnable task;
+            synchronized (queue) {
+                while (queue.isEmpty()) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException ie) {
+                        //keep serving: the threads live as long as the pool
+                    }
+                }
+                group = (Group)queue.getFirst();
+                task = group.claim();
+                if (task == null || !group.hasUnclaimed()) {
+                    queue.removeFirst();
+                }
+            }
+            if (task != null) {
+                group.run(task);
+            }
+        }
+    }
+
+    /** The tasks passed to one call of {@link WorkerPool#run(Runnable[])}. */
+    private static class Group {
+
+        private final Runnable[] tasks;
+        private int claimed;
+        private int completed;
+        private Throwable failure;
+
+        Group(Runnable[] tasks) {
+            this.tasks = tasks;
+        }
+
+        synchronized Runnable claim() {
+            return (claimed < tasks.length ? tasks[claimed++] : null);
+        }
+
+        synchronized boolean hasUnclaimed() {
+            return claimed < tasks.length;
+        }
+
+        void work() {
+            Runnable task;
+            while ((task = claim()) != null) {
+                run(task);
+            }
+        }
+
+        void run(Runnable task) {
+            Throwable t = null;
+            try {
+                task.run();
+            } catch (RuntimeException re) {
+                t = re;
+            } catch (Error e) {
+                t = e;
+            }
+            synchronized (this) {
+                if (failure == null) {
+                    failure = t;
+                }
+                completed++;
+                if (completed == tasks.length) {
+                    notifyAll();
+                }
+            }
+        }
+
+        synchronized void await() {
+            boolean interrupted = false;
+            while (completed < tasks.length) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        synchronized void rethrow() {
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException)failure;
+            } else if (failure instanceof Error) {
+                throw (Error)failure;
+            }
+        }
+    }
+
+}
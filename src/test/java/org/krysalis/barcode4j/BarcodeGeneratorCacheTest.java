@@ -0,0 +1,113 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j;
+
+import junit.framework.TestCase;
+
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+
+/**
+ * Tests the BarcodeGeneratorCache class.
+ */
+public class BarcodeGeneratorCacheTest extends TestCase {
+
+    private DefaultConfiguration createConfiguration(String message, String type,
+            String moduleWidth) {
+        DefaultConfiguration cfg = new DefaultConfiguration("barcode");
+        cfg.setAttribute("message", message);
+        DefaultConfiguration child = new DefaultConfiguration(type);
+        cfg.addChild(child);
+        DefaultConfiguration mw = new DefaultConfiguration("module-width");
+        mw.setValue(moduleWidth);
+        child.addChild(mw);
+        DefaultConfiguration qz = new DefaultConfiguration("quiet-zone");
+        qz.setAttribute("enabled", "true");
+        qz.setValue("2mw");
+        child.addChild(qz);
+        return cfg;
+    }
+
+    public void testCache() throws Exception {
+        BarcodeGeneratorCache cache = new BarcodeGeneratorCache(
+                new DefaultBarcodeClassResolver(), 2);
+        BarcodeGenerator gen1 = cache.getBarcodeGenerator(
+                createConfiguration("123", "code128", "0.3mm"));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        //The message is not part of the barcode configuration
+        BarcodeGenerator gen2 = cache.getBarcodeGenerator(
+                createConfiguration("456", "code128", "0.3mm"));
+        assertSame(gen1, gen2);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getSize());
+
+        BarcodeGenerator gen3 = cache.getBarcodeGenerator(
+                createConfiguration("123", "code128", "0.4mm"));
+        assertNotSame(gen1, gen3);
+        BarcodeGenerator gen4 = cache.getBarcodeGenerator(
+                createConfiguration("123", "datamatrix", "0.3mm"));
+        assertNotSame(gen1, gen4);
+        assertEquals(2, cache.getSize());
+        assertEquals(3, cache.getMissCount());
+
+        //The least recently used generator has been discarded
+        BarcodeGenerator gen5 = cache.getBarcodeGenerator(
+                createConfiguration("123", "code128", "0.3mm"));
+        assertNotSame(gen1, gen5);
+        assertEquals(4, cache.getMissCount());
+        assertEquals(2, cache.getSize());
+
+        //The generators work
+        BarcodeDimension dim = gen5.calcDimensions("123");
+        assertTrue(dim.getWidth() > 0);
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0, cache.getMissCount());
+    }
+
+    public void testCacheKey() throws Exception {
+        DefaultConfiguration cfg1 = new DefaultConfiguration("test");
+        cfg1.setAttribute("a", "1");
+        cfg1.setAttribute("b", "2");
+        DefaultConfiguration cfg2 = new DefaultConfiguration("test");
+        cfg2.setAttribute("b", "2");
+        cfg2.setAttribute("a", "1");
+        assertEquals(BarcodeGeneratorCache.getCacheKey(cfg1),
+                BarcodeGeneratorCache.getCacheKey(cfg2));
+
+        //No ambiguities through concatenation
+        cfg1 = new DefaultConfiguration("test");
+        cfg1.setAttribute("a", "12");
+        cfg2 = new DefaultConfiguration("test");
+        cfg2.setAttribute("a1", "2");
+        assertFalse(BarcodeGeneratorCache.getCacheKey(cfg1).equals(
+                BarcodeGeneratorCache.getCacheKey(cfg2)));
+
+        cfg1 = new DefaultConfiguration("test");
+        cfg1.setValue("1");
+        cfg2 = new DefaultConfiguration("test");
+        assertFalse(BarcodeGeneratorCache.getCacheKey(cfg1).equals(
+                BarcodeGeneratorCache.getCacheKey(cfg2)));
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j;
+
+import junit.framework.TestCase;
+
+import org.apache.avalon.framework.configuration.DefaultConfiguration;
+
+/**
+ * Tests the BarcodeOutputCache class.
+ */
+public class BarcodeOutputCacheTest extends TestCase {
+
+    private static final String PNG = "image/png";
+
+    public void testCache() throws Exception {
+        DefaultConfiguration cfg = new DefaultConfiguration("barcode");
+        cfg.addChild(new DefaultConfiguration("code128"));
+        String cfgKey = BarcodeOutputCache.getConfigurationKey(cfg);
+
+        BarcodeOutputCache cache = new BarcodeOutputCache();
+        assertNull(cache.get(cfgKey, "123", PNG, 300, 0));
+        byte[] data = new byte[] {1, 2, 3};
+        cache.put(cfgKey, "123", PNG, 300, 0, data);
+        assertSame(data, cache.get(cfgKey, "123", PNG, 300, 0));
+
+        //Every part of the key counts
+        assertNull(cache.get(cfgKey, "124", PNG, 300, 0));
+        assertNull(cache.get(cfgKey, "123", "image/jpeg", 300, 0));
+        assertNull(cache.get(cfgKey, "123", PNG, 600, 0));
+        assertNull(cache.get(cfgKey, "123", PNG, 300, 90));
+        DefaultConfiguration cfg2 = new DefaultConfiguration("barcode");
+        cfg2.addChild(new DefaultConfiguration("datamatrix"));
+        assertNull(cache.get(BarcodeOutputCache.getConfigurationKey(cfg2), "123", PNG, 300, 0));
+
+        //Equivalent orientations share the entry
+        cache.put(cfgKey, "123", PNG, 300, 90, data);
+        assertSame(data, cache.get(cfgKey, "123", PNG, 300, -270));
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(6, cache.getMissCount());
+        assertEquals(0.25, cache.getHitRatio(), 0.0001);
+        assertEquals(2, cache.getEntryCount());
+        assertTrue(cache.getSize() > data.length);
+
+        cache.clear();
+        assertEquals(0, cache.getEntryCount());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(0.0, cache.getHitRatio(), 0.0001);
+    }
+
+    public void testEviction() throws Exception {
+        BarcodeOutputCache cache = new BarcodeOutputCache(2000);
+        cache.put("cfg", "1", PNG, 300, 0, new byte[600]);
+        cache.put("cfg", "2", PNG, 300, 0, new byte[600]);
+        cache.get("cfg", "1", PNG, 300, 0); //"2" is now the least recently used entry
+        cache.put("cfg", "3", PNG, 300, 0, new byte[600]);
+        assertEquals(2, cache.getEntryCount());
+        assertNotNull(cache.get("cfg", "1", PNG, 300, 0));
+        assertNull(cache.get("cfg", "2", PNG, 300, 0));
+        assertNotNull(cache.get("cfg", "3", PNG, 300, 0));
+        assertTrue(cache.getSize() <= cache.getMaxSize());
+
+        //A single large entry replaces several small ones
+        cache.put("cfg", "4", PNG, 300, 0, new byte[1500]);
+        assertEquals(1, cache.getEntryCount());
+
+        //Entries larger than the whole cache are not stored
+        cache.put("cfg", "5", PNG, 300, 0, new byte[2000]);
+        assertNull(cache.get("cfg", "5", PNG, 300, 0));
+        assertNotNull(cache.get("cfg", "4", PNG, 300, 0));
+
+        //Replacing an entry updates the size
+        long size = cache.getSize();
+        cache.put("cfg", "4", PNG, 300, 0, new byte[1000]);
+        assertEquals(size - 500, cache.getSize());
+    }
+
+}
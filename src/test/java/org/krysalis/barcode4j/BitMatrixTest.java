@@ -0,0 +1,90 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the BitMatrix class.
+ */
+public class BitMatrixTest extends TestCase {
+
+    public void testSetAndGet() throws Exception {
+        BitMatrix matrix = new BitMatrix(150, 3);
+        assertEquals(150, matrix.getWidth());
+        assertEquals(3, matrix.getHeight());
+        matrix.set(0, 0, true);
+        matrix.set(63, 1, true);
+        matrix.set(64, 1, true);
+        matrix.set(149, 2, true);
+        assertTrue(matrix.get(0, 0));
+        assertFalse(matrix.get(1, 0));
+        assertFalse(matrix.get(0, 1));
+        assertTrue(matrix.get(63, 1));
+        assertTrue(matrix.get(64, 1));
+        assertTrue(matrix.get(149, 2));
+        matrix.set(63, 1, false);
+        assertFalse(matrix.get(63, 1));
+        assertTrue(matrix.get(64, 1));
+    }
+
+    public void testRunLength() throws Exception {
+        BitMatrix matrix = new BitMatrix(150, 2);
+        //Row 0: white 0-9, black 10-139, white 140-149
+        for (int x = 10; x < 140; x++) {
+            matrix.set(x, 0, true);
+        }
+        assertEquals(10, matrix.getRunLength(0, 0));
+        assertEquals(130, matrix.getRunLength(10, 0));
+        assertEquals(67, matrix.getRunLength(73, 0));
+        assertEquals(10, matrix.getRunLength(140, 0));
+        assertEquals(1, matrix.getRunLength(149, 0));
+
+        //Row 1: all white, alternating at the end
+        assertEquals(150, matrix.getRunLength(0, 1));
+        matrix.set(148, 1, true);
+        assertEquals(148, matrix.getRunLength(0, 1));
+        assertEquals(1, matrix.getRunLength(148, 1));
+        assertEquals(1, matrix.getRunLength(149, 1));
+    }
+
+    public void testRunsCoverRow() throws Exception {
+        java.util.Random rand = new java.util.Random(1234);
+        BitMatrix matrix = new BitMatrix(200, 1);
+        for (int x = 0; x < 200; x++) {
+            matrix.set(x, 0, rand.nextInt(4) != 0);
+        }
+        StringBuffer sb = new StringBuffer();
+        int x = 0;
+        while (x < matrix.getWidth()) {
+            int run = matrix.getRunLength(x, 0);
+            assertTrue(run > 0);
+            boolean black = matrix.get(x, 0);
+            for (int i = 0; i < run; i++) {
+                sb.append(black ? '1' : '0');
+            }
+            x += run;
+            if (x < matrix.getWidth()) {
+                assertTrue(black != matrix.get(x, 0));
+            }
+        }
+        assertEquals(matrix.toString(), sb.toString() + "\n");
+    }
+
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.batch;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.krysalis.barcode4j.BarcodeDimension;
+import org.krysalis.barcode4j.BarcodeGenerator;
+import org.krysalis.barcode4j.impl.upcean.EAN13Bean;
+import org.krysalis.barcode4j.output.CanvasProvider;
+import org.krysalis.barcode4j.output.svg.SVGStreamCanvasProvider;
+import org.krysalis.barcode4j.tools.MimeTypes;
+
+/**
+ * Tests the BarcodeBatch class.
+ */
+public class BarcodeBatchTest extends TestCase {
+
+    private static final int COUNT = 200;
+
+    private List createMessages() {
+        List messages = new java.util.ArrayList();
+        for (int i = 0; i < COUNT; i++) {
+            if (i % 10 == 7) {
+                messages.add("invalid " + i);
+            } else {
+                String s = "000000000000" + i;
+                messages.add(s.substring(s.length() - 12));
+            }
+        }
+        return messages;
+    }
+
+    private byte[] generateSVG(EAN13Bean bean, String msg) throws Exception {
+        ByteArrayOutputStream bout = new ByteArrayOutputStream();
+        SVGStreamCanvasProvider svg = new SVGStreamCanvasProvider(bout, 0);
+        bean.generateBarcode(svg, msg);
+        svg.finish();
+        return bout.toByteArray();
+    }
+
+    public void testOrdered() throws Exception {
+        EAN13Bean bean = new EAN13Bean();
+        BarcodeBatch batch = new BarcodeBatch(bean, "svg");
+        batch.setThreadCount(4);
+        List messages = createMessages();
+        RecordingHandler handler = new RecordingHandler();
+        int errors = batch.process(messages.iterator(), handler);
+
+        assertEquals(COUNT / 10, errors);
+        assertEquals(COUNT, handler.indexes.size());
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(new Integer(i), handler.indexes.get(i));
+        }
+        assertEquals(COUNT / 10, handler.errors.size());
+        assertTrue(Arrays.equals(generateSVG(bean, "000000000005"), (byte[])handler.outputs.get(5)));
+    }
+
+    public void testUnordered() throws Exception {
+        BarcodeBatch batch = new BarcodeBatch(new EAN13Bean(), MimeTypes.MIME_PNG);
+        batch.setThreadCount(3);
+        batch.setOrdered(false);
+        batch.setResolution(150);
+        RecordingHandler handler = new RecordingHandler();
+        int errors = batch.process(createMessages().iterator(), handler);
+
+        assertEquals(COUNT / 10, errors);
+        assertEquals(COUNT, handler.indexes.size());
+        boolean[] seen = new boolean[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            int index = ((Integer)handler.indexes.get(i)).intValue();
+            assertFalse(seen[index]);
+            seen[index] = true;
+        }
+    }
+
+    public void testSingleThread() throws Exception {
+        BarcodeBatch batch = new BarcodeBatch(new EAN13Bean(), "eps");
+        batch.setThreadCount(1);
+        RecordingHandler handler = new RecordingHandler();
+        assertEquals(COUNT / 10, batch.process(createMessages().iterator(), handler));
+        assertEquals(COUNT, handler.indexes.size());
+    }
+
+    public void testHandlerError() throws Exception {
+        BarcodeBatch batch = new BarcodeBatch(new EAN13Bean(), "svg");
+        batch.setThreadCount(4);
+        RecordingHandler handler = new RecordingHandler() {
+            public void handleOutput(int index, String msg, byte[] data) throws IOException {
+                if (index == 20) {
+                    throw new IOException("Disk full");
+                }
+                super.handleOutput(index, msg, data);
+            }
+        };
+        try {
+            batch.process(createMessages().iterator(), handler);
+            fail("IOException expected");
+        } catch (IOException ioe) {
+            assertEquals("Disk full", ioe.getMessage());
+        }
+        assertEquals(20, handler.indexes.size());
+    }
+
+    public void testSlowHandler() throws Exception {
+        final EAN13Bean bean = new EAN13Bean();
+        final int[] generated = new int[1];
+        BarcodeGenerator counting = new BarcodeGenerator() {
+            public void generateBarcode(CanvasProvider canvas, String msg) {
+                bean.generateBarcode(canvas, msg);
+                synchronized (generated) {
+                    generated[0]++;
+                    generated.notifyAll();
+                }
+            }
+            public BarcodeDimension calcDimensions(String msg) {
+                return bean.calcDimensions(msg);
+            }
+        };
+        BarcodeBatch batch = new BarcodeBatch(counting, "svg");
+        batch.setThreadCount(4);
+        final boolean[] busy = new boolean[1];
+        final int[] generatedWhileBlocked = new int[1];
+        RecordingHandler handler = new RecordingHandler() {
+            public void handleOutput(int index, String msg, byte[] data) throws IOException {
+                assertFalse("The handler must not be called concurrently", busy[0]);
+                busy[0] = true;
+                if (index == 0) {
+                    //The other workers must continue while the handler is busy
+                    synchronized (generated) {
+                        long end = System.currentTimeMillis() + 10000;
+                        while (generated[0] < 20 && System.currentTimeMillis() < end) {
+                            try {
+                                generated.wait(100);
+                            } catch (InterruptedException ie) {
+                                throw new IOException("Interrupted");
+                            }
+                        }
+                        generatedWhileBlocked[0] = generated[0];
+                    }
+                }
+                super.handleOutput(index, msg, data);
+                busy[0] = false;
+            }
+        };
+        assertEquals(COUNT / 10, batch.process(createMessages().iterator(), handler));
+        assertTrue(generatedWhileBlocked[0] >= 20);
+        assertEquals(COUNT, handler.indexes.size());
+        for (int i = 0; i < COUNT; i++) {
+            assertEquals(new Integer(i), handler.indexes.get(i));
+        }
+    }
+
+    public void testUnsupportedFormat() throws Exception {
+        try {
+            new BarcodeBatch(new EAN13Bean(), "image/x-unknown");
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+    }
+
+    private static class RecordingHandler implements BatchHandler {
+
+        private List indexes = new java.util.ArrayList();
+        private List outputs = new java.util.ArrayList();
+        private List errors = new java.util.ArrayList();
+
+        public void handleOutput(int index, String msg, byte[] data) throws IOException {
+            assertNotNull(data);
+            indexes.add(new Integer(index));
+            outputs.add(data);
+        }
+
+        public void handleError(int index, String msg, Exception e) throws IOException {
+            assertTrue(msg.startsWith("invalid"));
+            indexes.add(new Integer(index));
+            outputs.add(null);
+            errors.add(e);
+        }
+    }
+
+}
@@ -15,9 +15,12 @@
  */
 package org.krysalis.barcode4j.cli;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.PrintStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 
 import org.apache.avalon.framework.ExceptionUtil;
 import org.krysalis.barcode4j.AbstractBarcodeTestCase;
@@ -202,4 +205,111 @@ public class CommandLineTestCase extends AbstractBarcodeTestCase {
         } 
     }
 
+    public void testBatchToDirectory() throws Exception {
+        File msgFile = File.createTempFile("krba", ".txt");
+        java.io.Writer writer = new java.io.OutputStreamWriter(
+                new java.io.FileOutputStream(msgFile), "UTF-8");
+        writer.write("977142298550\n\n400638133393\tsub/second.svg\n");
+        writer.close();
+        File dir = new File(msgFile.getParentFile(), msgFile.getName() + ".out");
+        try {
+            final String[] args = {"-s", "ean-13", "-b", msgFile.getAbsolutePath(),
+                    "-o", dir.getAbsolutePath(), "-t", "2"};
+            callCLI(args);
+            assertEquals("Exit code must be 0", 0, this.exitHandler.getLastExitCode());
+            assertTrue("No output on stderr expected", this.err.size() == 0);
+            File first = new File(dir, "000001.svg");
+            File second = new File(dir, "sub/second.svg");
+            assertTrue(first.length() > 0);
+            assertTrue(second.length() > 0);
+            assertTrue(first.delete());
+            assertTrue(second.delete());
+            assertTrue(second.getParentFile().delete());
+        } finally {
+            dir.delete();
+            msgFile.delete();
+        }
+    }
+
+    public void testBatchInvalidFilename() throws Exception {
+        File msgFile = File.createTempFile("krba", ".txt");
+        java.io.Writer writer = new java.io.OutputStreamWriter(
+                new java.io.FileOutputStream(msgFile), "UTF-8");
+        writer.write("977142298550\tsub/../escaped.svg\n"
+                + "977142298550\tfirst..second.svg\n"
+                + "400638133393\t../escaped.svg\n"
+                + "400638133393\tthird.svg\n");
+        writer.close();
+        File dir = new File(msgFile.getParentFile(), msgFile.getName() + ".out");
+        File escaped = new File(msgFile.getParentFile(), "escaped.svg");
+        try {
+            final String[] args = {"-s", "ean-13", "-b", msgFile.getAbsolutePath(),
+                    "-o", dir.getAbsolutePath()};
+            callCLI(args);
+            assertEquals("Exit code must be -3", -3, this.exitHandler.getLastExitCode());
+            assertTrue("Error message expected on stderr", this.err.size() > 0);
+            assertFalse(escaped.exists());
+            assertFalse(new File(dir, "escaped.svg").exists());
+            //Only ".." path segments are rejected and the batch continues after them
+            File first = new File(dir, "first..second.svg");
+            File third = new File(dir, "third.svg");
+            assertTrue(first.length() > 0);
+            assertTrue(third.length() > 0);
+            assertTrue(first.delete());
+            assertTrue(third.delete());
+        } finally {
+            escaped.delete();
+            dir.delete();
+            msgFile.delete();
+        }
+    }
+
+    public void testBatchDuplicateFilename() throws Exception {
+        Main.stdin = new ByteArrayInputStream(("977142298550\tsame.png\n"
+                + "400638133393\tsame.png\n"
+                + "400638133393\tother.png\n").getBytes("UTF-8"));
+        try {
+            final String[] args = {"-s", "ean-13", "-f", "png", "-b", "-"};
+            callCLI(args);
+        } finally {
+            Main.stdin = System.in;
+        }
+        assertEquals("Exit code must be -3", -3, this.exitHandler.getLastExitCode());
+        assertTrue(this.err.toString().indexOf("Duplicate output filename: same.png") >= 0);
+
+        //The first one wins, the batch continues after the duplicate
+        ZipInputStream zip = new ZipInputStream(
+                new ByteArrayInputStream(this.out.toByteArray()));
+        assertEquals("same.png", zip.getNextEntry().getName());
+        assertEquals("other.png", zip.getNextEntry().getName());
+        assertNull(zip.getNextEntry());
+    }
+
+    public void testBatchToZip() throws Exception {
+        Main.stdin = new ByteArrayInputStream(
+                "977142298550\ninvalid\n400638133393\n".getBytes("UTF-8"));
+        try {
+            final String[] args = {"-s", "ean-13", "-f", "png", "-b", "-"};
+            callCLI(args);
+        } finally {
+            Main.stdin = System.in;
+        }
+        assertEquals("Exit code must be -3", -3, this.exitHandler.getLastExitCode());
+        assertTrue("Error message expected on stderr", this.err.size() > 0);
+
+        ZipInputStream zip = new ZipInputStream(
+                new ByteArrayInputStream(this.out.toByteArray()));
+        ZipEntry entry = zip.getNextEntry();
+        assertEquals("000001.png", entry.getName());
+        entry = zip.getNextEntry();
+        assertEquals("000003.png", entry.getName());
+        assertNull(zip.getNextEntry());
+    }
+
+    public void testBatchWithMessage() throws Exception {
+        final String[] args = {"-s", "ean-13", "-b", "-", "9771422985503"};
+        callCLI(args);
+        assertEquals("Exit code must be -2", -2, this.exitHandler.getLastExitCode());
+    }
+
 }
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.impl;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.krysalis.barcode4j.BarcodeDimension;
+import org.krysalis.barcode4j.TextAlignment;
+import org.krysalis.barcode4j.impl.code128.Code128Bean;
+import org.krysalis.barcode4j.impl.code128.EAN128Bean;
+import org.krysalis.barcode4j.impl.code39.Code39Bean;
+import org.krysalis.barcode4j.impl.datamatrix.DataMatrixBean;
+import org.krysalis.barcode4j.impl.pdf417.PDF417Bean;
+import org.krysalis.barcode4j.impl.upcean.EAN13Bean;
+import org.krysalis.barcode4j.output.AbstractCanvasProvider;
+
+/**
+ * Tests immutable barcode beans and their use by multiple threads.
+ */
+public class ImmutableBeanTest extends TestCase {
+
+    private static final int THREADS = 4;
+    private static final int ROUNDS = 50;
+
+    public void testImmutableCopy() throws Exception {
+        Code128Bean bean = new Code128Bean();
+        bean.setModuleWidth(0.3);
+        assertFalse(bean.isImmutable());
+
+        AbstractBarcodeBean copy = bean.createImmutableCopy();
+        assertTrue(copy.isImmutable());
+        assertNotSame(bean, copy);
+        assertSame(copy, copy.createImmutableCopy());
+        try {
+            copy.setModuleWidth(0.5);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException ise) {
+            //expected
+        }
+        try {
+            ((Code128Bean)copy).setCodeset(1);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException ise) {
+            //expected
+        }
+
+        //The original remains mutable and independent of the copy
+        bean.setModuleWidth(0.5);
+        assertEquals(0.3, copy.getModuleWidth(), 0.0001);
+    }
+
+    public void testEAN128Copy() throws Exception {
+        EAN128Bean bean = new EAN128Bean();
+        bean.setTemplate("(10)n2(420)n5");
+        AbstractBarcodeBean copy = bean.createImmutableCopy();
+        String expected = paint(copy, "101242012345");
+
+        //Changing the original's settings must not affect the copy
+        bean.setOmitBrackets(true);
+        bean.setTemplate(null);
+        assertEquals(expected, paint(copy, "101242012345"));
+        assertFalse(expected.equals(paint(bean, "101242012345")));
+    }
+
+    public void testConcurrentUse() throws Exception {
+        final List tasks = new java.util.ArrayList();
+
+        EAN128Bean ean128 = new EAN128Bean();
+        ean128.setTemplate("(10)n2(420)n5");
+        DataMatrixBean dm = new DataMatrixBean();
+        PDF417Bean pdf417 = new PDF417Bean();
+        pdf417.setColumns(4);
+
+        addTasks(tasks, new Code128Bean(), new String[] {"Hello World", "1234567890", "Ab12"});
+        addTasks(tasks, ean128, new String[] {"101242012345", "109942099999"});
+        addTasks(tasks, new Code39Bean(), new String[] {"HELLO", "CODE 39"});
+        addTasks(tasks, new EAN13Bean(), new String[] {"401234567890", "123456789012"});
+        addTasks(tasks, dm, new String[] {"Hello World", "0123456789012345678901234567",
+                "\u00E4\u00F6\u00FC Umlauts"});
+        addTasks(tasks, pdf417, new String[] {"Hello World", "1234567890123456789012345",
+                "PDF417 with some text"});
+
+        final Throwable[] failure = new Throwable[1];
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    try {
+                        for (int r = 0; r < ROUNDS; r++) {
+                            for (int i = 0; i < tasks.size(); i++) {
+                                Task task = (Task)tasks.get((i + offset) % tasks.size());
+                                task.check();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                }
+            };
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t++) {
+            threads[t].join();
+        }
+        synchronized (failure) {
+            if (failure[0] instanceof Error) {
+                throw (Error)failure[0];
+            } else if (failure[0] != null) {
+                throw new RuntimeException(failure[0].toString());
+            }
+        }
+    }
+
+    private void addTasks(List tasks, AbstractBarcodeBean bean, String[] msgs) {
+        AbstractBarcodeBean shared = bean.createImmutableCopy();
+        for (int i = 0; i < msgs.length; i++) {
+            tasks.add(new Task(shared, msgs[i], paint(bean, msgs[i])));
+        }
+    }
+
+    private static String paint(AbstractBarcodeBean bean, String msg) {
+        RecordingCanvasProvider provider = new RecordingCanvasProvider();
+        bean.generateBarcode(provider, msg);
+        BarcodeDimension dim = bean.calcDimensions(msg);
+        return provider.toString() + " " + dim.getWidthPlusQuiet() + "x"
+                + dim.getHeightPlusQuiet();
+    }
+
+    private static class Task {
+
+        private AbstractBarcodeBean bean;
+        private String msg;
+        private String expected;
+
+        public Task(AbstractBarcodeBean bean, String msg, String expected) {
+            this.bean = bean;
+            this.msg = msg;
+            this.expected = expected;
+        }
+
+        public void check() {
+            assertEquals(bean.getClass().getName() + ": " + msg, expected, paint(bean, msg));
+        }
+    }
+
+    private static class RecordingCanvasProvider extends AbstractCanvasProvider {
+
+        private StringBuffer sb = new StringBuffer();
+
+        public RecordingCanvasProvider() {
+            super(0);
+        }
+
+        public void establishDimensions(BarcodeDimension dim) {
+            super.establishDimensions(dim);
+            sb.append(dim.getWidthPlusQuiet()).append('x').append(dim.getHeightPlusQuiet());
+        }
+
+        public void deviceFillRect(double x, double y, double w, double h) {
+            sb.append(" r").append(x).append(',').append(y).append(',').append(w)
+                    .append(',').append(h);
+        }
+
+        public void deviceText(String text, double x1, double x2, double y1,
+                String fontName, double fontSize, TextAlignment textAlign) {
+            sb.append(" t").append(text);
+        }
+
+        public String toString() {
+            return sb.toString();
+        }
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.impl.datamatrix;
+
+import java.awt.Dimension;
+
+import junit.framework.TestCase;
+
+import org.krysalis.barcode4j.BarGroup;
+import org.krysalis.barcode4j.BarcodeDimension;
+import org.krysalis.barcode4j.TextAlignment;
+import org.krysalis.barcode4j.TwoDimBarcodeLogicHandler;
+import org.krysalis.barcode4j.output.AbstractCanvasProvider;
+import org.krysalis.barcode4j.tools.WorkerPool;
+
+/**
+ * Tests the DataMatrixBean class.
+ */
+public class DataMatrixBeanTest extends TestCase {
+
+    public void testDimensions() throws Exception {
+        DataMatrixBean bean = new DataMatrixBean();
+        bean.setModuleWidth(1.0);
+        bean.doQuietZone(false);
+
+        BarcodeDimension dim = bean.calcDimensions("Hello World");
+        assertEquals(16.0, dim.getWidth(), 0.01);
+        assertEquals(16.0, dim.getHeight(), 0.01);
+
+        //The size constraints must be taken into account
+        Dimension fixedSize = new Dimension(26, 26);
+        bean.setMinSize(fixedSize);
+        bean.setMaxSize(fixedSize);
+        dim = bean.calcDimensions("Hello World");
+        assertEquals(26.0, dim.getWidth(), 0.01);
+        assertEquals(26.0, dim.getHeight(), 0.01);
+
+        //The painted symbol must have the same dimensions as the calculated ones
+        DummyCanvasProvider provider = new DummyCanvasProvider();
+        bean.generateBarcode(provider, "Hello World");
+        assertEquals(26.0, provider.getDimensions().getWidth(), 0.01);
+        assertEquals(26.0, provider.getDimensions().getHeight(), 0.01);
+        assertEquals(26.0, provider.maxX, 0.01);
+        assertEquals(26.0, provider.maxY, 0.01);
+    }
+
+    public void testRunLengthEmission() throws Exception {
+        String msg = "Run-length emission of a 2-region DataMatrix symbol";
+        DataMatrixBean bean = new DataMatrixBean();
+        bean.setMinSize(new Dimension(32, 32));
+        DataMatrixEncodedSymbol symbol = DataMatrixLogicImpl.encodeMessage(msg, bean);
+        final StringBuffer sb = new StringBuffer();
+        final int[] calls = new int[1];
+        TwoDimBarcodeLogicHandler handler = new TwoDimBarcodeLogicHandler() {
+            public void startBarcode(String msg, String formattedMsg) {
+            }
+            public void startRow() {
+            }
+            public void startBarGroup(BarGroup type, String submsg) {
+            }
+            public void addBar(boolean black, int width) {
+                assertTrue(width > 0);
+                for (int i = 0; i < width; i++) {
+                    sb.append(black ? '1' : '0');
+                }
+                calls[0]++;
+            }
+            public void endBarGroup() {
+            }
+            public void endRow() {
+                sb.append('\n');
+            }
+            public void endBarcode() {
+            }
+        };
+        new DataMatrixLogicImpl().generateBarcodeLogic(handler, symbol);
+
+        //The runs must add up to the module matrix of the symbol
+        DataMatrixSymbolInfo info = symbol.getSymbolInfo();
+        DefaultDataMatrixPlacement placement = new DefaultDataMatrixPlacement(
+                DataMatrixErrorCorrection.encodeECC200(symbol.getCodewordArray(), info),
+                info.getSymbolDataWidth(), info.getSymbolDataHeight());
+        placement.place();
+        String expected = DataMatrixLogicImpl.createSymbolMatrix(placement, info).toString();
+        assertEquals(expected, sb.toString());
+        assertTrue(expected.startsWith("1010")); //top timing pattern
+        //At least the solid finder rows are emitted as single bars
+        int modules = info.getSymbolWidth() * info.getSymbolHeight();
+        assertTrue(calls[0] <= modules - 2 * (info.getSymbolWidth() - 1));
+    }
+
+    public void testSizeConstraintChanges() throws Exception {
+        DataMatrixBean bean = new DataMatrixBean();
+        bean.setModuleWidth(1.0);
+        bean.doQuietZone(false);
+        assertEquals(16.0, bean.calcDimensions("Hello World").getWidth(), 0.01);
+
+        //The cached symbol index must follow the constraints
+        bean.setMinSize(new Dimension(20, 20));
+        assertEquals(20.0, bean.calcDimensions("Hello World").getWidth(), 0.01);
+        bean.setShape(SymbolShapeHint.FORCE_RECTANGLE);
+        bean.setMinSize(null);
+        BarcodeDimension dim = bean.calcDimensions("Hello World");
+        assertEquals(32.0, dim.getWidth(), 0.01);
+        assertEquals(8.0, dim.getHeight(), 0.01);
+
+        DummyCanvasProvider provider = new DummyCanvasProvider();
+        bean.generateBarcode(provider, "Hello World");
+        assertEquals(32.0, provider.maxX, 0.01);
+        assertEquals(8.0, provider.maxY, 0.01);
+    }
+
+    public void testMinimalEncoding() throws Exception {
+        DataMatrixBean bean = new DataMatrixBean();
+        bean.setModuleWidth(1.0);
+        bean.doQuietZone(false);
+        bean.setShape(SymbolShapeHint.FORCE_SQUARE);
+
+        BarcodeDimension dim = bean.calcDimensions("U0RYZYMds");
+        assertEquals(16.0, dim.getWidth(), 0.01);
+
+        bean.setMinimalEncoding(true);
+        dim = bean.calcDimensions("U0RYZYMds");
+        assertEquals(14.0, dim.getWidth(), 0.01);
+        assertEquals(14.0, dim.getHeight(), 0.01);
+    }
+
+    public void testStructuredAppend() throws Exception {
+        DataMatrixBean bean = new DataMatrixBean();
+        bean.setModuleWidth(1.0);
+        bean.doQuietZone(false);
+        bean.setMaxSize(new Dimension(16, 16));
+        String msg = "12345678901234567890123456789012345678901234567890";
+        try {
+            bean.calcDimensions(msg);
+            fail("The message doesn't fit into a single 16x16 symbol");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+
+        bean.setMaxSymbols(4);
+        DataMatrixEncodedSymbol[] symbols = bean.encodeSymbols(msg);
+        //16 digits per symbol (12 codewords minus the structured append header)
+        assertEquals(4, symbols.length);
+        BarcodeDimension dim = bean.calcDimensions(msg);
+        //The symbols are painted side by side, separated by one module
+        double width = 3;
+        for (int i = 0; i < symbols.length; i++) {
+            width += symbols[i].getSymbolInfo().getSymbolWidth();
+        }
+        assertEquals(width, dim.getWidth(), 0.01);
+        assertEquals(16.0, dim.getHeight(), 0.01);
+
+        DummyCanvasProvider provider = new DummyCanvasProvider();
+        bean.generateBarcode(provider, msg);
+        assertEquals(width, provider.maxX, 0.01);
+        assertEquals(16.0, provider.maxY, 0.01);
+        assertEquals(1, provider.dimensionCount);
+
+        //The symbol matrices created on the worker pool must be painted the same way
+        bean.setWorkerPool(new WorkerPool(2));
+        DummyCanvasProvider parallel = new DummyCanvasProvider();
+        bean.generateBarcode(parallel, msg);
+        assertEquals(provider.rects.toString(), parallel.rects.toString());
+        assertEquals(1, parallel.dimensionCount);
+    }
+
+    private static class DummyCanvasProvider extends AbstractCanvasProvider {
+
+        private double maxX;
+        private double maxY;
+        private int dimensionCount;
+        private StringBuffer rects = new StringBuffer();
+
+        public DummyCanvasProvider() {
+            super(0);
+        }
+
+        public void establishDimensions(BarcodeDimension dim) {
+            super.establishDimensions(dim);
+            dimensionCount++;
+        }
+
+        public void deviceFillRect(double x, double y, double w, double h) {
+            maxX = Math.max(maxX, x + w);
+            maxY = Math.max(maxY, y + h);
+            rects.append(x).append(' ').append(y).append(' ').append(w).append(' ').append(h);
+            rects.append('\n');
+        }
+
+        public void deviceText(String text, double x1, double x2, double y1,
+                String fontName, double fontSize, TextAlignment textAlign) {
+            //nop
+        }
+
+    }
+
+}
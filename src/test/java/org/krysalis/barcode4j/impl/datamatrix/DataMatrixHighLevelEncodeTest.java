@@ -18,6 +18,7 @@
 
 package org.krysalis.barcode4j.impl.datamatrix;
 
+import java.awt.Dimension;
 import java.io.IOException;
 
 import junit.framework.ComparisonFailure;
@@ -359,6 +360,212 @@ public class DataMatrixHighLevelEncodeTest extends TestCase {
         assertEquals("127 85 102 116 117 127 129 56", visualized);
     }
 
+    public void testMinimalEncodation() throws Exception {
+        String visualized;
+
+        //C40 for the whole message, no unlatch before the last character
+        visualized = encodeHighLevelMinimal("U0RYZYMds");
+        assertEquals("230 213 64 243 191 162 213 116", visualized);
+        assertEquals("86 49 83 90 91 90 78 101 116 129", encodeHighLevel("U0RYZYMds"));
+
+        //No unlatch when the symbol is full
+        visualized = encodeHighLevelMinimal("2CZ3BDU4E/");
+        assertEquals("230 40 40 46 42 213 211 48", visualized);
+
+        //Never worse than annex P
+        String[] messages = new String[] {"123456", "30Q324343430794<OQQ", "AIMAIMAIM",
+                "A1B2C3D4E5F6G7H8I9J0K1L2", "Hello World!", "CREX-TAN:hh", "fiykmj*Rh2`,e6",
+                "aimaimaimaim12345678", ".XXX.XXX.XXX.XXX.XXX.XXX.XX.XXX.XXX.XXX.XXX.XXX.XXX",
+                "", "[)>\u001E05\u001D5555\u001C6666\u001E\u0004",
+                createBinaryMessage(20), createBinaryMessage(277)};
+        for (int i = 0; i < messages.length; i++) {
+            String minimal = toString(encode(messages[i], createBean(true, false)));
+            assertEquals(messages[i], DecodeHighLevel.decodeMessage(minimal));
+            String annexP = DataMatrixHighLevelEncoder.encodeHighLevel(messages[i]);
+            assertTrue(messages[i], minimal.length() <= annexP.length());
+        }
+    }
+
+    public void testMinimalEncodationRoundTrip() throws Exception {
+        String[] alphabets = new String[] {"0123456789", "ABCDEFGHIJKLMNOPQRSTUVWXYZ 0123456789",
+                "abcdefghijklmnopqrstuvwxyz 0123", "ABC*>\r 0123", "ABC-./:;@ 012",
+                "\u00E4\u00F6\u00FC\u00C4\u00DF\u00E9x1A",
+                "!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~\u001D", null};
+        java.util.Random rnd = new java.util.Random(1);
+        for (int t = 0; t < 2000; t++) {
+            int len = 1 + rnd.nextInt((t % 10) == 0 ? 400 : 40);
+            StringBuffer sb = new StringBuffer(len);
+            String alphabet = alphabets[rnd.nextInt(alphabets.length)];
+            for (int i = 0; i < len; i++) {
+                if (rnd.nextInt(8) == 0) {
+                    alphabet = alphabets[rnd.nextInt(alphabets.length)];
+                }
+                if (alphabet == null) {
+                    sb.append((char)rnd.nextInt(256));
+                } else {
+                    sb.append(alphabet.charAt(rnd.nextInt(alphabet.length())));
+                }
+            }
+            String msg = sb.toString();
+            String encoded = toString(encode(msg, createBean(true, false)));
+            assertEquals(msg, DecodeHighLevel.decodeMessage(encoded));
+        }
+    }
+
+    public void testGS1Mode() throws Exception {
+        String[] messages = new String[] {
+                "0109501101020917" + "17260331" + "10ABC123" + "\u001D" + "21XYZ9876",
+                "00006141411234567890" + "0210614141000019" + "37100" + "\u001D" + "4201234",
+                "0109501101020917"};
+        for (int i = 0; i < messages.length; i++) {
+            for (int m = 0; m < 2; m++) {
+                int[] codewords = encodeGS1(messages[i], m == 1);
+                assertEquals(DataMatrixConstants.FNC1, codewords[0]);
+                assertEquals(messages[i], DecodeHighLevel.decodeMessage(toString(codewords)));
+            }
+        }
+
+        //Digit pairs after the leading FNC1
+        assertEquals("232 131 139 180 141 131 132 139 147 129",
+                visualize(encodeGS1("0109501101020917", false)));
+
+        //The check digit is added if it is missing
+        assertEquals("0109501101020917",
+                DecodeHighLevel.decodeMessage(toString(encodeGS1("010950110102091", false))));
+
+        try {
+            encodeGS1("0109501101020918", false);
+            fail("Invalid check digit must be rejected");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+        try {
+            encodeGS1("01ABCDEFGHIJKLMN", false);
+            fail("Invalid AI must be rejected");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+        try {
+            encodeGS1("17261331", false);
+            fail("Invalid date must be rejected");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+
+        //FNC1 is accepted as separator, too
+        assertEquals(visualize(encodeGS1("10ABC123\u001D21XYZ9876", false)),
+                visualize(encodeGS1("10ABC123\u00F121XYZ9876", false)));
+
+        //The SSCC is a run of 20 digits: back to ASCII digit pairs right after the batch number
+        String msg = "10ABCDEFGHIJKL" + "\u001D" + "00006141411234567890";
+        String expected = "232 140 230 89 233 109 36 128 95 147 154 254 30 130 130 191 171 171"
+                + " 142 164 186 208 220";
+        assertStartsWith(expected, visualize(encodeGS1(msg, false)));
+        assertStartsWith(expected, visualize(encodeGS1(msg, true)));
+    }
+
+    public void testStructuredAppend() throws Exception {
+        DataMatrixBean bean = createBean(false, false);
+        bean.setMaxSymbols(16);
+        DataMatrixSymbolIndex index = bean.getSymbolIndex();
+
+        //Messages fitting a single symbol are encoded as usual
+        int[][] symbols = DataMatrixHighLevelEncoder.encodeHighLevelToSymbols("Hello World",
+                bean);
+        assertEquals(1, symbols.length);
+        assertEquals(encodeHighLevel("Hello World"), visualize(symbols[0]));
+
+        java.util.Random rnd = new java.util.Random(1);
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < 6000; i++) {
+            sb.append((char)(rnd.nextInt(4) == 0 ? rnd.nextInt(256) : 'A' + rnd.nextInt(26)));
+        }
+        String msg = sb.toString();
+        for (int m = 0; m < 2; m++) {
+            bean.setMinimalEncoding(m == 1);
+            symbols = DataMatrixHighLevelEncoder.encodeHighLevelToSymbols(msg, bean);
+            assertTrue(symbols.length > 1);
+            StringBuffer decoded = new StringBuffer();
+            for (int i = 0; i < symbols.length; i++) {
+                assertEquals(DataMatrixConstants.STRUCTURED_APPEND, symbols[i][0]);
+                assertEquals(i, symbols[i][1] >> 4);
+                assertEquals(17 - symbols.length, symbols[i][1] & 0x0F);
+                assertEquals(symbols[0][2], symbols[i][2]);
+                assertEquals(symbols[0][3], symbols[i][3]);
+                assertTrue(symbols[i][2] >= 1 && symbols[i][2] <= 254);
+                assertTrue(symbols[i][3] >= 1 && symbols[i][3] <= 254);
+                assertNotNull(index.lookup(symbols[i].length));
+                decoded.append(DecodeHighLevel.decodeMessage(toString(symbols[i])));
+            }
+            assertEquals(msg, decoded.toString());
+        }
+
+        bean.setMinimalEncoding(false);
+        bean.setMaxSymbols(2);
+        try {
+            DataMatrixHighLevelEncoder.encodeHighLevelToSymbols(msg, bean);
+            fail("The message doesn't fit into two symbols");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+        bean.setMaxSymbols(1);
+        try {
+            DataMatrixHighLevelEncoder.encodeHighLevelToSymbols(msg, bean);
+            fail("The message doesn't fit into a single symbol");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+    }
+
+    public void testStructuredAppendSplitPoint() throws Exception {
+        DataMatrixBean bean = createBean(false, false);
+        bean.setMaxSymbols(16);
+        bean.setMaxSize(new Dimension(18, 18));
+        //With the largest symbol, 15 and 17 characters fit, but not 16: X12 is left with two
+        //characters that need an unlatch and two ASCII codewords instead of completing a
+        //triple. The binary search alone would stop at 15 characters.
+        String msg = "HI0EbF>EEHAJCF5AI7JB6HICGCF.G8EFE3IJ";
+        int[][] symbols = DataMatrixHighLevelEncoder.encodeHighLevelToSymbols(msg, bean);
+        String first = DecodeHighLevel.decodeMessage(toString(symbols[0]));
+        assertEquals(msg.substring(0, 17), first);
+        StringBuffer decoded = new StringBuffer();
+        for (int i = 0; i < symbols.length; i++) {
+            decoded.append(DecodeHighLevel.decodeMessage(toString(symbols[i])));
+        }
+        assertEquals(msg, decoded.toString());
+    }
+
+    private static DataMatrixBean createBean(boolean minimal, boolean gs1) {
+        DataMatrixBean bean = new DataMatrixBean();
+        bean.setMinimalEncoding(minimal);
+        bean.setGS1Mode(gs1);
+        return bean;
+    }
+
+    private static int[] encode(String msg, DataMatrixBean bean) throws IOException {
+        return DataMatrixHighLevelEncoder.encodeHighLevelToCodewords(msg, bean);
+    }
+
+    private static int[] encodeGS1(String msg, boolean minimal) throws IOException {
+        return encode(msg, createBean(minimal, true));
+    }
+
+    private static String toString(int[] codewords) {
+        StringBuffer sb = new StringBuffer(codewords.length);
+        for (int i = 0; i < codewords.length; i++) {
+            sb.append((char)codewords[i]);
+        }
+        return sb.toString();
+    }
+
+    private static String visualize(int[] codewords) {
+        return TestHelper.visualize(toString(codewords));
+    }
+
+    private String encodeHighLevelMinimal(String msg) throws IOException {
+        return visualize(encode(msg, createBean(true, false)));
+    }
+
     private String encodeHighLevel(String msg) throws IOException {
         String encoded = DataMatrixHighLevelEncoder.encodeHighLevel(msg);
         //DecodeHighLevel.decode(encoded);
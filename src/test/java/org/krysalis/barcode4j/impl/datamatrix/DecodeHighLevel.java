@@ -60,6 +60,167 @@ public class DecodeHighLevel {
         }
     }
 
+    /**
+     * Decodes the data codewords of a symbol back into the original message. ECI is not
+     * supported. A structured append header is skipped. A leading FNC1 (GS1 mode) produces no
+     * output, FNC1 in any other position is returned as GS.
+     * @param codewords the data codewords
+     * @return the decoded message
+     */
+    public static String decodeMessage(String codewords) {
+        StringBuffer sb = new StringBuffer();
+        String trailer = "";
+        int len = codewords.length();
+        int idx = 0;
+        int upperShift = 0;
+        while (idx < len) {
+            char ch = codewords.charAt(idx++);
+            if (ch >= 1 && ch <= 128) {
+                sb.append((char)(ch - 1 + upperShift));
+                upperShift = 0;
+            } else if (ch >= 130 && ch <= 229) {
+                int num = ch - 130;
+                sb.append((char)('0' + num / 10)).append((char)('0' + num % 10));
+            } else if (ch == DataMatrixConstants.PAD) {
+                break;
+            } else if (ch == DataMatrixConstants.UPPER_SHIFT) {
+                upperShift = 128;
+            } else if (ch == DataMatrixConstants.FNC1) {
+                if (idx > 1) {
+                    sb.append('\u001D');
+                }
+            } else if (ch == DataMatrixConstants.STRUCTURED_APPEND && idx == 1) {
+                idx += 3; //symbol sequence indicator and file ID
+            } else if (ch == DataMatrixConstants.MACRO_05 && idx == 1) {
+                sb.append(DataMatrixConstants.MACRO_05_HEADER);
+                trailer = DataMatrixConstants.MACRO_TRAILER;
+            } else if (ch == DataMatrixConstants.MACRO_06 && idx == 1) {
+                sb.append(DataMatrixConstants.MACRO_06_HEADER);
+                trailer = DataMatrixConstants.MACRO_TRAILER;
+            } else if (ch == DataMatrixConstants.LATCH_TO_C40) {
+                idx = decodeTriplets(codewords, idx, sb, 1);
+            } else if (ch == DataMatrixConstants.LATCH_TO_TEXT) {
+                idx = decodeTriplets(codewords, idx, sb, 2);
+            } else if (ch == DataMatrixConstants.LATCH_TO_ANSIX12) {
+                idx = decodeTriplets(codewords, idx, sb, 3);
+            } else if (ch == DataMatrixConstants.LATCH_TO_EDIFACT) {
+                idx = decodeEdifact(codewords, idx, sb);
+            } else if (ch == DataMatrixConstants.LATCH_TO_BASE256) {
+                idx = decodeBase256Data(codewords, idx, sb);
+            } else {
+                throw new IllegalArgumentException("Unsupported codeword: " + (int)ch);
+            }
+        }
+        return sb.append(trailer).toString();
+    }
+
+    /* mode: 1=C40, 2=Text, 3=X12 */
+    private static int decodeTriplets(String codewords, int start, StringBuffer sb, int mode) {
+        int len = codewords.length();
+        int idx = start;
+        int shift = 0;
+        int upperShift = 0;
+        while (idx < len) {
+            int ch = codewords.charAt(idx);
+            if (ch == DataMatrixConstants.C40_UNLATCH) {
+                return idx + 1;
+            } else if (idx + 1 == len) {
+                break; //A single remaining codeword is always ASCII
+            }
+            int pair = ch * 256 + codewords.charAt(idx + 1) - 1;
+            idx += 2;
+            int[] values = new int[] {pair / 1600, (pair / 40) % 40, pair % 40};
+            for (int i = 0; i < 3; i++) {
+                int v = values[i];
+                int c = -1;
+                if (mode == 3) {
+                    c = "\r*> 0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ".charAt(v);
+                } else if (shift == 0) {
+                    if (v <= 2) {
+                        shift = v + 1;
+                    } else if (v == 3) {
+                        c = ' ';
+                    } else if (v <= 13) {
+                        c = '0' + v - 4;
+                    } else {
+                        c = (mode == 1 ? 'A' : 'a') + v - 14;
+                    }
+                } else {
+                    if (shift == 1) {
+                        c = v;
+                    } else if (shift == 2) {
+                        if (v <= 14) {
+                            c = '!' + v;
+                        } else if (v <= 21) {
+                            c = ':' + v - 15;
+                        } else if (v <= 26) {
+                            c = '[' + v - 22;
+                        } else if (v == 30) {
+                            upperShift = 128;
+                        } else {
+                            throw new IllegalArgumentException("Unsupported Shift 2 value: " + v);
+                        }
+                    } else if (mode == 1) {
+                        c = '`' + v;
+                    } else if (v == 0) {
+                        c = '`';
+                    } else if (v <= 26) {
+                        c = 'A' + v - 1;
+                    } else {
+                        c = '{' + v - 27;
+                    }
+                    shift = 0;
+                }
+                if (c >= 0) {
+                    sb.append((char)(c + upperShift));
+                    upperShift = 0;
+                }
+            }
+        }
+        return idx;
+    }
+
+    private static int decodeEdifact(String codewords, int start, StringBuffer sb) {
+        int len = codewords.length();
+        int idx = start;
+        int bits = 0;
+        int bitCount = 0;
+        while (idx < len) {
+            if (bitCount == 0 && len - idx <= 2) {
+                break; //Implicit unlatch: the last 1 or 2 codewords are always ASCII
+            }
+            bits = (bits << 8) | codewords.charAt(idx++);
+            bitCount += 8;
+            while (bitCount >= 6) {
+                bitCount -= 6;
+                int v = (bits >> bitCount) & 0x3f;
+                if (v == 31) {
+                    return idx; //Unlatch, the remaining bits are discarded
+                }
+                sb.append((char)(v < 32 ? v + 64 : v));
+            }
+        }
+        return idx;
+    }
+
+    private static int decodeBase256Data(String codewords, int start, StringBuffer sb) {
+        int idx = start;
+        int sectionLen = unrandomize255State(codewords.charAt(idx), idx + 1);
+        idx++;
+        if (sectionLen == 0) {
+            sectionLen = codewords.length() - idx;
+        } else if (sectionLen > 249) {
+            sectionLen = 250 * (sectionLen - 249)
+                    + unrandomize255State(codewords.charAt(idx), idx + 1);
+            idx++;
+        }
+        for (int i = 0; i < sectionLen; i++) {
+            sb.append(unrandomize255State(codewords.charAt(idx), idx + 1));
+            idx++;
+        }
+        return idx;
+    }
+
     private static int decodeBase256(String codewords, int start) {
         int len = codewords.length();
         int idx = start;
@@ -18,7 +18,10 @@
 
 package org.krysalis.barcode4j.impl.datamatrix;
 
+import java.util.Random;
+
 import org.krysalis.barcode4j.tools.TestHelper;
+import org.krysalis.barcode4j.tools.WorkerPool;
 
 import junit.framework.TestCase;
 
@@ -43,4 +46,33 @@ public class ECC200Test extends TestCase {
         assertEquals("66 129 70 138 234 82 82 95", TestHelper.visualize(s));
     }
     
+    public void testRSWithCodewordArray() throws Exception {
+        //Sample from Annexe R in ISO/IEC 16022:2000(E)
+        DataMatrixSymbolInfo symbolInfo = DataMatrixSymbolInfo.lookup(3);
+        int[] full = DataMatrixErrorCorrection.encodeECC200(new int[] {142, 164, 186}, symbolInfo);
+        int[] expected = new int[] {142, 164, 186, 114, 25, 5, 88, 102};
+        assertEquals(expected.length, full.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], full[i]);
+        }
+    }
+    
+    public void testParallelInterleavedBlocks() throws Exception {
+        WorkerPool pool = new WorkerPool(3);
+        Random rand = new Random(4711);
+        for (int s = 0; s < DataMatrixSymbolInfo.PROD_SYMBOLS.length; s++) {
+            DataMatrixSymbolInfo symbolInfo = DataMatrixSymbolInfo.PROD_SYMBOLS[s];
+            int[] data = new int[symbolInfo.dataCapacity];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = rand.nextInt(256);
+            }
+            int[] sequential = DataMatrixErrorCorrection.encodeECC200(data, symbolInfo);
+            int[] parallel = DataMatrixErrorCorrection.encodeECC200(data, symbolInfo, pool);
+            assertEquals(sequential.length, parallel.length);
+            for (int i = 0; i < sequential.length; i++) {
+                assertEquals(symbolInfo.toString(), sequential[i], parallel[i]);
+            }
+        }
+    }
+    
 }
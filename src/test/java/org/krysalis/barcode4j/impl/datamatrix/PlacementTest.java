@@ -56,6 +56,17 @@ public class PlacementTest extends TestCase {
         }
     }
     
+    public void testPlacementMaps() throws Exception {
+        for (int i = 0; i < DataMatrixSymbolInfo.PROD_SYMBOLS.length; i++) {
+            DataMatrixSymbolInfo info = DataMatrixSymbolInfo.PROD_SYMBOLS[i];
+            int cols = info.getSymbolDataWidth();
+            int rows = info.getSymbolDataHeight();
+            DataMatrixPlacementMap map = DataMatrixPlacementMap.getInstance(cols, rows);
+            assertEquals(info.toString(), info.getCodewordCount(), map.getCodewordCount());
+            assertSame(map, DataMatrixPlacementMap.getInstance(cols, rows));
+        }
+    }
+    
     private class DebugPlacement extends DefaultDataMatrixPlacement {
 
         public DebugPlacement(String codewords, int numcols, int numrows) {
@@ -71,23 +82,23 @@ public class PlacementTest extends TestCase {
         }
 
         public String toBitFieldString() {
-            StringBuffer sb = new StringBuffer(bits.length);
-            for (int i = 0, c = bits.length; i < c; i++) {
-                sb.append(bits[i] == 1 ? '1' : '0');
+            StringBuffer sb = new StringBuffer(numcols * numrows);
+            for (int row = 0; row < numrows; row++) {
+                for (int col = 0; col < numcols; col++) {
+                    sb.append(getBit(col, row) ? '1' : '0');
+                }
             }
             return sb.toString();
         }
         
         public String[] toBitFieldStringArray() {
             String[] array = new String[this.numrows];
-            int startpos = 0;
             for (int row = 0; row < numrows; row++) {
-                StringBuffer sb = new StringBuffer(bits.length);
-                for (int i = 0, c = numcols; i < c; i++) {
-                    sb.append(bits[startpos + i] == 1 ? '1' : '0');
+                StringBuffer sb = new StringBuffer(numcols);
+                for (int col = 0; col < numcols; col++) {
+                    sb.append(getBit(col, row) ? '1' : '0');
                 }
                 array[row] = sb.toString();
-                startpos += numcols;
             }
             return array;
         }
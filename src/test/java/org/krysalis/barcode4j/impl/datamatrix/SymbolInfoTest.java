@@ -107,4 +107,59 @@ public class SymbolInfoTest extends TestCase {
         assertNull(info);
     }
 
+    public void testSymbolIndex() throws Exception {
+        SymbolShapeHint[] shapes = new SymbolShapeHint[] {SymbolShapeHint.FORCE_NONE,
+                SymbolShapeHint.FORCE_SQUARE, SymbolShapeHint.FORCE_RECTANGLE};
+        Dimension[][] constraints = new Dimension[][] {
+                {null, null},
+                {new Dimension(16, 16), null},
+                {null, new Dimension(32, 32)},
+                {new Dimension(26, 26), new Dimension(52, 52)},
+                {new Dimension(12, 12), new Dimension(40, 40)}};
+        for (int s = 0; s < shapes.length; s++) {
+            for (int c = 0; c < constraints.length; c++) {
+                Dimension minSize = constraints[c][0];
+                Dimension maxSize = constraints[c][1];
+                DataMatrixSymbolIndex index = DataMatrixSymbolInfo.getIndex(
+                        shapes[s], minSize, maxSize);
+                assertSame(index, DataMatrixSymbolInfo.getIndex(shapes[s], minSize, maxSize));
+                for (int n = 0; n <= 1560; n++) {
+                    assertSame(shapes[s] + " " + n,
+                            linearLookup(n, shapes[s], minSize, maxSize), index.lookup(n));
+                }
+            }
+        }
+        assertEquals(1558,
+                DataMatrixSymbolInfo.getIndex(SymbolShapeHint.FORCE_NONE, null, null)
+                    .getMaxCapacity());
+        assertEquals(49,
+                DataMatrixSymbolInfo.getIndex(SymbolShapeHint.FORCE_RECTANGLE, null, null)
+                    .getMaxCapacity());
+    }
+
+    /** The straight-forward search the index must agree with. */
+    private static DataMatrixSymbolInfo linearLookup(int dataCodewords,
+            SymbolShapeHint shape, Dimension minSize, Dimension maxSize) {
+        DataMatrixSymbolInfo[] symbols = DataMatrixSymbolInfo.PROD_SYMBOLS;
+        for (int i = 0; i < symbols.length; i++) {
+            DataMatrixSymbolInfo symbol = symbols[i];
+            if ((shape == SymbolShapeHint.FORCE_SQUARE && symbol.rectangular)
+                    || (shape == SymbolShapeHint.FORCE_RECTANGLE && !symbol.rectangular)) {
+                continue;
+            }
+            if (minSize != null && (symbol.getSymbolWidth() < minSize.width
+                    || symbol.getSymbolHeight() < minSize.height)) {
+                continue;
+            }
+            if (maxSize != null && (symbol.getSymbolWidth() > maxSize.width
+                    || symbol.getSymbolHeight() > maxSize.height)) {
+                continue;
+            }
+            if (dataCodewords <= symbol.dataCapacity) {
+                return symbol;
+            }
+        }
+        return null;
+    }
+
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.impl.pdf417;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.math.BigInteger;
+
+/**
+ * Decodes PDF417 high-level codewords back to the message. Used to verify the high-level
+ * encoders.
+ */
+public class DecodeHighLevel implements PDF417Constants {
+
+    private static final BigInteger NINE_HUNDRED = BigInteger.valueOf(900);
+
+    /**
+     * Decodes the codewords produced by the high-level encoder.
+     * @param codewords the codewords (the char values range from 0 to 928)
+     * @return the decoded message
+     */
+    public static String decode(String codewords) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int len = codewords.length();
+        int mode = TEXT_COMPACTION;
+        int submode = SUBMODE_ALPHA;
+        int idx = 0;
+        while (idx < len) {
+            int cw = codewords.charAt(idx);
+            if (cw == LATCH_TO_TEXT) {
+                mode = TEXT_COMPACTION;
+                submode = SUBMODE_ALPHA;
+                idx++;
+            } else if (cw == LATCH_TO_BYTE || cw == LATCH_TO_BYTE_PADDED) {
+                mode = BYTE_COMPACTION;
+                idx = decodeBytes(codewords, idx + 1, cw == LATCH_TO_BYTE, out);
+            } else if (cw == LATCH_TO_NUMERIC) {
+                mode = NUMERIC_COMPACTION;
+                idx = decodeNumeric(codewords, idx + 1, out);
+            } else if (cw == SHIFT_TO_BYTE) {
+                if (mode != TEXT_COMPACTION) {
+                    throw new IllegalArgumentException("Shift to byte outside Text Compaction");
+                }
+                out.write(codewords.charAt(idx + 1));
+                idx += 2;
+            } else if (mode == TEXT_COMPACTION) {
+                int end = idx;
+                while (end < len && codewords.charAt(end) < 900) {
+                    end++;
+                }
+                submode = decodeText(codewords, idx, end, submode, out);
+                idx = end;
+            } else {
+                throw new IllegalArgumentException("Unexpected codeword " + cw + " at " + idx);
+            }
+        }
+        try {
+            return new String(out.toByteArray(), "cp437");
+        } catch (UnsupportedEncodingException e) {
+            throw new UnsupportedOperationException(e.getMessage());
+        }
+    }
+
+    private static int decodeText(String codewords, int start, int end, int initialSubmode,
+            ByteArrayOutputStream out) {
+        int[] values = new int[(end - start) * 2];
+        for (int i = start; i < end; i++) {
+            int cw = codewords.charAt(i);
+            values[(i - start) * 2] = cw / 30;
+            values[(i - start) * 2 + 1] = cw % 30;
+        }
+        int submode = initialSubmode;
+        for (int i = 0; i < values.length; i++) {
+            int v = values[i];
+            boolean last = (i == values.length - 1);
+            switch (submode) {
+            case SUBMODE_ALPHA:
+            case SUBMODE_LOWER:
+                if (v < 26) {
+                    out.write((submode == SUBMODE_ALPHA ? 'A' : 'a') + v);
+                } else if (v == 26) {
+                    out.write(' ');
+                } else if (v == 27) {
+                    if (submode == SUBMODE_ALPHA) {
+                        submode = SUBMODE_LOWER;
+                    } else {
+                        out.write('A' + values[++i]); //as
+                    }
+                } else if (v == 28) {
+                    submode = SUBMODE_MIXED;
+                } else if (!last) {
+                    out.write(TEXT_PUNCTUATION_RAW[values[++i]]); //ps
+                }
+                break;
+            case SUBMODE_MIXED:
+                if (v < 25 || v == 26) {
+                    out.write(TEXT_MIXED_RAW[v]);
+                } else if (v == 25) {
+                    submode = SUBMODE_PUNCTUATION;
+                } else if (v == 27) {
+                    submode = SUBMODE_LOWER;
+                } else if (v == 28) {
+                    submode = SUBMODE_ALPHA;
+                } else if (!last) {
+                    out.write(TEXT_PUNCTUATION_RAW[values[++i]]); //ps
+                }
+                break;
+            default:
+                if (v < 29) {
+                    out.write(TEXT_PUNCTUATION_RAW[v]);
+                } else {
+                    submode = SUBMODE_ALPHA;
+                }
+            }
+        }
+        return submode;
+    }
+
+    private static int decodeBytes(String codewords, int start, boolean sixpack,
+            ByteArrayOutputStream out) {
+        int end = start;
+        while (end < codewords.length() && codewords.charAt(end) < 900) {
+            end++;
+        }
+        int count = end - start;
+        //With 901, the last 1 to 5 codewords are single bytes
+        int groups = (sixpack ? count / 5 : (count - 1) / 5);
+        int idx = start;
+        for (int g = 0; g < groups; g++) {
+            long t = 0;
+            for (int i = 0; i < 5; i++) {
+                t = t * 900 + codewords.charAt(idx++);
+            }
+            for (int i = 5; i >= 0; i--) {
+                out.write((int)(t >> (i * 8)) & 0xff);
+            }
+        }
+        while (idx < end) {
+            out.write(codewords.charAt(idx++));
+        }
+        return end;
+    }
+
+    private static int decodeNumeric(String codewords, int start, ByteArrayOutputStream out) {
+        int idx = start;
+        int len = codewords.length();
+        while (idx < len && codewords.charAt(idx) < 900) {
+            int end = Math.min(idx + 15, len);
+            BigInteger value = BigInteger.ZERO;
+            int i = idx;
+            while (i < end && codewords.charAt(i) < 900) {
+                value = value.multiply(NINE_HUNDRED).add(
+                        BigInteger.valueOf(codewords.charAt(i)));
+                i++;
+            }
+            String digits = value.toString();
+            for (int d = 1; d < digits.length(); d++) {
+                out.write(digits.charAt(d)); //skip the leading "1"
+            }
+            idx = i;
+        }
+        return idx;
+    }
+
+}
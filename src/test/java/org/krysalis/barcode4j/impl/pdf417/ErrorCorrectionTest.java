@@ -18,6 +18,8 @@
 
 package org.krysalis.barcode4j.impl.pdf417;
 
+import java.util.Random;
+
 import org.krysalis.barcode4j.tools.TestHelper;
 
 import junit.framework.TestCase;
@@ -37,6 +39,63 @@ public class ErrorCorrectionTest extends TestCase {
         String expected = "452 327 657 619";
         assertEquals(expected, TestHelper.visualize(ec));
     }
+
+    /**
+     * Straightforward implementation of the algorithm in 4.10 of ISO/IEC 15438:2001(E).
+     */
+    private static int[] generateReference(int[] data, int errorCorrectionLevel) {
+        int[] coefficients = PDF417Constants.EC_COEFFICIENTS[errorCorrectionLevel];
+        int k = coefficients.length;
+        int[] e = new int[k];
+        for (int i = 0; i < data.length; i++) {
+            int t1 = (data[i] + e[k - 1]) % 929;
+            for (int j = k - 1; j >= 1; j--) {
+                e[j] = (e[j - 1] + 929 - (t1 * coefficients[j]) % 929) % 929;
+            }
+            e[0] = (929 - (t1 * coefficients[0]) % 929) % 929;
+        }
+        int[] result = new int[k];
+        for (int j = k - 1; j >= 0; j--) {
+            result[k - 1 - j] = (e[j] != 0 ? 929 - e[j] : 0);
+        }
+        return result;
+    }
+
+    public void testErrorCorrectionAllLevels() throws Exception {
+        Random random = new Random(929);
+        for (int level = 0; level <= 8; level++) {
+            int k = PDF417ErrorCorrection.getErrorCorrectionCodewordCount(level);
+            int[] lengths = new int[] {1, 2, 17, 928 - k};
+            for (int l = 0; l < lengths.length; l++) {
+                int n = lengths[l];
+                int[] data = new int[n];
+                for (int i = 0; i < n; i++) {
+                    //Include runs of zeros
+                    data[i] = (random.nextInt(8) == 0 ? 0 : random.nextInt(929));
+                }
+                int[] expected = generateReference(data, level);
+
+                //In place behind the data codewords
+                int[] codewords = new int[n + k];
+                System.arraycopy(data, 0, codewords, 0, n);
+                PDF417ErrorCorrection.generateErrorCorrection(codewords, n, level);
+                for (int j = 0; j < k; j++) {
+                    assertEquals("level " + level + ", n=" + n, expected[j], codewords[n + j]);
+                }
+
+                //Into a separate buffer with offsets; the buffer is reused and not cleared
+                int[] padded = new int[n + 3];
+                System.arraycopy(data, 0, padded, 3, n);
+                int[] ec = new int[k + 5];
+                java.util.Arrays.fill(ec, 777);
+                PDF417ErrorCorrection.generateErrorCorrection(padded, 3, n, level, ec, 5);
+                for (int j = 0; j < k; j++) {
+                    assertEquals(expected[j], ec[5 + j]);
+                }
+                assertEquals(777, ec[4]);
+            }
+        }
+    }
     
     
 }
@@ -18,6 +18,8 @@
 
 package org.krysalis.barcode4j.impl.pdf417;
 
+import java.util.Random;
+
 import junit.framework.TestCase;
 
 import org.krysalis.barcode4j.tools.TestHelper;
@@ -127,6 +129,44 @@ public class HighLevelEncoderTest extends TestCase implements PDF417Constants {
         PDF417HighLevelEncoder.encodeNumeric(msg, 0, msg.length(), sb);
         String expected = "\u0001\u0270\u01b2\u0278\u011a\u00c8";
         assertEquals(expected, sb.toString());
+
+        //Compare with a straight-forward BigInteger implementation
+        java.util.Random rnd = new java.util.Random(1);
+        for (int len = 1; len <= 200; len++) {
+            StringBuffer digits = new StringBuffer("ABC");
+            for (int i = 0; i < len; i++) {
+                digits.append((char)('0' + (i % 7 == 0 ? 9 : rnd.nextInt(10))));
+            }
+            msg = digits.append("XYZ").toString();
+            sb.setLength(0);
+            PDF417HighLevelEncoder.encodeNumeric(msg, 3, len, sb);
+            assertEquals("Length " + len, encodeNumericBigInteger(msg, 3, len), sb.toString());
+        }
+        //The largest group value: "1" followed by 44 nines
+        msg = "99999999999999999999999999999999999999999999";
+        sb.setLength(0);
+        PDF417HighLevelEncoder.encodeNumeric(msg, 0, msg.length(), sb);
+        assertEquals(15, sb.length());
+        assertEquals(encodeNumericBigInteger(msg, 0, msg.length()), sb.toString());
+    }
+
+    private static String encodeNumericBigInteger(String msg, int startpos, int count) {
+        StringBuffer sb = new StringBuffer();
+        final java.math.BigInteger num900 = java.math.BigInteger.valueOf(900);
+        int idx = 0;
+        while (idx < count) {
+            int len = Math.min(44, count - idx);
+            java.math.BigInteger bigint = new java.math.BigInteger(
+                    "1" + msg.substring(startpos + idx, startpos + idx + len));
+            StringBuffer tmp = new StringBuffer();
+            do {
+                tmp.insert(0, (char)bigint.mod(num900).intValue());
+                bigint = bigint.divide(num900);
+            } while (bigint.signum() != 0);
+            sb.append(tmp);
+            idx += len;
+        }
+        return sb.toString();
     }
 
     private void log(String expected, String actual) {
@@ -249,4 +289,63 @@ public class HighLevelEncoderTest extends TestCase implements PDF417Constants {
         //Problem here was: shift to byte (913) does not reset text sub-mode!
         assertEquals(expected, result);
     }
+
+    private static void assertMinimal(String msg) {
+        String annexP = PDF417HighLevelEncoder.encodeHighLevel(msg, false);
+        String minimal = PDF417HighLevelEncoder.encodeHighLevel(msg, true);
+        assertEquals(msg, DecodeHighLevel.decode(annexP));
+        assertEquals(TestHelper.visualize(minimal), msg, DecodeHighLevel.decode(minimal));
+        assertTrue("Minimal encoding longer than annex P: " + TestHelper.visualize(minimal),
+                minimal.length() <= annexP.length());
+    }
+
+    public void testMinimalEncoding() throws Exception {
+        //Numeric Compaction pays off for less than 13 digits at the end of the message
+        String msg = "ABCDEF123456789012";
+        String result = TestHelper.visualize(PDF417HighLevelEncoder.encodeHighLevel(msg, true));
+        String expected = "1 63 125 841 902 169 315 710 12";
+        assertEquals(expected, result);
+        assertTrue(PDF417HighLevelEncoder.encodeHighLevel(msg, false).length()
+                > PDF417HighLevelEncoder.encodeHighLevel(msg, true).length());
+
+        String[] messages = new String[] {
+            "", "A", "a", "1", "\u00E4", "PDF417", "A10200124040182000",
+            "A1234567890123456789012 1365465465464", "TestTest\u00E4\u00F6\u00FC\u00E4\u00F6\u00FC",
+            "<FIELDS><FIELD NAME=\"DEALER #\">550", "UNT+11+123'",
+            "5789\u001dB0KLT3215\u001e\u0004", "45789\u001dB0KLT3215\u001e\u0004",
+            "aBcDeFgHiJ", "a.b.c.d.e.f", "http://www.example.com/a?b=c&d=e",
+            "12345678901234567890123456789012345678901234567890123456789012345678901234567890"};
+        for (int i = 0; i < messages.length; i++) {
+            assertMinimal(messages[i]);
+        }
+
+        //Compare with the annex P algorithm on random messages
+        String alphabet = "ABCDEFabcdef0123456789 .,:;#&\r\n\t!?'\"()<>\u00E4\u00F6\u001d\u0004";
+        Random random = new Random(417);
+        for (int i = 0; i < 2000; i++) {
+            int len = random.nextInt(60);
+            StringBuffer sb = new StringBuffer(len);
+            for (int j = 0; j < len; j++) {
+                if (random.nextInt(4) == 0) {
+                    //Runs of digits
+                    int digits = random.nextInt(20);
+                    for (int k = 0; k < digits; k++) {
+                        sb.append((char)('0' + random.nextInt(10)));
+                    }
+                } else {
+                    sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            assertMinimal(sb.toString());
+        }
+    }
+
+    public void testMinimalEncodingNonEncodable() throws Exception {
+        try {
+            PDF417HighLevelEncoder.encodeHighLevel("ABC\u20AC", true);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException iae) {
+            //expected
+        }
+    }
 }
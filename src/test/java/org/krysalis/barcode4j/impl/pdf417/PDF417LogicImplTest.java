@@ -0,0 +1,181 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.impl.pdf417;
+
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.krysalis.barcode4j.BarGroup;
+import org.krysalis.barcode4j.RowRunLogicHandler;
+import org.krysalis.barcode4j.TwoDimBarcodeLogicHandler;
+
+/**
+ * Tests the low-level encoding of PDF417 symbols.
+ */
+public class PDF417LogicImplTest extends TestCase implements PDF417Constants {
+
+    private static final String MSG = "Precomputed PDF417 row patterns 0123456789012345";
+
+    private static String toModules(int pattern, int len) {
+        StringBuffer sb = new StringBuffer(len);
+        for (int map = 1 << len - 1; map != 0; map >>= 1) {
+            sb.append((pattern & map) != 0 ? '1' : '0');
+        }
+        return sb.toString();
+    }
+
+    private static String toModules(byte[] runs) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < runs.length; i++) {
+            for (int j = 0; j < runs[i]; j++) {
+                sb.append((i & 1) == 0 ? '1' : '0');
+            }
+        }
+        return sb.toString();
+    }
+
+    public void testCodewordRuns() throws Exception {
+        assertEquals(toModules(START_PATTERN, 17),
+                toModules(PDF417LogicImpl.toRuns(START_PATTERN, 17)));
+        assertEquals(toModules(STOP_PATTERN, 18),
+                toModules(PDF417LogicImpl.toRuns(STOP_PATTERN, 18)));
+        for (int cluster = 0; cluster < 3; cluster++) {
+            for (int cw = 0; cw < 929; cw++) {
+                int pattern = CODEWORD_TABLE[cluster][cw];
+                byte[] runs = PDF417LogicImpl.toRuns(pattern, 17);
+                //4 bars and 4 spaces, starting with a bar
+                assertEquals(8, runs.length);
+                assertEquals(toModules(pattern, 17), toModules(runs));
+            }
+        }
+    }
+
+    private PDF417EncodedSymbol createSymbol(PDF417Bean bean) {
+        return PDF417LogicImpl.encodeMessage(MSG, bean);
+    }
+
+    public void testRowEmission() throws Exception {
+        PDF417Bean bean = new PDF417Bean();
+        bean.setColumns(4);
+        bean.setErrorCorrectionLevel(2);
+        PDF417EncodedSymbol symbol = createSymbol(bean);
+
+        //Events
+        final StringBuffer events = new StringBuffer();
+        final int[] groups = new int[1];
+        TwoDimBarcodeLogicHandler handler = new TwoDimBarcodeLogicHandler() {
+            private boolean lastBlack;
+            public void startBarcode(String msg, String formattedMsg) {
+            }
+            public void startRow() {
+                lastBlack = false;
+            }
+            public void startBarGroup(BarGroup type, String submsg) {
+                groups[0]++;
+            }
+            public void addBar(boolean black, int width) {
+                assertTrue(black != lastBlack);
+                lastBlack = black;
+                for (int i = 0; i < width; i++) {
+                    events.append(black ? '1' : '0');
+                }
+            }
+            public void endBarGroup() {
+            }
+            public void endRow() {
+                events.append('\n');
+            }
+            public void endBarcode() {
+            }
+        };
+        PDF417LogicImpl.generateBarcodeLogic(handler, symbol, bean.getErrorCorrectionLevel());
+        assertEquals(symbol.getRows() * (symbol.getColumns() + 4), groups[0]);
+
+        //Bulk rows
+        final StringBuffer rows = new StringBuffer();
+        final int[] rowCount = new int[1];
+        RowRunLogicHandler rowHandler = new RowRunLogicHandler() {
+            public void startBarcode(String msg, String formattedMsg) {
+            }
+            public void addRowRuns(int[] runs, int count) {
+                for (int i = 0; i < count; i++) {
+                    for (int j = 0; j < runs[i]; j++) {
+                        rows.append((i & 1) == 0 ? '1' : '0');
+                    }
+                }
+                rows.append('\n');
+                rowCount[0]++;
+            }
+            public void startRow() {
+                fail("No row events expected");
+            }
+            public void startBarGroup(BarGroup type, String submsg) {
+                fail("No bar groups expected");
+            }
+            public void addBar(boolean black, int width) {
+                fail("No bars expected");
+            }
+            public void endBarGroup() {
+            }
+            public void endRow() {
+                fail("No row events expected");
+            }
+            public void endBarcode() {
+            }
+        };
+        PDF417LogicImpl.generateBarcodeLogic(rowHandler, symbol, bean.getErrorCorrectionLevel());
+        assertEquals(symbol.getRows(), rowCount[0]);
+        assertEquals(events.toString(), rows.toString());
+
+        //Decode the data codewords from the modules
+        Map[] inverse = new Map[3];
+        for (int cluster = 0; cluster < 3; cluster++) {
+            inverse[cluster] = new java.util.HashMap();
+            for (int cw = 0; cw < 929; cw++) {
+                inverse[cluster].put(toModules(CODEWORD_TABLE[cluster][cw], 17),
+                        new Integer(cw));
+            }
+        }
+        String[] lines = rows.toString().split("\n");
+        int cols = symbol.getColumns();
+        StringBuffer codewords = new StringBuffer();
+        for (int y = 0; y < lines.length; y++) {
+            String line = lines[y];
+            assertEquals(17 * (cols + 3) + 18, line.length());
+            assertTrue(line.startsWith(toModules(START_PATTERN, 17)));
+            assertTrue(line.endsWith(toModules(STOP_PATTERN, 18)));
+            for (int x = 0; x < cols; x++) {
+                String modules = line.substring(17 * (x + 2), 17 * (x + 3));
+                Integer cw = (Integer)inverse[y % 3].get(modules);
+                assertNotNull(cw);
+                codewords.append((char)cw.intValue());
+            }
+        }
+        String highLevel = symbol.getHighLevelCodewords();
+        assertEquals(highLevel, codewords.substring(1, 1 + highLevel.length()));
+        //The symbol length descriptor is followed by the source and the pad codewords
+        int end = codewords.charAt(0);
+        while (codewords.charAt(end - 1) == 900) {
+            end--;
+        }
+        assertEquals(MSG, DecodeHighLevel.decode(codewords.substring(1, end)));
+    }
+
+}
@@ -18,6 +18,8 @@
 
 package org.krysalis.barcode4j.impl.pdf417;
 
+import java.awt.Dimension;
+
 import junit.framework.TestCase;
 
 public class PDF417UtilitiesTest extends TestCase {
@@ -49,5 +51,80 @@ public class PDF417UtilitiesTest extends TestCase {
         int sld = PDF417LogicImpl.getNumberOfDataCodewords(m, ecl, c);
         assertEquals(256, sld);
     }
-    
+
+    /**
+     * The former dimension search trying every column count.
+     */
+    private static Dimension determineDimensionsBySearch(int m, int errorCorrectionLevel,
+            int minCols, int maxCols, int minRows, int maxRows,
+            double preferredRatio, double moduleWidth, double rowHeight) {
+        int k = PDF417ErrorCorrection.getErrorCorrectionCodewordCount(errorCorrectionLevel);
+        double ratio = 0;
+        Dimension dimension = null;
+        for (int cols = minCols; cols <= maxCols; cols++) {
+            int rows = PDF417LogicImpl.calculateNumberOfRows(m, k, cols);
+            if (rows < minRows) {
+                break;
+            }
+            if (rows > maxRows) {
+                continue;
+            }
+            double newRatio = ((17 * cols + 69) * moduleWidth) / (rows * rowHeight);
+            if (dimension != null
+                    && Math.abs(newRatio - preferredRatio) > Math.abs(ratio - preferredRatio)) {
+                continue;
+            }
+            ratio = newRatio;
+            dimension = new Dimension(cols, rows);
+        }
+        return dimension;
+    }
+
+    public void testDetermineDimensions() throws Exception {
+        double[] ratios = new double[] {0.1, 1, 2, 3, 5, 10, 100};
+        int[][] constraints = new int[][] {
+            {1, 30, 3, 90}, {2, 2, 3, 90}, {5, 10, 3, 90}, {1, 30, 10, 20}, {12, 15, 30, 40}};
+        double moduleWidth = 0.353;
+        for (int ecl = 0; ecl <= 8; ecl += 2) {
+            for (int m = 1; m < 929; m++) {
+                for (int r = 0; r < ratios.length; r++) {
+                    for (int c = 0; c < constraints.length; c++) {
+                        int[] cons = constraints[c];
+                        for (int f = 2; f <= 4; f++) {
+                            double rowHeight = f * moduleWidth;
+                            Dimension expected = determineDimensionsBySearch(m, ecl,
+                                    cons[0], cons[1], cons[2], cons[3],
+                                    ratios[r], moduleWidth, rowHeight);
+                            Dimension actual = PDF417LogicImpl.determineDimensions(m, ecl,
+                                    cons[0], cons[1], cons[2], cons[3],
+                                    ratios[r], moduleWidth, rowHeight);
+                            assertEquals("m=" + m + ", ecl=" + ecl + ", ratio=" + ratios[r]
+                                    + ", constraints " + c, expected, actual);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    public void testDimensionCache() throws Exception {
+        PDF417Bean bean = new PDF417Bean();
+        bean.setMinCols(1);
+        bean.setMaxCols(30);
+        Dimension dim = bean.determineDimensions(100);
+        assertEquals(PDF417LogicImpl.determineDimensions(bean, 100), dim);
+        //Changing a setting must not return stale dimensions
+        bean.setWidthToHeightRatio(1);
+        assertEquals(PDF417LogicImpl.determineDimensions(bean, 100),
+                bean.determineDimensions(100));
+        assertFalse(dim.equals(bean.determineDimensions(100)));
+        bean.setColumns(3);
+        assertEquals(3, bean.determineDimensions(100).width);
+        bean.setMaxRows(10);
+        assertNull(bean.determineDimensions(100));
+        //Callers may modify the returned object
+        bean.determineDimensions(10).width = 99;
+        assertEquals(3, bean.determineDimensions(10).width);
+    }
+
 }
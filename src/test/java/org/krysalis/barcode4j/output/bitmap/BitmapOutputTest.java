@@ -17,6 +17,7 @@ package org.krysalis.barcode4j.output.bitmap;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -24,6 +25,10 @@ import org.krysalis.barcode4j.BarcodeDimension;
 import org.krysalis.barcode4j.BarcodeException;
 import org.krysalis.barcode4j.BarcodeGenerator;
 import org.krysalis.barcode4j.BarcodeUtil;
+import org.krysalis.barcode4j.BitMatrix;
+import org.krysalis.barcode4j.HumanReadablePlacement;
+import org.krysalis.barcode4j.impl.code128.Code128Bean;
+import org.krysalis.barcode4j.impl.datamatrix.DataMatrixBean;
 
 import org.apache.avalon.framework.configuration.ConfigurationException;
 import org.apache.avalon.framework.configuration.DefaultConfiguration;
@@ -89,4 +94,196 @@ public class BitmapOutputTest extends TestCase {
         assertEquals("Height in pixels should be 140", 140, image.getHeight());
     }
 
-}
\ No newline at end of file
+    private byte[] generatePNG(BarcodeGenerator gen, BitmapCanvasProvider provider,
+                String msg) throws Exception {
+        ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        provider.reset(baout);
+        gen.generateBarcode(provider, msg);
+        provider.finish();
+        return baout.toByteArray();
+    }
+
+    private void checkReset(int imageType) throws Exception {
+        BarcodeGenerator gen = getGenerator();
+        BitmapCanvasProvider provider = new BitmapCanvasProvider(
+                null, "image/png", 200, imageType, false, 0);
+        BitmapCanvasProvider fresh = new BitmapCanvasProvider(
+                null, "image/png", 200, imageType, false, 0);
+
+        generatePNG(gen, provider, "12345678");
+        BufferedImage image = provider.getBufferedImage();
+        //Same size: the image is reused
+        generatePNG(gen, provider, "87654321");
+        assertSame(image, provider.getBufferedImage());
+        //Smaller: painted on a part of the previous image
+        byte[] small = generatePNG(gen, provider, "123");
+        assertEquals(107, provider.getBufferedImage().getWidth());
+        assertTrue(java.util.Arrays.equals(generatePNG(gen, fresh, "123"), small));
+        //Larger: a new image is needed
+        byte[] large = generatePNG(gen, provider, "1234567890");
+        assertTrue(java.util.Arrays.equals(generatePNG(gen, fresh, "1234567890"), large));
+    }
+
+    public void testReset() throws Exception {
+        checkReset(BufferedImage.TYPE_BYTE_GRAY);
+        checkReset(BufferedImage.TYPE_BYTE_BINARY);
+    }
+
+    private BufferedImage paintBinary(BarcodeGenerator gen, String msg, int orientation) {
+        BitmapCanvasProvider provider = new BitmapCanvasProvider(
+                254, BufferedImage.TYPE_BYTE_BINARY, false, orientation);
+        gen.generateBarcode(provider, msg);
+        return provider.getBufferedImage();
+    }
+
+    private boolean isBlack(BufferedImage image, int x, int y) {
+        return (image.getRGB(x, y) & 0xFFFFFF) == 0;
+    }
+
+    public void testBinaryBitmap() throws Exception {
+        Code128Bean bean = new Code128Bean();
+        bean.setModuleWidth(0.2); //2 pixels at 254 dpi
+        bean.setQuietZone(2.0);
+        bean.setMsgPosition(HumanReadablePlacement.HRP_NONE);
+
+        BufferedImage image = paintBinary(bean, "Hello World", 0);
+        //Quiet zone (10 modules) must be white, then the start character begins
+        for (int x = 0; x < 20; x++) {
+            assertFalse(isBlack(image, x, 0));
+        }
+        assertTrue(isBlack(image, 20, 0));
+
+        //Every bar is snapped to whole modules and all rows are identical
+        int y = image.getHeight() / 2;
+        int run = 0;
+        boolean last = false;
+        for (int x = 0; x < image.getWidth(); x++) {
+            boolean black = isBlack(image, x, y);
+            assertEquals(isBlack(image, x, 0), black);
+            assertEquals(isBlack(image, x, image.getHeight() - 1), black);
+            if (black != last) {
+                assertEquals(0, run % 2);
+                run = 0;
+                last = black;
+            }
+            run++;
+        }
+
+        //Rotated output must contain the same pixels
+        int w = image.getWidth();
+        int h = image.getHeight();
+        BufferedImage image90 = paintBinary(bean, "Hello World", 90);
+        BufferedImage image180 = paintBinary(bean, "Hello World", 180);
+        BufferedImage image270 = paintBinary(bean, "Hello World", 270);
+        assertEquals(h, image90.getWidth());
+        assertEquals(w, image90.getHeight());
+        for (int x = 0; x < w; x++) {
+            for (int yy = 0; yy < h; yy += 7) {
+                boolean black = isBlack(image, x, yy);
+                assertEquals(black, isBlack(image90, yy, w - 1 - x));
+                assertEquals(black, isBlack(image180, w - 1 - x, h - 1 - yy));
+                assertEquals(black, isBlack(image270, h - 1 - yy, x));
+            }
+        }
+    }
+
+    public void testBinaryBitmapText() throws Exception {
+        Code128Bean bean = new Code128Bean();
+        bean.setModuleWidth(0.2);
+        bean.setMsgPosition(HumanReadablePlacement.HRP_BOTTOM);
+        BufferedImage image = paintBinary(bean, "Hello World", 0);
+        //The bars are painted into the raster, the text through Java2D below them
+        boolean text = false;
+        for (int y = image.getHeight() - 1; y > 0 && !text; y--) {
+            boolean black = false;
+            boolean barRow = true;
+            for (int x = 0; x < image.getWidth(); x++) {
+                black |= isBlack(image, x, y);
+                barRow &= (isBlack(image, x, y) == isBlack(image, x, 0));
+            }
+            text = black && !barRow;
+        }
+        assertTrue("The human-readable message is missing", text);
+    }
+
+    public void testBinaryBitmap2D() throws Exception {
+        DataMatrixBean bean = new DataMatrixBean();
+        bean.setModuleWidth(0.3); //3 pixels at 254 dpi
+        bean.setQuietZone(0.3);
+        BufferedImage image = paintBinary(bean, "Hello World", 0);
+        //16x16 symbol plus quiet zone (1 module on each side)
+        assertEquals(18 * 3, image.getWidth());
+        assertEquals(18 * 3, image.getHeight());
+        for (int x = 3; x < 51; x += 3) {
+            //Finder pattern: solid left and bottom edge
+            assertTrue(isBlack(image, 3, x));
+            assertTrue(isBlack(image, 5, x + 2));
+            assertTrue(isBlack(image, x, 50));
+            //Quiet zone
+            assertFalse(isBlack(image, x, 0));
+            assertFalse(isBlack(image, 2, x));
+        }
+        //Alternating pattern on the top edge
+        assertTrue(isBlack(image, 3, 3));
+        assertFalse(isBlack(image, 6, 3));
+        assertTrue(isBlack(image, 9, 3));
+    }
+
+    public void testMatrixPainting() throws Exception {
+        BitMatrix matrix = new BitMatrix(23, 17);
+        Random random = new Random(42);
+        for (int y = 0; y < matrix.getHeight(); y++) {
+            for (int x = 0; x < matrix.getWidth(); x++) {
+                matrix.set(x, y, random.nextBoolean());
+            }
+        }
+        int[] runs = new int[] {3, 1, 2, 5, 1};
+        int[] types = new int[] {BufferedImage.TYPE_BYTE_BINARY, BufferedImage.TYPE_BYTE_GRAY};
+        int[] resolutions = new int[] {173, 300};
+        for (int t = 0; t < types.length; t++) {
+            for (int r = 0; r < resolutions.length; r++) {
+                for (int orientation = 0; orientation < 360; orientation += 90) {
+                    //Whole matrices and rows must give exactly the same pixels as single bars
+                    BitmapCanvasProvider bulk = new BitmapCanvasProvider(
+                            resolutions[r], types[t], false, orientation);
+                    bulk.establishDimensions(new BarcodeDimension(12, 9));
+                    bulk.deviceFillMatrix(matrix, 0.5, 0.3, 0.37, 0.41);
+                    bulk.deviceFillRowRuns(runs, runs.length, 0.5, 7.5, 0.37, 0.41);
+
+                    BitmapCanvasProvider single = new BitmapCanvasProvider(
+                            resolutions[r], types[t], false, orientation);
+                    single.establishDimensions(new BarcodeDimension(12, 9));
+                    double rowY = 0.3;
+                    for (int y = 0; y < matrix.getHeight(); y++) {
+                        for (int x = 0; x < matrix.getWidth(); x++) {
+                            int run = matrix.getRunLength(x, y);
+                            if (matrix.get(x, y)) {
+                                single.deviceFillRect(0.5 + x * 0.37, rowY, run * 0.37, 0.41);
+                            }
+                            x += run - 1;
+                        }
+                        rowY += 0.41;
+                    }
+                    double barX = 0.5;
+                    for (int i = 0; i < runs.length; i++) {
+                        if (i % 2 == 0) {
+                            single.deviceFillRect(barX, 7.5, runs[i] * 0.37, 0.41);
+                        }
+                        barX += runs[i] * 0.37;
+                    }
+
+                    BufferedImage expected = single.getBufferedImage();
+                    BufferedImage image = bulk.getBufferedImage();
+                    assertEquals(expected.getWidth(), image.getWidth());
+                    assertEquals(expected.getHeight(), image.getHeight());
+                    for (int y = 0; y < image.getHeight(); y++) {
+                        for (int x = 0; x < image.getWidth(); x++) {
+                            assertEquals(expected.getRGB(x, y), image.getRGB(x, y));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -52,4 +52,35 @@ public class EPSOutputTest extends TestCase {
         assertTrue(baout.size() > 0);
     }
 
+    private void generate(BarcodeGenerator gen, EPSCanvasProvider provider, String msg)
+                throws Exception {
+        gen.generateBarcode(provider, msg);
+        provider.finish();
+    }
+
+    private String stripCreationDate(ByteArrayOutputStream baout) throws Exception {
+        String eps = baout.toString("US-ASCII");
+        int start = eps.indexOf("%%CreationDate:");
+        return eps.substring(0, start) + eps.substring(eps.indexOf('\n', start));
+    }
+
+    public void testReset() throws Exception {
+        DefaultConfiguration cfg = new DefaultConfiguration("cfg");
+        cfg.addChild(new DefaultConfiguration("code128"));
+        BarcodeGenerator gen = BarcodeUtil.getInstance().createBarcodeGenerator(cfg);
+
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        EPSCanvasProvider provider = new EPSCanvasProvider(first, 90);
+        generate(gen, provider, "123");
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        provider.reset(second);
+        generate(gen, provider, "ABCDEF");
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        generate(gen, new EPSCanvasProvider(expected, 90), "ABCDEF");
+        assertEquals(stripCreationDate(expected), stripCreationDate(second));
+        assertTrue(first.toString("US-ASCII").endsWith("%%EOF\n"));
+    }
+
 }
\ No newline at end of file
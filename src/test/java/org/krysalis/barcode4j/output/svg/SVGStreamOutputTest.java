@@ -0,0 +1,192 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.output.svg;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.krysalis.barcode4j.BarcodeDimension;
+import org.krysalis.barcode4j.BitMatrix;
+import org.krysalis.barcode4j.impl.code128.Code128Bean;
+import org.krysalis.barcode4j.impl.datamatrix.DataMatrixBean;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+/**
+ * Tests the streaming SVG output.
+ */
+public class SVGStreamOutputTest extends TestCase {
+
+    private Document parse(byte[] data) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        return dbf.newDocumentBuilder().parse(new ByteArrayInputStream(data));
+    }
+
+    public void testStreamSVG() throws Exception {
+        Code128Bean bean = new Code128Bean();
+        String msg = "A&B<C>";
+
+        ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        SVGStreamCanvasProvider svg = new SVGStreamCanvasProvider(baout, 0);
+        bean.generateBarcode(svg, msg);
+        svg.finish();
+
+        SVGCanvasProvider dom = new SVGCanvasProvider(false, 0);
+        bean.generateBarcode(dom, msg);
+        Element domRoot = dom.getDOM().getDocumentElement();
+
+        Document doc = parse(baout.toByteArray());
+        Element root = doc.getDocumentElement();
+        assertEquals("svg", root.getLocalName());
+        assertEquals(AbstractSVGGeneratingCanvasProvider.SVG_NAMESPACE, root.getNamespaceURI());
+        assertEquals(domRoot.getAttribute("width"), root.getAttribute("width"));
+        assertEquals(domRoot.getAttribute("height"), root.getAttribute("height"));
+        assertEquals(domRoot.getAttribute("viewBox"), root.getAttribute("viewBox"));
+
+        NodeList paths = doc.getElementsByTagNameNS(
+                AbstractSVGGeneratingCanvasProvider.SVG_NAMESPACE, "path");
+        assertEquals(1, paths.getLength());
+        //One sub-path per bar as Code 128 bars are never adjacent
+        String d = ((Element)paths.item(0)).getAttribute("d");
+        NodeList rects = domRoot.getElementsByTagName("rect");
+        assertEquals(rects.getLength(), countChar(d, 'M'));
+
+        NodeList texts = doc.getElementsByTagNameNS(
+                AbstractSVGGeneratingCanvasProvider.SVG_NAMESPACE, "text");
+        assertEquals(1, texts.getLength());
+        assertEquals(msg, texts.item(0).getFirstChild().getNodeValue());
+    }
+
+    public void testMergedModules() throws Exception {
+        DataMatrixBean bean = new DataMatrixBean();
+        StringWriter writer = new StringWriter();
+        SVGStreamCanvasProvider svg = new SVGStreamCanvasProvider(writer, "svg", 90);
+        bean.generateBarcode(svg, "Hello World");
+        svg.finish();
+
+        String s = writer.toString();
+        assertTrue(s.startsWith("<svg:svg xmlns:svg=\""));
+        Document doc = parse(s.getBytes("UTF-8"));
+        NodeList paths = doc.getElementsByTagNameNS(
+                AbstractSVGGeneratingCanvasProvider.SVG_NAMESPACE, "path");
+        assertEquals(1, paths.getLength());
+        String d = ((Element)paths.item(0)).getAttribute("d");
+
+        SVGCanvasProvider dom = new SVGCanvasProvider(false, 90);
+        bean.generateBarcode(dom, "Hello World");
+        int rectCount = dom.getDOM().getElementsByTagName("rect").getLength();
+        int subPaths = countChar(d, 'M');
+        assertTrue(subPaths > 0);
+        //DataMatrix already paints runs of modules as single rectangles
+        assertTrue(subPaths <= rectCount);
+
+        //Adjacent rectangles of the same height are merged into one sub-path
+        writer = new StringWriter();
+        svg = new SVGStreamCanvasProvider(writer, "svg", 0);
+        svg.establishDimensions(new BarcodeDimension(10, 2));
+        svg.deviceFillRect(0, 0, 1, 1);
+        svg.deviceFillRect(1, 0, 2, 1);
+        svg.deviceFillRect(4, 0, 1, 1);
+        svg.deviceFillRect(0, 1, 1, 1);
+        svg.finish();
+        doc = parse(writer.toString().getBytes("UTF-8"));
+        paths = doc.getElementsByTagNameNS(
+                AbstractSVGGeneratingCanvasProvider.SVG_NAMESPACE, "path");
+        assertEquals(3, countChar(((Element)paths.item(0)).getAttribute("d"), 'M'));
+    }
+
+    public void testMatrixPainting() throws Exception {
+        BitMatrix matrix = new BitMatrix(5, 2);
+        matrix.set(0, 0, true);
+        matrix.set(1, 0, true);
+        matrix.set(3, 0, true);
+        matrix.set(4, 1, true);
+        int[] runs = new int[] {1, 2, 3};
+
+        //Whole matrices and rows must give the same output as single bars
+        StringWriter writer = new StringWriter();
+        SVGStreamCanvasProvider svg = new SVGStreamCanvasProvider(writer, 0);
+        svg.establishDimensions(new BarcodeDimension(10, 4));
+        svg.deviceFillMatrix(matrix, 1, 0.5, 0.5, 1);
+        svg.deviceFillRowRuns(runs, runs.length, 1, 2.5, 0.5, 1);
+        svg.finish();
+
+        StringWriter expected = new StringWriter();
+        svg = new SVGStreamCanvasProvider(expected, 0);
+        svg.establishDimensions(new BarcodeDimension(10, 4));
+        svg.deviceFillRect(1, 0.5, 1, 1);
+        svg.deviceFillRect(2.5, 0.5, 0.5, 1);
+        svg.deviceFillRect(3, 1.5, 0.5, 1);
+        svg.deviceFillRect(1, 2.5, 0.5, 1);
+        svg.deviceFillRect(2.5, 2.5, 1.5, 1);
+        svg.finish();
+        assertEquals(expected.toString(), writer.toString());
+        assertTrue(writer.toString().indexOf("M1 0.5h1v1h-1z") > 0);
+    }
+
+    public void testReset() throws Exception {
+        Code128Bean bean = new Code128Bean();
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        SVGStreamCanvasProvider svg = new SVGStreamCanvasProvider(first, 0);
+        bean.generateBarcode(svg, "12345");
+        svg.finish();
+
+        //Abort a barcode half-way, its output must not show up in the next one
+        ByteArrayOutputStream aborted = new ByteArrayOutputStream();
+        svg.reset(aborted);
+        svg.establishDimensions(bean.calcDimensions("999"));
+        svg.deviceFillRect(0, 0, 1, 1);
+
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        svg.reset(second);
+        bean.generateBarcode(svg, "ABCDEFGHIJ");
+        svg.finish();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        SVGStreamCanvasProvider fresh = new SVGStreamCanvasProvider(expected, 0);
+        bean.generateBarcode(fresh, "ABCDEFGHIJ");
+        fresh.finish();
+        assertEquals(expected.toString("UTF-8"), second.toString("UTF-8"));
+
+        StringWriter writer = new StringWriter();
+        svg.reset(writer);
+        bean.generateBarcode(svg, "12345");
+        svg.finish();
+        assertTrue(writer.toString().startsWith("<svg "));
+        assertTrue(first.toString("UTF-8").endsWith(writer.toString()));
+    }
+
+    private static int countChar(String s, char c) {
+        int count = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == c) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.krysalis.barcode4j.tools;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import junit.framework.TestCase;
+
+/**
+ * Test case for the default URL resolver.
+ */
+public class DefaultURLResolverTest extends TestCase {
+
+    private File file;
+
+    /** {@inheritDoc} */
+    protected void setUp() throws Exception {
+        file = File.createTempFile("urlresolver", ".bin");
+        file.deleteOnExit();
+    }
+
+    /** {@inheritDoc} */
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private void write(String content) throws IOException {
+        write(file, content);
+    }
+
+    private static void write(File file, String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("US-ASCII"));
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String getString(URLResolver resolver, String url) throws IOException {
+        return new String(resolver.getData(url, "US-ASCII"), "US-ASCII");
+    }
+
+    /**
+     * Tests that file content is cached and reloaded when the file changes.
+     * @throws Exception if an error occurs
+     */
+    public void testFileCache() throws Exception {
+        DefaultURLResolver resolver = new DefaultURLResolver();
+        String url = file.toURI().toURL().toExternalForm();
+        write("Hello");
+        assertTrue(file.setLastModified(1000000000L));
+        assertEquals("Hello", getString(resolver, url));
+
+        //Same length and modification time: the cached content is used
+        write("World");
+        assertTrue(file.setLastModified(1000000000L));
+        assertEquals("Hello", getString(resolver, url));
+
+        //Changed file
+        assertTrue(file.setLastModified(2000000000L));
+        assertEquals("World", getString(resolver, url));
+
+        //No caching
+        resolver = new DefaultURLResolver(1000, 0, 60000, false);
+        assertEquals("World", getString(resolver, url));
+        write("Again");
+        assertTrue(file.setLastModified(2000000000L));
+        assertEquals("Again", getString(resolver, url));
+
+        //Expired entries
+        resolver = new DefaultURLResolver(1000, 10, 0, false);
+        assertEquals("Again", getString(resolver, url));
+        write("Fresh");
+        assertTrue(file.setLastModified(2000000000L));
+        assertEquals("Fresh", getString(resolver, url));
+    }
+
+    /**
+     * Tests the content length limit.
+     * @throws Exception if an error occurs
+     */
+    public void testMaxContentLength() throws Exception {
+        DefaultURLResolver resolver = new DefaultURLResolver(5, 10, 60000, false);
+        String url = file.toURI().toURL().toExternalForm();
+        write("12345");
+        assertEquals("12345", getString(resolver, url));
+        write("123456");
+        try {
+            resolver.getData(url, "US-ASCII");
+            fail("Content exceeding the limit must be rejected");
+        } catch (IOException ioe) {
+            //expected
+        }
+        assertEquals("~Test", getString(resolver, "data:;base64,flRlc3Q="));
+        try {
+            resolver.getData("data:;base64,flRlc3R+", "US-ASCII");
+            fail("Content exceeding the limit must be rejected");
+        } catch (IOException ioe) {
+            //expected
+        }
+    }
+
+    /**
+     * Tests the offline mode and class path URLs.
+     * @throws Exception if an error occurs
+     */
+    public void testOffline() throws Exception {
+        DefaultURLResolver resolver = new DefaultURLResolver(
+                DefaultURLResolver.DEFAULT_MAX_CONTENT_LENGTH, 10, 60000, true);
+        write("Local");
+        assertEquals("Local", getString(resolver, file.toURI().toURL().toExternalForm()));
+        assertEquals("~Test~", getString(resolver, "data:;base64,flRlc3R+"));
+        byte[] data = resolver.getData(
+                "classpath:org/krysalis/barcode4j/tools/URLResolver.class", null);
+        assertEquals(0xCA, data[0] & 0xFF);
+        assertEquals(0xFE, data[1] & 0xFF);
+        try {
+            resolver.getData("http://localhost/payload.bin", "US-ASCII");
+            fail("Remote URLs must be rejected in offline mode");
+        } catch (IOException ioe) {
+            //expected
+        }
+        try {
+            resolver.getData("classpath:does/not/exist.bin", "US-ASCII");
+            fail("Missing class path resources must be reported");
+        } catch (IOException ioe) {
+            //expected
+        }
+    }
+
+    /**
+     * Tests that class path resources are cached per class loader.
+     * @throws Exception if an error occurs
+     */
+    public void testClassPathCache() throws Exception {
+        File dir1 = createDirectory("urlresolver1");
+        File dir2 = createDirectory("urlresolver2");
+        File res1 = new File(dir1, "payload.txt");
+        File res2 = new File(dir2, "payload.txt");
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        try {
+            write(res1, "First");
+            write(res2, "Second");
+            DefaultURLResolver resolver = new DefaultURLResolver();
+            thread.setContextClassLoader(new URLClassLoader(
+                    new URL[] {dir1.toURI().toURL()}, null));
+            assertEquals("First", getString(resolver, "classpath:payload.txt"));
+            thread.setContextClassLoader(new URLClassLoader(
+                    new URL[] {dir2.toURI().toURL()}, null));
+            assertEquals("Second", getString(resolver, "classpath:payload.txt"));
+        } finally {
+            thread.setContextClassLoader(original);
+            res1.delete();
+            res2.delete();
+            dir1.delete();
+            dir2.delete();
+        }
+    }
+
+    private static File createDirectory(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        if (!dir.delete() || !dir.mkdir()) {
+            throw new IOException("Cannot create directory " + dir);
+        }
+        return dir;
+    }
+
+}
@@ -53,4 +53,14 @@ public class MimeTypesTest extends TestCase {
         assertFalse(MimeTypes.isBitmapFormat("eps"));
     }
 
+    public void testGetFileExtension() throws Exception {
+        assertEquals("svg", MimeTypes.getFileExtension(MimeTypes.MIME_SVG));
+        assertEquals("eps", MimeTypes.getFileExtension("image/eps"));
+        assertEquals("png", MimeTypes.getFileExtension("image/png"));
+        assertEquals("jpg", MimeTypes.getFileExtension("jpeg"));
+        assertEquals("tif", MimeTypes.getFileExtension(MimeTypes.MIME_TIFF));
+        assertNull(MimeTypes.getFileExtension("anything"));
+        assertNull(MimeTypes.getFileExtension(null));
+    }
+
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2008 Jeremias Maerki.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/* $Id$ */
+
+package org.krysalis.barcode4j.tools;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link WorkerPool}.
+ *
+ * @version $Id$
+ */
+public class WorkerPoolTest extends TestCase {
+
+    public void testRunsAllTasks() throws Exception {
+        WorkerPool pool = new WorkerPool(2);
+        for (int round = 0; round < 100; round++) {
+            final int[] results = new int[10];
+            Runnable[] tasks = new Runnable[results.length];
+            for (int i = 0; i < tasks.length; i++) {
+                final int index = i;
+                tasks[i] = new Runnable() {
+                    public void run() {
+                        results[index] = index + 1;
+                    }
+                };
+            }
+            pool.run(tasks);
+            for (int i = 0; i < results.length; i++) {
+                assertEquals(i + 1, results[i]);
+            }
+        }
+    }
+
+    public void testNestedGroups() throws Exception {
+        //The calling thread works on its own group, so nesting must not deadlock
+        final WorkerPool pool = new WorkerPool(1);
+        final int[] count = new int[1];
+        Runnable[] tasks = new Runnable[4];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Runnable() {
+                public void run() {
+                    Runnable[] inner = new Runnable[3];
+                    for (int j = 0; j < inner.length; j++) {
+                        inner[j] = new Runnable() {
+                            public void run() {
+                                synchronized (count) {
+                                    count[0]++;
+                                }
+                            }
+                        };
+                    }
+                    pool.run(inner);
+                }
+            };
+        }
+        pool.run(tasks);
+        assertEquals(12, count[0]);
+    }
+
+    public void testException() throws Exception {
+        WorkerPool pool = new WorkerPool(2);
+        final int[] count = new int[1];
+        Runnable[] tasks = new Runnable[5];
+        for (int i = 0; i < tasks.length; i++) {
+            final boolean fail = (i == 2);
+            tasks[i] = new Runnable() {
+                public void run() {
+                    synchronized (count) {
+                        count[0]++;
+                    }
+                    if (fail) {
+                        throw new IllegalStateException("task failed");
+                    }
+                }
+            };
+        }
+        try {
+            pool.run(tasks);
+            fail("The exception of a task must be rethrown");
+        } catch (IllegalStateException ise) {
+            assertEquals("task failed", ise.getMessage());
+        }
+        assertEquals(5, count[0]);
+    }
+
+}
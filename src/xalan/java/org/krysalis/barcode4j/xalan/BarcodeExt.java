@@ -55,7 +55,7 @@ public class BarcodeExt {
 
             //Acquire BarcodeGenerator
             final BarcodeGenerator gen =
-                    BarcodeUtil.getInstance().createBarcodeGenerator(cfg);
+                    BarcodeUtil.getInstance().getCachedBarcodeGenerator(cfg);
 
             //Setup Canvas
             int orientation = cfg.getAttributeAsInteger("orientation", 0);
@@ -93,7 +93,7 @@ public class BarcodeExt {
 
             //Acquire BarcodeGenerator
             final BarcodeGenerator gen =
-                    BarcodeUtil.getInstance().createBarcodeGenerator(cfg);
+                    BarcodeUtil.getInstance().getCachedBarcodeGenerator(cfg);
 
             //Setup Canvas
             int orientation = cfg.getAttributeAsInteger("orientation", 0);
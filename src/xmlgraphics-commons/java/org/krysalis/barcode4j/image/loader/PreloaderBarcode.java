@@ -138,7 +138,7 @@ public class PreloaderBarcode extends AbstractImagePreloader {
         orientation = BarcodeDimension.normalizeOrientation(orientation);
 
         BarcodeGenerator bargen = BarcodeUtil.getInstance().
-                createBarcodeGenerator(cfg);
+                getCachedBarcodeGenerator(cfg);
         //Expand with null information and hope the size will match the actual barcode
         String expandedMsg = VariableUtil.getExpandedMessage((PageInfo)null, msg);
         BarcodeDimension bardim = bargen.calcDimensions(expandedMsg);